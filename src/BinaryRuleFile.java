@@ -0,0 +1,220 @@
+/***************************************************************************************************
+ * File: BinaryRuleFile.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Binary rule file format, written by SequenceCleaner and memory-mapped by SequenceExecuter so a
+	large rule set can be used without a parse step. All values are 4-byte big-endian ints or
+	floats:
+
+		header			magic ("RULB"), version, flags, number of rules, number of LHS items,
+						number of RHS items, number of dictionary partitions, number of postings
+		dictionary		sorted ids of the partitions that appear in some LHS
+		lhs offsets		number of rules + 1 offsets into the LHS items
+		lhs items		sorted LHS partitions of every rule, packed
+		rhs offsets		number of rules + 1 offsets into the RHS items
+		rhs items		sorted RHS partitions of every rule, packed
+		supports		one float per rule
+		index			only if flags has FLAG_INDEX: rule ranks by decreasing support, dictionary
+						size + 1 posting offsets, and the postings (see RuleIndex)
+
+	Every section is mapped separately, so the file can be larger than 2 GB as long as each
+	section is not.
+ ***************************************************************************************************/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class BinaryRuleFile
+{
+	public static final int MAGIC = 0x52554C42;		// "RULB"
+	public static final int VERSION = 1;
+	public static final int FLAG_INDEX = 1;			// file contains a prebuilt LHS index
+
+	private static final int HEADER_BYTES = 8 * 4;
+
+	private RuleStore store;
+	private RuleIndex index;		// null if the file has no prebuilt index
+
+	private BinaryRuleFile(RuleStore s, RuleIndex i)
+	{
+		store = s;
+		index = i;
+	}
+
+	public RuleStore getStore()
+	{
+		return store;
+	}
+
+	public RuleIndex getIndex()
+	{
+		return index;
+	}
+
+	/*
+	 * Checks the magic number, so callers can accept either a text or a binary rule file.
+	 */
+	public static boolean isBinary(String filename)
+	{
+		DataInputStream in = null;
+
+		try
+		{
+			in = new DataInputStream(new FileInputStream(filename));
+			return in.readInt() == MAGIC;
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+		finally
+		{
+			try
+			{
+				if(in != null)
+					in.close();
+			}
+			catch(IOException e)
+			{
+			}
+		}
+	}
+
+	public static void write(RuleStore store, boolean with_index, String filename) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		RuleIndex index = new RuleIndex(store);		// also gives the partition dictionary
+		int [] dictionary = index.getDictionary();
+		int n = store.size();
+
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(with_index ? FLAG_INDEX : 0);
+			out.writeInt(n);
+			out.writeInt(n == 0 ? 0 : store.lhsEnd(n - 1));
+			out.writeInt(n == 0 ? 0 : store.rhsEnd(n - 1));
+			out.writeInt(dictionary.length);
+			out.writeInt(with_index ? index.getPostingRanks().limit() : 0);
+
+			for(int d = 0; d < dictionary.length; d++)
+				out.writeInt(dictionary[d]);
+
+			out.writeInt(0);
+			for(int r = 0; r < n; r++)
+				out.writeInt(store.lhsEnd(r));
+			for(int k = 0; k < (n == 0 ? 0 : store.lhsEnd(n - 1)); k++)
+				out.writeInt(store.lhsItem(k));
+
+			out.writeInt(0);
+			for(int r = 0; r < n; r++)
+				out.writeInt(store.rhsEnd(r));
+			for(int k = 0; k < (n == 0 ? 0 : store.rhsEnd(n - 1)); k++)
+				out.writeInt(store.rhsItem(k));
+
+			for(int r = 0; r < n; r++)
+				out.writeFloat(store.support(r));
+
+			if(with_index)
+			{
+				writeBuffer(out, index.getOrder());
+				writeBuffer(out, index.getPostingOffsets());
+				writeBuffer(out, index.getPostingRanks());
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void writeBuffer(DataOutputStream out, IntBuffer buffer) throws IOException
+	{
+		for(int i = 0; i < buffer.limit(); i++)
+			out.writeInt(buffer.get(i));
+	}
+
+	/*
+	 * Maps a binary rule file. Nothing is parsed or copied except the header and the partition
+	 * dictionary; the rules and the index are read straight from the mapped file.
+	 */
+	public static BinaryRuleFile open(String filename) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		FileChannel channel = file.getChannel();
+
+		try
+		{
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+
+			if(header.getInt() != MAGIC)
+				throw new IOException(filename + " is not a binary rule file");
+
+			int version = header.getInt();
+			if(version != VERSION)
+				throw new IOException(filename + " has rule file version " + version + ", expected " + VERSION);
+
+			int flags = header.getInt();
+			int num_rules = header.getInt();
+			int num_lhs_items = header.getInt();
+			int num_rhs_items = header.getInt();
+			int num_partitions = header.getInt();
+			int num_postings = header.getInt();
+
+			long position = HEADER_BYTES;
+			long expected_size = HEADER_BYTES + 4L * ((long)num_partitions + 2L * (num_rules + 1) + num_lhs_items + num_rhs_items + num_rules);
+
+			if((flags & FLAG_INDEX) != 0)
+				expected_size += 4L * ((long)num_rules + num_partitions + 1 + num_postings);
+
+			if(expected_size > channel.size())
+				throw new IOException(filename + " is truncated");
+
+			IntBuffer dictionary_view = mapInts(channel, position, num_partitions);
+			position += 4L * num_partitions;
+
+			int [] dictionary = new int[num_partitions];
+			dictionary_view.get(dictionary);
+
+			IntBuffer lhs_offsets = mapInts(channel, position, num_rules + 1);
+			position += 4L * (num_rules + 1);
+			IntBuffer lhs_items = mapInts(channel, position, num_lhs_items);
+			position += 4L * num_lhs_items;
+			IntBuffer rhs_offsets = mapInts(channel, position, num_rules + 1);
+			position += 4L * (num_rules + 1);
+			IntBuffer rhs_items = mapInts(channel, position, num_rhs_items);
+			position += 4L * num_rhs_items;
+			FloatBuffer supports = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * num_rules).asFloatBuffer();
+			position += 4L * num_rules;
+
+			RuleStore store = new RuleStore(num_rules, lhs_offsets, lhs_items, rhs_offsets, rhs_items, supports);
+			RuleIndex index = null;
+
+			if((flags & FLAG_INDEX) != 0)
+			{
+				IntBuffer order = mapInts(channel, position, num_rules);
+				position += 4L * num_rules;
+				IntBuffer posting_offsets = mapInts(channel, position, num_partitions + 1);
+				position += 4L * (num_partitions + 1);
+				IntBuffer posting_ranks = mapInts(channel, position, num_postings);
+
+				index = new RuleIndex(store, order, dictionary, posting_offsets, posting_ranks);
+			}
+
+			return new BinaryRuleFile(store, index);
+		}
+		finally
+		{
+			// mappings stay valid after the channel is closed
+			channel.close();
+			file.close();
+		}
+	}
+
+	private static IntBuffer mapInts(FileChannel channel, long position, int count) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * count).asIntBuffer();
+	}
+}
@@ -0,0 +1,101 @@
+/***************************************************************************************************
+ * File: ConnectionPool.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Fixed-size pool of JDBC connections used by the prefetch workers, so prefetches never share
+	the connection that runs the user's queries. The pool can be opened from any JDBC url and
+	driver class, or built from connections created elsewhere (e.g. an embedded or stub driver).
+ ***************************************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.sql.*;
+
+public class ConnectionPool
+{
+	private String url;
+	private LinkedList<Connection> connections;		// every connection owned by the pool
+	private ArrayBlockingQueue<Connection> idle;	// connections not currently handed out
+
+	public ConnectionPool(String driver, String url, String user, String password, int size) throws Exception
+	{
+		this.url = url;
+
+		connections = new LinkedList<Connection>();
+		idle = new ArrayBlockingQueue<Connection>(size);
+
+		if(driver != null && driver.length() > 0)
+			Class.forName(driver);  // load the driver
+
+		for(int i = 0; i < size; i++)
+		{
+			Connection c = DriverManager.getConnection(url, user, password);
+			connections.add(c);
+			idle.add(c);
+		}
+	}
+
+	public ConnectionPool(List<Connection> conns)
+	{
+		url = "";
+
+		connections = new LinkedList<Connection>(conns);
+		idle = new ArrayBlockingQueue<Connection>(Math.max(1, conns.size()));
+		idle.addAll(conns);
+
+		try
+		{
+			if(conns.size() > 0)
+				url = conns.get(0).getMetaData().getURL();
+		}
+		catch(Exception e)
+		{
+			url = "";
+		}
+	}
+
+	/*
+	 * Blocks until a connection is available.
+	 */
+	public Connection take() throws InterruptedException
+	{
+		return idle.take();
+	}
+
+	public void release(Connection c)
+	{
+		idle.offer(c);
+	}
+
+	public int size()
+	{
+		return connections.size();
+	}
+
+	/*
+	 * Postgres connections support "SET statement_timeout", other drivers fall back to
+	 * Statement.setQueryTimeout.
+	 */
+	public boolean isPostgres()
+	{
+		return url != null && url.startsWith("jdbc:postgresql");
+	}
+
+	public void close()
+	{
+		for(Connection c : connections)
+		{
+			try
+			{
+				c.close();
+			}
+			catch(SQLException e)
+			{
+				System.out.println("error closing pooled connection: " + e.getMessage());
+			}
+		}
+
+		connections.clear();
+		idle.clear();
+	}
+}
@@ -0,0 +1,254 @@
+/***************************************************************************************************
+ * File: CostModel.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Estimates how long a query will take from the planner's EXPLAIN cost. EXPLAIN is run once per
+	distinct query (e.g. once per Partition.toSQL()) and the cost is cached. Planner cost units are
+	converted to milliseconds with a linear model, ms = overhead + cost / cost_per_milli, whose
+	parameters come from calibrate(), which times real executions on this box. A model built
+	without a connection (e.g. for an offline replay) only knows the times given to setKnownMillis.
+ ***************************************************************************************************/
+
+import java.util.*;
+import java.util.regex.*;
+import java.sql.*;
+
+public class CostModel
+{
+	// "Seq Scan on quote  (cost=0.00..1234.56 rows=10 width=40)" --> 1234.56
+	private static final Pattern TOTAL_COST = Pattern.compile("cost=[0-9.]+\\.\\.([0-9.]+)");
+
+	private Connection conn;					// null when there is no database to EXPLAIN on
+	private HashMap<String, Double> costs;		// query --> total planner cost
+	private HashMap<String, Double> known;		// query --> measured execution time (ms), e.g. from a replay log
+
+	private double cost_per_milli;				// planner cost units per millisecond of execution
+	private double overhead_milli;				// fixed cost of a round trip
+
+	private int explains_run;
+	private int cache_hits;
+
+	public CostModel(Connection c, double cost_per_ms, double overhead_ms)
+	{
+		conn = c;
+		costs = new HashMap<String, Double>();
+		known = new HashMap<String, Double>();
+
+		cost_per_milli = cost_per_ms;
+		overhead_milli = overhead_ms;
+	}
+
+	/*
+	 * A model without a database connection: queries without a known time are never explained,
+	 * their cost is infinite.
+	 */
+	public CostModel(double cost_per_ms, double overhead_ms)
+	{
+		this(null, cost_per_ms, overhead_ms);
+	}
+
+	/*
+	 * Total planner cost of the query, from the cache or from running EXPLAIN. If the query cannot
+	 * be explained, or there is no connection, the cost is infinite, so the scheduler never picks
+	 * it, and it is not cached: EXPLAIN is tried again the next time.
+	 */
+	public synchronized double getCost(String query)
+	{
+		Double cached = costs.get(query);
+
+		if(cached != null)
+		{
+			cache_hits++;
+			return cached.doubleValue();
+		}
+
+		if(conn == null)
+			return Double.POSITIVE_INFINITY;
+
+		double cost = explain(query);
+		if(cost < 0)
+			return Double.POSITIVE_INFINITY;
+
+		costs.put(query, Double.valueOf(cost));
+
+		return cost;
+	}
+
+	/*
+	 * A measured time for the query takes precedence over the planner estimate.
+	 */
+	public synchronized void setKnownMillis(String query, double millis)
+	{
+		known.put(query, Double.valueOf(millis));
+	}
+
+	public double estimateMillis(String query)
+	{
+		Double millis;
+
+		synchronized(this)
+		{
+			millis = known.get(query);
+		}
+
+		if(millis != null)
+			return millis.doubleValue();
+
+		return overhead_milli + getCost(query) / cost_per_milli;
+	}
+
+	/*
+	 * Runs EXPLAIN on the query. Returns -1 if it fails or returns no plan.
+	 */
+	private double explain(String query)
+	{
+		Statement stmt = null;
+		ResultSet result;
+		double cost = -1;
+
+		explains_run++;
+
+		try
+		{
+			stmt = conn.createStatement();
+			result = stmt.executeQuery("EXPLAIN " + query);
+
+			if(result.next())
+				cost = parseCost(result.getString(1));
+			else
+				System.out.println("EXPLAIN returned no plan");
+
+			result.close();
+		}
+		catch(Exception e)
+		{
+			System.out.println("EXPLAIN failed: " + e.getMessage());
+		}
+		finally
+		{
+			if(stmt != null)
+			{
+				try
+				{
+					stmt.close();
+				}
+				catch(SQLException e)
+				{
+				}
+			}
+		}
+
+		return cost;
+	}
+
+	/*
+	 * Extracts the total cost from the first line of an EXPLAIN plan, or 0 if there is none.
+	 */
+	public static double parseCost(String plan_line)
+	{
+		Matcher m;
+
+		if(plan_line == null)
+			return 0;
+
+		m = TOTAL_COST.matcher(plan_line);
+		if(!m.find())
+			return 0;
+
+		try
+		{
+			return Double.parseDouble(m.group(1));
+		}
+		catch(NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+
+	/*
+	 * Fits the cost to milliseconds mapping by executing each query and timing it. Every query is
+	 * run once to warm the buffer pool and then timed over the given number of repetitions, so the
+	 * model describes warm executions. The fit is an ordinary least squares line through
+	 * (cost, ms); if all costs are equal only the overhead is set.
+	 */
+	public void calibrate(List<String> queries, int repetitions) throws SQLException
+	{
+		Statement stmt;
+		ResultSet result;
+
+		double [] x = new double[queries.size()];
+		double [] y = new double[queries.size()];
+		double mean_x = 0, mean_y = 0;
+		double sxx = 0, sxy = 0;
+		double slope;
+
+		long start_time;
+
+		if(conn == null)
+			throw new SQLException("no database connection to calibrate on");
+
+		stmt = conn.createStatement();
+
+		for(int i = 0; i < queries.size(); i++)
+		{
+			x[i] = getCost(queries.get(i));
+
+			result = stmt.executeQuery(queries.get(i));
+			result.close();
+
+			start_time = System.nanoTime();
+			for(int r = 0; r < repetitions; r++)
+			{
+				result = stmt.executeQuery(queries.get(i));
+				while(result.next())
+				{
+				}
+				result.close();
+			}
+			y[i] = (System.nanoTime() - start_time) / 1000000.0 / repetitions;
+
+			mean_x += x[i];
+			mean_y += y[i];
+		}
+		stmt.close();
+
+		if(queries.size() == 0)
+			return;
+
+		mean_x /= queries.size();
+		mean_y /= queries.size();
+
+		for(int i = 0; i < queries.size(); i++)
+		{
+			sxx += (x[i] - mean_x) * (x[i] - mean_x);
+			sxy += (x[i] - mean_x) * (y[i] - mean_y);
+		}
+
+		if(sxx == 0 || sxy <= 0)
+		{
+			overhead_milli = mean_y;
+			return;
+		}
+
+		slope = sxy / sxx;	// ms per cost unit
+
+		cost_per_milli = 1 / slope;
+		overhead_milli = Math.max(0, mean_y - slope * mean_x);
+	}
+
+	public double getCostPerMilli()
+	{
+		return cost_per_milli;
+	}
+
+	public double getOverheadMilli()
+	{
+		return overhead_milli;
+	}
+
+	public void printReport()
+	{
+		System.out.println("cost model: " + cost_per_milli + " cost units per ms, " + overhead_milli + " ms overhead");
+		System.out.println("EXPLAINs run: " + explains_run + ", cached cost lookups: " + cache_hits);
+	}
+}
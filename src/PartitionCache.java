@@ -0,0 +1,235 @@
+/***************************************************************************************************
+ * File: PartitionCache.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	In-process cache of materialised partition results, keyed by Partition.partition_id. The
+	cache is bounded by an estimate of the bytes held by the cached rows and evicts the least
+	recently used partition first. A user query is answered by stitching together the cached
+	results of the partitions it covers, so only the partitions that are missing have to go to
+	the database. Prefetch workers fill the cache concurrently, so all access is synchronized.
+ ***************************************************************************************************/
+
+import java.util.*;
+import java.sql.*;
+
+public class PartitionCache
+{
+	private long max_bytes;
+	private long current_bytes;
+
+	private LinkedHashMap<Integer, CachedResult> entries;	// access ordered, eldest entry is the LRU victim
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/*
+	 * Rows of one partition, copied out of the ResultSet.
+	 */
+	public static class CachedResult
+	{
+		public String [] columns;
+		public ArrayList<Object[]> rows;
+		public long bytes;
+
+		public CachedResult(String [] c, ArrayList<Object[]> r, long b)
+		{
+			columns = c;
+			rows = r;
+			bytes = b;
+		}
+
+		public int columnIndex(String name)
+		{
+			for(int i = 0; i < columns.length; i++)
+			{
+				if(columns[i].equalsIgnoreCase(name))
+					return i;
+			}
+			return -1;
+		}
+	}
+
+	public PartitionCache(long max)
+	{
+		max_bytes = max;
+		current_bytes = 0;
+
+		entries = new LinkedHashMap<Integer, CachedResult>(16, .75f, true);
+	}
+
+	/*
+	 * Returns the cached rows of the partition, or null on a miss. Counts towards the hit rate.
+	 */
+	public synchronized CachedResult get(int partition_id)
+	{
+		CachedResult r = entries.get(Integer.valueOf(partition_id));
+
+		if(r == null)
+			misses++;
+		else
+			hits++;
+
+		return r;
+	}
+
+	/*
+	 * Checks for a partition without touching the LRU order or the hit rate.
+	 */
+	public synchronized boolean contains(int partition_id)
+	{
+		return entries.containsKey(Integer.valueOf(partition_id));
+	}
+
+	public synchronized void put(int partition_id, CachedResult r)
+	{
+		CachedResult old;
+		Iterator< Map.Entry<Integer, CachedResult> > it;
+		Map.Entry<Integer, CachedResult> eldest;
+
+		if(r.bytes > max_bytes)  // would evict everything else and still not fit
+			return;
+
+		old = entries.remove(Integer.valueOf(partition_id));
+		if(old != null)
+			current_bytes -= old.bytes;
+
+		it = entries.entrySet().iterator();
+		while(current_bytes + r.bytes > max_bytes && it.hasNext())
+		{
+			eldest = it.next();
+			current_bytes -= eldest.getValue().bytes;
+			it.remove();
+			evictions++;
+		}
+
+		entries.put(Integer.valueOf(partition_id), r);
+		current_bytes += r.bytes;
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		current_bytes = 0;
+	}
+
+	public synchronized double hitRate()
+	{
+		if(hits + misses == 0)
+			return 0;
+
+		return hits / (double)(hits + misses);
+	}
+
+	public synchronized void printReport()
+	{
+		System.out.println("cache hits: " + hits + ", misses: " + misses + ", hit rate: " + hitRate());
+		System.out.println("cache size: " + entries.size() + " partitions, " + current_bytes + " of " + max_bytes
+						   + " bytes, evictions: " + evictions);
+	}
+
+	/*
+	 * Copies all rows of the result set into memory. The byte size is an estimate of the heap
+	 * used by the copied rows.
+	 */
+	public static CachedResult materialize(ResultSet result) throws SQLException
+	{
+		ResultSetMetaData meta = result.getMetaData();
+		int num_columns = meta.getColumnCount();
+
+		String [] columns = new String[num_columns];
+		ArrayList<Object[]> rows = new ArrayList<Object[]>();
+		Object [] row;
+		long bytes = 64;
+
+		for(int i = 0; i < num_columns; i++)
+			columns[i] = meta.getColumnName(i+1);
+
+		while(result.next())
+		{
+			row = new Object[num_columns];
+			bytes += 16 + 8 * num_columns;   // array header and references
+
+			for(int i = 0; i < num_columns; i++)
+			{
+				row[i] = result.getObject(i+1);
+				bytes += estimateSize(row[i]);
+			}
+
+			rows.add(row);
+		}
+
+		return new CachedResult(columns, rows, bytes);
+	}
+
+	private static long estimateSize(Object o)
+	{
+		if(o == null)
+			return 0;
+		if(o instanceof String)
+			return 40 + 2 * ((String)o).length();
+		if(o instanceof java.math.BigDecimal)
+			return 64;
+		if(o instanceof java.util.Date)
+			return 32;
+
+		return 16;
+	}
+
+	/*
+	 * Stitches the rows of several partitions into the answer of a range query. Rows outside
+	 * [x_min, x_max] x [y_min, y_max] on the given columns are dropped (bounds are exclusive, as in
+	 * the generated SQL). A partition holds every copy of the rows in its region, so a row that
+	 * appears in several partitions because they overlap is kept as many times as it appears in
+	 * the partition where it appears most, and rows that really are repeated in the table stay
+	 * repeated. A null range keeps every row.
+	 */
+	public static ArrayList<Object[]> stitch(List<CachedResult> parts, String x_column, String y_column, double [] range)
+	{
+		ArrayList<Object[]> answer = new ArrayList<Object[]>();
+		HashMap< List<Object>, Integer > kept = new HashMap< List<Object>, Integer >();		// row --> copies in the answer
+		HashMap< List<Object>, Integer > in_part;												// row --> copies in the current partition
+		List<Object> key;
+		Integer count, previous;
+
+		int x_index, y_index;
+		double x, y;
+
+		for(CachedResult part : parts)
+		{
+			x_index = part.columnIndex(x_column);
+			y_index = part.columnIndex(y_column);
+			in_part = new HashMap< List<Object>, Integer >();
+
+			for(Object [] row : part.rows)
+			{
+				if(range != null && x_index >= 0 && y_index >= 0
+				   && row[x_index] instanceof Number && row[y_index] instanceof Number)
+				{
+					x = ((Number)row[x_index]).doubleValue();
+					y = ((Number)row[y_index]).doubleValue();
+
+					if(x <= range[0] || x >= range[1] || y <= range[2] || y >= range[3])
+						continue;
+				}
+
+				if(parts.size() > 1)
+				{
+					key = Arrays.asList(row);
+					previous = in_part.get(key);
+					count = Integer.valueOf(previous == null ? 1 : previous.intValue() + 1);
+					in_part.put(key, count);
+
+					previous = kept.get(key);
+					if(previous != null && previous.intValue() >= count.intValue())  // copy already taken from an overlapping partition
+						continue;
+					kept.put(key, count);
+				}
+
+				answer.add(row);
+			}
+		}
+
+		return answer;
+	}
+}
@@ -0,0 +1,129 @@
+/***************************************************************************************************
+ * File: PredictionPlanner.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Multi-step prediction of the partitions the user will ask for next. Starting from the current
+	query, the rules matching it give the predictions for the next step; the best ranked
+	predictions are then used as the "current query" of the following step, down to a maximum
+	depth (the prediction tree). Every predicted partition gets a path probability, the product
+	of the normalised supports of the rules on the path that predicted it. A partition predicted
+	more than once, at any step, is kept once with its highest probability, and the result is a
+	single list ranked by probability.
+ ***************************************************************************************************/
+
+import java.util.*;
+
+public class PredictionPlanner
+{
+	private RuleIndex index;
+	private int max_depth;					// number of steps to predict ahead
+	private int branching;					// predictions expanded at each node of the tree
+	private double min_intersect;			// fraction of the query a rule's LHS must cover
+
+	public static class PlannedPartition
+	{
+		public int partition_id;
+		public double probability;		// path probability
+		public int step;				// first step at which the partition is predicted
+
+		public PlannedPartition(int id, double prob, int s)
+		{
+			partition_id = id;
+			probability = prob;
+			step = s;
+		}
+
+		public String toString()
+		{
+			return partition_id + " (" + probability + ", step " + step + ")";
+		}
+	}
+
+	public PredictionPlanner(RuleIndex i, int depth, int branches, double intersect)
+	{
+		index = i;
+		max_depth = depth;
+		branching = branches;
+		min_intersect = intersect;
+	}
+
+	/*
+	 * Returns the predicted partitions ranked by decreasing path probability, ties broken by the
+	 * step at which they were first predicted.
+	 */
+	public LinkedList<PlannedPartition> plan(List<Integer> current_partitions)
+	{
+		HashMap<Integer, PlannedPartition> planned = new HashMap<Integer, PlannedPartition>();
+		LinkedList<PlannedPartition> ranked;
+
+		expand(current_partitions, 1.0, 1, planned);
+
+		ranked = new LinkedList<PlannedPartition>(planned.values());
+		Collections.sort(ranked, new Comparator<PlannedPartition>()
+		{
+			public int compare(PlannedPartition p1, PlannedPartition p2)
+			{
+				if(p1.probability != p2.probability)
+					return Double.compare(p2.probability, p1.probability);
+				if(p1.step != p2.step)
+					return p1.step - p2.step;
+				return p1.partition_id - p2.partition_id;
+			}
+		});
+
+		return ranked;
+	}
+
+	private void expand(List<Integer> current_partitions, double path_probability, int step,
+						HashMap<Integer, PlannedPartition> planned)
+	{
+		RuleStore store = index.getStore();
+		int [] matches = index.lookupIds(current_partitions, min_intersect);
+		PlannedPartition p;
+		Integer id;
+		double probability;
+		int expanded = 0;
+
+		for(int i = 0; i < matches.length; i++)
+		{
+			probability = path_probability * normalise(store.support(matches[i]));
+
+			for(int k = store.rhsStart(matches[i]); k < store.rhsEnd(matches[i]); k++)
+			{
+				id = Integer.valueOf(store.rhsItem(k));
+				p = planned.get(id);
+
+				if(p == null)
+				{
+					planned.put(id, new PlannedPartition(id.intValue(), probability, step));
+				}
+				else
+				{
+					if(probability > p.probability)
+						p.probability = probability;
+					if(step < p.step)
+						p.step = step;
+				}
+			}
+
+			// recurse down the prediction tree using the best ranked predictions of this step
+			if(step < max_depth && expanded < branching)
+			{
+				expanded++;
+				expand(store.rhsList(matches[i]), probability, step + 1, planned);
+			}
+		}
+	}
+
+	/*
+	 * Supports are counts (or percentages) depending on the miner, so they are scaled by the
+	 * highest support in the rule set to get a value in [0, 1].
+	 */
+	private double normalise(double support)
+	{
+		if(index.maxSupport() <= 0)
+			return 0;
+
+		return support / index.maxSupport();
+	}
+}
@@ -0,0 +1,381 @@
+/***************************************************************************************************
+ * File: PrefetchEngine.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Runs partition prefetches in parallel during the user's think time. A fixed pool of worker
+	threads executes Partition.toSQL() for the ranked predicted partitions, each worker on its own
+	connection from a ConnectionPool. With a PartitionCache the rows are kept on the client,
+	otherwise prefetching only warms the database buffer pool. When the next user query arrives
+	the current round is cancelled: queued prefetches are dropped and in-flight statements are
+	cancelled. At the end of each round the prefetched partitions are compared against the
+	partitions the next query actually used, and the time spent is counted as useful or wasted.
+ ***************************************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.sql.*;
+
+public class PrefetchEngine
+{
+	private final boolean PRINT_DEBUG_INFO = false;
+
+	private ConnectionPool pool;
+	private ExecutorService workers;
+	private HashMap<Integer, Partition> partition_info;
+	private PartitionCache cache;					// if set, prefetched rows are kept here instead of thrown away
+
+	private final Set<Statement> in_flight;			// statements currently executing, cancelled at the end of a round
+
+	private Round current_round;
+	private LinkedList< Future<?> > pending;		// tasks submitted in the current round
+
+	// totals over all rounds
+	private int total_issued;
+	private int total_completed;
+	private int total_cancelled;
+	private int total_failed;
+	private int total_useful;
+	private int total_wasted;
+	private long useful_millis;
+	private long wasted_millis;
+
+	/*
+	 * State of one think-time period. Tasks keep a reference to the round they were submitted in,
+	 * so work that finishes late is never credited to the next round.
+	 */
+	private class Round
+	{
+		volatile boolean cancelled = false;
+		long deadline;
+
+		HashMap<Integer, Long> completed = new HashMap<Integer, Long>();	// partition id --> execution time (ms)
+		int cancelled_count = 0;
+		long cancelled_millis = 0;
+		int failed_count = 0;
+
+		Round(long d)
+		{
+			deadline = d;
+		}
+
+		/*
+		 * Counts a prefetch that did not complete because the round was cancelled, the think time
+		 * ran out or its statement timed out. millis is the time it spent executing, 0 if it never
+		 * started.
+		 */
+		synchronized void countCancelled(long millis)
+		{
+			cancelled_count++;
+			cancelled_millis += millis;
+		}
+	}
+
+	public PrefetchEngine(ConnectionPool p, HashMap<Integer, Partition> info)
+	{
+		pool = p;
+		partition_info = info;
+
+		// one worker per pooled connection, so a worker never waits for a connection
+		workers = Executors.newFixedThreadPool(pool.size());
+
+		in_flight = Collections.synchronizedSet(new HashSet<Statement>());
+		pending = new LinkedList< Future<?> >();
+	}
+
+	public void setCache(PartitionCache c)
+	{
+		cache = c;
+	}
+
+	/*
+	 * Starts a new round, prefetching the given partitions in rank order. Partitions are handed
+	 * to the workers in that order, so the highest ranked ones start first. Nothing is started
+	 * after think_time_milli has passed, and statements are given a timeout of the remaining
+	 * think time.
+	 */
+	public synchronized void prefetch(List<Integer> ranked_partitions, long think_time_milli)
+	{
+		HashSet<Integer> submitted = new HashSet<Integer>();
+		Partition p;
+
+		if(current_round != null)
+			cancel();
+
+		current_round = new Round(System.currentTimeMillis() + think_time_milli);
+
+		for(Integer id : ranked_partitions)
+		{
+			if(!submitted.add(id))  // already prefetching this partition
+				continue;
+
+			p = partition_info.get(id);
+			if(p == null)
+				continue;
+
+			if(cache != null && cache.contains(id.intValue()))  // already materialised
+				continue;
+
+			total_issued++;
+			pending.add(workers.submit(new PrefetchTask(p, current_round)));
+		}
+	}
+
+	/*
+	 * Called when the next user query arrives. Drops prefetches that have not started, cancels
+	 * the ones that are executing and waits for the workers to let go of them.
+	 */
+	public synchronized void cancel()
+	{
+		if(current_round == null)
+			return;
+
+		// under the lock of in_flight, so a task either sees the flag before registering its
+		// statement or has registered it and gets it cancelled here
+		synchronized(in_flight)
+		{
+			current_round.cancelled = true;
+
+			for(Statement s : in_flight)
+			{
+				try
+				{
+					s.cancel();
+				}
+				catch(SQLException e)
+				{
+					System.out.println("error cancelling prefetch: " + e.getMessage());
+				}
+			}
+		}
+
+		for(Future<?> f : pending)
+		{
+			try
+			{
+				f.get();
+			}
+			catch(Exception e)
+			{
+				// task was cancelled or failed, it has already been accounted for
+			}
+		}
+		pending.clear();
+	}
+
+	/*
+	 * Closes the current round. A completed prefetch is useful if its partition is used by the
+	 * next query, otherwise its time was wasted. Cancelled and failed prefetches are always
+	 * wasted. Returns the number of useful prefetches in the round.
+	 */
+	public synchronized int endRound(List<Integer> actual_partitions)
+	{
+		Round r = current_round;
+		int useful = 0;
+
+		if(r == null)
+			return 0;
+
+		cancel();
+
+		HashSet<Integer> actual = new HashSet<Integer>(actual_partitions);
+
+		synchronized(r)
+		{
+			for(Map.Entry<Integer, Long> entry : r.completed.entrySet())
+			{
+				if(actual.contains(entry.getKey()))
+				{
+					useful++;
+					useful_millis += entry.getValue().longValue();
+				}
+				else
+				{
+					total_wasted++;
+					wasted_millis += entry.getValue().longValue();
+				}
+			}
+
+			total_useful += useful;
+			total_completed += r.completed.size();
+			total_cancelled += r.cancelled_count;
+			total_failed += r.failed_count;
+			total_wasted += r.cancelled_count + r.failed_count;
+			wasted_millis += r.cancelled_millis;
+
+			if(PRINT_DEBUG_INFO)
+				System.out.println("prefetch round: completed " + r.completed.keySet() + ", actual " + actual_partitions);
+		}
+
+		current_round = null;
+		return useful;
+	}
+
+	public void printReport()
+	{
+		System.out.println("prefetches issued: " + total_issued);
+		System.out.println("prefetches completed: " + total_completed);
+		System.out.println("prefetches cancelled: " + total_cancelled);
+		System.out.println("prefetches failed: " + total_failed);
+		System.out.println("useful prefetches: " + total_useful + " (" + (useful_millis/1000.0) + " seconds)");
+		System.out.println("wasted prefetches: " + total_wasted + " (" + (wasted_millis/1000.0) + " seconds)");
+	}
+
+	public int getUsefulCount()
+	{
+		return total_useful;
+	}
+
+	public int getWastedCount()
+	{
+		return total_wasted;
+	}
+
+	public void shutdown()
+	{
+		cancel();
+		workers.shutdownNow();
+
+		try
+		{
+			workers.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		pool.close();
+	}
+
+	class PrefetchTask implements Runnable
+	{
+		private Partition partition;
+		private Round round;
+
+		public PrefetchTask(Partition p, Round r)
+		{
+			partition = p;
+			round = r;
+		}
+
+		public void run()
+		{
+			Connection c = null;
+			Statement stmt = null;
+			ResultSet result;
+
+			long start_time = 0, end_time;
+			long remaining;
+
+			if(round.cancelled)
+			{
+				round.countCancelled(0);
+				return;
+			}
+
+			try
+			{
+				c = pool.take();
+
+				remaining = round.deadline - System.currentTimeMillis();
+				if(round.cancelled || remaining <= 0)   // think time is over, don't start
+				{
+					round.countCancelled(0);
+					return;
+				}
+
+				stmt = c.createStatement();
+				synchronized(in_flight)
+				{
+					if(round.cancelled)   // cancel() has already gone through in_flight
+					{
+						round.countCancelled(0);
+						return;
+					}
+					in_flight.add(stmt);
+				}
+
+				if(pool.isPostgres())
+					stmt.execute("SET statement_timeout TO " + remaining);
+				else
+					stmt.setQueryTimeout((int)Math.max(1, (remaining + 999) / 1000));
+
+				start_time = System.currentTimeMillis();
+
+				result = stmt.executeQuery(partition.toSQL());
+				if(cache != null)
+				{
+					cache.put(partition.partition_id, PartitionCache.materialize(result));
+				}
+				else
+				{
+					while(result.next())
+					{
+					}
+				}
+				result.close();
+
+				end_time = System.currentTimeMillis();
+
+				synchronized(round)
+				{
+					round.completed.put(Integer.valueOf(partition.partition_id), Long.valueOf(end_time - start_time));
+				}
+
+				if(PRINT_DEBUG_INFO)
+					System.out.println("prefetched partition " + partition.partition_id + " in " + ((end_time-start_time)/1000.0) + " seconds");
+			}
+			catch(InterruptedException e)
+			{
+				round.countCancelled(0);
+			}
+			catch(SQLException e)
+			{
+				end_time = System.currentTimeMillis();
+
+				// a statement stopped by its timeout ran out of think time, it did not fail
+				if(round.cancelled || isTimeout(e))
+				{
+					round.countCancelled(start_time > 0 ? end_time - start_time : 0);
+				}
+				else
+				{
+					synchronized(round)
+					{
+						round.failed_count++;
+					}
+					System.out.println("prefetch error: " + e.getMessage());
+				}
+			}
+			finally
+			{
+				if(stmt != null)
+				{
+					in_flight.remove(stmt);
+
+					try
+					{
+						if(pool.isPostgres())
+							stmt.execute("SET statement_timeout TO 0");
+						stmt.close();
+					}
+					catch(SQLException e)
+					{
+					}
+				}
+
+				if(c != null)
+					pool.release(c);
+			}
+		}
+
+		/*
+		 * Postgres reports both a statement_timeout and a cancel with SQLState 57014
+		 * (query_canceled); other drivers throw SQLTimeoutException when the query timeout expires.
+		 */
+		private boolean isTimeout(SQLException e)
+		{
+			return e instanceof SQLTimeoutException || "57014".equals(e.getSQLState());
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/***************************************************************************************************
+ * File: PrefetchScheduler.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Chooses which predicted partitions to prefetch in the available think time. This is a 0/1
+	knapsack: the budget is the think time, each partition's weight is its estimated execution
+	time and its value is its predicted probability. Weights are rounded up to a fixed number of
+	time slots so the dynamic program stays small whatever the budget is.
+ ***************************************************************************************************/
+
+import java.util.*;
+
+public class PrefetchScheduler
+{
+	private int num_slots;		// resolution of the budget
+
+	public PrefetchScheduler(int slots)
+	{
+		num_slots = slots;
+	}
+
+	/*
+	 * Returns the partitions of the plan that maximise the total probability within the budget,
+	 * in plan order so the most likely partitions are prefetched first. estimates[i] is the
+	 * estimated time (ms) of the i-th partition of the plan.
+	 */
+	public LinkedList<Integer> schedule(List<PredictionPlanner.PlannedPartition> plan, double [] estimates, long budget_milli)
+	{
+		LinkedList<Integer> chosen = new LinkedList<Integer>();
+
+		int n = plan.size();
+		int [] weights = new int[n];
+		double [] values = new double[n];
+		double slot_milli;
+
+		double [] best;				// best[w] = best total probability using at most w slots
+		boolean [][] take;			// take[i][w] = item i is part of best[w] after considering items 0..i
+
+		int w;
+		int i = 0;
+
+		if(n == 0 || budget_milli <= 0)
+			return chosen;
+
+		slot_milli = budget_milli / (double)num_slots;
+
+		for(PredictionPlanner.PlannedPartition p : plan)
+		{
+			weights[i] = (int)Math.ceil(estimates[i] / slot_milli);
+			values[i] = p.probability;
+			i++;
+		}
+
+		best = new double[num_slots + 1];
+		take = new boolean[n][num_slots + 1];
+
+		for(i = 0; i < n; i++)
+		{
+			if(weights[i] > num_slots)  // can never fit
+				continue;
+
+			for(w = num_slots; w >= weights[i]; w--)
+			{
+				if(best[w - weights[i]] + values[i] > best[w])
+				{
+					best[w] = best[w - weights[i]] + values[i];
+					take[i][w] = true;
+				}
+			}
+		}
+
+		// walk back through the table to find the chosen items
+		boolean [] selected = new boolean[n];
+		w = num_slots;
+		for(i = n - 1; i >= 0; i--)
+		{
+			if(take[i][w])
+			{
+				selected[i] = true;
+				w -= weights[i];
+			}
+		}
+
+		i = 0;
+		for(PredictionPlanner.PlannedPartition p : plan)
+		{
+			if(selected[i])
+				chosen.add(Integer.valueOf(p.partition_id));
+			i++;
+		}
+
+		return chosen;
+	}
+}
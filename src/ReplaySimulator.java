@@ -0,0 +1,352 @@
+/***************************************************************************************************
+ * File: ReplaySimulator.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Offline replay of a query sequence on a virtual clock. The latency (and result size) of every
+	partition and of every user query is recorded once against the database. A replay then runs
+	the same prediction and scheduling code as the optimized simulation (planPredictions and
+	rankPartitions), but instead of sleeping through the think time and executing prefetches it
+	advances a virtual clock: prefetch workers are simulated with the recorded latencies and a
+	PartitionCache holds the partitions they would have fetched. A run over thousands of queries
+	takes seconds instead of days.
+ ***************************************************************************************************/
+
+import java.util.*;
+import java.io.*;
+import java.sql.*;
+
+public class ReplaySimulator
+{
+	private SequenceExecuter executer;
+
+	private HashMap<Integer, Double> partition_millis;		// partition id --> recorded latency (ms)
+	private HashMap<Integer, Long> partition_bytes;			// partition id --> recorded result size
+	private HashMap<Integer, Double> query_millis;			// query index --> recorded latency of the user's SQL
+
+	public ReplaySimulator(SequenceExecuter e)
+	{
+		executer = e;
+
+		partition_millis = new HashMap<Integer, Double>();
+		partition_bytes = new HashMap<Integer, Long>();
+		query_millis = new HashMap<Integer, Double>();
+	}
+
+	/*
+	 * Executes every partition and every user query once, timing each, and writes the latencies
+	 * to the latency file. Each partition is executed twice and the second (warm) run is kept, so
+	 * the recording does not depend on what happened to be in the buffer pool.
+	 */
+	public void record(Connection conn, String filename)
+	{
+		Statement stmt;
+		ResultSet result;
+		PartitionCache.CachedResult rows;
+		BufferedWriter out;
+
+		long start_time;
+		double millis;
+
+		LinkedList<String> sql_queries = executer.getSQLQueries();
+
+		try
+		{
+			stmt = conn.createStatement();
+			out = new BufferedWriter(new FileWriter(filename));
+
+			for(Partition p : executer.getPartitionInfo().values())
+			{
+				result = stmt.executeQuery(p.toSQL());
+				result.close();
+
+				start_time = System.nanoTime();
+				result = stmt.executeQuery(p.toSQL());
+				rows = PartitionCache.materialize(result);
+				result.close();
+				millis = (System.nanoTime() - start_time) / 1000000.0;
+
+				partition_millis.put(Integer.valueOf(p.partition_id), Double.valueOf(millis));
+				partition_bytes.put(Integer.valueOf(p.partition_id), Long.valueOf(rows.bytes));
+
+				out.write("p " + p.partition_id + " " + millis + " " + rows.bytes + "\n");
+			}
+
+			for(int i = 0; i < sql_queries.size(); i++)
+			{
+				result = stmt.executeQuery(sql_queries.get(i));
+				result.close();
+
+				start_time = System.nanoTime();
+				result = stmt.executeQuery(sql_queries.get(i));
+				while(result.next())
+				{
+				}
+				result.close();
+				millis = (System.nanoTime() - start_time) / 1000000.0;
+
+				query_millis.put(Integer.valueOf(i), Double.valueOf(millis));
+
+				out.write("q " + i + " " + millis + "\n");
+			}
+
+			out.close();
+			stmt.close();
+
+			System.out.println("...recorded " + partition_millis.size() + " partitions and " + query_millis.size() + " queries");
+		}
+		catch(Exception e)
+		{
+			System.out.println("record error: " + e.getMessage());
+		}
+	}
+
+	public void readLatencyFile(String filename)
+	{
+		BufferedReader in;
+		StringTokenizer tokenizer;
+		String line;
+		String type;
+		Integer id;
+
+		try
+		{
+			in = new BufferedReader(new FileReader(filename));
+
+			while((line = in.readLine()) != null)
+			{
+				tokenizer = new StringTokenizer(line, " ");
+				if(!tokenizer.hasMoreTokens())
+					continue;
+
+				type = tokenizer.nextToken();
+				id = Integer.valueOf(Integer.parseInt(tokenizer.nextToken()));
+
+				if(type.equals("p"))
+				{
+					partition_millis.put(id, Double.valueOf(Double.parseDouble(tokenizer.nextToken())));
+					partition_bytes.put(id, Long.valueOf(Long.parseLong(tokenizer.nextToken())));
+				}
+				else if(type.equals("q"))
+				{
+					query_millis.put(id, Double.valueOf(Double.parseDouble(tokenizer.nextToken())));
+				}
+			}
+
+			in.close();
+
+			System.out.println("...read latencies of " + partition_millis.size() + " partitions and " + query_millis.size() + " queries");
+		}
+		catch(Exception e)
+		{
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/*
+	 * Replays the query sequence with the given think time, number of prefetch workers and cache
+	 * size, and prints hit rate, saved latency and normalised execution times. Both times use the
+	 * recorded partition latencies: the naive time fetches every partition of each user query, the
+	 * optimized time only the partitions that are not in the cache when the query arrives. A query
+	 * without partitions costs its recorded latency in both. Nothing is replayed if a partition has
+	 * no recorded latency, since it would cost nothing on both sides.
+	 */
+	public void run(long think_time_milli, int num_workers, long cache_bytes)
+	{
+		LinkedList< LinkedList<Integer> > query_partitions = executer.getQueryPartitions();
+		LinkedList<String> sql_queries = executer.getSQLQueries();
+		HashMap<Integer, Partition> partition_info = executer.getPartitionInfo();
+
+		PartitionCache cache = new PartitionCache(cache_bytes);
+
+		LinkedList<PredictionPlanner.PlannedPartition> plan;
+		LinkedList<Integer> schedule;
+		HashSet<Integer> prefetched = new HashSet<Integer>();	// completed in the last think time
+
+		double [] worker_free;		// virtual time at which each worker is next free
+		double naive_millis = 0, optimized_millis = 0;
+		double query_time, naive_query_time;
+		double useful_millis = 0, wasted_millis = 0;
+		double start, latency;
+
+		int hits = 0, misses = 0;
+		int useful = 0, wasted = 0, cancelled = 0;
+		int w;
+
+		long real_start_time = System.currentTimeMillis();
+
+		if(!checkRecorded(partition_info.keySet(), query_partitions))
+			return;
+
+		// recorded latencies replace the EXPLAIN estimates, so the scheduler sees what the workers will
+		for(Map.Entry<Integer, Double> entry : partition_millis.entrySet())
+		{
+			if(partition_info.containsKey(entry.getKey()))
+				executer.getCostModel().setKnownMillis(partition_info.get(entry.getKey()).toSQL(), entry.getValue().doubleValue());
+		}
+
+		executer.setPartitionCache(cache);
+
+		for(int i = 0; i < sql_queries.size(); i++)
+		{
+			LinkedList<Integer> current = i < query_partitions.size() ? query_partitions.get(i) : new LinkedList<Integer>();
+
+			// same prediction path as runSimulationOptimized
+			plan = executer.planPredictions(current);
+
+			// prefetches of the last think time that the query uses
+			for(Integer id : prefetched)
+			{
+				if(current.contains(id))
+				{
+					useful++;
+					useful_millis += partitionMillis(id);
+				}
+				else
+				{
+					wasted++;
+					wasted_millis += partitionMillis(id);
+				}
+			}
+			prefetched.clear();
+
+			// answer the user's query from the cache, missing partitions cost their recorded latency
+			query_time = 0;
+			naive_query_time = 0;
+			for(Integer id : current)
+			{
+				naive_query_time += partitionMillis(id);
+
+				if(cache.get(id.intValue()) != null)
+				{
+					hits++;
+				}
+				else
+				{
+					misses++;
+					query_time += partitionMillis(id);
+					cacheEmpty(cache, id);
+				}
+			}
+
+			if(current.size() == 0)
+			{
+				query_time = queryMillis(i, current);
+				naive_query_time = query_time;
+			}
+
+			naive_millis += naive_query_time;
+			optimized_millis += query_time;
+
+			if(i == sql_queries.size()-1)
+				break;
+
+			// simulate the prefetch workers over the think time
+			schedule = executer.rankPartitions(plan, think_time_milli * (long)num_workers);
+			worker_free = new double[num_workers];
+
+			for(Integer id : schedule)
+			{
+				w = 0;
+				for(int j = 1; j < num_workers; j++)
+				{
+					if(worker_free[j] < worker_free[w])
+						w = j;
+				}
+
+				start = worker_free[w];
+				if(start >= think_time_milli)  // every worker is busy until the next query
+					break;
+
+				latency = partitionMillis(id);
+				if(start + latency <= think_time_milli)
+				{
+					cacheEmpty(cache, id);
+					prefetched.add(id);
+					worker_free[w] = start + latency;
+				}
+				else	// cancelled when the next query arrives
+				{
+					cancelled++;
+					wasted++;
+					wasted_millis += think_time_milli - start;
+					worker_free[w] = think_time_milli;
+				}
+			}
+		}
+
+		System.out.println("replayed " + sql_queries.size() + " queries in " + ((System.currentTimeMillis() - real_start_time)/1000.0)
+						   + " seconds of real time (virtual think time " + (think_time_milli/1000.0) + " seconds, "
+						   + num_workers + " workers)");
+		System.out.println("partition hits: " + hits + ", misses: " + misses + ", hit rate: "
+						   + (hits + misses == 0 ? 0 : hits / (double)(hits + misses)));
+		System.out.println("useful prefetches: " + useful + " (" + (useful_millis/1000.0) + " seconds)");
+		System.out.println("wasted prefetches: " + wasted + " (" + (wasted_millis/1000.0) + " seconds), " + cancelled + " cancelled");
+		System.out.println("naive normalized execution time: " + (naive_millis/1000.0));
+		System.out.println("optimized normalized execution time: " + (optimized_millis/1000.0));
+		System.out.println("saved latency: " + ((naive_millis - optimized_millis)/1000.0) + " seconds");
+	}
+
+	/*
+	 * The replay only needs to know which partitions are cached and how big they are, so the
+	 * cache holds empty results with the recorded size.
+	 */
+	private void cacheEmpty(PartitionCache cache, Integer id)
+	{
+		Long bytes = partition_bytes.get(id);
+
+		cache.put(id.intValue(), new PartitionCache.CachedResult(new String[0], new ArrayList<Object[]>(),
+																 bytes == null ? 0 : bytes.longValue()));
+	}
+
+	/*
+	 * Checks that every partition that can be predicted or queried has a recorded latency, and
+	 * prints how many do not otherwise.
+	 */
+	private boolean checkRecorded(Set<Integer> partitions, List< LinkedList<Integer> > query_partitions)
+	{
+		HashSet<Integer> unrecorded = new HashSet<Integer>();
+
+		for(Integer id : partitions)
+		{
+			if(!partition_millis.containsKey(id))
+				unrecorded.add(id);
+		}
+
+		for(LinkedList<Integer> query : query_partitions)
+		{
+			for(Integer id : query)
+			{
+				if(!partition_millis.containsKey(id))
+					unrecorded.add(id);
+			}
+		}
+
+		if(unrecorded.size() > 0)
+		{
+			System.out.println("replay error: " + unrecorded.size() + " partitions have no recorded latency, record the latency file again");
+			return false;
+		}
+
+		return true;
+	}
+
+	private double partitionMillis(Integer id)
+	{
+		return partition_millis.get(id).doubleValue();
+	}
+
+	private double queryMillis(int i, List<Integer> partitions)
+	{
+		Double millis = query_millis.get(Integer.valueOf(i));
+		double sum = 0;
+
+		if(millis != null)
+			return millis.doubleValue();
+
+		// query was not recorded, fall back to fetching all of its partitions
+		for(Integer id : partitions)
+			sum += partitionMillis(id);
+
+		return sum;
+	}
+}
@@ -0,0 +1,93 @@
+import java.util.*; 
+
+class Rule
+{
+	public List<Integer> lhs; 
+	public List<Integer> rhs; 
+	public double support; 
+	public boolean removed; 
+	
+	int [] lhs_set;   // sorted, duplicate free lhs and rhs, set by canonicalise() 
+	int [] rhs_set; 
+	long position;    // order in the input, used by StreamingRuleCleaner 
+	
+	public Rule(List<Integer> l, List<Integer> r, double supp)
+	{
+		lhs = l; 
+		rhs = r; 
+		support = supp; 
+		removed = false; 
+	}
+	
+	public void canonicalise()
+	{
+		lhs_set = toSet(lhs); 
+		rhs_set = toSet(rhs); 
+	}
+	
+	private static int [] toSet(List<Integer> partitions)
+	{
+		int [] set = new int[partitions.size()]; 
+		int n = 0; 
+		
+		for(Integer partition : partitions)
+			set[n++] = partition.intValue(); 
+		
+		Arrays.sort(set); 
+		
+		n = 0; 
+		for(int i = 0; i < set.length; i++)
+		{
+			if(n == 0 || set[i] != set[n-1])
+				set[n++] = set[i]; 
+		}
+		
+		return n == set.length ? set : Arrays.copyOf(set, n); 
+	}
+	
+	/*
+	 * True if the RHS of this rule contains the RHS of the other; both must be canonicalised. 
+	 */
+	public boolean rhsContains(Rule other)
+	{
+		int [] set = rhs_set; 
+		int [] subset = other.rhs_set; 
+		int k = 0; 
+		
+		if(subset.length > set.length)
+			return false; 
+		
+		for(int i = 0; i < subset.length; i++)
+		{
+			while(k < set.length && set[k] < subset[i])
+				k++; 
+			
+			if(k == set.length || set[k] != subset[i])
+				return false; 
+			k++; 
+		}
+		
+		return true; 
+	}
+	
+	public String ruleToString()
+	{
+		String rule = ""; 
+		
+		for(int i = 0; i < lhs.size(); i++)
+		{
+			rule += lhs.get(i).intValue() + " "; 
+		}
+		
+		rule += " ==> "; 
+		
+		for(int i = 0; i < rhs.size(); i++)
+		{
+			rule += rhs.get(i).intValue() + " "; 
+		}
+		
+		rule += ", " + support + "\n";
+		
+		return rule; 
+	}
+}
@@ -0,0 +1,356 @@
+/***************************************************************************************************
+ * File: RuleIndex.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Inverted index over a set of association rules (a RuleStore). Maps each partition id to the
+	rules whose LHS contains that partition (the posting list). Rules are ranked in order of
+	decreasing support and posting lists hold ranks, so every posting list is ordered by support.
+	All posting lists are packed into one array, found through a sorted dictionary of the
+	partitions, so an index can also be mapped straight from a binary rule file. A lookup only
+	touches the rules that share at least one partition with the query instead of scanning the
+	whole rule set.
+ ***************************************************************************************************/
+
+import java.util.*;
+import java.nio.*;
+
+public class RuleIndex
+{
+	private RuleStore store;
+	private IntBuffer order;				// rule rank (by decreasing support) --> rule id in the store
+
+	// posting lists: the ranks of the rules with dictionary[d] in their LHS are
+	// posting_ranks[posting_offsets[d] .. posting_offsets[d+1])
+	private int [] dictionary;				// sorted ids of the partitions that appear in some LHS
+	private IntBuffer posting_offsets;
+	private IntBuffer posting_ranks;
+
+	private int [] hit_counts;				// scratch space for lookups, one counter per rule
+	private int [] touched;					// rules whose counter is non-zero during a lookup
+
+	public RuleIndex(List<AssociationRule> rule_list)
+	{
+		this(RuleStore.fromRules(rule_list));
+	}
+
+	public RuleIndex(RuleStore s)
+	{
+		int [] ranks;
+		int [] offsets;
+		int [] fill;
+		int [] partitions;
+		long [] keys;
+		int num_distinct = 0;
+		int rule, d, bits;
+
+		store = s;
+
+		// sort rule ids by decreasing support, ties kept in rule file order; the sort key is the
+		// support's bits (flipped so larger sorts first) in the high word and the rule id in the low
+		keys = new long[store.size()];
+		for(int i = 0; i < keys.length; i++)
+		{
+			bits = Float.floatToIntBits(store.support(i));
+			bits ^= (bits >> 31) & 0x7fffffff;		// order negative floats correctly as ints
+			keys[i] = ((long)(~bits) << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		ranks = new int[keys.length];
+		for(int i = 0; i < keys.length; i++)
+			ranks[i] = (int)keys[i];
+		keys = null;
+
+		// the dictionary is the sorted set of partitions found in any LHS
+		partitions = new int[store.size() == 0 ? 0 : store.lhsEnd(store.size() - 1)];
+		for(int k = 0; k < partitions.length; k++)
+			partitions[k] = store.lhsItem(k);
+		Arrays.sort(partitions);
+		for(int k = 0; k < partitions.length; k++)
+		{
+			if(k == 0 || partitions[k] != partitions[k-1])
+				partitions[num_distinct++] = partitions[k];
+		}
+		dictionary = Arrays.copyOf(partitions, num_distinct);
+		partitions = null;
+
+		// first pass counts the posting list lengths, second pass fills them in rank order
+		offsets = new int[dictionary.length + 1];
+		for(int rank = 0; rank < ranks.length; rank++)
+		{
+			rule = ranks[rank];
+			for(int k = store.lhsStart(rule); k < store.lhsEnd(rule); k++)
+			{
+				if(k > store.lhsStart(rule) && store.lhsItem(k) == store.lhsItem(k-1))  // LHS is sorted, skip duplicates
+					continue;
+
+				offsets[Arrays.binarySearch(dictionary, store.lhsItem(k)) + 1]++;
+			}
+		}
+		for(d = 0; d < dictionary.length; d++)
+			offsets[d+1] += offsets[d];
+
+		fill = Arrays.copyOf(offsets, dictionary.length);
+		int [] postings = new int[offsets[dictionary.length]];
+		for(int rank = 0; rank < ranks.length; rank++)
+		{
+			rule = ranks[rank];
+			for(int k = store.lhsStart(rule); k < store.lhsEnd(rule); k++)
+			{
+				if(k > store.lhsStart(rule) && store.lhsItem(k) == store.lhsItem(k-1))
+					continue;
+
+				d = Arrays.binarySearch(dictionary, store.lhsItem(k));
+				postings[fill[d]++] = rank;   // ranks are added in increasing order, i.e. decreasing support
+			}
+		}
+
+		order = IntBuffer.wrap(ranks);
+		posting_offsets = IntBuffer.wrap(offsets);
+		posting_ranks = IntBuffer.wrap(postings);
+	}
+
+	/*
+	 * Wraps an index that was built earlier, e.g. one stored in a binary rule file.
+	 */
+	public RuleIndex(RuleStore s, IntBuffer ranks, int [] dict, IntBuffer offsets, IntBuffer postings)
+	{
+		store = s;
+		order = ranks;
+		dictionary = dict;
+		posting_offsets = offsets;
+		posting_ranks = postings;
+	}
+
+	public RuleStore getStore()
+	{
+		return store;
+	}
+
+	public IntBuffer getOrder()
+	{
+		return order;
+	}
+
+	public int [] getDictionary()
+	{
+		return dictionary;
+	}
+
+	public IntBuffer getPostingOffsets()
+	{
+		return posting_offsets;
+	}
+
+	public IntBuffer getPostingRanks()
+	{
+		return posting_ranks;
+	}
+
+	public int size()
+	{
+		return store.size();
+	}
+
+	public int numPartitions()
+	{
+		return dictionary.length;
+	}
+
+	public double maxSupport()
+	{
+		if(store.size() == 0)
+			return 0;
+
+		return store.support(order.get(0));
+	}
+
+	/*
+	 * Finds all rules whose LHS covers more than min_intersect of the query's partitions, i.e. the
+	 * rules for which SequenceExecuter.setIntersect(current_partitions, lhs) > min_intersect.
+	 * Matches are returned ordered by decreasing support, ties broken by decreasing intersection.
+	 */
+	public LinkedList<AssociationRule> lookup(List<Integer> current_partitions, double min_intersect)
+	{
+		LinkedList<AssociationRule> matches = new LinkedList<AssociationRule>();
+		int [] ids = lookupIds(current_partitions, min_intersect);
+
+		for(int i = 0; i < ids.length; i++)
+			matches.add(store.toAssociationRule(ids[i]));
+
+		return matches;
+	}
+
+	/*
+	 * Same as lookup, but returns the ids of the matching rules in the store instead of building
+	 * rule objects.
+	 */
+	public synchronized int [] lookupIds(List<Integer> current_partitions, double min_intersect)
+	{
+		int num_touched = 0;
+		int rank, d, end;
+
+		int [] candidates;
+		double [] candidate_intersects;
+		int num_candidates = 0;
+
+		if(current_partitions.size() == 0)
+			return new int[0];
+
+		if(hit_counts == null)
+		{
+			hit_counts = new int[store.size()];
+			touched = new int[store.size()];
+		}
+
+		// count, for every rule, how many of the query's partitions appear in its LHS
+		for(Integer partition : current_partitions)
+		{
+			d = Arrays.binarySearch(dictionary, partition.intValue());
+			if(d < 0)
+				continue;
+
+			end = posting_offsets.get(d+1);
+			for(int i = posting_offsets.get(d); i < end; i++)
+			{
+				rank = posting_ranks.get(i);
+				if(hit_counts[rank]++ == 0)
+					touched[num_touched++] = rank;
+			}
+		}
+
+		// ranks are ordered by support, so sorting the touched ranks gives the support ranking
+		Arrays.sort(touched, 0, num_touched);
+
+		candidates = new int[num_touched];
+		candidate_intersects = new double[num_touched];
+
+		for(int i = 0; i < num_touched; i++)
+		{
+			rank = touched[i];
+
+			if(hit_counts[rank] / (double)current_partitions.size() > min_intersect)
+			{
+				candidates[num_candidates] = rank;
+				candidate_intersects[num_candidates] = hit_counts[rank] / (double)current_partitions.size();
+				num_candidates++;
+			}
+
+			hit_counts[rank] = 0;  // reset the scratch counter for the next lookup
+		}
+
+		// within a run of equal support, order by decreasing intersection (insertion sort, runs are short)
+		for(int i = 1; i < num_candidates; i++)
+		{
+			int r = candidates[i];
+			double intersect = candidate_intersects[i];
+			int j = i - 1;
+
+			while(j >= 0 && store.support(order.get(candidates[j])) == store.support(order.get(r)) && candidate_intersects[j] < intersect)
+			{
+				candidates[j+1] = candidates[j];
+				candidate_intersects[j+1] = candidate_intersects[j];
+				j--;
+			}
+			candidates[j+1] = r;
+			candidate_intersects[j+1] = intersect;
+		}
+
+		int [] ids = new int[num_candidates];
+		for(int i = 0; i < num_candidates; i++)
+			ids[i] = order.get(candidates[i]);
+
+		return ids;
+	}
+
+	/*
+	 * Reports how lookup latency grows with the number of rules, comparing the index against a
+	 * full scan of the rule list. Rules are generated at random over the partition grid used by
+	 * SequenceGenerator (100 partitions).
+	 */
+	public static void main(String [] args)
+	{
+		int max_rules = 1000000;
+		int num_queries = 1000;
+		int num_partitions = 100;
+
+		Random rand = new Random(0);
+
+		if(args.length >= 1)
+			max_rules = Integer.parseInt(args[0]);
+		if(args.length >= 2)
+			num_queries = Integer.parseInt(args[1]);
+
+		System.out.println("rules\tbuild (ms)\tindex lookup (us)\tscan lookup (us)\tavg matches");
+
+		for(int num_rules = 1000; num_rules <= max_rules; num_rules *= 10)
+		{
+			LinkedList<AssociationRule> rule_list = new LinkedList<AssociationRule>();
+			ArrayList<AssociationRule> scan_list;
+			ArrayList< LinkedList<Integer> > queries = new ArrayList< LinkedList<Integer> >();
+
+			for(int i = 0; i < num_rules; i++)
+				rule_list.add(new AssociationRule(randomPartitions(rand, num_partitions, 1 + rand.nextInt(9)),
+												  randomPartitions(rand, num_partitions, 1 + rand.nextInt(3)),
+												  rand.nextInt(100)));
+
+			for(int i = 0; i < num_queries; i++)
+				queries.add(randomPartitions(rand, num_partitions, 1 + rand.nextInt(3)));
+
+			long build_start = System.nanoTime();
+			RuleIndex index = new RuleIndex(rule_list);
+			long build_end = System.nanoTime();
+
+			long total_matches = 0;
+			long index_start = System.nanoTime();
+			for(int i = 0; i < num_queries; i++)
+				total_matches += index.lookupIds(queries.get(i), .9).length;
+			long index_end = System.nanoTime();
+			long index_matches = total_matches;
+
+			// the scan baseline uses an ArrayList, so it measures the scan itself and not LinkedList.get
+			scan_list = new ArrayList<AssociationRule>(rule_list);
+			long scan_start = System.nanoTime();
+			for(int i = 0; i < num_queries; i++)
+			{
+				for(int j = 0; j < scan_list.size(); j++)
+				{
+					if(scanIntersect(queries.get(i), scan_list.get(j).lhs) > .9)
+						total_matches--;
+				}
+			}
+			long scan_end = System.nanoTime();
+
+			System.out.println(num_rules + "\t" + ((build_end - build_start) / 1000000) + "\t\t"
+							   + ((index_end - index_start) / 1000 / num_queries) + "\t\t\t"
+							   + ((scan_end - scan_start) / 1000 / num_queries) + "\t\t\t"
+							   + (index_matches / (double)num_queries));
+
+			if(total_matches != 0)
+				System.out.println("WARNING: index and scan disagree on the number of matching rules");
+		}
+	}
+
+	private static LinkedList<Integer> randomPartitions(Random rand, int num_partitions, int count)
+	{
+		TreeSet<Integer> partitions = new TreeSet<Integer>();
+
+		while(partitions.size() < count)
+			partitions.add(Integer.valueOf(rand.nextInt(num_partitions)));
+
+		return new LinkedList<Integer>(partitions);
+	}
+
+	private static double scanIntersect(List<Integer> set1, List<Integer> set2)
+	{
+		int intersect_count = 0;
+
+		for(int i = 0; i < set1.size(); i++)
+		{
+			if(set2.contains(set1.get(i)))
+				intersect_count++;
+		}
+
+		return (intersect_count/(double)set1.size());
+	}
+}
@@ -0,0 +1,32 @@
+import java.util.*; 
+
+/*
+ * Groups rules on their canonical LHS and support, the rules that can dominate each other. 
+ */
+class RuleKey
+{
+	private int [] lhs; 
+	private double support; 
+	private int hash; 
+	
+	public RuleKey(int [] l, double supp)
+	{
+		lhs = l; 
+		support = supp + 0.0;   // so that -0.0 and 0.0 hash alike 
+		hash = 31 * Arrays.hashCode(lhs) + Double.valueOf(support).hashCode(); 
+	}
+	
+	public int hashCode()
+	{
+		return hash; 
+	}
+	
+	public boolean equals(Object o)
+	{
+		if(!(o instanceof RuleKey))
+			return false; 
+		
+		RuleKey other = (RuleKey)o; 
+		return support == other.support && Arrays.equals(lhs, other.lhs); 
+	}
+}
@@ -0,0 +1,439 @@
+/***************************************************************************************************
+ * File: RuleStore.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Compact storage for a large set of association rules. The LHS and RHS partitions of all rules
+	are packed into two shared int arrays, with an offset array giving where each rule starts,
+	and supports are kept as floats. Each rule's LHS and RHS are sorted. A rule costs a few bytes
+	per partition plus 12 bytes, instead of two LinkedLists of boxed Integers. The arrays can also
+	be views of a memory-mapped binary rule file (see BinaryRuleFile), in which case the store is
+	read-only.
+
+	Rule files (the output of SequenceCleaner, "lhs ==> rhs , support" per line) are loaded by
+	parsing the bytes of a memory-mapped file directly, without building a String per line.
+ ***************************************************************************************************/
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class RuleStore
+{
+	private static final long MAX_SEGMENT = 1L << 30;	// files are mapped in pieces of at most 1 GB
+
+	private int num_rules;
+
+	// arrays the rules are built in, null for a store mapped from a binary rule file
+	private int [] lhs_offsets;		// LHS of rule r is lhs_items[lhs_offsets[r] .. lhs_offsets[r+1])
+	private int [] lhs_items;
+	private int [] rhs_offsets;		// RHS of rule r is rhs_items[rhs_offsets[r] .. rhs_offsets[r+1])
+	private int [] rhs_items;
+	private float [] supports;
+
+	// views the accessors read through, either wrapping the arrays above or mapped from a file
+	private IntBuffer lhs_offsets_view;
+	private IntBuffer lhs_items_view;
+	private IntBuffer rhs_offsets_view;
+	private IntBuffer rhs_items_view;
+	private FloatBuffer supports_view;
+
+	public RuleStore(int expected_rules)
+	{
+		expected_rules = Math.max(16, expected_rules);
+
+		num_rules = 0;
+
+		lhs_offsets = new int[expected_rules + 1];
+		rhs_offsets = new int[expected_rules + 1];
+		lhs_items = new int[expected_rules * 2];
+		rhs_items = new int[expected_rules * 2];
+		supports = new float[expected_rules];
+
+		wrap();
+	}
+
+	/*
+	 * A read-only store over rules that are already packed, e.g. mapped from a binary rule file.
+	 * The LHS and RHS of every rule must already be sorted.
+	 */
+	public RuleStore(int n, IntBuffer lhs_off, IntBuffer lhs, IntBuffer rhs_off, IntBuffer rhs, FloatBuffer supp)
+	{
+		num_rules = n;
+
+		lhs_offsets_view = lhs_off;
+		lhs_items_view = lhs;
+		rhs_offsets_view = rhs_off;
+		rhs_items_view = rhs;
+		supports_view = supp;
+	}
+
+	private void wrap()
+	{
+		lhs_offsets_view = IntBuffer.wrap(lhs_offsets);
+		lhs_items_view = IntBuffer.wrap(lhs_items);
+		rhs_offsets_view = IntBuffer.wrap(rhs_offsets);
+		rhs_items_view = IntBuffer.wrap(rhs_items);
+		supports_view = FloatBuffer.wrap(supports);
+	}
+
+	/*
+	 * Appends a rule made of lhs[0 .. lhs_len) ==> rhs[0 .. rhs_len). The partitions are copied and
+	 * sorted.
+	 */
+	public void add(int [] lhs, int lhs_len, int [] rhs, int rhs_len, double support)
+	{
+		int lhs_start, rhs_start;
+
+		if(lhs_offsets == null)
+			throw new UnsupportedOperationException("rule store is read-only");
+
+		if(num_rules == supports.length)   // the offset arrays have one more entry than supports
+		{
+			supports = Arrays.copyOf(supports, supports.length * 2);
+			lhs_offsets = Arrays.copyOf(lhs_offsets, supports.length + 1);
+			rhs_offsets = Arrays.copyOf(rhs_offsets, supports.length + 1);
+		}
+
+		lhs_start = lhs_offsets[num_rules];
+		rhs_start = rhs_offsets[num_rules];
+
+		if(lhs_start + lhs_len > lhs_items.length)
+			lhs_items = Arrays.copyOf(lhs_items, Math.max(lhs_items.length * 2, lhs_start + lhs_len));
+		if(rhs_start + rhs_len > rhs_items.length)
+			rhs_items = Arrays.copyOf(rhs_items, Math.max(rhs_items.length * 2, rhs_start + rhs_len));
+
+		System.arraycopy(lhs, 0, lhs_items, lhs_start, lhs_len);
+		System.arraycopy(rhs, 0, rhs_items, rhs_start, rhs_len);
+		Arrays.sort(lhs_items, lhs_start, lhs_start + lhs_len);
+		Arrays.sort(rhs_items, rhs_start, rhs_start + rhs_len);
+
+		supports[num_rules] = (float)support;
+
+		num_rules++;
+		lhs_offsets[num_rules] = lhs_start + lhs_len;
+		rhs_offsets[num_rules] = rhs_start + rhs_len;
+
+		if(lhs_offsets_view.array() != lhs_offsets || lhs_items_view.array() != lhs_items || rhs_items_view.array() != rhs_items)
+			wrap();
+	}
+
+	/*
+	 * Releases the unused capacity left over from loading.
+	 */
+	public void trim()
+	{
+		if(lhs_offsets == null)
+			return;
+
+		lhs_offsets = Arrays.copyOf(lhs_offsets, num_rules + 1);
+		rhs_offsets = Arrays.copyOf(rhs_offsets, num_rules + 1);
+		supports = Arrays.copyOf(supports, num_rules);
+		lhs_items = Arrays.copyOf(lhs_items, lhs_offsets[num_rules]);
+		rhs_items = Arrays.copyOf(rhs_items, rhs_offsets[num_rules]);
+
+		wrap();
+	}
+
+	public int size()
+	{
+		return num_rules;
+	}
+
+	public int lhsStart(int rule)
+	{
+		return lhs_offsets_view.get(rule);
+	}
+
+	public int lhsEnd(int rule)
+	{
+		return lhs_offsets_view.get(rule+1);
+	}
+
+	public int lhsItem(int k)
+	{
+		return lhs_items_view.get(k);
+	}
+
+	public int rhsStart(int rule)
+	{
+		return rhs_offsets_view.get(rule);
+	}
+
+	public int rhsEnd(int rule)
+	{
+		return rhs_offsets_view.get(rule+1);
+	}
+
+	public int rhsItem(int k)
+	{
+		return rhs_items_view.get(k);
+	}
+
+	public float support(int rule)
+	{
+		return supports_view.get(rule);
+	}
+
+	public LinkedList<Integer> lhsList(int rule)
+	{
+		LinkedList<Integer> list = new LinkedList<Integer>();
+
+		for(int k = lhsStart(rule); k < lhsEnd(rule); k++)
+			list.add(Integer.valueOf(lhsItem(k)));
+
+		return list;
+	}
+
+	public LinkedList<Integer> rhsList(int rule)
+	{
+		LinkedList<Integer> list = new LinkedList<Integer>();
+
+		for(int k = rhsStart(rule); k < rhsEnd(rule); k++)
+			list.add(Integer.valueOf(rhsItem(k)));
+
+		return list;
+	}
+
+	public AssociationRule toAssociationRule(int rule)
+	{
+		return new AssociationRule(lhsList(rule), rhsList(rule), support(rule));
+	}
+
+	/*
+	 * Approximate heap used by the packed arrays (nothing for a mapped store).
+	 */
+	public long heapBytes()
+	{
+		if(lhs_offsets == null)
+			return 0;
+
+		return 4L * (lhs_offsets.length + rhs_offsets.length + lhs_items.length + rhs_items.length + supports.length) + 5 * 16;
+	}
+
+	public static RuleStore fromRules(List<AssociationRule> rules)
+	{
+		RuleStore store = new RuleStore(rules.size());
+		int [] lhs = new int[16];
+		int [] rhs = new int[16];
+		int n;
+
+		for(AssociationRule rule : rules)
+		{
+			if(rule.lhs.size() > lhs.length)
+				lhs = new int[rule.lhs.size()];
+			if(rule.rhs.size() > rhs.length)
+				rhs = new int[rule.rhs.size()];
+
+			n = 0;
+			for(Integer partition : rule.lhs)
+				lhs[n++] = partition.intValue();
+
+			n = 0;
+			for(Integer partition : rule.rhs)
+				rhs[n++] = partition.intValue();
+
+			store.add(lhs, rule.lhs.size(), rhs, rule.rhs.size(), rule.support);
+		}
+
+		return store;
+	}
+
+	/*
+	 * Loads a text rule file ("lhs ==> rhs , support" per line). The file is memory-mapped and its
+	 * bytes are parsed in place; lines that have no support are skipped.
+	 */
+	public static RuleStore load(String filename) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		FileChannel channel = file.getChannel();
+
+		long size = channel.size();
+		long position = 0;
+		long length;
+
+		MappedByteBuffer buffer;
+
+		// start small and let the arrays double: sizing them from the file would reserve a lot of
+		// memory for long lines that hold few rules
+		RuleParser parser = new RuleParser(new RuleStore(1024));
+
+		try
+		{
+			while(position < size)
+			{
+				length = Math.min(MAX_SEGMENT, size - position);
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+				// the parser keeps its state between segments, so a line may span two of them
+				while(buffer.hasRemaining())
+					parser.consume(buffer.get());
+
+				position += length;
+			}
+
+			parser.endLine();
+		}
+		finally
+		{
+			channel.close();
+			file.close();
+		}
+
+		parser.store.trim();
+		return parser.store;
+	}
+
+	/*
+	 * Byte-at-a-time parser of the text rule format. Numbers are accumulated digit by digit, so no
+	 * String is ever created.
+	 */
+	private static class RuleParser
+	{
+		private static final int LHS = 0, RHS = 1, SUPPORT = 2, DONE = 3;
+
+		RuleStore store;
+
+		int state = LHS;
+		int [] lhs = new int[64];
+		int [] rhs = new int[64];
+		int lhs_len = 0, rhs_len = 0;
+		double support = 0;
+		boolean has_support = false;
+
+		// current token
+		boolean in_token = false;
+		boolean has_digits = false;
+		boolean negative = false;
+		boolean arrow = false;
+		boolean comma = false;
+		long mantissa = 0;
+		int fraction_digits = 0;
+		boolean in_fraction = false;
+		boolean in_exponent = false;
+		boolean negative_exponent = false;
+		int exponent = 0;
+
+		RuleParser(RuleStore s)
+		{
+			store = s;
+		}
+
+		void consume(byte b)
+		{
+			if(b == '\n' || b == '\r')
+			{
+				endToken();
+				endLine();
+			}
+			else if(b == ' ' || b == '\t')
+			{
+				endToken();
+			}
+			else
+			{
+				in_token = true;
+
+				if(b >= '0' && b <= '9')
+				{
+					has_digits = true;
+
+					if(in_exponent)
+					{
+						exponent = exponent * 10 + (b - '0');
+					}
+					else if(mantissa < 100000000000000000L)   // ignore digits beyond double precision
+					{
+						mantissa = mantissa * 10 + (b - '0');
+						if(in_fraction)
+							fraction_digits++;
+					}
+					else if(!in_fraction)
+					{
+						fraction_digits--;
+					}
+				}
+				else if(b == '-')
+				{
+					if(in_exponent)
+						negative_exponent = true;
+					else
+						negative = true;
+				}
+				else if(b == '.')
+				{
+					in_fraction = true;
+				}
+				else if((b == 'E' || b == 'e') && has_digits)
+				{
+					in_exponent = true;
+				}
+				else if(b == '=' || b == '>')
+				{
+					arrow = true;
+				}
+				else if(b == ',')
+				{
+					comma = true;
+				}
+			}
+		}
+
+		void endToken()
+		{
+			if(!in_token)
+				return;
+
+			if(has_digits)
+			{
+				if(state == LHS)
+				{
+					if(lhs_len == lhs.length)
+						lhs = Arrays.copyOf(lhs, lhs.length * 2);
+					lhs[lhs_len++] = (int)(negative ? -mantissa : mantissa);
+				}
+				else if(state == RHS)
+				{
+					if(rhs_len == rhs.length)
+						rhs = Arrays.copyOf(rhs, rhs.length * 2);
+					rhs[rhs_len++] = (int)(negative ? -mantissa : mantissa);
+				}
+				else if(state == SUPPORT)
+				{
+					int e = (negative_exponent ? -exponent : exponent) - fraction_digits;
+
+					support = mantissa * Math.pow(10, e);
+					if(negative)
+						support = -support;
+
+					has_support = true;
+					state = DONE;
+				}
+			}
+
+			if(arrow && state == LHS)
+				state = RHS;
+			else if(comma && state == RHS)
+				state = SUPPORT;
+
+			in_token = has_digits = negative = arrow = comma = false;
+			in_fraction = in_exponent = negative_exponent = false;
+			mantissa = 0;
+			fraction_digits = 0;
+			exponent = 0;
+		}
+
+		void endLine()
+		{
+			endToken();
+
+			if(has_support)
+				store.add(lhs, lhs_len, rhs, rhs_len, support);
+
+			state = LHS;
+			lhs_len = rhs_len = 0;
+			support = 0;
+			has_support = false;
+		}
+	}
+}
@@ -1,6 +1,12 @@
 import java.util.*; 
+import java.util.concurrent.*; 
 import java.io.*; 
 
+import ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile.AlgoPrefixSpan; 
+import ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile.AlgoPrefixSpanIntArray; 
+import ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile.IntSequenceDatabase; 
+import ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile.SequenceDatabase; 
+
 public class SequenceCleaner
 {
 	public SequenceCleaner()
@@ -10,78 +16,49 @@ public class SequenceCleaner
 	
 	public static void main(String [] args)
 	{
-		StringTokenizer tokenizer; 
-		String token; 
 		String line; 
+		Rule rule; 
 		
 		int num_rules_kept = 0; 
 		int num_rules_read = 0; 
 		int num_rules_after_cleaning; 
 		
 		LinkedList<Rule> rules = new LinkedList<Rule>(); 
-		LinkedList<Integer> lhs; 
-		LinkedList<Integer> rhs; 
-		double support; 
 		
-		if(args.length != 2)
+		if(args.length >= 1 && (args[0].equals("stream") || args[0].equals("mine")))
+		{
+			streamingMain(args); 
+			return; 
+		}
+		
+		if(args.length != 2 && !(args.length == 3 && (args[2].equals("text") || args[2].equals("binary"))))
 		{
-			System.out.println("Usage: java RuleGenerator <input partition file> <rule output file>"); 
+			System.out.println("Usage: java SequenceCleaner <input partition file> <rule output file> [text, binary]"); 
+			System.out.println("       java SequenceCleaner stream <input partition file> <rule output file> [text, binary]"); 
+			System.out.println("       java SequenceCleaner mine <sequence file> <min support> <rule output file> [text, binary]"); 
 			System.exit(0); 
 		}
 		
 		try 
 		{
 			BufferedReader in = new BufferedReader(new FileReader(args[0]));
-			BufferedWriter out = new BufferedWriter(new FileWriter(args[1]));
+			boolean binary = args.length == 3 && args[2].equals("binary"); 
 			
 			System.out.println("\n...generating rules\n"); 
 			
-			line = in.readLine(); 
-			while(in.ready())    // read line by line from the sequence file
+			while((line = in.readLine()) != null)    // read line by line from the sequence file
 			{
-				num_rules_read++;
-				
-				tokenizer = new StringTokenizer(line, " "); 
-				lhs = new LinkedList<Integer>(); 
-				rhs = new LinkedList<Integer>(); 
+				if(line.trim().length() == 0)
+					continue; 
 				
-				int bracket_count = 0; 
-				while(!((token = tokenizer.nextToken()).equals("-1")))  // read partitions in lhs of rule
-				{
-					lhs.add(new Integer(Integer.parseInt(token))); 
-				}
+				num_rules_read++;
 				
-				token = tokenizer.nextToken(); 
-				if(token.equals("SID:"))  // there is no rhs, so discard this rule
-				{
-					lhs.clear(); 
-					rhs.clear(); 
-					
-					lhs = null; 
-					rhs = null; 
-				}
-				else 
+				rule = parseRule(line); 
+				if(rule != null)
 				{
 					num_rules_kept++; 
-					
-					rhs.add(new Integer(Integer.parseInt(token))); 
-					while(!((token = tokenizer.nextToken()).equals("-1")))  // read partitions in rhs of rule
-					{
-						rhs.add(new Integer(Integer.parseInt(token))); 
-					}
-					
-					while(!((token = tokenizer.nextToken()).equals("SUP:"))) // skip to support field
-					{
-					}
-					
-					token = tokenizer.nextToken(); 
-					support = (Double.parseDouble(token)); 
-					
-					rules.add(new Rule(lhs, rhs, support));   // add the newest rule to the list
-					
+					rules.add(rule);   // add the newest rule to the list
 				}
-				
-				line = in.readLine(); 
 			}
 			
 			num_rules_after_cleaning = num_rules_kept - cleanRules(rules); 
@@ -89,14 +66,24 @@ public class SequenceCleaner
 			System.out.println("rules read: " + num_rules_read); 
 			System.out.println("rules kept: " + num_rules_after_cleaning); 
 			
-			for(int i = 0; i < rules.size(); i++)
+			if(binary)
+			{
+				writeBinaryRules(rules, args[1]); 
+			}
+			else 
 			{
-				if(!rules.get(i).removed)
-					out.write(rules.get(i).ruleToString()); 
+				BufferedWriter out = new BufferedWriter(new FileWriter(args[1]));
+				
+				for(Rule r : rules)
+				{
+					if(!r.removed)
+						out.write(r.ruleToString()); 
+				}
+				
+				out.close(); 
 			}
 			
 			in.close(); 
-			out.close(); 
 			
 		}
 		catch(Exception e)
@@ -106,76 +93,306 @@ public class SequenceCleaner
 		
 	}
 	
-	public static int cleanRules(LinkedList<Rule> rules)
+	/*
+	 * Parses one line of PrefixSpan output ("lhs -1 rhs -1 ... SID: ... SUP: support"): the first 
+	 * itemset is the LHS and the second the RHS. Returns null if there is no RHS. 
+	 */
+	public static Rule parseRule(String line)
 	{
-		int num_rules_discarded = 0; 
+		StringTokenizer tokenizer = new StringTokenizer(line, " "); 
+		LinkedList<Integer> lhs = new LinkedList<Integer>(); 
+		LinkedList<Integer> rhs = new LinkedList<Integer>(); 
+		String token; 
 		
-		System.out.println("\n...cleaning rules\n"); 
+		while(!((token = tokenizer.nextToken()).equals("-1")))  // read partitions in lhs of rule
+		{
+			lhs.add(new Integer(Integer.parseInt(token))); 
+		}
 		
+		token = tokenizer.nextToken(); 
+		if(token.equals("SID:") || token.equals("SUP:"))  // there is no rhs, so discard this rule
+			return null; 
 		
-		for(int i = 0; i < rules.size(); i++)
+		rhs.add(new Integer(Integer.parseInt(token))); 
+		while(!((token = tokenizer.nextToken()).equals("-1")))  // read partitions in rhs of rule
 		{
-			for(int j = 0; j < rules.size(); j++)
+			rhs.add(new Integer(Integer.parseInt(token))); 
+		}
+		
+		while(!((token = tokenizer.nextToken()).equals("SUP:"))) // skip to support field
+		{
+		}
+		
+		token = tokenizer.nextToken(); 
+		
+		return new Rule(lhs, rhs, Double.parseDouble(token)); 
+	}
+	
+	/*
+	 * Cleans the rules while they are read, with StreamingRuleCleaner. "stream" reads an spmf 
+	 * output file; "mine" runs PrefixSpan on a sequence file in another thread and reads its 
+	 * patterns through a pipe, so no pattern file is written and cleaning overlaps with mining. 
+	 */
+	private static void streamingMain(String [] args)
+	{
+		boolean mine = args[0].equals("mine"); 
+		int num_args = mine ? 4 : 3; 
+		
+		if(args.length != num_args && !(args.length == num_args + 1 && (args[num_args].equals("text") || args[num_args].equals("binary"))))
+		{
+			if(mine)
+				System.out.println("Usage: java SequenceCleaner mine <sequence file> <min support> <rule output file> [text, binary]"); 
+			else 
+				System.out.println("Usage: java SequenceCleaner stream <input partition file> <rule output file> [text, binary]"); 
+			System.exit(0); 
+		}
+		
+		String output_file = args[num_args - 1]; 
+		boolean binary = args.length == num_args + 1 && args[num_args].equals("binary"); 
+		
+		RuleStore store = null; 
+		BufferedWriter out = null; 
+		StreamingRuleCleaner cleaner; 
+		BufferedReader in; 
+		
+		long start_time = System.currentTimeMillis(); 
+		
+		try 
+		{
+			if(binary)
 			{
-				// rule i dominates rule j, so discard rule j 
-				if(rules.get(i).lhs.containsAll(rules.get(j).lhs) &&
-				   rules.get(j).lhs.containsAll(rules.get(i).lhs) &&
-				   rules.get(i).rhs.containsAll(rules.get(j).rhs) &&
-				   rules.get(i).support == rules.get(j).support && 
-				   i != j &&
-				   rules.get(j).removed == false &&
-				   rules.get(i).removed == false
-				   )
+				store = new RuleStore(1024); 
+				cleaner = new StreamingRuleCleaner(store); 
+			}
+			else 
+			{
+				out = new BufferedWriter(new FileWriter(output_file)); 
+				cleaner = new StreamingRuleCleaner(out); 
+			}
+			
+			System.out.println("\n...cleaning rules as they are read\n"); 
+			
+			if(mine)
+			{
+				final boolean flat = System.getProperty("prefixspan.backend", "objects").equals("flat"); 
+				final SequenceDatabase database = flat ? null : new SequenceDatabase(); 
+				final IntSequenceDatabase flat_database = flat ? new IntSequenceDatabase() : null; 
+				final int min_support = Integer.parseInt(args[2]); 
+				final int num_threads = Integer.parseInt(System.getProperty("prefixspan.threads", "" + Runtime.getRuntime().availableProcessors())); 
+				final AlgoPrefixSpan algo = new AlgoPrefixSpan(); 
+				final AlgoPrefixSpanIntArray flat_algo = new AlgoPrefixSpanIntArray(); 
+				final PipedWriter pipe_out = new PipedWriter(); 
+				final IOException [] failure = new IOException[1]; 
+				
+				// the cleaner only reads the support, so the miners do not keep the sequence ids 
+				algo.setSequenceIdMode(AlgoPrefixSpan.SIDS_NONE); 
+				flat_algo.setOutputSequenceIds(false); 
+				
+				if(flat)
+					flat_database.loadFile(args[1]); 
+				else 
+					database.loadFile(args[1]); 
+				in = new BufferedReader(new PipedReader(pipe_out, 1 << 16)); 
+				
+				Thread miner = new Thread()
 				{
-					//System.out.println("removing rule: " + rules.get(i).ruleToString()); 
-					
-					rules.get(j).removed = true; 
-					//rules.remove(j); 
-					//j--; 
-					num_rules_discarded++;
-				}
+					public void run()
+					{
+						try 
+						{
+							if(flat)
+								flat_algo.runAlgorithm(flat_database, pipe_out, min_support); 
+							else 
+								algo.runAlgorithm(database, pipe_out, min_support, num_threads); 
+						}
+						catch(IOException e)
+						{
+							failure[0] = e; 
+						}
+					}
+				}; 
+				miner.setDaemon(true);  // do not outlive a failed cleaner blocked on the pipe 
+				miner.start(); 
+				
+				cleaner.run(in); 
+				miner.join(); 
+				
+				if(failure[0] != null)
+					throw failure[0]; 
+				
+				if(flat)
+					flat_algo.printStatistics(flat_database.size()); 
+				else 
+					algo.printStatistics(database.size()); 
+			}
+			else 
+			{
+				in = new BufferedReader(new FileReader(args[1])); 
+				cleaner.run(in); 
+				in.close(); 
 			}
+			
+			if(binary)
+			{
+				store.trim(); 
+				BinaryRuleFile.write(store, true, output_file); 
+			}
+			else 
+			{
+				out.close(); 
+			}
+			
+			cleaner.printReport(); 
+			System.out.println("...cleaned in " + ((System.currentTimeMillis() - start_time)/1000.0) + " seconds"); 
+		}
+		catch(Exception e)
+		{
+			System.out.println(e.getMessage()); 
 		}
-		
-		//System.out.println("rules discarded: " + num_rules_discarded); 
-		return num_rules_discarded; 
 	}
 	
-}
-
-class Rule
-{
-	public List<Integer> lhs; 
-	public List<Integer> rhs; 
-	public double support; 
-	public boolean removed; 
-	
-	public Rule(List<Integer> l, List<Integer> r, double supp)
+	/*
+	 * Writes the rules that were not removed as a binary rule file with a prebuilt LHS index, which 
+	 * SequenceExecuter maps without parsing. The canonical LHS and RHS are stored, as 
+	 * StreamingRuleCleaner does, so both cleaners write the same file for the same rules. 
+	 */
+	public static void writeBinaryRules(List<Rule> rules, String filename) throws IOException
 	{
-		lhs = l; 
-		rhs = r; 
-		support = supp; 
-		removed = false; 
+		RuleStore store = new RuleStore(rules.size()); 
+		
+		for(Rule rule : rules)
+		{
+			if(rule.removed)
+				continue; 
+			
+			if(rule.lhs_set == null)
+				rule.canonicalise(); 
+			
+			store.add(rule.lhs_set, rule.lhs_set.length, rule.rhs_set, rule.rhs_set.length, rule.support); 
+		}
+		
+		store.trim(); 
+		BinaryRuleFile.write(store, true, filename); 
 	}
 	
-	public String ruleToString()
+	/*
+	 * Marks every rule dominated by another rule as removed and returns how many were removed. 
+	 * Rule i dominates rule j if they have the same LHS, the same support and the RHS of i contains 
+	 * the RHS of j. Only rules with the same LHS and support can dominate each other, so the rules 
+	 * are grouped on their canonical (sorted, duplicate free) LHS and support, and RHS containment 
+	 * is only checked within a group. Groups are independent and are cleaned in parallel by 
+	 * -Dcleaner.threads threads (default: one per processor). 
+	 */
+	public static int cleanRules(List<Rule> rules)
 	{
-		String rule = ""; 
+		HashMap<RuleKey, ArrayList<Rule>> groups = new HashMap<RuleKey, ArrayList<Rule>>(); 
+		ArrayList<Rule> group; 
+		RuleKey key; 
+		
+		int num_threads = Integer.parseInt(System.getProperty("cleaner.threads", "" + Runtime.getRuntime().availableProcessors())); 
+		int num_rules_discarded = 0; 
 		
-		for(int i = 0; i < lhs.size(); i++)
+		System.out.println("\n...cleaning rules\n"); 
+		
+		// rules are added to their group in file order, so the first of two identical rules is kept 
+		for(Rule rule : rules)
 		{
-			rule += lhs.get(i).intValue() + " "; 
+			rule.canonicalise(); 
+			key = new RuleKey(rule.lhs_set, rule.support); 
+			
+			group = groups.get(key); 
+			if(group == null)
+			{
+				group = new ArrayList<Rule>(1); 
+				groups.put(key, group); 
+			}
+			group.add(rule); 
 		}
 		
-		rule += " ==> "; 
+		final ArrayList<ArrayList<Rule>> work = new ArrayList<ArrayList<Rule>>(); 
+		for(ArrayList<Rule> g : groups.values())
+		{
+			if(g.size() > 1)
+				work.add(g); 
+		}
 		
-		for(int i = 0; i < rhs.size(); i++)
+		System.out.println(rules.size() + " rules in " + groups.size() + " LHS groups, " + work.size() + " to check"); 
+		
+		if(num_threads <= 1 || work.size() < 2)
 		{
-			rule += rhs.get(i).intValue() + " "; 
+			for(ArrayList<Rule> g : work)
+				num_rules_discarded += cleanGroup(g); 
+			
+			return num_rules_discarded; 
 		}
 		
-		rule += ", " + support + "\n";
+		ExecutorService executor = Executors.newFixedThreadPool(num_threads); 
+		LinkedList< Future<Integer> > results = new LinkedList< Future<Integer> >(); 
 		
-		return rule; 
+		for(int t = 0; t < num_threads; t++)
+		{
+			final int first = t; 
+			final int stride = num_threads; 
+			
+			results.add(executor.submit(new Callable<Integer>()
+			{
+				public Integer call()
+				{
+					int discarded = 0; 
+					
+					for(int g = first; g < work.size(); g += stride)
+						discarded += cleanGroup(work.get(g)); 
+					
+					return Integer.valueOf(discarded); 
+				}
+			})); 
+		}
+		
+		try 
+		{
+			for(Future<Integer> result : results)
+				num_rules_discarded += result.get().intValue(); 
+		}
+		catch(Exception e)
+		{
+			throw new RuntimeException("cleaning rules failed", e); 
+		}
+		finally 
+		{
+			executor.shutdown(); 
+		}
+		
+		return num_rules_discarded; 
 	}
+	
+	/*
+	 * The rules of a group share their LHS and support, so rule i dominates rule j if its RHS 
+	 * contains the RHS of j. Rules are visited in file order, as the pairwise scan did. 
+	 */
+	private static int cleanGroup(ArrayList<Rule> group)
+	{
+		int num_rules_discarded = 0; 
+		Rule ri, rj; 
+		
+		for(int i = 0; i < group.size(); i++)
+		{
+			ri = group.get(i); 
+			if(ri.removed)
+				continue; 
+			
+			for(int j = 0; j < group.size(); j++)
+			{
+				rj = group.get(j); 
+				
+				if(i != j && !rj.removed && ri.rhsContains(rj))
+				{
+					rj.removed = true; 
+					num_rules_discarded++; 
+				}
+			}
+		}
+		
+		return num_rules_discarded; 
+	}
+	
 }
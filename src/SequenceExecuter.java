@@ -15,36 +15,113 @@ public class SequenceExecuter
 	private final int MAX_RECURSION_DEPTH = 3; 
 	private final boolean PRINT_DEBUG_INFO = false; 
 	
+	// bounds of a query generated by SequenceGenerator
+	private static final java.util.regex.Pattern QUERY_RANGE = java.util.regex.Pattern.compile(
+		"quote_time > (\\S+) AND quote_time < (\\S+) AND offer_price > (\\S+) AND offer_price < (\\S+)"); 
+	
 	private Connection conn; 
 		
 	
-	private LinkedList<AssociationRule> rules; 
+	private RuleStore rules; 
+	private RuleIndex rule_index;   // inverted index from partition id to the rules whose LHS contains it 
+	private PredictionPlanner planner; 
+	private CostModel cost_model;   // cached EXPLAIN costs 
+	private PrefetchScheduler scheduler; 
+	private double cost_per_milli;  // planner cost units per millisecond of execution on this box 
+	private double overhead_milli;  // fixed time of a prefetch round trip 
 	private LinkedList< LinkedList<Integer> > query_partitions; 
 	private LinkedList<String> sql_queries; 
 	
 	private HashMap<Integer, Partition> partition_info; 
 	
 	private int think_time_milli; 
-	private boolean think_time_expired; 
-	private int think_time_remaining; 
+	
+	private PrefetchEngine prefetch_engine; 
+	private int num_prefetch_workers; 
+	
+	private PartitionCache partition_cache;   // client-side partition results, null when disabled 
+	private long cache_bytes; 
+	
+	// database settings, can be overridden with -Ddb.url=... etc. (e.g. to run against another driver)
+	private String db_driver; 
+	private String db_url; 
+	private String db_user; 
+	private String db_password; 
 	
 	
 	public SequenceExecuter()
 	{
-		rules = new LinkedList<AssociationRule>(); 
+		rules = new RuleStore(0); 
 		query_partitions = new LinkedList< LinkedList<Integer> >(); 
 		sql_queries = new LinkedList<String>(); 
 		
 		partition_info = new HashMap<Integer, Partition>(); 
 		
 		think_time_milli = 30000; 
+		
+		num_prefetch_workers = Integer.parseInt(System.getProperty("prefetch.workers", "4")); 
+		cost_per_milli = Double.parseDouble(System.getProperty("planner.cost_per_ms", "1.0"));   // see calibrate mode 
+		overhead_milli = Double.parseDouble(System.getProperty("planner.overhead_ms", "0")); 
+		cache_bytes = Long.parseLong(System.getProperty("cache.bytes", "268435456"));   // 256 MB, 0 disables the cache 
+		
+		db_driver = System.getProperty("db.driver", "org.postgresql.Driver"); 
+		db_url = System.getProperty("db.url", "jdbc:postgresql:nyse1"); 
+		db_user = System.getProperty("db.user", "justin"); 
+		db_password = System.getProperty("db.password", ""); 
 	}
 	
 	public static void main(String args[])
 	{
+		if(args.length == 2 && args[0].equals("calibrate"))
+		{
+			SequenceExecuter executer = new SequenceExecuter(); 
+			
+			executer.DBConnect(); 
+			executer.readPartitionInfoFile(args[1]); 
+			executer.calibrateCostModel(20, 3); 
+			
+			return; 
+		}
+		
+		if(args.length == 4 && args[0].equals("record"))
+		{
+			SequenceExecuter executer = new SequenceExecuter(); 
+			
+			executer.DBConnect(); 
+			executer.readPartitionInfoFile(args[1]); 
+			executer.readSQLFile(args[2]); 
+			
+			new ReplaySimulator(executer).record(executer.conn, args[3]); 
+			
+			return; 
+		}
+		
+		if((args.length == 6 || args.length == 7) && args[0].equals("replay"))
+		{
+			SequenceExecuter executer = new SequenceExecuter(); 
+			ReplaySimulator simulator = new ReplaySimulator(executer); 
+			
+			// no database connection, everything comes from the latency file
+			executer.readPartitionInfoFile(args[1]); 
+			executer.readSQLFile(args[2]); 
+			executer.readPartitionFile(args[3]); 
+			executer.readRuleFile(args[4]); 
+			simulator.readLatencyFile(args[5]); 
+			
+			if(args.length == 7)
+				executer.think_time_milli = Integer.parseInt(args[6]); 
+			
+			simulator.run(executer.think_time_milli, executer.num_prefetch_workers, executer.cache_bytes); 
+			
+			return; 
+		}
+		
 		if(args.length != 5)
 		{
 			System.out.println("Usage: java SequenceExecuter <optimized, naive> <partition info file> <sql log file> <parition log file> <rule file>"); 
+			System.out.println("       java SequenceExecuter calibrate <partition info file>"); 
+			System.out.println("       java SequenceExecuter record <partition info file> <sql log file> <latency file>"); 
+			System.out.println("       java SequenceExecuter replay <partition info file> <sql log file> <parition log file> <rule file> <latency file> [think time ms]"); 
 			System.exit(1); 
 		}
 		
@@ -62,6 +139,7 @@ public class SequenceExecuter
 			executer.readRuleFile(args[4]);
 			
 			executer.runSimulationOptimized(); 
+			executer.shutdown(); 
 		}
 		else if(args[0].equals("naive"))
 		{
@@ -119,127 +197,59 @@ public class SequenceExecuter
 	public void runSimulationOptimized()
 	{
 		Statement stmt;
-		ResultSet result; 
-		
-		LinkedList<Integer> current_partitions; 
-		LinkedList< LinkedList<Integer> > predicted_partitions; 
-		LinkedList<Double> supports; 
-		LinkedList<Integer> frequencies; 
 		
-		LinkedList<Partition> ranked_partitions; 
-		
-		PrefetchThread thread; 
+		LinkedList<PredictionPlanner.PlannedPartition> plan; 
+		LinkedList<Integer> schedule; 
+		int cached_partitions; 
 		
 		long start_time, end_time;
 		
 		long query_start_time, query_end_time; 
 		
-		long prefetch_start_time = 0, prefetch_end_time = 0; 
-		
 		long total_think_time; 
 		
-		int row_count; 
-		
 		try 
 		{
 			stmt = conn.createStatement(); 
 			
+			if(prefetch_engine == null)
+				prefetch_engine = new PrefetchEngine(new ConnectionPool(db_driver, db_url, db_user, db_password, num_prefetch_workers), 
+													 partition_info); 
+			
+			if(partition_cache == null && cache_bytes > 0)
+				partition_cache = new PartitionCache(cache_bytes); 
+			prefetch_engine.setCache(partition_cache); 
+			
 			start_time = System.currentTimeMillis(); 
 			for(int i = 0; i < sql_queries.size(); i++)
-			//for(int i = 0; i < 4; i++)
 			{
-				current_partitions = new LinkedList<Integer>(); 
-				predicted_partitions = new LinkedList< LinkedList<Integer> >(); 
-				supports = new LinkedList<Double>(); 
-				frequencies = new LinkedList<Integer>(); 
-				
-				ranked_partitions = new LinkedList<Partition>(); 
-				
-				// predict next partitions based on current query
-				predictNextParititions(query_partitions.get(i), predicted_partitions, supports, 1);				
+				// predict the next partitions based on the current query
+				plan = planPredictions(query_partitions.get(i)); 
 				
 				if(PRINT_DEBUG_INFO)
-				{
-					System.out.print("Predictions for current query " + query_partitions.get(i) + ": "); 
-					for(int j = 0; j < predicted_partitions.size(); j++)
-					{
-						System.out.print(predicted_partitions.get(j) + ", " + supports.get(j)); 
-					}
-					System.out.println(); 
-				}
-								
-				//rankPartitions(predicted_partitions); 
+					System.out.println("Predictions for current query " + query_partitions.get(i) + ": " + plan); 
+				
+				// the user's query has arrived, stop prefetching for it
+				if(i > 0)
+					prefetch_engine.endRound(query_partitions.get(i)); 
 				
 				query_start_time = System.currentTimeMillis();
-				result = stmt.executeQuery(sql_queries.get(i)); // execute query 
-				result.close();
+				cached_partitions = answerQuery(stmt, i); // execute query 
 				query_end_time = System.currentTimeMillis();
 				
-				System.out.println("query " + i + " runtime: " + ((query_end_time - query_start_time)/1000.0) + " seconds"); 
-				
-				// reset think time counters 
-				think_time_expired = false; 
-				think_time_remaining = think_time_milli; 
+				System.out.print("query " + i + " runtime: " + ((query_end_time - query_start_time)/1000.0) + " seconds"); 
+				if(partition_cache != null)
+					System.out.print(" (" + cached_partitions + " of " + query_partitions.get(i).size() + " partitions cached)"); 
+				System.out.println(); 
 				
-				
-				if(i != sql_queries.size()-1)
-				{
-					prefetch_start_time = System.currentTimeMillis();
-					
-					//result = stmt.executeQuery(next_partition.toSQL());
-					result = stmt.executeQuery(sql_queries.get(i+1));
-					result.close();
-					
-					prefetch_end_time = System.currentTimeMillis();
-					
-					System.out.println("prefetch time: " + (prefetch_end_time - prefetch_start_time)); 
-				}
-				else 
-				{
+				if(i == sql_queries.size()-1)
 					break; 
-				}
-
 				
-				/*
-				// launch prefetch thread
-				if(predicted_partitions.size() > 0)
-				{
-					prefetch_start_time = System.currentTimeMillis();
-
-					Partition next_partition = partition_info.get(new Integer(predicted_partitions.get(0).get(0))); 
-
-					
-					//result = stmt.executeQuery(next_partition.toSQL());
-					result = stmt.executeQuery(sql_queries.get(i+1));
-					result.close();
-					
-					
-					System.out.println("prefetched query: " + next_partition.toSQL()); 
-					System.out.println("actual next query: " + sql_queries.get(i+1)); 
-					
-					prefetch_end_time = System.currentTimeMillis();
-
-					System.out.println("prefetch time: " + (prefetch_end_time - prefetch_start_time)); 
-					
-					//thread = new PrefetchThread(predicted_partitions.get(0)); // prefetch the first predicted sequence only (for testing)
-					//thread.run(); 
-				}
-				 */
-				
-				if(prefetch_end_time - prefetch_start_time < think_time_milli)
-					Thread.sleep(think_time_milli - (prefetch_end_time - prefetch_start_time));
-				
-				/*
-				while(think_time_remaining > 0)
-				{
-					//Thread.sleep(think_time_milli);
-					Thread.sleep(1000); // sleep 1 second
-					
-					think_time_remaining -= 1000; // decrement by one second
-				}
+				// prefetch in the background while the user thinks, the workers share the think time
+				schedule = rankPartitions(plan, think_time_milli * (long)num_prefetch_workers); 
+				prefetch_engine.prefetch(schedule, think_time_milli); 
 				
-				think_time_expired = true; // stop prefetching
-				 */
+				Thread.sleep(think_time_milli);
 			}
 			end_time = System.currentTimeMillis(); 
 			
@@ -247,6 +257,11 @@ public class SequenceExecuter
 			
 			System.out.println("total execution time: " + ((end_time - start_time)/1000.0)); 
 			System.out.println("nomalized execution time: " + ((end_time-start_time-total_think_time)/1000.0)); 
+			
+			prefetch_engine.printReport(); 
+			if(partition_cache != null)
+				partition_cache.printReport(); 
+			getCostModel().printReport(); 
 		}
 		catch(Exception e)
 		{
@@ -254,166 +269,254 @@ public class SequenceExecuter
 		}
 	}
 	
-	public void predictNextParititions(LinkedList<Integer> current_partitions, 
-												LinkedList< LinkedList<Integer> > predicted_partitions, 
-												LinkedList<Double> supports, 
-												//LinkedList<Integer> frequencies, 
-												int depth)
+	/*
+	 * Answers user query i. With a partition cache the answer is stitched together from the cached 
+	 * results of the query's partitions, and only the partitions that are missing are fetched (and 
+	 * cached) on the user's connection. Without a cache, or if the query's partitions are unknown, 
+	 * the query's SQL is sent as is. Returns the number of partitions answered from the cache. 
+	 */
+	public int answerQuery(Statement stmt, int i) throws SQLException
 	{
-		int highest_supports_rule = 0; 
-		
-		int num_predictions_added = 0; 
-		boolean added;
+		ResultSet result; 
 		
-		LinkedList< LinkedList<Integer> > left_prediction; 
-		LinkedList<Double> left_supports; 
+		LinkedList<PartitionCache.CachedResult> parts; 
+		PartitionCache.CachedResult part; 
+		Partition p; 
 		
-		LinkedList< LinkedList<Integer> > right_prediction; 
-		LinkedList<Double> right_supports; 		
+		int num_cached = 0; 
+		boolean known = partition_cache != null && i < query_partitions.size() && query_partitions.get(i).size() > 0; 
 		
-		for(int i = 0; i < rules.size(); i++)  // iterate through all rules finding ones with LHS that intersect the current query
+		if(known)
 		{
-			if(setIntersect(current_partitions, rules.get(i).lhs) > .9)
-				//if(rules.get(i).lhs.containsAll(current_partitions))
+			for(Integer id : query_partitions.get(i))
 			{
-				added = false; 
-				// insert predicted partitions and support into list sorted by support value
-				for(int j = 0; j < supports.size(); j++)
-				{
-					if(supports.get(j) < rules.get(i).support)
-					{
-						num_predictions_added++; 
-						predicted_partitions.add(j, rules.get(i).rhs);			// add predicted partitions 
-						supports.add(j, new Double(rules.get(i).support));	// add support 
-						added = true; 
-						break; 
-					}
-					else if(supports.get(j) == rules.get(i).support)  // support is equal, choose the rule with higher intersection percent
-					{
-						if(setIntersect(current_partitions, rules.get(j).lhs) < setIntersect(current_partitions, rules.get(i).lhs))
-						{
-							num_predictions_added++; 
-							predicted_partitions.add(j, rules.get(i).rhs);			// add predicted partitions 
-							supports.add(j, new Double(rules.get(i).support));	// add support 
-							added = true; 
-							break; 
-						}
-					}
-				}
-				
-				if(!added)  // add to the ends of the lists
-				{
-					num_predictions_added++; 
-					
-					predicted_partitions.add(rules.get(i).rhs); 
-					supports.add(new Double(rules.get(i).support)); 
-				}
-				
-				if(PRINT_DEBUG_INFO)
-				{
-					System.out.println("current partition: " + current_partitions + ", rule added: " 
-									   + rules.get(i).lhs + " --> " + rules.get(i).rhs + ", " + rules.get(i).support); 
-				}
+				if(!partition_info.containsKey(id))
+					known = false; 
 			}
 		}
 		
-		depth++; 
-		if(depth <= MAX_RECURSION_DEPTH)  // recurse
+		if(!known)
 		{
-			depth++; 
-
-			// recurse down the left branch of the prediction tree using the 1st ranked current prediction
-			if(predicted_partitions.size() >= 1)
-			{
-				left_prediction = new LinkedList< LinkedList<Integer> >(); 
-				left_supports = new LinkedList<Double>(); 
-
-				predictNextParititions(predicted_partitions.get(0), left_prediction, left_supports, depth); 
-			}
+			result = stmt.executeQuery(sql_queries.get(i)); 
+			result.close(); 
+			return 0; 
+		}
+		
+		parts = new LinkedList<PartitionCache.CachedResult>(); 
+		for(Integer id : query_partitions.get(i))
+		{
+			part = partition_cache.get(id.intValue()); 
 			
-			// recurse down right branch of prediction tree using the 2nd ranked current prediction 
-			if(predicted_partitions.size() >= 2)
+			if(part == null)  // miss, go to the database for this partition only
 			{
-				right_prediction = new LinkedList< LinkedList<Integer> >(); 
-				right_supports = new LinkedList<Double>(); 
+				p = partition_info.get(id); 
 				
-				predictNextParititions(predicted_partitions.get(1), right_prediction, right_supports, depth); 
-			}	
-			
-			
-			// TODO: combine the predictions from the left and right subtrees
-			
+				result = stmt.executeQuery(p.toSQL()); 
+				part = PartitionCache.materialize(result); 
+				result.close(); 
+				
+				partition_cache.put(p.partition_id, part); 
+			}
+			else 
+			{
+				num_cached++; 
+			}
 			
+			parts.add(part); 
 		}
 		
-		//System.out.println("predictions made for query " + current_partitions + ": " + num_predictions_added);
+		PartitionCache.stitch(parts, "quote_time", "offer_price", parseQueryRange(sql_queries.get(i))); 
+		
+		return num_cached; 
 	}
 	
-	
-	public double getQueryCost(String query)
+	/*
+	 * Extracts the quote_time and offer_price bounds from a query written by SequenceGenerator, as 
+	 * {x_min, x_max, y_min, y_max}. Returns null if the query has another form. 
+	 */
+	public double [] parseQueryRange(String query)
 	{
-		Statement stmt;
-		ResultSet result; 
-		//ResultSetMetaData meta; 
-		
-		StringTokenizer tokenizer; 
+		java.util.regex.Matcher m = QUERY_RANGE.matcher(query); 
 		
-		String cost_str; 
-		double cost = 0; 
-						
-		query = "EXPLAIN " + query; 
+		if(!m.find())
+			return null; 
 		
 		try 
 		{
-			stmt = conn.createStatement(); 
-			
-			result = stmt.executeQuery(query);
-			//meta = result.getMetaData(); 
-			
-			result.next(); 
-			
-			tokenizer = new StringTokenizer(result.getString(1), ".");
-			
-			// skip the first 2 tokens
-			tokenizer.nextToken(); 
-			tokenizer.nextToken(); 
-			
-			// total cost is the concatenation of the 3rd and 4th tokens
-			cost_str = tokenizer.nextToken() + tokenizer.nextToken(" "); 
-			cost = Double.parseDouble(cost_str); 
-			
-			//System.out.println("query cost: " + cost); 
-			//System.out.println("explain result: " + result.getString(1)); 	
-			
-			result.close(); 
+			return new double[] { Double.parseDouble(m.group(1)), Double.parseDouble(m.group(2)), 
+								  Double.parseDouble(m.group(3)), Double.parseDouble(m.group(4)) }; 
 		}
-		catch(Exception e)
+		catch(NumberFormatException e)
 		{
-			System.out.println(e.getMessage()); 
+			return null; 
 		}
-		
-		return cost; 
+	}
+	
+	public LinkedList<String> getSQLQueries()
+	{
+		return sql_queries; 
+	}
+	
+	public LinkedList< LinkedList<Integer> > getQueryPartitions()
+	{
+		return query_partitions; 
+	}
+	
+	public HashMap<Integer, Partition> getPartitionInfo()
+	{
+		return partition_info; 
+	}
+	
+	public void setPartitionCache(PartitionCache cache)
+	{
+		partition_cache = cache; 
 	}
 	
 	/*
-	public LinkedList<Partition> rankPartitions(LinkedList< LinkedList<Integer> predicted_partitions)
+	 * Replaces the prefetch engine, e.g. with one whose pool was built from connections to an 
+	 * embedded or stub database. 
+	 */
+	public void setPrefetchEngine(PrefetchEngine engine)
 	{
-		//LinkedList<Partition> ranked_partitions = new LinkedList<Partition>(); 
+		prefetch_engine = engine; 
+	}
+	
+	public void shutdown()
+	{
+		if(prefetch_engine != null)
+			prefetch_engine.shutdown(); 
+	}
+	
+	/*
+	 * One step of prediction: the RHS of every rule matching the current query, ranked by support. 
+	 * Predicting further ahead is done by the PredictionPlanner. 
+	 */
+	public void predictNextParititions(List<Integer> current_partitions, 
+												LinkedList< LinkedList<Integer> > predicted_partitions, 
+												LinkedList<Double> supports)
+	{
+		LinkedList<AssociationRule> matching_rules; 
 		
-		HashMap<Integer, Partition> ranked_partitions = new HashMap<int, Partition>(); 
-		Integer key; 
-		for(int i = 0; i < predicted_partitions.size(); i++)
+		if(rule_index == null)
+			rule_index = new RuleIndex(rules); 
+		
+		// only the rules that share a partition with the current query are touched; they come back 
+		// ranked by support, ties broken by the fraction of the current query covered by the LHS
+		matching_rules = rule_index.lookup(current_partitions, .9); 
+		
+		for(AssociationRule rule : matching_rules)
 		{
-			for(int j = 0; j < predicted_partitions.get(i).size(); j++)
+			predicted_partitions.add(rule.rhs);					// add predicted partitions 
+			supports.add(new Double(rule.support));		// add support 
+			
+			if(PRINT_DEBUG_INFO)
 			{
-				key = new Integer(predicted_partitions.get(i).get(j).partition_id); 
-				ranked_partitions.add(key, partition_info.get(key); 
+				System.out.println("current partition: " + current_partitions + ", rule added: " 
+								   + rule.lhs + " --> " + rule.rhs + ", " + rule.support); 
 			}
 		}
+	}
+	
+	/*
+	 * Predicts MAX_RECURSION_DEPTH steps ahead, expanding the two best predictions at each step 
+	 * (the left and right branches of the prediction tree), and merges all steps into one list 
+	 * ranked by path probability. 
+	 */
+	public LinkedList<PredictionPlanner.PlannedPartition> planPredictions(List<Integer> current_partitions)
+	{
+		if(rule_index == null)
+			rule_index = new RuleIndex(rules); 
+		
+		if(planner == null)
+			planner = new PredictionPlanner(rule_index, MAX_RECURSION_DEPTH, 2, .9); 
+		
+		return planner.plan(current_partitions); 
+	}
+	
+	/*
+	 * Turns a ranked plan into a prefetch schedule that fits in the think time: the partitions with 
+	 * the highest total probability whose estimated times add up to no more than the budget (a 
+	 * knapsack, see PrefetchScheduler). Partitions already in the cache cost nothing and are left out. 
+	 */
+	public LinkedList<Integer> rankPartitions(LinkedList<PredictionPlanner.PlannedPartition> plan, long budget_milli)
+	{
+		LinkedList<PredictionPlanner.PlannedPartition> candidates = new LinkedList<PredictionPlanner.PlannedPartition>(); 
+		double [] estimates; 
+		Partition p; 
+		int i = 0; 
+		
+		for(PredictionPlanner.PlannedPartition planned : plan)
+		{
+			p = partition_info.get(Integer.valueOf(planned.partition_id)); 
+			if(p == null)
+				continue; 
+			
+			if(partition_cache != null && partition_cache.contains(p.partition_id))
+				continue; 
+			
+			candidates.add(planned); 
+		}
+		
+		estimates = new double[candidates.size()]; 
+		for(PredictionPlanner.PlannedPartition planned : candidates)
+			estimates[i++] = getCostModel().estimateMillis(partition_info.get(Integer.valueOf(planned.partition_id)).toSQL()); 
+		
+		if(scheduler == null)
+			scheduler = new PrefetchScheduler(1000); 
+		
+		return scheduler.schedule(candidates, estimates, budget_milli); 
+	}
+	
+	/*
+	 * Planner cost of the query. EXPLAIN runs once per distinct query, later calls are answered 
+	 * from the cost model's cache. 
+	 */
+	public double getQueryCost(String query)
+	{
+		return getCostModel().getCost(query); 
+	}
+	
+	public CostModel getCostModel()
+	{
+		if(cost_model == null && conn == null)   // replay, only recorded times are known 
+			cost_model = new CostModel(cost_per_milli, overhead_milli); 
+		else if(cost_model == null)
+			cost_model = new CostModel(conn, cost_per_milli, overhead_milli); 
 		
-		return (LinkedList<Partition>)ranked_partitions.values; 
+		return cost_model; 
 	}
+	
+	/*
+	 * Fits the planner cost to milliseconds mapping on this box by timing the SQL of a sample of 
+	 * partitions spread evenly over the partition ids, and prints the settings to run with. 
 	 */
+	public void calibrateCostModel(int num_samples, int repetitions)
+	{
+		LinkedList<String> queries = new LinkedList<String>(); 
+		Integer [] ids = partition_info.keySet().toArray(new Integer[0]); 
+		int step; 
+		
+		Arrays.sort(ids); 
+		step = Math.max(1, ids.length / Math.max(1, num_samples)); 
+		
+		for(int i = 0; i < ids.length; i += step)
+			queries.add(partition_info.get(ids[i]).toSQL()); 
+		
+		try 
+		{
+			System.out.println("...calibrating on " + queries.size() + " partitions"); 
+			
+			getCostModel().calibrate(queries, repetitions); 
+			getCostModel().printReport(); 
+			
+			System.out.println("run with: -Dplanner.cost_per_ms=" + cost_model.getCostPerMilli() 
+							   + " -Dplanner.overhead_ms=" + cost_model.getOverheadMilli()); 
+		}
+		catch(SQLException e)
+		{
+			System.out.println("calibration error: " + e.getMessage()); 
+		}
+	}
 	
 	public double setIntersect(List<Integer> set1, List<Integer> set2)
 	{
@@ -561,79 +664,54 @@ public class SequenceExecuter
         }
 	}
 	
+	/*
+	 * Loads the cleaned rule file and builds the rule index over it. A binary rule file (written by 
+	 * SequenceCleaner) is memory-mapped and used as is, including its prebuilt index if it has one; 
+	 * a text rule file is parsed into a compact RuleStore. 
+	 */
 	public void readRuleFile(String filename)
 	{
-		BufferedReader rule_file; 
-		
-		String line; 
-		StringTokenizer tokenizer; 
-		String token; 
-		
-		LinkedList<Integer> lhs; 
-		LinkedList<Integer> rhs; 
-		double support; 
-		
-		int num_rules_read = 0; 
+		BinaryRuleFile binary; 
+		long start_time; 
 		
 		try 
-        {
-            rule_file = new BufferedReader(new FileReader(filename)); 
+		{
+			start_time = System.currentTimeMillis(); 
 			
-			while((line = rule_file.readLine()) != null)
+			if(BinaryRuleFile.isBinary(filename))
 			{
-				tokenizer = new StringTokenizer(line, " "); 
-				
-				lhs = new LinkedList<Integer>(); 
-				rhs = new LinkedList<Integer>(); 
-				
-				while(tokenizer.hasMoreTokens())
-				{
-					token = tokenizer.nextToken(); 
-					
-					if(token.equals("==>"))  // finished reading lhs
-						break; 
-					
-					lhs.add(new Integer(Integer.parseInt(token))); 
-				}
-				
-				while(tokenizer.hasMoreTokens())
-				{
-					token = tokenizer.nextToken(); 
-					
-					if(token.equals(","))  // finished reading rhs
-						break; 
-					
-					rhs.add(new Integer(Integer.parseInt(token))); 
-				}
-				
-				token = tokenizer.nextToken(); 
-				support = Double.parseDouble(token); 
+				binary = BinaryRuleFile.open(filename); 
+				rules = binary.getStore(); 
+				rule_index = binary.getIndex(); 
 				
-				rules.add(new AssociationRule(lhs, rhs, support));
-				num_rules_read++;
+				System.out.println("...mapped " + rules.size() + " rules in " + ((System.currentTimeMillis() - start_time)/1000.0) + " seconds");
+			}
+			else 
+			{
+				rules = RuleStore.load(filename); 
+				rule_index = null; 
 				
-			}	
-			
-			rule_file.close(); 
-			System.out.println("...read " + num_rules_read + " rules");
+				System.out.println("...read " + rules.size() + " rules in " + ((System.currentTimeMillis() - start_time)/1000.0) 
+								   + " seconds (" + (rules.heapBytes() / 1024) + " KB)");
+			}
 			
-        }
-        catch (Exception e) 
-        {
-            System.out.println(e.getMessage()); 
-        }
+			if(rule_index == null)
+				rule_index = new RuleIndex(rules); 
+			planner = null; 
+			System.out.println("...indexed rules on " + rule_index.numPartitions() + " partitions");
+		}
+		catch (Exception e) 
+		{
+			System.out.println(e.getMessage()); 
+		}
 	}
 		
 	public void DBConnect()
 	{
-		String user =  new String("justin"); 
-		String password = new String(""); 
-		String url = new String("jdbc:postgresql:nyse1");
-		
 		try 
 		{
-			Class.forName("org.postgresql.Driver");  // load the driver
-			conn = DriverManager.getConnection(url, user, password);
+			Class.forName(db_driver);  // load the driver
+			conn = DriverManager.getConnection(db_url, db_user, db_password);
 
 		}
 		catch(Exception e)
@@ -667,84 +745,4 @@ public class SequenceExecuter
 			//System.out.println("'statement_timeout' could not be set 2!");
 		}
 	}
-	
-	class PrefetchThread extends Thread
-	{
-		LinkedList<Integer> partitions_to_prefetch;  
-		
-		public PrefetchThread(LinkedList<Integer> p)
-		{
-			partitions_to_prefetch = p; 
-		}
-		
-		public void run()
-		{
-			Statement stmt;
-			ResultSet result;
-			PreparedStatement s; 
-			
-			Partition next_partition; 
-			
-			long start_time, end_time; 
-						
-			try 
-			{		
-				//conn.setAutoCommit(false);
-				
-				//setStatementTimeout(think_time_remaining); 
-				
-				System.out.println("...in prefetch thread...prefetching " + partitions_to_prefetch.size() + " partitions"); 
-				for(int i = 0; i < partitions_to_prefetch.size(); i++)
-				{
-					if(think_time_expired)   // stop prefetching
-						return; 
-					
-					stmt = conn.createStatement();
-					
-					next_partition = partition_info.get(new Integer(partitions_to_prefetch.get(i))); 
-					
-					System.out.println("prefetching partition " + partitions_to_prefetch.get(i) + ": " + next_partition.toSQL()); 
-										
-					//getQueryCost(next_partition.toSQL()); 
-										
-					start_time = System.currentTimeMillis();
-					
-					try 
-					{
-						result = stmt.executeQuery(next_partition.toSQL());
-						result.close();
-					}
-					catch(Exception e)
-					{
-						System.out.println("prefetch timed out"); 
-					}
-					end_time = System.currentTimeMillis(); 
-					 
-					
-					System.out.println("prefetch took " + ((end_time-start_time)/1000.0) + " seconds");
- 					
-					break; 
-				}
-				
-				System.out.println("...leaving prefetcher"); 
-				//setStatementTimeout(0); 
-				//conn.setAutoCommit(true);
-				
-			}
-			catch(Exception e)
-			{
-				System.out.println("prefetch error: " + e.getMessage()); 
-			}
-		}
-	}
-}
-
-
-
-
-
-
-
-
-
-
+}
\ No newline at end of file
@@ -0,0 +1,201 @@
+/***************************************************************************************************
+ * File: StreamingRuleCleaner.java
+ * Authors: Justin A. DeBrabant (debrabant@cs.brown.edu)
+ * Description:
+	Cleans spmf rules as they are read instead of loading the whole rule file first. Only the
+	rules that are not (yet) dominated are kept, per LHS and support as in SequenceCleaner: a new
+	rule is dropped if a kept rule of its group has an RHS containing its RHS, otherwise it
+	replaces the kept rules whose RHS it contains. This keeps the same rules as
+	SequenceCleaner.cleanRules.
+
+	PrefixSpan writes its patterns depth first, so every pattern starting with a given partition
+	is written before the first pattern starting with the next one. Once the first partition of
+	the LHS changes, no later rule can fall in the open groups, and their rules are written out
+	and forgotten. Memory is bounded by the rules of one such block rather than by the whole file.
+	Input in another order still gives correct rules only if the blocks are contiguous; a warning
+	is printed if they are not.
+ ***************************************************************************************************/
+
+import java.util.*;
+import java.io.*;
+
+public class StreamingRuleCleaner
+{
+	private BufferedWriter out;				// text output, or
+	private RuleStore store;				// binary output (written by the caller)
+
+	private HashMap<RuleKey, ArrayList<Rule>> groups;		// kept rules of the open groups
+	private int block;						// first LHS partition of the open groups
+	private HashSet<Integer> closed_blocks;
+
+	private long position;
+	private int open_rules;
+
+	private int num_rules_read;
+	private int num_rules_discarded;		// no RHS or dominated
+	private int num_rules_written;
+	private int max_open_rules;
+	private boolean out_of_order;
+
+	public StreamingRuleCleaner(BufferedWriter o)
+	{
+		this(o, null);
+	}
+
+	public StreamingRuleCleaner(RuleStore s)
+	{
+		this(null, s);
+	}
+
+	private StreamingRuleCleaner(BufferedWriter o, RuleStore s)
+	{
+		out = o;
+		store = s;
+
+		groups = new HashMap<RuleKey, ArrayList<Rule>>();
+		closed_blocks = new HashSet<Integer>();
+	}
+
+	/*
+	 * Cleans every line of the reader (until end of input) and flushes the remaining groups.
+	 */
+	public void run(BufferedReader in) throws IOException
+	{
+		String line;
+
+		while((line = in.readLine()) != null)
+			addLine(line);
+
+		finish();
+	}
+
+	public void addLine(String line) throws IOException
+	{
+		Rule rule;
+
+		if(line.trim().length() == 0)
+			return;
+
+		num_rules_read++;
+
+		rule = SequenceCleaner.parseRule(line);
+		if(rule == null)		// no rhs
+		{
+			num_rules_discarded++;
+			return;
+		}
+
+		addRule(rule);
+	}
+
+	public void addRule(Rule rule) throws IOException
+	{
+		ArrayList<Rule> kept;
+		RuleKey key;
+		int first = rule.lhs.get(0).intValue();
+
+		if(open_rules > 0 && first != block)
+			flush();
+
+		if(closed_blocks.contains(Integer.valueOf(first)) && !out_of_order)
+		{
+			out_of_order = true;
+			System.out.println("warning: rules with LHS starting with " + first + " are not contiguous, some dominated rules may be kept");
+		}
+		block = first;
+
+		rule.canonicalise();
+		rule.position = position++;
+
+		key = new RuleKey(rule.lhs_set, rule.support);
+		kept = groups.get(key);
+
+		if(kept == null)
+		{
+			kept = new ArrayList<Rule>(1);
+			groups.put(key, kept);
+		}
+
+		for(Rule k : kept)
+		{
+			if(k.rhsContains(rule))		// also drops a repeat of a kept rule, so the first one stays
+			{
+				num_rules_discarded++;
+				return;
+			}
+		}
+
+		for(Iterator<Rule> it = kept.iterator(); it.hasNext(); )
+		{
+			if(rule.rhsContains(it.next()))
+			{
+				it.remove();
+				open_rules--;
+				num_rules_discarded++;
+			}
+		}
+
+		kept.add(rule);
+		open_rules++;
+		max_open_rules = Math.max(max_open_rules, open_rules);
+	}
+
+	/*
+	 * Writes the kept rules of the open groups, in input order, and closes the groups.
+	 */
+	private void flush() throws IOException
+	{
+		ArrayList<Rule> kept = new ArrayList<Rule>(open_rules);
+
+		for(ArrayList<Rule> group : groups.values())
+			kept.addAll(group);
+
+		Collections.sort(kept, new Comparator<Rule>()
+		{
+			public int compare(Rule r1, Rule r2)
+			{
+				return r1.position < r2.position ? -1 : (r1.position == r2.position ? 0 : 1);
+			}
+		});
+
+		for(Rule rule : kept)
+		{
+			if(out != null)
+				out.write(rule.ruleToString());
+			else
+				store.add(rule.lhs_set, rule.lhs_set.length, rule.rhs_set, rule.rhs_set.length, rule.support);
+		}
+
+		num_rules_written += kept.size();
+		closed_blocks.add(Integer.valueOf(block));
+		groups.clear();
+		open_rules = 0;
+	}
+
+	public void finish() throws IOException
+	{
+		if(open_rules > 0)
+			flush();
+
+		if(out != null)
+			out.flush();
+	}
+
+	public int getRulesRead()
+	{
+		return num_rules_read;
+	}
+
+	public int getRulesWritten()
+	{
+		return num_rules_written;
+	}
+
+	public void printReport()
+	{
+		System.out.println("rules read: " + num_rules_read);
+		System.out.println("rules kept: " + num_rules_written);
+		System.out.println("rules discarded: " + num_rules_discarded);
+		System.out.println("most rules held at once: " + max_open_rules);
+	}
+}
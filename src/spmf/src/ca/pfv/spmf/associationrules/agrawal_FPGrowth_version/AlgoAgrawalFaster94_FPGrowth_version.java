@@ -1,14 +1,28 @@
 package ca.pfv.spmf.associationrules.agrawal_FPGrowth_version;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import ca.pfv.spmf.frequentpatterns.fpgrowth.AlgoFPGrowth;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.Database;
 import ca.pfv.spmf.frequentpatterns.fpgrowth.Itemset;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.ItemsetSink;
 import ca.pfv.spmf.frequentpatterns.fpgrowth.Itemsets;
 
 /**
  * This is an implementation of the "faster algorithm" described in 
  * Agrawal & al. 1994, IBM Research Report RJ9839, June 1994. 
+ * 
+ * runAlgorithm(fpgrowth, database, minsupp, output) generates the rules while FPGrowth 
+ * mines the itemsets, without an Itemsets object: each itemset is received after its 
+ * subsets, which give the support of the antecedents of its rules, so its rules are 
+ * written as soon as it is received. Only the supports of the itemsets are kept, in a 
+ * SupportTrie.
  * @author Philippe Fournier-Viger, 2008
  */
 
@@ -18,6 +32,9 @@ public class AlgoAgrawalFaster94_FPGrowth_version {
 	
 	private double minconf;
 	
+	private int ruleCount; // for the streaming version
+	private long supportMemory; // for the streaming version
+	
 	public AlgoAgrawalFaster94_FPGrowth_version(double minconf){
 		this.minconf = minconf;
 	}
@@ -64,6 +81,130 @@ public class AlgoAgrawalFaster94_FPGrowth_version {
 		
 		return rules;
 	}
+	
+	/**
+	 * Runs FPGrowth and generates the rules from the itemsets as they are found.
+	 * Each rule is written on a line: "antecedent ==> consequent #SUP: support #CONF: confidence".
+	 * @param fpgrowth the FPGrowth algorithm (it must run with one thread)
+	 * @param database the transaction database
+	 * @param minsupp the minimum support (a fraction of the transactions)
+	 * @param output where the rules are written (closed at the end)
+	 * @return the number of rules
+	 * @throws IOException if the rules cannot be written
+	 */
+	public int runAlgorithm(AlgoFPGrowth fpgrowth, Database database, double minsupp, Writer output) throws IOException {
+		final SupportTrie supports = new SupportTrie();
+		final BufferedWriter writer = new BufferedWriter(output, 1 << 16);
+		ruleCount = 0;
+		try {
+			fpgrowth.runAlgorithm(database, minsupp, new ItemsetSink(){
+				public void itemsetFound(int[] items, int length, int support) throws IOException {
+					supports.add(items, length, support);
+					if(length >= 2){
+						generateRules(items, length, support, supports, writer);
+					}
+				}
+			});
+		} finally {
+			writer.close();
+		}
+		supportMemory = supports.getMemoryUsage();
+		return ruleCount;
+	}
+	
+	/**
+	 * The rules of one itemset, as in runAlgorithm(Itemsets): the consequents of one item, 
+	 * then the candidate consequents of m + 1 items made from the consequents of m items 
+	 * that gave a rule. A consequent is a bit mask over the positions of the items.
+	 */
+	private void generateRules(int[] items, int length, int support, SupportTrie supports, 
+			BufferedWriter writer) throws IOException {
+		if(length > 63){
+			throw new IOException("itemsets of more than 63 items are not supported");
+		}
+		long all = (1L << length) - 1;
+		
+		List<Long> consequents = new ArrayList<Long>();
+		for(int i = 0; i < length; i++){
+			if(writeRule(items, length, all, 1L << i, support, supports, writer)){
+				consequents.add(1L << i);
+			}
+		}
+		
+		for(int m = 1; length > m + 1 && consequents.size() > 1; m++){
+			Set<Long> levelM = new HashSet<Long>(consequents);
+			List<Long> nextConsequents = new ArrayList<Long>();
+			for(int i = 0; i < consequents.size(); i++){
+				for(int j = 0; j < consequents.size(); j++){
+					long consequent1 = consequents.get(i);
+					long consequent2 = consequents.get(j);
+					long last1 = Long.highestOneBit(consequent1);
+					long last2 = Long.highestOneBit(consequent2);
+					// the same items except the last one, which is smaller in the first one
+					if(last1 >= last2 || (consequent1 ^ last1) != (consequent2 ^ last2)){
+						continue;
+					}
+					long candidate = consequent1 | consequent2;
+					if(allSubsetsAreIn(candidate, levelM) 
+							&& writeRule(items, length, all, candidate, support, supports, writer)){
+						nextConsequents.add(candidate);
+					}
+				}
+			}
+			consequents = nextConsequents;
+		}
+	}
+	
+	private boolean allSubsetsAreIn(long candidate, Set<Long> levelM) {
+		for(long rest = candidate; rest != 0; rest &= rest - 1){
+			if(!levelM.contains(candidate & ~Long.lowestOneBit(rest))){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes the rule (itemset - consequent) ==> consequent if its confidence is high enough.
+	 * @return true if the rule was written
+	 */
+	private boolean writeRule(int[] items, int length, long all, long consequent, int support, 
+			SupportTrie supports, BufferedWriter writer) throws IOException {
+		int antecedentSupport = supports.getSupport(items, length, all & ~consequent);
+		if(antecedentSupport < 0){
+			throw new IllegalStateException("an itemset was received before its subsets");
+		}
+		double conf = ((double) support) / ((double) antecedentSupport);
+		if(conf < minconf){
+			return false;
+		}
+		writeItems(items, length, all & ~consequent, writer);
+		writer.write("==> ");
+		writeItems(items, length, consequent, writer);
+		writer.write("#SUP: ");
+		writer.write(Integer.toString(support));
+		writer.write(" #CONF: ");
+		writer.write(Double.toString(conf));
+		writer.newLine();
+		ruleCount++;
+		return true;
+	}
+	
+	private void writeItems(int[] items, int length, long mask, BufferedWriter writer) throws IOException {
+		for(int i = 0; i < length; i++){
+			if((mask & (1L << i)) != 0){
+				writer.write(Integer.toString(items[i]));
+				writer.write(' ');
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of bytes used to keep the supports by the last streaming run
+	 */
+	public long getSupportMemory() {
+		return supportMemory;
+	}
 
 	// apGenRules, p14. from Agrawal
 	private void apGenrules(int k, int m, Itemset lk, Set<Itemset> Hm) {
@@ -0,0 +1,118 @@
+package ca.pfv.spmf.associationrules.agrawal_FPGrowth_version;
+
+import java.util.Arrays;
+
+/**
+ * The supports of the itemsets received from AlgoFPGrowth through an ItemsetSink, in a 
+ * prefix tree stored in int arrays. An itemset is a node whose parent is the itemset 
+ * without its last item, which was received before it, so each itemset only takes its 
+ * last item, its support and a slot of the (parent, item) hash table: much less than 
+ * the Itemset objects of the same itemsets.
+ */
+class SupportTrie {
+
+	private static final long EMPTY = -1L;
+	
+	private int[] supports = new int[1024];  // node 0 is the empty itemset
+	private int nodeCount = 1;
+	
+	private long[] keys = new long[2048];  // (parent, item) of each node
+	private int[] nodes = new int[2048];
+	
+	SupportTrie(){
+		Arrays.fill(keys, EMPTY);
+	}
+	
+	/**
+	 * Adds an itemset whose prefix items[0 .. length - 1) has already been added.
+	 */
+	void add(int[] items, int length, int support) {
+		int parent = 0;
+		for(int i = 0; i < length - 1; i++){
+			parent = child(parent, items[i]);
+			if(parent == 0){
+				throw new IllegalStateException("an itemset was received before its subsets");
+			}
+		}
+		if(nodeCount == supports.length){
+			supports = Arrays.copyOf(supports, nodeCount * 2);
+		}
+		if(nodeCount * 2 > keys.length){
+			rehash();
+		}
+		int node = nodeCount++;
+		supports[node] = support;
+		put(key(parent, items[length - 1]), node);
+	}
+	
+	/**
+	 * Returns the support of the items of an itemset selected by a bit mask, keeping 
+	 * their order, or -1 if that subset was not added.
+	 */
+	int getSupport(int[] items, int length, long mask) {
+		int node = 0;
+		for(int i = 0; i < length; i++){
+			if((mask & (1L << i)) != 0){
+				node = child(node, items[i]);
+				if(node == 0){
+					return -1;
+				}
+			}
+		}
+		return supports[node];
+	}
+	
+	int size() {
+		return nodeCount - 1;
+	}
+	
+	/**
+	 * Returns the number of bytes of the arrays.
+	 */
+	long getMemoryUsage() {
+		return 4L * supports.length + 12L * keys.length;
+	}
+	
+	private int child(int parent, int item) {
+		long key = key(parent, item);
+		for(int slot = slot(key); ; slot = (slot + 1) & (keys.length - 1)){
+			if(keys[slot] == key){
+				return nodes[slot];
+			}
+			if(keys[slot] == EMPTY){
+				return 0;
+			}
+		}
+	}
+	
+	private void put(long key, int node) {
+		int slot = slot(key);
+		while(keys[slot] != EMPTY){
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		keys[slot] = key;
+		nodes[slot] = node;
+	}
+	
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldNodes = nodes;
+		keys = new long[oldKeys.length * 2];
+		nodes = new int[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != EMPTY){
+				put(oldKeys[i], oldNodes[i]);
+			}
+		}
+	}
+	
+	private static long key(int parent, int item) {
+		return ((long) parent << 32) | (item & 0xFFFFFFFFL);
+	}
+	
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & (keys.length - 1);
+	}
+}
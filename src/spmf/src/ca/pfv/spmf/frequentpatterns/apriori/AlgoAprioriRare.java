@@ -29,6 +29,7 @@ public class AlgoAprioriRare {
 	protected Itemsets minimalRareItemsets = new Itemsets("MINIMAL RARE ITEMSETS");
 	protected ContextApriori context;
 	protected int k; // level
+	protected CountDistribution counter; // counts the support of the candidates
 
 	// stats
 	protected int totalCandidateCount = 0;
@@ -40,6 +41,26 @@ public class AlgoAprioriRare {
 	}
 
 	public Itemsets runAlgorithm(double minsupp) {
+		return runAlgorithm(minsupp, 1);
+	}
+
+	/**
+	 * Run the algorithm, counting the support of the candidates on several threads.
+	 * The itemsets found do not depend on the number of threads.
+	 * @param minsupp the minimum support (a fraction of the transactions)
+	 * @param threadCount the number of counting threads (1 counts on the calling thread)
+	 * @return the itemsets found
+	 */
+	public Itemsets runAlgorithm(double minsupp, int threadCount) {
+		counter = new CountDistribution(context.getObjects(), threadCount);
+		try {
+			return mine(minsupp);
+		} finally {
+			counter.shutdown();
+		}
+	}
+
+	private Itemsets mine(double minsupp) {
 		resetStats();
 
 		// Generate candidates with size k = 1 (all itemsets of size 1)
@@ -109,15 +130,10 @@ public class AlgoAprioriRare {
 	protected void calculateSupportForEachCandidate(
 			List<ItemsetApriori> candidatesK) {
 		databaseScanCount++;
-		for (ItemsetApriori transaction : context.getObjects()) {
-			// For each candidate of level K, we increase its support
-			// if it is included in the transaction.
-			for (ItemsetApriori candidate : candidatesK) {
-				if (candidate.includedIn(transaction)) {
-					candidate.increaseTransactionCount();
-				}
-			}
-		}
+		// The candidates are put in a trie and the transactions are walked down the trie
+		// (by several threads, on different transactions), increasing the support of the
+		// candidates that they contain.
+		counter.countSupport(candidatesK, k);
 	}
 
 	// Based on the description of Pasquier 99: "Efficient mining..."
@@ -142,6 +158,8 @@ public class AlgoAprioriRare {
 
 	protected List<ItemsetApriori> generateCandidateSizeK(List<ItemsetApriori> levelK_1) {
 		List<ItemsetApriori> candidates = new ArrayList<ItemsetApriori>();
+		// the frequent itemsets of size k-1, to check the subsets of the candidates
+		CandidateTrie frequentK_1 = new CandidateTrie(levelK_1, k-1);
 
 		// For each itemset I1 and I2 of level k-1
 	loop1:	for(int i=0; i< levelK_1.size(); i++){
@@ -181,7 +199,7 @@ public class AlgoAprioriRare {
 
 				// The candidate is tested to see if its subsets of size k-1 are included in
 				// level k-1 (they are frequent).
-				if(allSubsetsOfSizeK_1AreFrequent(candidate,levelK_1)){
+				if(allSubsetsOfSizeK_1AreFrequent(candidate,frequentK_1)){
 					candidates.add(candidate);
 				}
 			}
@@ -189,22 +207,14 @@ public class AlgoAprioriRare {
 		return candidates;
 	}
 
-	protected boolean allSubsetsOfSizeK_1AreFrequent(ItemsetApriori candidate, List<ItemsetApriori> levelK_1) {
+	protected boolean allSubsetsOfSizeK_1AreFrequent(ItemsetApriori candidate, CandidateTrie levelK_1) {
 		// To generate all the set of size K-1, we will proceed
 		// by removing each item, one by one.
 		if(candidate.size() == 1){
 			return true;
 		}
-		for(ItemApriori item : candidate.getItems()){
-			ItemsetApriori subset = candidate.cloneItemSetMinusOneItem(item);
-			boolean found = false;
-			for(ItemsetApriori itemset : levelK_1){
-				if(itemset.isEqualTo(subset)){
-					found = true;
-					break;
-				}
-			}
-			if(found == false){
+		for(int i=0; i< candidate.size(); i++){
+			if(!levelK_1.containsSubset(candidate, i)){
 				return false;
 			}
 		}
@@ -228,6 +238,9 @@ public class AlgoAprioriRare {
 		System.out.println(" Database scan count : " + databaseScanCount);
 		System.out.println(" The algorithm stopped at size " + (k - 1)
 				+ ", because there is no candidate");
+		if(counter != null && counter.getThreadCount() > 1){
+			counter.printStats(); // time and parallelism of each level
+		}
 		System.out.println(" Frequent itemsets count : " + frequentItemsets.getItemsetsCount()); 
 		frequentItemsets.printItemsets(context.size());
 		System.out
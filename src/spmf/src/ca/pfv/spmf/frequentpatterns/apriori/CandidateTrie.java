@@ -0,0 +1,211 @@
+package ca.pfv.spmf.frequentpatterns.apriori;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A prefix trie of the itemsets of one Apriori level (all of the same size k), as in
+ * the hash-tree of Agrawal and Srikant (1994) but with one item per node.
+ *
+ * It is used in two ways by the Apriori algorithms of this package:
+ *  - to count the support of the candidates of level k in one database scan: each
+ *    transaction is walked down the trie, so only its k-subsets that are a prefix of
+ *    some candidate are visited, instead of testing every candidate against it;
+ *  - to prune the candidates of level k+1: a subset of size k is frequent if it is a
+ *    path of the trie of level k, which is found without creating the subset.
+ *
+ * The itemsets are numbered in the order of the level, and countSupport() can count a
+ * part of the transactions into an array of counts indexed by these numbers, so that
+ * several threads can count with the same trie (see CountDistribution).
+ *
+ * The children of a node are kept in an array sorted by item id. Itemsets and
+ * transactions are sets of items, so the items of a transaction are sorted and
+ * duplicates removed before it is walked down the trie.
+ */
+public class CandidateTrie {
+
+	private final Node root = new Node();
+	private final int depth; // the size of the itemsets
+	private final ItemsetApriori[] itemsets; // by number
+
+	/**
+	 * A node of the trie. The number of an itemset is set on the nodes at the depth of 
+	 * the trie, and is -1 on the other nodes.
+	 */
+	private static class Node {
+		int[] items = new int[2];
+		Node[] children = new Node[2];
+		int childCount = 0;
+		int itemset = -1;
+
+		Node getChild(int item) {
+			int index = Arrays.binarySearch(items, 0, childCount, item);
+			return index >= 0 ? children[index] : null;
+		}
+
+		Node addChild(int item) {
+			int index = Arrays.binarySearch(items, 0, childCount, item);
+			if(index >= 0){
+				return children[index];
+			}
+			index = -(index + 1);
+			if(childCount == items.length){
+				items = Arrays.copyOf(items, childCount * 2);
+				children = Arrays.copyOf(children, childCount * 2);
+			}
+			System.arraycopy(items, index, items, index + 1, childCount - index);
+			System.arraycopy(children, index, children, index + 1, childCount - index);
+			Node child = new Node();
+			items[index] = item;
+			children[index] = child;
+			childCount++;
+			return child;
+		}
+	}
+
+	/**
+	 * Build the trie of a level.
+	 * @param level the itemsets of the level, having the same size and their items sorted by id
+	 * @param depth the size of the itemsets
+	 */
+	public CandidateTrie(List<ItemsetApriori> level, int depth) {
+		this.depth = depth;
+		itemsets = level.toArray(new ItemsetApriori[level.size()]);
+		for(int i = 0; i < itemsets.length; i++){
+			Node node = root;
+			for(ItemApriori item : itemsets[i].getItems()){
+				node = node.addChild(item.getId());
+			}
+			node.itemset = i;
+		}
+	}
+
+	/**
+	 * Scan the transactions once and increase the support of each itemset of the trie
+	 * by the number of transactions that contain it.
+	 * @param transactions the transactions of the binary context
+	 */
+	public void countSupport(List<ItemsetApriori> transactions) {
+		int[] counts = new int[itemsets.length];
+		countSupport(transactions, 0, transactions.size(), counts);
+		addSupport(counts);
+	}
+
+	/**
+	 * Count the number of transactions of a part of the database that contain each
+	 * itemset of the trie. The trie is not modified, so several threads can count
+	 * at the same time with their own arrays of counts.
+	 * @param transactions the transactions of the binary context
+	 * @param from the first transaction to count
+	 * @param to the end of the transactions to count (exclusive)
+	 * @param counts the counts to increase, indexed by itemset number
+	 */
+	public void countSupport(List<ItemsetApriori> transactions, int from, int to, int[] counts) {
+		if(itemsets.length == 0){
+			return;
+		}
+		int[] buffer = new int[16];
+		for(ItemsetApriori transaction : transactions.subList(from, to)){
+			if(transaction.size() < depth){
+				continue;
+			}
+			if(buffer.length < transaction.size()){
+				buffer = new int[transaction.size() * 2];
+			}
+			int length = sortedItems(transaction, buffer);
+			if(length >= depth){
+				count(root, buffer, 0, length, depth, counts);
+			}
+		}
+	}
+
+	/**
+	 * Increase the support of each itemset of the trie by its count.
+	 * @param counts the counts, indexed by itemset number
+	 */
+	public void addSupport(int[] counts) {
+		for(int i = 0; i < itemsets.length; i++){
+			itemsets[i].setTransactioncount(itemsets[i].getAbsoluteSupport() + counts[i]);
+		}
+	}
+
+	/**
+	 * Visit the k-subsets of a transaction that are paths under a node.
+	 * @param node the node
+	 * @param transaction the sorted items of the transaction
+	 * @param from the first item of the transaction that can extend the path
+	 * @param length the number of items of the transaction
+	 * @param remaining the number of items to add to the path to reach the depth of the trie
+	 * @param counts the counts of the itemsets
+	 */
+	private void count(Node node, int[] transaction, int from, int length, int remaining, int[] counts) {
+		if(remaining == 0){
+			counts[node.itemset]++;
+			return;
+		}
+		// the last remaining-1 items are needed to complete the path
+		int end = length - remaining + 1;
+		if(node.childCount < end - from){
+			// fewer children than items: look for each child in the transaction
+			for(int c = 0; c < node.childCount; c++){
+				int i = Arrays.binarySearch(transaction, from, end, node.items[c]);
+				if(i >= 0){
+					count(node.children[c], transaction, i + 1, length, remaining - 1, counts);
+				}
+			}
+		}else{
+			for(int i = from; i < end; i++){
+				Node child = node.getChild(transaction[i]);
+				if(child != null){
+					count(child, transaction, i + 1, length, remaining - 1, counts);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copy the distinct items of a transaction into an array, sorted by id.
+	 * @return the number of items copied
+	 */
+	private static int sortedItems(ItemsetApriori transaction, int[] buffer) {
+		List<ItemApriori> items = transaction.getItems();
+		for(int i = 0; i < items.size(); i++){
+			buffer[i] = items.get(i).getId();
+		}
+		Arrays.sort(buffer, 0, items.size());
+		int length = 0;
+		for(int i = 0; i < items.size(); i++){
+			if(length == 0 || buffer[length - 1] != buffer[i]){
+				buffer[length++] = buffer[i];
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Check if the trie contains the itemset made of all the items of an itemset but one.
+	 * @param itemset an itemset having its items sorted by id
+	 * @param skipped the index of the item that is not part of the subset
+	 * @return true if the subset is one of the itemsets of the trie
+	 */
+	public boolean containsSubset(ItemsetApriori itemset, int skipped) {
+		Node node = root;
+		List<ItemApriori> items = itemset.getItems();
+		for(int i = 0; i < items.size(); i++){
+			if(i != skipped){
+				node = node.getChild(items.get(i).getId());
+				if(node == null){
+					return false;
+				}
+			}
+		}
+		return node.itemset >= 0;
+	}
+
+	/**
+	 * Returns the number of itemsets of the trie.
+	 */
+	public int size() {
+		return itemsets.length;
+	}
+}
@@ -0,0 +1,213 @@
+package ca.pfv.spmf.frequentpatterns.apriori;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Support counting for the Apriori algorithms with the count distribution strategy of:
+ *
+ *   Agrawal R, Shafer J. "Parallel Mining of Association Rules", IEEE TKDE 8(6), 1996, 962-969,
+ *
+ * on the threads of one JVM: the transactions are split in parts, each part is counted
+ * by a thread into its own counts (indexed by candidate), and the counts of the parts
+ * are added at the end of the level.
+ *
+ * countSupport() counts the candidates of the Apriori algorithms of this package, in one
+ * part per thread. Supports are sums of integers, so they do not depend on the number of
+ * threads. countParts() runs any counting of parts of the transactions (e.g. the expected
+ * supports of U-Apriori) and returns the counts of the parts in the order of the
+ * transactions, for the caller to add.
+ *
+ * The counting time of each level is kept with the CPU time used by the counting threads.
+ * Their ratio is the parallelism of the level: the average number of threads that were
+ * counting.
+ */
+public class CountDistribution {
+
+	/**
+	 * Counts the candidates of a level in one part of the transactions.
+	 */
+	public interface PartCounter<T> {
+		/**
+		 * @param from the first transaction of the part
+		 * @param to the end of the part (exclusive)
+		 * @return the counts of the part
+		 */
+		T count(int from, int to);
+	}
+
+	private final List<ItemsetApriori> transactions; // null if only countParts() is used
+	private final int transactionCount;
+	private final int threadCount;
+	private final ExecutorService executor; // null when counting on the calling thread
+
+	// stats of each level
+	private final List<int[]> levelSizes = new ArrayList<int[]>(); // {k, candidate count}
+	private final List<long[]> levelTimes = new ArrayList<long[]>(); // {elapsed ns, cpu ns}
+
+	/**
+	 * Constructor
+	 * @param transactions the transactions of the binary context
+	 * @param threadCount the number of counting threads (1 counts on the calling thread)
+	 */
+	public CountDistribution(List<ItemsetApriori> transactions, int threadCount) {
+		this(transactions, transactions.size(), threadCount);
+	}
+
+	/**
+	 * Constructor, for counting with countParts() only.
+	 * @param transactionCount the number of transactions
+	 * @param threadCount the number of counting threads (1 counts on the calling thread)
+	 */
+	public CountDistribution(int transactionCount, int threadCount) {
+		this(null, transactionCount, threadCount);
+	}
+
+	private CountDistribution(List<ItemsetApriori> transactions, int transactionCount, int threadCount) {
+		this.transactions = transactions;
+		this.transactionCount = transactionCount;
+		this.threadCount = Math.max(1, Math.min(threadCount, transactionCount));
+		this.executor = this.threadCount > 1 ? Executors.newFixedThreadPool(this.threadCount) : null;
+	}
+
+	/**
+	 * Count the support of the candidates of a level.
+	 * @param candidatesK the candidates, having the same size and their items sorted by id
+	 * @param k the size of the candidates
+	 */
+	public void countSupport(List<ItemsetApriori> candidatesK, int k) {
+		final CandidateTrie trie = new CandidateTrie(candidatesK, k);
+		List<int[]> partCounts = countParts(new PartCounter<int[]>() {
+			public int[] count(int from, int to) {
+				int[] counts = new int[trie.size()];
+				trie.countSupport(transactions, from, to, counts);
+				return counts;
+			}
+		}, threadCount, k, candidatesK.size());
+
+		// reduce
+		int[] counts = partCounts.get(0);
+		for(int part = 1; part < partCounts.size(); part++){
+			for(int i = 0; i < counts.length; i++){
+				counts[i] += partCounts.get(part)[i];
+			}
+		}
+		trie.addSupport(counts);
+	}
+
+	/**
+	 * Count the candidates of a level in parts of the transactions, on the counting
+	 * threads. Without counting threads, the parts are counted in order on the calling
+	 * thread.
+	 * @param counter counts a part
+	 * @param partCount the number of parts, of about the same number of transactions
+	 * @param k the size of the candidates (for the stats)
+	 * @param candidateCount the number of candidates (for the stats)
+	 * @return the counts of each part, in the order of the transactions
+	 */
+	public <T> List<T> countParts(PartCounter<T> counter, int partCount, int k, int candidateCount) {
+		long startTime = System.nanoTime();
+		List<CountTask<T>> tasks = new ArrayList<CountTask<T>>();
+		for(int part = 0; part < partCount; part++){
+			int from = (int) ((long) transactionCount * part / partCount);
+			int to = (int) ((long) transactionCount * (part + 1) / partCount);
+			tasks.add(new CountTask<T>(counter, from, to));
+		}
+
+		List<T> counts = new ArrayList<T>(partCount);
+		if(executor == null){
+			for(CountTask<T> task : tasks){
+				counts.add(task.call());
+			}
+		}else{
+			try {
+				for(Future<T> result : executor.invokeAll(tasks)){
+					counts.add(result.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while counting", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("counting task failed", e.getCause());
+			}
+		}
+
+		long cpuTime = 0;
+		for(CountTask<T> task : tasks){
+			cpuTime += task.cpuTime;
+		}
+		levelSizes.add(new int[]{k, candidateCount});
+		levelTimes.add(new long[]{System.nanoTime() - startTime, cpuTime});
+		return counts;
+	}
+
+	/**
+	 * Counts one part of the transactions and keeps the CPU time it took.
+	 */
+	private static class CountTask<T> implements Callable<T> {
+		final PartCounter<T> counter;
+		final int from;
+		final int to;
+		long cpuTime; // set by call()
+
+		CountTask(PartCounter<T> counter, int from, int to) {
+			this.counter = counter;
+			this.from = from;
+			this.to = to;
+		}
+
+		public T call() {
+			long startCpu = cpuTime();
+			T counts = counter.count(from, to);
+			cpuTime = cpuTime() - startCpu;
+			return counts;
+		}
+	}
+
+	/**
+	 * Returns the CPU time of the current thread in ns, or the time if it is not available.
+	 */
+	private static long cpuTime() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean.isCurrentThreadCpuTimeSupported()){
+			return bean.getCurrentThreadCpuTime();
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Stop the counting threads.
+	 */
+	public void shutdown() {
+		if(executor != null){
+			executor.shutdownNow();
+		}
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Print the time of each level and its parallelism (CPU time of the counting threads /
+	 * elapsed time).
+	 */
+	public void printStats() {
+		System.out.println(" Counting threads : " + threadCount);
+		for(int i = 0; i < levelSizes.size(); i++){
+			long elapsed = levelTimes.get(i)[0];
+			long cpu = levelTimes.get(i)[1];
+			double parallelism = elapsed == 0 ? 1 : (double) cpu / elapsed;
+			System.out.println("  level " + levelSizes.get(i)[0] + " : " + levelSizes.get(i)[1]
+					+ " candidates, " + elapsed / 1000000 + " ms, parallelism "
+					+ String.format("%.2f", parallelism));
+		}
+	}
+}
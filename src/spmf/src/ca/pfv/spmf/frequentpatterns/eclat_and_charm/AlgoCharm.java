@@ -2,10 +2,7 @@ package ca.pfv.spmf.frequentpatterns.eclat_and_charm;
 
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.Map.Entry;
 
 import ca.pfv.spmf.general.datastructures.triangularmatrix.TriangularMatrix;
@@ -14,7 +11,15 @@ import ca.pfv.spmf.general.datastructures.triangularmatrix.TriangularMatrix;
  * This is an implementation of the CHARM algorithm that was proposed by MOHAMED ZAKI.
  * 
  * This implementation may not be fully optimized. In particular, Zaki
- * proposed various extensions that I have not implemented (for example diffsets).
+ * proposed various extensions that I have not implemented.
+ *
+ * By default, the tids of the itemsets are kept in Sets of Integers, that are also
+ * set on the closed itemsets found. With setUseCompactTidsets(true), they are kept in
+ * sorted arrays or bitsets chosen by density, and in diffsets when they are smaller
+ * (dCharm, Zaki and Hsiao 2002), and the itemsets found only keep their support and
+ * the sum of their tids (see Tidset). The four properties of CHARM are checked with the
+ * supports of X, Y and XY, which are known with diffsets: t(X) is a subset of t(Y) if
+ * and only if the support of XY is the support of X.
  *
  * @author Philippe Fournier-Viger, 2009
  */
@@ -33,6 +38,12 @@ public class AlgoCharm {
 	// for optimization with a hashTable
 	private HashTable hash;
 
+	// the representation of the tids
+	private boolean useCompactTidsets = false;
+	private boolean useDiffsets = true;
+	private long tidsetMemory; // for stats: the estimated size of the tids of the tree
+	private long maxTidsetMemory;
+
 	public AlgoCharm(Context context, int hashTableSize) {
 		this.context = context;
 		this.hash =  new HashTable(hashTableSize);
@@ -72,25 +83,17 @@ public class AlgoCharm {
 	 */
 	private Itemsets run() {
 		startTimestamp = System.currentTimeMillis();
-	
+		tidsetMemory = 0;
+		maxTidsetMemory = 0;
 		
-		Set<Integer> allTIDS = new HashSet<Integer>(); 
+		Tidset allTIDS = context.getAllTids(useCompactTidsets); 
 		
 		// (1) First database pass : calculate tidsets of each item.
 		int maxItemId = 0;
-		final Map<Integer, Set<Integer>> mapItemCount = new HashMap<Integer, Set<Integer>>();
-		for(int i=0; i< context.size(); i++){
-			allTIDS.add(i); // context.getObjects().get(i).transactionId
-			for(Integer item : context.getObjects().get(i).getItems()){
-				Set<Integer> set = mapItemCount.get(item);
-				if(set  == null){
-					set = new HashSet<Integer>();
-					mapItemCount.put(item, set);
-					if(item > maxItemId){
-						maxItemId = item;
-					}
-				}
-				set.add(i); // add tid            		// context.getObjects().get(i).transactionId
+		final Map<Integer, Tidset> mapItemCount = context.getItemTidsets(useCompactTidsets);
+		for(Integer item : mapItemCount.keySet()){
+			if(item > maxItemId){
+				maxItemId = item;
 			}
 		}
 		
@@ -120,17 +123,21 @@ public class AlgoCharm {
 		tree.setRoot(root);
 		
 		// (3) create childs of the root node.
-		for(Entry<Integer, Set<Integer>> entry : mapItemCount.entrySet()){
+		for(Entry<Integer, Tidset> entry : mapItemCount.entrySet()){
 			// we only add nodes for items that are frequents
 			if(entry.getValue().size() >= minsupRelative){
 				// create the new node
 				Itemset itemset = new Itemset();
 				itemset.addItem(entry.getKey());
 				ITNode newNode = new ITNode(itemset);
-				newNode.setTidset(entry.getValue());
-				newNode.setParent(root);
+				// the diffset of a dense item is smaller than its tidset
+				if(useCompactTidsets && useDiffsets && entry.getValue().size() * 2 > context.size()){
+					newNode.setDiffset(Tidset.minus(allTIDS, entry.getValue(), context.size()), root);
+				}else{
+					newNode.setTidset(entry.getValue());
+				}
 				// add the new node as child of the root node
-				root.getChildNodes().add(newNode); 
+				addChild(root, newNode); 
 			}
 		}
 		
@@ -166,36 +173,31 @@ public class AlgoCharm {
 //			}
 			ITNode brother = currNode.getParent().getChildNodes().get(i);
 			if(brother != currNode){
+				// the tids of the union, or null if it is not frequent
+				ITNode candidate = getCandidate(currNode,brother);
+				int support = candidate == null ? -1 : candidate.getSupport();
 
 				// Property 1
-				if(currNode.getTidset().equals(brother.getTidset())){
+				if(support == currNode.getSupport() && support == brother.getSupport()){
 					replaceInSubtree(currNode, brother.getItemset());
 					delete(brother);
 				}
 				// Property 2
-				else if(brother.getTidset().containsAll(currNode.getTidset())){
+				else if(support == currNode.getSupport()){
 					replaceInSubtree(currNode, brother.getItemset());
 					i++;
 				}
 				// Property 3
-				else if(currNode.getTidset().containsAll(brother.getTidset())){
-					ITNode candidate = getCandidate(currNode,brother);
+				else if(support == brother.getSupport()){
 					delete(brother);
-					if(candidate != null){
-						currNode.getChildNodes().add(candidate);
-						candidate.setParent(currNode);
-					}
+					addChild(currNode, candidate);
 				}
 				// Property 4
-				else if(!currNode.getTidset().equals(brother.getTidset())){
-					ITNode candidate = getCandidate(currNode,brother);
+				else{
 					if(candidate != null){
-						currNode.getChildNodes().add(candidate);
-						candidate.setParent(currNode);
+						addChild(currNode, candidate);
 					}
 					i++;
-				}else{
-					i++;
 				}
 			}else{
 				i++;
@@ -236,33 +238,37 @@ public class AlgoCharm {
 			}
 		}
 
-		// create list of common tids.
-		Set<Integer> commonTids = new HashSet<Integer>();
-		for(Integer tid : currNode.getTidset()){
-			if(brother.getTidset().contains(tid)){
-				commonTids.add(tid);
-			}
-		}
+		// create list of common tids (or the diffset).
+		ITNode node = new ITNode(null);
+		node.setTidsOfExtension(currNode, brother, context.size(), useCompactTidsets && useDiffsets);
 		
 		// (2) check if the two itemsets have enough common tids
 		// if not, we don't need to generate a rule for them.
-		if(commonTids.size() >= minsupRelative){
-			Itemset union = currNode.getItemset().union(brother.getItemset());
-			ITNode node = new ITNode(union);
-			node.setTidset(commonTids);
+		if(node.getSupport() >= minsupRelative){
+			node.setItemset(currNode.getItemset().union(brother.getItemset()));
 			return node;
 		}
 		
 		return null;
 	}
 
+	private void addChild(ITNode node, ITNode child) {
+		node.getChildNodes().add(child);
+		child.setParent(node);
+		tidsetMemory += child.getTidset().getMemoryUsage();
+		if(tidsetMemory > maxTidsetMemory){
+			maxTidsetMemory = tidsetMemory;
+		}
+	}
+
 	private void delete(ITNode child) {
 		child.getParent().getChildNodes().remove(child);
+		tidsetMemory -= child.getTidset().getMemoryUsage();
 	}
 
 	private void save(ITNode node) {
+		node.saveSupport();
 		Itemset itemset = node.getItemset();
-		itemset.setTransactioncount(node.getTidset());
 		
 		if(!hash.containsSupersetOf(itemset)){
 			frequentItemsets.addItemset(itemset, itemset.size());
@@ -276,7 +282,7 @@ public class AlgoCharm {
 			//Returns a negative integer, zero, or a positive integer as 
 			// the first argument is less than, equal to, or greater than the second.
 			public int compare(ITNode o1, ITNode o2) {
-				return o1.getTidset().size() - o2.getTidset().size();
+				return o1.getSupport() - o2.getSupport();
 			}
 		});
 	}
@@ -289,6 +295,8 @@ public class AlgoCharm {
 				+ context.size());
 		System.out.println(" Frequent itemsets count : " + frequentItemsets.getItemsetsCount()); 
 		frequentItemsets.printItemsets(context.size());
+		System.out.println(" Tidsets : " + AlgoEclat.getTidsetDescription(useCompactTidsets, useDiffsets)
+				+ ", max size in the tree ~ " + maxTidsetMemory / 1024 + " KB");
 		System.out.println(" Total time ~ " + temps + " ms");
 		System.out
 				.println("===================================================");
@@ -302,4 +310,27 @@ public class AlgoCharm {
 		return hash;
 	}
 
+	/**
+	 * Keep the tids in sorted arrays, bitsets and diffsets instead of Sets of Integers.
+	 * The itemsets found then only keep their support: getTransactionsIds() returns null.
+	 */
+	public void setUseCompactTidsets(boolean useCompactTidsets) {
+		this.useCompactTidsets = useCompactTidsets;
+	}
+
+	/**
+	 * With compact tidsets, use diffsets when they are smaller than tidsets (true by default).
+	 */
+	public void setUseDiffsets(boolean useDiffsets) {
+		this.useDiffsets = useDiffsets;
+	}
+
+	/**
+	 * Returns the estimated maximum size in bytes of the tids of the nodes of the IT-tree
+	 * during the last run.
+	 */
+	public long getMaxTidsetMemory() {
+		return maxTidsetMemory;
+	}
+
 }
@@ -2,10 +2,7 @@ package ca.pfv.spmf.frequentpatterns.eclat_and_charm;
 
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.Map.Entry;
 
 import ca.pfv.spmf.general.datastructures.triangularmatrix.TriangularMatrix;
@@ -16,6 +13,11 @@ import ca.pfv.spmf.general.datastructures.triangularmatrix.TriangularMatrix;
  * This implementation may not be fully optimized. In particular, Zaki
  * proposed various extensions that I have not implemented.
  *
+ * By default, the tids of the itemsets are kept in Sets of Integers, that are also
+ * set on the itemsets found. With setUseCompactTidsets(true), they are kept in sorted
+ * arrays or bitsets chosen by density, and in diffsets when they are smaller (dEclat,
+ * Zaki and Gouda 2003), and the itemsets found only keep their support (see Tidset).
+ *
  * @author Philippe Fournier-Viger, 2009
  */
 public class AlgoEclat {
@@ -30,6 +32,12 @@ public class AlgoEclat {
 	private TriangularMatrix matrix;
 	private boolean useTriangularMatrixOptimization;
 
+	// the representation of the tids
+	private boolean useCompactTidsets = false;
+	private boolean useDiffsets = true;
+	private long tidsetMemory; // for stats: the estimated size of the tids of the tree
+	private long maxTidsetMemory;
+
 	public AlgoEclat(Context context) {
 		this.context = context;
 	}
@@ -44,24 +52,17 @@ public class AlgoEclat {
 		startTimestamp = System.currentTimeMillis();
 		this.minsupRelative = (int) Math.ceil(minsupp * context.size());
 		this.useTriangularMatrixOptimization = useTriangularMatrixOptimization;
+		tidsetMemory = 0;
+		maxTidsetMemory = 0;
 		
-		Set<Integer> allTIDS = new HashSet<Integer>(); 
+		Tidset allTIDS = context.getAllTids(useCompactTidsets); 
 		
 		// (1) First database pass : calculate tidsets of each item.
 		int maxItemId = 0;
-		final Map<Integer, Set<Integer>> mapItemCount = new HashMap<Integer, Set<Integer>>();
-		for(int i=0; i< context.size(); i++){
-			allTIDS.add(i);
-			for(Integer item : context.getObjects().get(i).getItems()){
-				Set<Integer> set = mapItemCount.get(item);
-				if(set  == null){
-					set = new HashSet<Integer>();
-					mapItemCount.put(item, set);
-					if(item > maxItemId){
-						maxItemId = item;
-					}
-				}
-				set.add(i); // add tid
+		final Map<Integer, Tidset> mapItemCount = context.getItemTidsets(useCompactTidsets);
+		for(Integer item : mapItemCount.keySet()){
+			if(item > maxItemId){
+				maxItemId = item;
 			}
 		}
 		
@@ -91,17 +92,21 @@ public class AlgoEclat {
 		tree.setRoot(root);
 		
 		// (3) create childs of the root node.
-		for(Entry<Integer, Set<Integer>> entry : mapItemCount.entrySet()){
+		for(Entry<Integer, Tidset> entry : mapItemCount.entrySet()){
 			// we only add nodes for items that are frequents
 			if(entry.getValue().size() >= minsupRelative){
 				// create the new node
 				Itemset itemset = new Itemset();
 				itemset.addItem(entry.getKey());
 				ITNode newNode = new ITNode(itemset);
-				newNode.setTidset(entry.getValue());
-				newNode.setParent(root);
+				// the diffset of a dense item is smaller than its tidset
+				if(useCompactTidsets && useDiffsets && entry.getValue().size() * 2 > context.size()){
+					newNode.setDiffset(Tidset.minus(allTIDS, entry.getValue(), context.size()), root);
+				}else{
+					newNode.setTidset(entry.getValue());
+				}
 				// add the new node as child of the root node
-				root.getChildNodes().add(newNode); 
+				addChild(root, newNode); 
 			}
 		}
 		
@@ -129,8 +134,7 @@ public class AlgoEclat {
 			if(brother != currNode){
 				ITNode candidate = getCandidate(currNode,brother);
 				if(candidate != null){
-					currNode.getChildNodes().add(candidate);
-					candidate.setParent(currNode);
+					addChild(currNode, candidate);
 				}
 			}
 		}
@@ -157,33 +161,37 @@ public class AlgoEclat {
 			}
 		}
 
-		// create list of common tids.
-		Set<Integer> commonTids = new HashSet<Integer>();
-		for(Integer tid : currNode.getTidset()){
-			if(brother.getTidset().contains(tid)){
-				commonTids.add(tid);
-			}
-		}
+		// create list of common tids (or the diffset).
+		ITNode node = new ITNode(null);
+		node.setTidsOfExtension(currNode, brother, context.size(), useCompactTidsets && useDiffsets);
 		
 		// (2) check if the two itemsets have enough common tids
 		// if not, we don't need to generate a rule for them.
-		if(commonTids.size() >= minsupRelative){
-			Itemset union = currNode.getItemset().union(brother.getItemset());
-			ITNode node = new ITNode(union);
-			node.setTidset(commonTids);
+		if(node.getSupport() >= minsupRelative){
+			node.setItemset(currNode.getItemset().union(brother.getItemset()));
 			return node;
 		}
 		
 		return null;
 	}
 
+	private void addChild(ITNode node, ITNode child) {
+		node.getChildNodes().add(child);
+		child.setParent(node);
+		tidsetMemory += child.getTidset().getMemoryUsage();
+		if(tidsetMemory > maxTidsetMemory){
+			maxTidsetMemory = tidsetMemory;
+		}
+	}
+
 	private void delete(ITNode child) {
 		child.getParent().getChildNodes().remove(child);
+		tidsetMemory -= child.getTidset().getMemoryUsage();
 	}
 
 	private void save(ITNode node) {
+		node.saveSupport();
 		Itemset itemset = node.getItemset();
-		itemset.setTransactioncount(node.getTidset());
 		frequentItemsets.addItemset(itemset, itemset.size());
 	}
 
@@ -193,7 +201,7 @@ public class AlgoEclat {
 			//Returns a negative integer, zero, or a positive integer as 
 			// the first argument is less than, equal to, or greater than the second.
 			public int compare(ITNode o1, ITNode o2) {
-				return o1.getTidset().size() - o2.getTidset().size();
+				return o1.getSupport() - o2.getSupport();
 			}
 		});
 	}
@@ -206,6 +214,8 @@ public class AlgoEclat {
 				+ context.size());
 		System.out.println(" Frequent itemsets count : " + frequentItemsets.getItemsetsCount()); 
 		frequentItemsets.printItemsets(context.size());
+		System.out.println(" Tidsets : " + getTidsetDescription(useCompactTidsets, useDiffsets)
+				+ ", max size in the tree ~ " + maxTidsetMemory / 1024 + " KB");
 		System.out.println(" Total time ~ " + temps + " ms");
 		System.out
 				.println("===================================================");
@@ -214,4 +224,34 @@ public class AlgoEclat {
 	public Itemsets getItemsets() {
 		return frequentItemsets;
 	}
+
+	/**
+	 * Keep the tids in sorted arrays, bitsets and diffsets instead of Sets of Integers.
+	 * The itemsets found then only keep their support: getTransactionsIds() returns null.
+	 */
+	public void setUseCompactTidsets(boolean useCompactTidsets) {
+		this.useCompactTidsets = useCompactTidsets;
+	}
+
+	/**
+	 * With compact tidsets, use diffsets when they are smaller than tidsets (true by default).
+	 */
+	public void setUseDiffsets(boolean useDiffsets) {
+		this.useDiffsets = useDiffsets;
+	}
+
+	/**
+	 * Returns the estimated maximum size in bytes of the tids of the nodes of the IT-tree
+	 * during the last run.
+	 */
+	public long getMaxTidsetMemory() {
+		return maxTidsetMemory;
+	}
+
+	static String getTidsetDescription(boolean useCompactTidsets, boolean useDiffsets) {
+		if(!useCompactTidsets){
+			return "sets of Integers";
+		}
+		return useDiffsets ? "arrays, bitsets and diffsets" : "arrays and bitsets";
+	}
 }
@@ -6,9 +6,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Map.Entry;
 
 /**
  * This class represents a binary context.
@@ -87,4 +90,74 @@ public class Context {
 		return attributes;
 	}
 
+	/**
+	 * Returns the tids of each item (the first database pass of ECLAT and CHARM).
+	 * The tid of a transaction is its position in the context.
+	 * @param compact if true, the tids are in sorted arrays or bitsets chosen by
+	 *        density (see Tidset), else in Sets of Integers.
+	 */
+	public Map<Integer, Tidset> getItemTidsets(boolean compact) {
+		Map<Integer, Tidset> tidsets = new HashMap<Integer, Tidset>();
+		if(!compact){
+			for(int i=0; i< objects.size(); i++){
+				for(Integer item : objects.get(i).getItems()){
+					Tidset.Hash set = (Tidset.Hash) tidsets.get(item);
+					if(set  == null){
+						set = new Tidset.Hash(new HashSet<Integer>());
+						tidsets.put(item, set);
+					}
+					set.getTids().add(i); // add tid
+				}
+			}
+			return tidsets;
+		}
+		// count the tids of each item, then fill an array of that size
+		Map<Integer, int[]> counts = new HashMap<Integer, int[]>();
+		for(Itemset object : objects){
+			for(Integer item : object.getItems()){
+				int[] count = counts.get(item);
+				if(count == null){
+					count = new int[1];
+					counts.put(item, count);
+				}
+				count[0]++;
+			}
+		}
+		Map<Integer, int[]> tids = new HashMap<Integer, int[]>();
+		for(Entry<Integer, int[]> entry : counts.entrySet()){
+			tids.put(entry.getKey(), new int[entry.getValue()[0]]);
+			entry.getValue()[0] = 0;
+		}
+		for(int i=0; i< objects.size(); i++){
+			for(Integer item : objects.get(i).getItems()){
+				int[] count = counts.get(item);
+				tids.get(item)[count[0]++] = i;
+			}
+		}
+		for(Entry<Integer, int[]> entry : tids.entrySet()){
+			int[] array = entry.getValue();
+			tidsets.put(entry.getKey(), Tidset.create(array, array.length, objects.size()));
+		}
+		return tidsets;
+	}
+
+	/**
+	 * Returns the tids of all the transactions.
+	 * @param compact if true, in a bitset, else in a Set of Integers.
+	 */
+	public Tidset getAllTids(boolean compact) {
+		if(!compact){
+			Set<Integer> allTIDS = new HashSet<Integer>();
+			for(int i=0; i< objects.size(); i++){
+				allTIDS.add(i);
+			}
+			return new Tidset.Hash(allTIDS);
+		}
+		int[] allTIDS = new int[objects.size()];
+		for(int i=0; i< objects.size(); i++){
+			allTIDS[i] = i;
+		}
+		return Tidset.create(allTIDS, allTIDS.length, objects.size());
+	}
+
 }
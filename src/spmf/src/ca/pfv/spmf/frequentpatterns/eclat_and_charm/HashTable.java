@@ -36,11 +36,8 @@ public class HashTable {
 	}
 	
 	public int hashCode(Itemset itemset){
-		int hashcode =0;
-		for(Integer tid : itemset.getTransactionsIds()){
-			hashcode += tid;
-		}
-		return (hashcode % size);
+		// the sum of the tids
+		return (int) (itemset.getTidSum() % size);
 	}
 
 }
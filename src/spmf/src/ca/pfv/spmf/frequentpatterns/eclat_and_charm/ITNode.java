@@ -2,13 +2,23 @@ package ca.pfv.spmf.frequentpatterns.eclat_and_charm;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 
+/**
+ * A node of the IT-tree of ECLAT and CHARM: an itemset and its tids.
+ *
+ * The tids are kept either as a tidset, or as a diffset: the tids of the parent node
+ * that are not tids of this node (Zaki and Gouda, "Fast vertical mining using diffsets",
+ * KDD 2003). The support and the sum of the tids of the node are kept with it, so that
+ * they are known without the tidset of a node that has a diffset.
+ */
 public class ITNode {
 	
 	private Itemset itemset;
-	private  Set<Integer> tidset;
+	private Tidset tidset; // the tidset, or the diffset
+	private boolean diffset = false;
+	private int support;
+	private long tidSum; // for the hash table of CHARM
 	
 	private ITNode parent = null;
 	private List<ITNode> childNodes = new ArrayList<ITNode>();
@@ -25,12 +35,88 @@ public class ITNode {
 		this.itemset = itemset;
 	}
 
-	public Set<Integer> getTidset() {
+	/**
+	 * Returns the tidset of this node, or its diffset if isDiffset() is true.
+	 */
+	public Tidset getTidset() {
 		return tidset;
 	}
 
-	public void setTidset(Set<Integer> tidset) {
+	public void setTidset(Tidset tidset) {
 		this.tidset = tidset;
+		this.diffset = false;
+		this.support = tidset.size();
+		this.tidSum = tidset.sum();
+	}
+
+	/**
+	 * Set the diffset of this node, relatively to a parent node.
+	 */
+	public void setDiffset(Tidset diffset, ITNode parent) {
+		this.tidset = diffset;
+		this.diffset = true;
+		this.support = parent.support - diffset.size();
+		this.tidSum = parent.tidSum - diffset.sum();
+	}
+
+	public boolean isDiffset() {
+		return diffset;
+	}
+
+	public int getSupport() {
+		return support;
+	}
+
+	public long getTidSum() {
+		return tidSum;
+	}
+
+	/**
+	 * Set the tids of this node, the extension of a node x with its brother y.
+	 * When both x and y have a tidset, the tids are kept as a tidset or as a diffset
+	 * relatively to x, whichever is smaller. Once a node has a diffset, its children
+	 * have diffsets too.
+	 * @param x the node extended, that becomes the parent of this node
+	 * @param y a brother of x
+	 * @param transactionCount the number of transactions of the database
+	 * @param useDiffsets if false, only tidsets are used
+	 */
+	public void setTidsOfExtension(ITNode x, ITNode y, int transactionCount, boolean useDiffsets) {
+		if(!x.diffset && !y.diffset){
+			// t(xy) = t(x) n t(y), d(xy) = t(x) - t(y)
+			Tidset tids = Tidset.intersect(x.tidset, y.tidset, transactionCount);
+			if(useDiffsets && tids.size() > x.support - tids.size()){
+				setDiffset(Tidset.minus(x.tidset, y.tidset, transactionCount), x);
+			}else{
+				setTidset(tids);
+			}
+		}else if(!x.diffset){
+			// t(xy) = t(x) - d(y), d(xy) = t(x) n d(y)
+			Tidset tids = Tidset.minus(x.tidset, y.tidset, transactionCount);
+			if(useDiffsets && tids.size() > x.support - tids.size()){
+				setDiffset(Tidset.intersect(x.tidset, y.tidset, transactionCount), x);
+			}else{
+				setTidset(tids);
+			}
+		}else if(y.diffset){
+			// d(xy) = d(y) - d(x)
+			setDiffset(Tidset.minus(y.tidset, x.tidset, transactionCount), x);
+		}else{
+			// t(xy) = t(y) - d(x)
+			setTidset(Tidset.minus(y.tidset, x.tidset, transactionCount));
+		}
+	}
+
+	/**
+	 * Set the support of the itemset of this node. Its tids are set too if they are
+	 * kept in a Set of Integers (see Tidset.Hash).
+	 */
+	public void saveSupport() {
+		if(!diffset && tidset instanceof Tidset.Hash){
+			itemset.setTransactioncount(((Tidset.Hash) tidset).getTids());
+		}else{
+			itemset.setSupport(support, tidSum);
+		}
 	}
 
 	public List<ITNode> getChildNodes() {
@@ -12,13 +12,16 @@ import java.util.Set;
 public class Itemset {
 	private final Set<Integer> items = new HashSet<Integer>(); // ordered
 	private Set<Integer> tidset = new HashSet<Integer>();
+	// when the tids are not kept (see setSupport())
+	private int support = -1;
+	private long tidSum;
 	boolean maximal = true;
 
 	public Itemset() {
 	}
 
 	public double getRelativeSupport(int nbObject) {
-		return ((double) tidset.size()) / ((double) nbObject);
+		return ((double) getAbsoluteSupport()) / ((double) nbObject);
 	}
 
 	public String getSupportRelatifFormatted(int nbObject) {
@@ -30,7 +33,33 @@ public class Itemset {
 	}
 
 	public int getAbsoluteSupport() {
-		return tidset.size();
+		return tidset != null ? tidset.size() : support;
+	}
+
+	/**
+	 * Returns the sum of the tids of this itemset.
+	 */
+	public long getTidSum() {
+		if(tidset == null){
+			return tidSum;
+		}
+		long sum = 0;
+		for(Integer tid : tidset){
+			sum += tid;
+		}
+		return sum;
+	}
+
+	/**
+	 * Set the support of this itemset without keeping its tids.
+	 * getTransactionsIds() then returns null.
+	 * @param support the number of tids
+	 * @param tidSum the sum of the tids
+	 */
+	public void setSupport(int support, long tidSum) {
+		this.tidset = null;
+		this.support = support;
+		this.tidSum = tidSum;
 	}
 
 	// APRIORI
@@ -0,0 +1,327 @@
+package ca.pfv.spmf.frequentpatterns.eclat_and_charm;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of transaction ids (tids), for the nodes of the IT-tree of ECLAT and CHARM.
+ *
+ * There are three representations:
+ *  - a Set of Integers, as in the original implementation (Tidset.Hash);
+ *  - a sorted array of ints (Tidset.Array), for sparse sets;
+ *  - a bitset stored in an array of longs, with one bit per transaction (Tidset.Bits),
+ *    for dense sets.
+ * intersect() and minus() choose the representation of their result by its density:
+ * a bitset takes n / 8 bytes for n transactions and an array 4 bytes per tid, so a set
+ * of more than n / 32 tids is a bitset. The result is a Set of Integers if one of the sets
+ * is a Set of Integers.
+ *
+ * A node can also keep a diffset (the tids of its parent that it does not have) in a
+ * Tidset (see ITNode).
+ */
+public abstract class Tidset {
+
+	/**
+	 * Returns the number of tids.
+	 */
+	public abstract int size();
+
+	/**
+	 * Returns the sum of the tids.
+	 */
+	public abstract long sum();
+
+	/**
+	 * Check if the set contains a tid.
+	 */
+	public abstract boolean contains(int tid);
+
+	/**
+	 * Returns an estimation of the number of bytes used by the set.
+	 */
+	public abstract long getMemoryUsage();
+
+	/**
+	 * Create a set of tids, in the representation that suits its density.
+	 * @param tids the tids, sorted
+	 * @param count the number of tids in the array
+	 * @param transactionCount the number of transactions of the database
+	 */
+	public static Tidset create(int[] tids, int count, int transactionCount) {
+		if(isDense(count, transactionCount)){
+			long[] words = new long[wordCount(transactionCount)];
+			for(int i = 0; i < count; i++){
+				words[tids[i] >>> 6] |= 1L << tids[i];
+			}
+			return new Bits(words, count);
+		}
+		return new Array(Arrays.copyOf(tids, count));
+	}
+
+	/**
+	 * Returns the tids that are in both sets.
+	 * @param transactionCount the number of transactions of the database
+	 */
+	public static Tidset intersect(Tidset a, Tidset b, int transactionCount) {
+		if(a instanceof Hash || b instanceof Hash){
+			// go through the Set of Integers, the other set may be of any kind
+			Tidset other = a instanceof Hash ? b : a;
+			Set<Integer> common = new HashSet<Integer>();
+			for(Integer tid : ((Hash) (a instanceof Hash ? a : b)).tids){
+				if(other.contains(tid)){
+					common.add(tid);
+				}
+			}
+			return new Hash(common);
+		}
+		if(a instanceof Bits && b instanceof Bits){
+			long[] wordsA = ((Bits) a).words;
+			long[] wordsB = ((Bits) b).words;
+			long[] words = new long[wordsA.length];
+			for(int i = 0; i < words.length; i++){
+				words[i] = wordsA[i] & wordsB[i];
+			}
+			return fromWords(words, transactionCount);
+		}
+		if(a instanceof Bits){
+			return filter((Array) b, a, true, transactionCount);
+		}
+		if(b instanceof Bits){
+			return filter((Array) a, b, true, transactionCount);
+		}
+		// merge two sorted arrays
+		int[] tidsA = ((Array) a).tids;
+		int[] tidsB = ((Array) b).tids;
+		int[] tids = new int[Math.min(tidsA.length, tidsB.length)];
+		int count = 0;
+		for(int i = 0, j = 0; i < tidsA.length && j < tidsB.length; ){
+			if(tidsA[i] < tidsB[j]){
+				i++;
+			}else if(tidsA[i] > tidsB[j]){
+				j++;
+			}else{
+				tids[count++] = tidsA[i];
+				i++;
+				j++;
+			}
+		}
+		return create(tids, count, transactionCount);
+	}
+
+	/**
+	 * Returns the tids of a that are not in b.
+	 * @param transactionCount the number of transactions of the database
+	 */
+	public static Tidset minus(Tidset a, Tidset b, int transactionCount) {
+		if(a instanceof Hash){
+			Set<Integer> difference = new HashSet<Integer>();
+			for(Integer tid : ((Hash) a).tids){
+				if(!b.contains(tid)){
+					difference.add(tid);
+				}
+			}
+			return new Hash(difference);
+		}
+		if(b instanceof Hash){
+			Set<Integer> tids = ((Hash) b).tids;
+			Set<Integer> difference = new HashSet<Integer>();
+			if(a instanceof Bits){
+				long[] words = ((Bits) a).words;
+				for(int w = 0; w < words.length; w++){
+					for(long word = words[w]; word != 0; word &= word - 1){
+						addIfAbsent((w << 6) + Long.numberOfTrailingZeros(word), tids, difference);
+					}
+				}
+			}else{
+				for(int tid : ((Array) a).tids){
+					addIfAbsent(tid, tids, difference);
+				}
+			}
+			return new Hash(difference);
+		}
+		if(a instanceof Bits){
+			long[] words = ((Bits) a).words.clone();
+			if(b instanceof Bits){
+				long[] wordsB = ((Bits) b).words;
+				for(int i = 0; i < words.length; i++){
+					words[i] &= ~wordsB[i];
+				}
+			}else{
+				for(int tid : ((Array) b).tids){
+					words[tid >>> 6] &= ~(1L << tid);
+				}
+			}
+			return fromWords(words, transactionCount);
+		}
+		if(b instanceof Bits){
+			return filter((Array) a, b, false, transactionCount);
+		}
+		// merge two sorted arrays
+		int[] tidsA = ((Array) a).tids;
+		int[] tidsB = ((Array) b).tids;
+		int[] tids = new int[tidsA.length];
+		int count = 0;
+		int j = 0;
+		for(int i = 0; i < tidsA.length; i++){
+			while(j < tidsB.length && tidsB[j] < tidsA[i]){
+				j++;
+			}
+			if(j == tidsB.length || tidsB[j] != tidsA[i]){
+				tids[count++] = tidsA[i];
+			}
+		}
+		return create(tids, count, transactionCount);
+	}
+
+	private static void addIfAbsent(int tid, Set<Integer> tids, Set<Integer> difference) {
+		if(!tids.contains(tid)){
+			difference.add(tid);
+		}
+	}
+
+	/**
+	 * Returns the tids of an array that are (or are not) in a set.
+	 */
+	private static Tidset filter(Array array, Tidset set, boolean in, int transactionCount) {
+		int[] tids = new int[array.tids.length];
+		int count = 0;
+		for(int tid : array.tids){
+			if(set.contains(tid) == in){
+				tids[count++] = tid;
+			}
+		}
+		return create(tids, count, transactionCount);
+	}
+
+	/**
+	 * Returns a bitset, or an array if the bitset is sparse.
+	 */
+	private static Tidset fromWords(long[] words, int transactionCount) {
+		int count = 0;
+		for(long word : words){
+			count += Long.bitCount(word);
+		}
+		if(isDense(count, transactionCount)){
+			return new Bits(words, count);
+		}
+		int[] tids = new int[count];
+		int i = 0;
+		for(int w = 0; w < words.length; w++){
+			for(long word = words[w]; word != 0; word &= word - 1){
+				tids[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+			}
+		}
+		return new Array(tids);
+	}
+
+	private static boolean isDense(int count, int transactionCount) {
+		return (long) count * 32 > transactionCount;
+	}
+
+	private static int wordCount(int transactionCount) {
+		return (transactionCount + 63) >>> 6;
+	}
+
+	/**
+	 * The tids in a Set of Integers.
+	 */
+	public static class Hash extends Tidset {
+		final Set<Integer> tids;
+
+		public Hash(Set<Integer> tids) {
+			this.tids = tids;
+		}
+
+		public Set<Integer> getTids() {
+			return tids;
+		}
+
+		public int size() {
+			return tids.size();
+		}
+
+		public long sum() {
+			long sum = 0;
+			for(Integer tid : tids){
+				sum += tid;
+			}
+			return sum;
+		}
+
+		public boolean contains(int tid) {
+			return tids.contains(tid);
+		}
+
+		public long getMemoryUsage() {
+			// an Integer and a HashMap entry per tid, and the table
+			return 56L * tids.size() + 16;
+		}
+	}
+
+	/**
+	 * The tids in a sorted array of ints.
+	 */
+	public static class Array extends Tidset {
+		final int[] tids;
+
+		Array(int[] tids) {
+			this.tids = tids;
+		}
+
+		public int size() {
+			return tids.length;
+		}
+
+		public long sum() {
+			long sum = 0;
+			for(int tid : tids){
+				sum += tid;
+			}
+			return sum;
+		}
+
+		public boolean contains(int tid) {
+			return Arrays.binarySearch(tids, tid) >= 0;
+		}
+
+		public long getMemoryUsage() {
+			return 4L * tids.length + 16;
+		}
+	}
+
+	/**
+	 * The tids in a bitset, one bit per transaction.
+	 */
+	public static class Bits extends Tidset {
+		final long[] words;
+		final int count;
+
+		Bits(long[] words, int count) {
+			this.words = words;
+			this.count = count;
+		}
+
+		public int size() {
+			return count;
+		}
+
+		public long sum() {
+			long sum = 0;
+			for(int w = 0; w < words.length; w++){
+				for(long word = words[w]; word != 0; word &= word - 1){
+					sum += (w << 6) + Long.numberOfTrailingZeros(word);
+				}
+			}
+			return sum;
+		}
+
+		public boolean contains(int tid) {
+			return (tid >>> 6) < words.length && (words[tid >>> 6] & (1L << tid)) != 0;
+		}
+
+		public long getMemoryUsage() {
+			return 8L * words.length + 16;
+		}
+	}
+}
@@ -1,16 +1,42 @@
 package ca.pfv.spmf.frequentpatterns.fpgrowth;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This is an implementation of the FPGROWTH algorithm (Han et al., 2004) 
  * based on the description in the book of Han & Kamber.
  * 
+ * By default the FP-trees are made of FPNode objects (FPTree). With setUseArrayTree(true) 
+ * they are stored in int arrays instead (FPTreeArray), which takes a fraction of the 
+ * memory and builds faster on large databases. Both find the same itemsets; with the 
+ * array trees the items of an itemset are always in decreasing order of rank (from the 
+ * least to the most frequent item).
+ * 
+ * The conditional trees of the items of the initial FP-tree are independent, so 
+ * runAlgorithm(database, minsupp, threadCount) mines them on several threads, each item 
+ * into its own Itemsets; they are merged in the order of the sequential algorithm. With 
+ * setItemGroup(group, groupCount) only the itemsets whose least frequent item is in the 
+ * given group are mined, from the transactions cut after their last item of the group, 
+ * as in PFP (Li et al., 2008). AlgoPFPGrowth runs one such group per JVM.
+ * 
+ * The runAlgorithm() methods taking an ItemsetSink give each itemset to the sink as soon 
+ * as it is found instead of keeping it. The itemset being extended is kept in one int 
+ * array (Prefix) rather than cloned at each step, so the only objects created per 
+ * itemset are those the sink creates. With a sink, the items are mined from the most 
+ * frequent one, so that every itemset comes after its subsets (see ItemsetSink).
+ * 
  * @author Philippe Fournier-Viger, 2010
  */
 public class AlgoFPGrowth {
@@ -21,13 +47,97 @@ public class AlgoFPGrowth {
 	public int relativeMinsupp;
 	private int contextSize=0;
 	
+	private boolean useArrayTree = false;
+	private int treeNodeCount = 0; // for stats, array trees only
+	private long treeMemory = 0; // for stats, array trees only
+	
+	private int group = 0; // the item group to mine, if groupCount > 1
+	private int groupCount = 1;
+	
+	private Map<Integer, Integer> mapRank; // rank of each frequent item in the header list
+	private boolean subsetsFirst = false; // mine the items from the most frequent one
+	private long itemsetCount = 0; // for stats
+	
 
 	public AlgoFPGrowth() {
 		
 	}
+	
+	/**
+	 * Selects the FP-tree implementation.
+	 * @param useArrayTree true for FPTreeArray, false for FPTree (the default)
+	 */
+	public void setUseArrayTree(boolean useArrayTree) {
+		this.useArrayTree = useArrayTree;
+	}
+	
+	/**
+	 * Only mine the itemsets whose least frequent item belongs to an item group. The 
+	 * frequent items are dealt to groupCount groups in the order of the header list, so 
+	 * running every group gives every frequent itemset exactly once.
+	 * @param group the group to mine, from 0 to groupCount - 1
+	 * @param groupCount the number of groups
+	 */
+	public void setItemGroup(int group, int groupCount) {
+		this.group = group;
+		this.groupCount = groupCount;
+	}
 
 	public Itemsets runAlgorithm(Database context, double minsupp) {
+		return runAlgorithm(context, minsupp, 1);
+	}
+	
+	/**
+	 * Run the algorithm with several threads. The itemsets found are the same as with the 
+	 * sequential version, in the same order.
+	 * @param context the transaction database
+	 * @param minsupp the minimum support (a fraction of the transactions)
+	 * @param threadCount the number of mining threads (1 mines on the calling thread)
+	 * @return the frequent itemsets
+	 */
+	public Itemsets runAlgorithm(Database context, double minsupp, int threadCount) {
+		try {
+			mine(context, minsupp, threadCount, null);
+		} catch (IOException e) {
+			// the itemsets are only kept in memory
+			throw new RuntimeException(e);
+		}
+		return frequentItemsets; // Return all frequent itemsets found!
+	}
+	
+	/**
+	 * Run the algorithm, giving the itemsets to a sink as they are found. Every itemset 
+	 * is found after its subsets.
+	 * @param context the transaction database
+	 * @param minsupp the minimum support (a fraction of the transactions)
+	 * @param sink receives the frequent itemsets
+	 * @throws IOException if the sink fails
+	 */
+	public void runAlgorithm(Database context, double minsupp, ItemsetSink sink) throws IOException {
+		runAlgorithm(context, minsupp, 1, sink);
+	}
+	
+	/**
+	 * Run the algorithm with several threads, giving the itemsets to a sink as they are 
+	 * found. The sink is called by one thread at a time, but the itemsets found from 
+	 * different items of the initial FP-tree are interleaved.
+	 * @param context the transaction database
+	 * @param minsupp the minimum support (a fraction of the transactions)
+	 * @param threadCount the number of mining threads (1 mines on the calling thread)
+	 * @param sink receives the frequent itemsets
+	 * @throws IOException if the sink fails
+	 */
+	public void runAlgorithm(Database context, double minsupp, int threadCount, ItemsetSink sink) throws IOException {
+		mine(context, minsupp, threadCount, threadCount <= 1 ? sink : new SynchronizedSink(sink));
+	}
+	
+	/**
+	 * Mines the itemsets into the sink, or into frequentItemsets if the sink is null.
+	 */
+	private void mine(Database context, double minsupp, int threadCount, ItemsetSink sink) throws IOException {
 		startTimestamp = System.currentTimeMillis();
+		subsetsFirst = sink != null;
+		itemsetCount = 0;
 		
 		this.relativeMinsupp = (int) Math.ceil(minsupp * context.size());
 		
@@ -55,20 +165,67 @@ public class AlgoFPGrowth {
 		
 		// (3) PREPROCESSING: Sort items in each transaction in a descending order 
 		// according to their frequency in the database.
+		Comparator<Integer> supportOrder = new Comparator<Integer>(){
+			public int compare(Integer item1, Integer item2){
+				int compare = mapSupport.get(item2) - mapSupport.get(item1);
+				if(compare ==0){ // if the same frequency, we check the lexical ordering!
+					return (item1 - item2);
+				}
+				return compare;
+			}
+		};
 		for(Itemset itemset : context.getObjects()){
-			Collections.sort(itemset.getItems(), new Comparator<Integer>(){
-				public int compare(Integer item1, Integer item2){
-					int compare = mapSupport.get(item2) - mapSupport.get(item1);
-					if(compare ==0){ // if the same frequency, we check the lexical ordering!
-						return (item1 - item2);
-					}
-					return compare;
+			Collections.sort(itemset.getItems(), supportOrder);
+		}
+		
+		// The rank of each frequent item in the header list of the initial FP-tree
+		List<Integer> headerList = new ArrayList<Integer>();
+		for(Map.Entry<Integer, Integer> entry : mapSupport.entrySet()){
+			if(entry.getValue() >= relativeMinsupp){
+				headerList.add(entry.getKey());
+			}
+		}
+		Collections.sort(headerList, supportOrder);
+		mapRank = new HashMap<Integer, Integer>();
+		for(int rank = 0; rank < headerList.size(); rank++){
+			mapRank.put(headerList.get(rank), rank);
+		}
+		
+		// (3b) ITEM GROUPS: an itemset is mined from the prefix paths of its least frequent
+		// item, so a group only needs each transaction up to its last item of the group.
+		if(groupCount > 1){
+			for(Itemset itemset : context.getObjects()){
+				List<Integer> items = itemset.getItems();
+				int end = items.size();
+				while(end > 0 && mapRank.get(items.get(end - 1)) % groupCount != group){
+					end--;
 				}
-			});
+				items.subList(end, items.size()).clear();
+			}
 		}
+		
+		contextSize = context.size();
+		
+		// (4) Build the initial FP-TREE, and (5) mine the conditional FP-tree of each item
+		// Initially, the prefix alpha is empty.
+		List<ItemTask> tasks;
+		if(useArrayTree){
+			tasks = buildArrayTree(context, headerList);
+		}else{
+			tasks = buildTree(context, mapSupport);
+		}
+		context = null;
+		runTasks(tasks, threadCount, sink);
+		
+		endTime= System.currentTimeMillis();
+	}
 	
-		// (4) Build the initial FP-TREE
-		FPTree tree = new FPTree();
+	/**
+	 * Builds the initial FP-tree and creates the mining task of each of its items, in the
+	 * order of the sequential algorithm.
+	 */
+	private List<ItemTask> buildTree(Database context, final Map<Integer, Integer> mapSupport) {
+		final FPTree tree = new FPTree();
 		// We add each transactions in the FP-Tree one by one
 		for(Itemset transaction : context.getObjects()){
 			tree.addTransaction(transaction); 
@@ -76,29 +233,298 @@ public class AlgoFPGrowth {
 		// We create the header table for the tree
 		tree.createHeaderList(mapSupport);
 		
-		contextSize = context.size();
-		context = null;
-
+		// We process each item of the header table list in reverse order.
+		List<ItemTask> tasks = new ArrayList<ItemTask>();
+		for(final Integer item : headerOrder(tree)){
+			if(mapRank.get(item) % groupCount == group){
+				tasks.add(new ItemTask(){
+					void mine() throws IOException {
+						mineItem(tree, item, prefix, contextSize, mapSupport);
+					}
+				});
+			}
+		}
+		return tasks;
+	}
+	
+	/**
+	 * Same as buildTree() with an array FP-tree.
+	 */
+	private List<ItemTask> buildArrayTree(Database context, List<Integer> headerList) {
+		int[] itemIDs = new int[headerList.size()];
+		for(int rank = 0; rank < itemIDs.length; rank++){
+			itemIDs[rank] = headerList.get(rank);
+		}
 		
-		// (5) We start to mine the FP-Tree by calling the recursive method.
-		// Initially, the prefix alpha is empty.
-		Itemset prefixAlpha = new Itemset();
-		prefixAlpha.setTransactioncount(contextSize);		
-		fpgrowth(tree, prefixAlpha, mapSupport);
+		final FPTreeArray tree = new FPTreeArray(itemIDs, context.size() + 1);
+		int[] ranks = new int[itemIDs.length];
+		for(Itemset transaction : context.getObjects()){
+			List<Integer> items = transaction.getItems();
+			for(int i = 0; i < items.size(); i++){
+				ranks[i] = mapRank.get(items.get(i));
+			}
+			tree.addPath(ranks, 0, items.size(), 1);
+		}
+		treeNodeCount = tree.getNodeCount();
+		treeMemory = tree.getMemoryUsage();
 		
-		endTime= System.currentTimeMillis();
+		List<ItemTask> tasks = new ArrayList<ItemTask>();
+		for(int i = 0; i < itemIDs.length; i++){
+			final int rank = subsetsFirst ? i : itemIDs.length - 1 - i;
+			if(rank % groupCount == group){
+				tasks.add(new ItemTask(){
+					void mine() throws IOException {
+						int itemCount = tree.getItemCount();
+						mineRank(tree, rank, prefix, contextSize, 
+								new int[itemCount], new int[itemCount], new int[itemCount], new int[itemCount]);
+					}
+				});
+			}
+		}
+		return tasks;
+	}
+	
+	/**
+	 * Mines the itemsets found from one item of the initial FP-tree. Without a sink, the 
+	 * task keeps its itemsets in its own Itemsets so that several items can be mined at 
+	 * the same time.
+	 */
+	private abstract class ItemTask implements Callable<Itemsets> {
+		Itemsets output;
+		Prefix prefix;
 		
-		return frequentItemsets; // Return all frequent itemsets found!
+		public Itemsets call() throws IOException {
+			mine();
+			return output;
+		}
+		
+		abstract void mine() throws IOException;
+	}
+	
+	/**
+	 * Runs the tasks. Without a sink, their itemsets are added to frequentItemsets in the 
+	 * order of the tasks.
+	 */
+	private void runTasks(List<ItemTask> tasks, int threadCount, ItemsetSink sink) throws IOException {
+		for(ItemTask task : tasks){
+			if(sink == null){
+				task.output = new Itemsets("FREQUENT ITEMSETS");
+				task.prefix = new Prefix(new ItemsetMemorySink(task.output));
+			}else{
+				task.prefix = new Prefix(sink);
+			}
+		}
+		
+		if(threadCount <= 1){
+			for(ItemTask task : tasks){
+				task.call();
+				addAll(task);
+			}
+			return;
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<Itemsets>> results = executor.invokeAll(tasks);
+			for(int i = 0; i < tasks.size(); i++){
+				results.get(i).get();
+				addAll(tasks.get(i));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while mining", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException("mining task failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private void addAll(ItemTask task) {
+		itemsetCount += task.prefix.itemsetCount;
+		if(task.output != null){
+			for(List<Itemset> level : task.output.getLevels()){
+				for(Itemset itemset : level){
+					frequentItemsets.addItemset(itemset, itemset.size());
+				}
+			}
+			task.output = null;
+		}
+	}
+	
+	/**
+	 * The itemset "alpha" that the recursive methods extend. An item is pushed before 
+	 * mining the conditional tree of beta = alpha + item and popped after.
+	 */
+	private static class Prefix {
+		final ItemsetSink sink;
+		int[] items = new int[16];
+		int length = 0;
+		long itemsetCount = 0;
+		
+		Prefix(ItemsetSink sink){
+			this.sink = sink;
+		}
+		
+		void push(int item){
+			if(length == items.length){
+				items = Arrays.copyOf(items, length * 2);
+			}
+			items[length++] = item;
+		}
+		
+		void pop(){
+			length--;
+		}
+		
+		/**
+		 * Gives the current itemset to the sink.
+		 */
+		void save(int support) throws IOException {
+			sink.itemsetFound(items, length, support);
+			itemsetCount++;
+		}
+	}
+	
+	/**
+	 * Lets several mining threads share a sink.
+	 */
+	private static class SynchronizedSink implements ItemsetSink {
+		private final ItemsetSink sink;
+		
+		SynchronizedSink(ItemsetSink sink){
+			this.sink = sink;
+		}
+		
+		public synchronized void itemsetFound(int[] items, int length, int support) throws IOException {
+			sink.itemsetFound(items, length, support);
+		}
+	}
+	
+	/**
+	 * Returns the items of the header list of a tree in the order they are mined: from the 
+	 * least frequent one, or with a sink from the most frequent one in the database.
+	 */
+	private List<Integer> headerOrder(FPTree tree) {
+		List<Integer> order = new ArrayList<Integer>(tree.headerList);
+		if(subsetsFirst){
+			Collections.sort(order, new Comparator<Integer>(){
+				public int compare(Integer item1, Integer item2){
+					return mapRank.get(item1) - mapRank.get(item2);
+				}
+			});
+		}else{
+			Collections.reverse(order);
+		}
+		return order;
+	}
+	
+	/**
+	 * This method mines pattern from an array FP-tree recursively. As in 
+	 * fpgrowthMoreThanOnePath(), the items are processed from the least frequent one 
+	 * (from the most frequent one with a sink). The conditional tree of an item only has 
+	 * the items that are frequent in its prefix paths, renumbered with consecutive ranks 
+	 * in the same order.
+	 * @param tree  The FP-tree
+	 * @param prefix  The current prefix "alpha"
+	 * @param prefixSupport  The support of the prefix
+	 */
+	private void fpgrowthArray(FPTreeArray tree, Prefix prefix, int prefixSupport) throws IOException {
+		int itemCount = tree.getItemCount();
+		int[] supportBeta = new int[itemCount];
+		int[] rankBeta = new int[itemCount];
+		int[] touched = new int[itemCount];  // items having a support in supportBeta
+		int[] path = new int[itemCount];
+		
+		for(int i = 0; i < itemCount; i++){
+			int rank = subsetsFirst ? i : itemCount - 1 - i;
+			mineRank(tree, rank, prefix, prefixSupport, supportBeta, rankBeta, touched, path);
+		}
+	}
+	
+	/**
+	 * Mines the itemsets made of the prefix, an item of an array FP-tree and items of its 
+	 * prefix paths. The arrays are work space of the size of the tree's item count.
+	 */
+	private void mineRank(FPTreeArray tree, int rank, Prefix prefix, int prefixSupport, 
+			int[] supportBeta, int[] rankBeta, int[] touched, int[] path) throws IOException {
+		int support = tree.support[rank];
+		// if the item is not frequent, we skip it
+		if(support < relativeMinsupp){
+			return;
+		}
+		// Create Beta by concatening Alpha with the current item
+		// and add it to the list of frequent patterns
+		int betaSupport = Math.min(prefixSupport, support);
+		prefix.push(tree.getItemID(rank));
+		prefix.save(betaSupport);
+		
+		// (A) Calculate the frequency of each item in the prefix paths,
+		// following the node links of the item and the parents of each node
+		int touchedCount = 0;
+		int pathNodeCount = 0;
+		for(int node = tree.headerFirst[rank]; node != 0; node = tree.nodeLink[node]){
+			int pathCount = tree.counter[node];
+			for(int parent = tree.parent[node]; parent != 0; parent = tree.parent[parent]){
+				int item = tree.item[parent];
+				if(supportBeta[item] == 0){
+					touched[touchedCount++] = item;
+				}
+				supportBeta[item] += pathCount;
+				pathNodeCount++;
+			}
+		}
+		Arrays.sort(touched, 0, touchedCount);
+		int[] itemIDsBeta = new int[touchedCount];
+		int frequentCount = 0;
+		for(int i = 0; i < touchedCount; i++){
+			int item = touched[i];
+			if(supportBeta[item] >= relativeMinsupp){
+				itemIDsBeta[frequentCount] = tree.getItemID(item);
+				rankBeta[item] = frequentCount++;
+			}else{
+				rankBeta[item] = -1;
+			}
+			supportBeta[item] = 0;
+		}
+		if(frequentCount == 0){
+			prefix.pop();
+			return;
+		}
+		
+		// (B) Construct beta's conditional FP-Tree
+		FPTreeArray treeBeta = new FPTreeArray(Arrays.copyOf(itemIDsBeta, frequentCount), 
+				Math.min(pathNodeCount + 1, tree.getNodeCount()));
+		for(int node = tree.headerFirst[rank]; node != 0; node = tree.nodeLink[node]){
+			// the prefix path is filled from the end, to get it from the root down
+			int start = path.length;
+			for(int parent = tree.parent[node]; parent != 0; parent = tree.parent[parent]){
+				int item = rankBeta[tree.item[parent]];
+				if(item >= 0){
+					path[--start] = item;
+				}
+			}
+			if(start < path.length){
+				treeBeta.addPath(path, start, path.length, tree.counter[node]);
+			}
+		}
+		
+		// Mine recursively the Beta tree.
+		fpgrowthArray(treeBeta, prefix, betaSupport);
+		prefix.pop();
 	}
-
 
 	/**
 	 * This method mines pattern from a Prefix-Tree recursively
 	 * @param tree  The Prefix Tree
 	 * @param prefix  The current prefix "alpha"
+	 * @param prefixSupport The support of the prefix
 	 * @param mapSupport The frequency of each item in the prefix tree.
 	 */
-	private void fpgrowth(FPTree tree, Itemset prefixAlpha, Map<Integer, Integer> mapSupport) {
+	private void fpgrowth(FPTree tree, Prefix prefix, int prefixSupport, Map<Integer, Integer> mapSupport) throws IOException {
 //		// (5)  Apply the FP-BONSAI optimization
 //		pruning(tree, prefixAlpha.getAbsoluteSupport(), mapSupport);
 		
@@ -110,13 +536,13 @@ public class AlgoFPGrowth {
 			if(node.nodeLink == null){ 
 				// That means that there is a single path, so we 
 				// add all combinations of this path, concatenated with the prefix "alpha", to the set of patterns found.
-				addAllCombinationsForPathAndPrefix(node, prefixAlpha); // CORRECT?
+				addAllCombinationsForPathAndPrefix(node, prefix); // CORRECT?
 			}else{
 				// There is more than one path
-				fpgrowthMoreThanOnePath(tree, prefixAlpha, mapSupport);
+				fpgrowthMoreThanOnePath(tree, prefix, prefixSupport, mapSupport);
 			}
 		}else{ // There is more than one path
-			fpgrowthMoreThanOnePath(tree, prefixAlpha, mapSupport);
+			fpgrowthMoreThanOnePath(tree, prefix, prefixSupport, mapSupport);
 		}
 	}
 	
@@ -199,85 +625,97 @@ public class AlgoFPGrowth {
 	 * Mine an FP-Tree having more than one path.
 	 * @param tree  the FP-tree
 	 * @param prefix  the current prefix, named "alpha"
+	 * @param prefixSupport the support of the prefix
 	 * @param mapSupport the frequency of items in the FP-Tree
 	 */
-	private void fpgrowthMoreThanOnePath(FPTree tree, Itemset prefixAlpha, Map<Integer, Integer> mapSupport) {
+	private void fpgrowthMoreThanOnePath(FPTree tree, Prefix prefix, int prefixSupport, Map<Integer, Integer> mapSupport) throws IOException {
 		// We process each frequent item in the header table list of the tree in reverse order.
-		for(int i= tree.headerList.size()-1; i>=0; i--){
-			Integer item = tree.headerList.get(i);
-			
-			int support = mapSupport.get(item);
-			// if the item is not frequent, we skip it
-			if(support <  relativeMinsupp){
-				continue;
-			}
-			// Create Beta by concatening Alpha with the current item
-			// and add it to the list of frequent patterns
-			Itemset beta = prefixAlpha.cloneItemset();
-			beta.addItem(item);
-			if(prefixAlpha.getAbsoluteSupport() < support){
-				beta.setTransactioncount(prefixAlpha.getAbsoluteSupport());
-			}else{
-				beta.setTransactioncount(support);
-			}
-			frequentItemsets.addItemset(beta, beta.size());
-			
-			// === Construct beta's conditional pattern base ===
-			// It is a subdatabase which consists of the set of prefix paths
-			// in the FP-tree co-occuring with the suffix pattern.
-			List<List<FPNode>> prefixPaths = new ArrayList<List<FPNode>>();
-			FPNode path = tree.mapItemNodes.get(item);
-			while(path != null){
-				// if the path is not just the root node
-				if(path.parent.itemID != -1){
-					// create the prefixpath
-					List<FPNode> prefixPath = new ArrayList<FPNode>();
-					// add this node.
-					prefixPath.add(path);   // NOTE: we add it just to keep its support,
-					// actually it should not be part of the prefixPath
-					
-					//Recursively add all the parents of this node.
-					FPNode parent = path.parent;
-					while(parent.itemID != -1){
-						prefixPath.add(parent);
-						parent = parent.parent;
-					}
-					prefixPaths.add(prefixPath);
+		for(Integer item : headerOrder(tree)){
+			mineItem(tree, item, prefix, prefixSupport, mapSupport);
+		}
+	}
+	
+	/**
+	 * Mines the itemsets made of the prefix, an item of the FP-tree and items of its 
+	 * prefix paths.
+	 * @param tree  the FP-tree
+	 * @param item  the item
+	 * @param prefix  the current prefix, named "alpha"
+	 * @param prefixSupport the support of the prefix
+	 * @param mapSupport the frequency of items in the FP-Tree
+	 */
+	private void mineItem(FPTree tree, Integer item, Prefix prefix, int prefixSupport, Map<Integer, Integer> mapSupport) throws IOException {
+		int support = mapSupport.get(item);
+		// if the item is not frequent, we skip it
+		if(support <  relativeMinsupp){
+			return;
+		}
+		// Create Beta by concatening Alpha with the current item
+		// and add it to the list of frequent patterns
+		int betaSupport;
+		if(prefixSupport < support){
+			betaSupport = prefixSupport;
+		}else{
+			betaSupport = support;
+		}
+		prefix.push(item);
+		prefix.save(betaSupport);
+		
+		// === Construct beta's conditional pattern base ===
+		// It is a subdatabase which consists of the set of prefix paths
+		// in the FP-tree co-occuring with the suffix pattern.
+		List<List<FPNode>> prefixPaths = new ArrayList<List<FPNode>>();
+		FPNode path = tree.mapItemNodes.get(item);
+		while(path != null){
+			// if the path is not just the root node
+			if(path.parent.itemID != -1){
+				// create the prefixpath
+				List<FPNode> prefixPath = new ArrayList<FPNode>();
+				// add this node.
+				prefixPath.add(path);   // NOTE: we add it just to keep its support,
+				// actually it should not be part of the prefixPath
+				
+				//Recursively add all the parents of this node.
+				FPNode parent = path.parent;
+				while(parent.itemID != -1){
+					prefixPath.add(parent);
+					parent = parent.parent;
 				}
-				// We will look for the next prefixpath
-				path = path.nodeLink;
+				prefixPaths.add(prefixPath);
 			}
-			
-			// (A) Calculate the frequency of each item in the prefixpath
-			Map<Integer, Integer> mapSupportBeta = new HashMap<Integer, Integer>();
-			// for each prefixpath
-			for(List<FPNode> prefixPath : prefixPaths){
-				// the support of the prefixpath is the support of its first node.
-				int pathCount = prefixPath.get(0).counter;  
-				for(int j=1; j<prefixPath.size(); j++){  // for each node, except the first one, we count the frequency
-					FPNode node = prefixPath.get(j);
-					if(mapSupportBeta.get(node.itemID) == null){
-						mapSupportBeta.put(node.itemID, pathCount);
-					}else{
-						mapSupportBeta.put(node.itemID, mapSupportBeta.get(node.itemID) + pathCount);
-					}
+			// We will look for the next prefixpath
+			path = path.nodeLink;
+		}
+		
+		// (A) Calculate the frequency of each item in the prefixpath
+		Map<Integer, Integer> mapSupportBeta = new HashMap<Integer, Integer>();
+		// for each prefixpath
+		for(List<FPNode> prefixPath : prefixPaths){
+			// the support of the prefixpath is the support of its first node.
+			int pathCount = prefixPath.get(0).counter;  
+			for(int j=1; j<prefixPath.size(); j++){  // for each node, except the first one, we count the frequency
+				FPNode node = prefixPath.get(j);
+				if(mapSupportBeta.get(node.itemID) == null){
+					mapSupportBeta.put(node.itemID, pathCount);
+				}else{
+					mapSupportBeta.put(node.itemID, mapSupportBeta.get(node.itemID) + pathCount);
 				}
 			}
-			
-			// (B) Construct beta's conditional FP-Tree
-			FPTree treeBeta = new FPTree();
-			// add each prefixpath in the FP-tree
-			for(List<FPNode> prefixPath : prefixPaths){
-				treeBeta.addPrefixPath(prefixPath, mapSupportBeta, relativeMinsupp); 
-			}  
-			treeBeta.createHeaderList(mapSupportBeta); 
-			
-			// Mine recursively the Beta tree.
-			if(treeBeta.root.childs.size() > 0){
-				fpgrowth(treeBeta, beta, mapSupportBeta);
-			}
 		}
 		
+		// (B) Construct beta's conditional FP-Tree
+		FPTree treeBeta = new FPTree();
+		// add each prefixpath in the FP-tree
+		for(List<FPNode> prefixPath : prefixPaths){
+			treeBeta.addPrefixPath(prefixPath, mapSupportBeta, relativeMinsupp); 
+		}  
+		treeBeta.createHeaderList(mapSupportBeta); 
+		
+		// Mine recursively the Beta tree.
+		if(treeBeta.root.childs.size() > 0){
+			fpgrowth(treeBeta, prefix, betaSupport, mapSupportBeta);
+		}
+		prefix.pop();
 	}
 
 	/**
@@ -287,19 +725,19 @@ public class AlgoFPGrowth {
 	 * @param prefix  the prefix
 	 * @param minsupportForNode the support of this path.
 	 */
-	private void addAllCombinationsForPathAndPrefix(FPNode node, Itemset prefix) {
+	private void addAllCombinationsForPathAndPrefix(FPNode node, Prefix prefix) throws IOException {
 		// We add the node to the prefix
-		Itemset itemset = prefix.cloneItemset();
-		itemset.addItem(node.itemID);
-
-		itemset.setTransactioncount(node.counter); 
-		frequentItemsets.addItemset(itemset, itemset.size());
+		prefix.push(node.itemID);
+		prefix.save(node.counter);
 		
 		// recursive call if there is a node link
 		if(node.nodeLink != null){
+			prefix.pop();
+			addAllCombinationsForPathAndPrefix(node.nodeLink, prefix);
+			prefix.push(node.itemID);
 			addAllCombinationsForPathAndPrefix(node.nodeLink, prefix);
-			addAllCombinationsForPathAndPrefix(node.nodeLink, itemset);
 		}
+		prefix.pop();
 	}
 
 	public void printStats() {
@@ -308,7 +746,10 @@ public class AlgoFPGrowth {
 		long temps = endTime - startTimestamp;
 		System.out.println(" Transactions count from database : "
 				+ contextSize);
-		System.out.println(" Frequent itemsets count : " + frequentItemsets.getItemsetsCount()); 
+		System.out.println(" Frequent itemsets count : " + itemsetCount); 
+		if(useArrayTree){
+			System.out.println(" FP-tree nodes : " + treeNodeCount + " (" + treeMemory / 1024 + " KB)");
+		}
 		System.out.println(" Total time ~ " + temps + " ms");
 		System.out
 				.println("===================================================");
@@ -0,0 +1,187 @@
+package ca.pfv.spmf.frequentpatterns.fpgrowth;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs FPGrowth as in PFP (Li et al., 2008), with the item groups mined by separate JVMs
+ * on the same machine: each worker reads the database, keeps the transactions that its
+ * group depends on (see AlgoFPGrowth.setItemGroup()) and writes the itemsets of its group
+ * to a part file. The part files are then concatenated. A worker only builds the FP-tree
+ * of its group, so a database whose FP-tree does not fit in one heap can be mined by
+ * several smaller JVMs.
+ *
+ * The output has one itemset per line, followed by "#SUP:" and its support (a number of
+ * transactions). The itemsets of a group are together, in the order they were found.
+ */
+public class AlgoPFPGrowth {
+
+	private long startTimestamp; // for stats
+	private long endTime; // for stats
+	private int itemsetCount = 0;
+	private int groupCount = 0;
+
+	private String javaOptions = ""; // extra options of the worker JVMs, such as "-Xmx2g"
+
+	public AlgoPFPGrowth() {
+
+	}
+
+	/**
+	 * Set the options given to the worker JVMs, separated by spaces.
+	 */
+	public void setJavaOptions(String javaOptions) {
+		this.javaOptions = javaOptions;
+	}
+
+	/**
+	 * Run the algorithm.
+	 * @param input the transaction database
+	 * @param output the file where the itemsets are written
+	 * @param minsupp the minimum support (a fraction of the transactions)
+	 * @param groupCount the number of item groups, and of worker JVMs
+	 * @param threadCount the number of mining threads of each worker
+	 * @throws IOException if a file cannot be read or written, or a worker fails
+	 */
+	public void runAlgorithm(String input, String output, double minsupp, int groupCount, int threadCount) throws IOException {
+		startTimestamp = System.currentTimeMillis();
+		this.groupCount = groupCount;
+		itemsetCount = 0;
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<Process> workers = new ArrayList<Process>();
+		List<File> parts = new ArrayList<File>();
+		try {
+			// start one worker per group
+			for(int group = 0; group < groupCount; group++){
+				File part = File.createTempFile("itemsets-group" + group + "-", ".txt");
+				parts.add(part);
+
+				List<String> command = new ArrayList<String>();
+				command.add(java);
+				for(String option : javaOptions.trim().split(" +")){
+					if(option.length() > 0){
+						command.add(option);
+					}
+				}
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add(AlgoPFPGrowth.class.getName());
+				command.add(input);
+				command.add(Double.toString(minsupp));
+				command.add(part.getPath());
+				command.add(Integer.toString(group));
+				command.add(Integer.toString(groupCount));
+				command.add(Integer.toString(threadCount));
+
+				Process worker = new ProcessBuilder(command).redirectErrorStream(true).start();
+				workers.add(worker);
+				copyOutput(worker, "[group " + group + "] ");
+			}
+
+			// wait for them
+			for(int group = 0; group < groupCount; group++){
+				int status;
+				try {
+					status = workers.get(group).waitFor();
+				} catch (InterruptedException e) {
+					throw new IOException("interrupted while waiting for the workers", e);
+				}
+				if(status != 0){
+					throw new IOException("the worker of group " + group + " failed with status " + status);
+				}
+			}
+
+			// concatenate their itemsets
+			BufferedWriter writer = new BufferedWriter(new FileWriter(output));
+			try {
+				for(File part : parts){
+					BufferedReader reader = new BufferedReader(new FileReader(part));
+					try {
+						String line;
+						while((line = reader.readLine()) != null){
+							writer.write(line);
+							writer.newLine();
+							itemsetCount++;
+						}
+					} finally {
+						reader.close();
+					}
+				}
+			} finally {
+				writer.close();
+			}
+		} finally {
+			for(Process worker : workers){
+				worker.destroy();
+			}
+			for(File part : parts){
+				part.delete();
+			}
+		}
+		endTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Prints the output of a worker, which must be read for the worker not to block.
+	 */
+	private static void copyOutput(final Process worker, final String prefix) {
+		Thread thread = new Thread(){
+			public void run(){
+				BufferedReader reader = new BufferedReader(new InputStreamReader(worker.getInputStream()));
+				try {
+					String line;
+					while((line = reader.readLine()) != null){
+						System.out.println(prefix + line);
+					}
+				} catch (IOException e) {
+					// the worker has ended
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * The worker: mines the itemsets of one item group.
+	 * Arguments: input minsupp part_file group groupCount threadCount
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length != 6){
+			System.err.println("usage: AlgoPFPGrowth <input> <minsupp> <part file> <group> <group count> <threads>");
+			System.exit(2);
+		}
+		Database context = new Database();
+		context.loadFile(args[0]);
+
+		AlgoFPGrowth algo = new AlgoFPGrowth();
+		algo.setUseArrayTree(true);
+		algo.setItemGroup(Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+		ItemsetFileSink sink = new ItemsetFileSink(args[2]);
+		try {
+			algo.runAlgorithm(context, Double.parseDouble(args[1]), Integer.parseInt(args[5]), sink);
+		} finally {
+			sink.close();
+		}
+		algo.printStats();
+	}
+
+	public void printStats() {
+		System.out
+				.println("=============  PFP-GROWTH - STATS =============");
+		long temps = endTime - startTimestamp;
+		System.out.println(" Item groups (worker JVMs) : " + groupCount);
+		System.out.println(" Frequent itemsets count : " + itemsetCount);
+		System.out.println(" Total time ~ " + temps + " ms");
+		System.out
+				.println("===================================================");
+	}
+}
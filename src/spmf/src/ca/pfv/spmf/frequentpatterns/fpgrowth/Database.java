@@ -1,13 +1,11 @@
 package ca.pfv.spmf.frequentpatterns.fpgrowth;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
+import ca.pfv.spmf.general.io.MappedIntFile;
+
 /**
  * This class represents a binary context (transaction database).
  * It can read the context directly from a file.
@@ -27,23 +25,16 @@ public class Database {
 	}
 
 	public void loadFile(String path) throws IOException {
-		String thisLine;
-		BufferedReader myInput = null;
-		try {
-			FileInputStream fin = new FileInputStream(new File(path));
-			myInput = new BufferedReader(new InputStreamReader(fin));
-			while ((thisLine = myInput.readLine()) != null) {
-				if(thisLine.charAt(0) != '#'){ 
-					addObject(thisLine.split(" "));
-				}
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}finally {
-			if(myInput != null){
-				myInput.close();
+		// the file is memory-mapped and parsed without a String per line or token
+		MappedIntFile file = MappedIntFile.load(path);
+		int[] tokens = file.getTokens();
+		for(int i = 0; i < file.getLineCount(); i++){
+			Itemset itemset = new Itemset();
+			for(int j = file.getLineStart(i); j < file.getLineEnd(i); j++){
+				itemset.addItem(tokens[j]);
 			}
-	    }
+			objects.add(itemset);
+		}
 	}
 	
 	public void addObject(String attributs[]){
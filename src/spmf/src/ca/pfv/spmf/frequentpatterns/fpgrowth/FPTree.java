@@ -25,7 +25,7 @@ public class FPTree {
 	/**
 	 * Constructor
 	 */
-	FPTree(){	
+	public FPTree(){	
 		
 	}
 
@@ -137,5 +137,19 @@ public class FPTree {
 		});
 	}
 	
+	/**
+	 * Returns the number of nodes of the tree, root included.
+	 */
+	public int getNodeCount() {
+		return countNodes(root);
+	}
+	
+	private int countNodes(FPNode node) {
+		int count = 1;
+		for(FPNode child : node.childs){
+			count += countNodes(child);
+		}
+		return count;
+	}
 
 }
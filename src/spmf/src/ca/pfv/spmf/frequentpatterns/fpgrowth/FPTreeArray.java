@@ -0,0 +1,226 @@
+package ca.pfv.spmf.frequentpatterns.fpgrowth;
+
+import java.util.Arrays;
+
+/**
+ * This is an implementation of a FPTree where the nodes are stored in parallel int
+ * arrays (item, counter, parent, first child, next sibling, node link) instead of
+ * FPNode objects. A node is an index in these arrays and the root is node 0, so 0
+ * also means "no node" in the child, sibling and node link arrays.
+ *
+ * Items are ranks from 0 to getItemCount() - 1, ordered like the header list of FPTree
+ * (rank 0 is the most frequent item) and getItemID() gives the item of a rank. Each
+ * header entry keeps the first and the last node of the item, so a new node is appended
+ * to the node links in constant time. The children of a node are a linked list, which
+ * is scanned when the node has a few children; when it has more than HASHED_CHILDREN
+ * children they are also put in a hash table keyed by (parent, item).
+ */
+public class FPTreeArray {
+
+	static final int HASHED_CHILDREN = 8;
+
+	private static final int NODE_ARRAYS = 7;
+	private static final long EMPTY = -1L;
+
+	// the nodes
+	int[] item;
+	int[] counter;
+	int[] parent;
+	int[] firstChild;
+	int[] sibling;
+	int[] nodeLink;
+	int[] childCount;
+	int nodeCount = 1; // the root
+
+	// the header table, indexed by item rank
+	int[] itemIDs;
+	int[] headerFirst;
+	int[] headerLast;
+	int[] support;
+
+	// children of the nodes having more than HASHED_CHILDREN children
+	private long[] hashKeys;
+	private int[] hashNodes;
+	private int hashCount = 0;
+
+	/**
+	 * Constructor
+	 * @param itemIDs the item of each rank
+	 * @param initialCapacity the number of nodes to allocate space for
+	 */
+	public FPTreeArray(int[] itemIDs, int initialCapacity){
+		this.itemIDs = itemIDs;
+		int capacity = Math.max(initialCapacity, 16);
+		item = new int[capacity];
+		counter = new int[capacity];
+		parent = new int[capacity];
+		firstChild = new int[capacity];
+		sibling = new int[capacity];
+		nodeLink = new int[capacity];
+		childCount = new int[capacity];
+		item[0] = -1;
+
+		headerFirst = new int[itemIDs.length];
+		headerLast = new int[itemIDs.length];
+		support = new int[itemIDs.length];
+	}
+
+	/**
+	 * Method for adding a path to the fp-tree: a transaction for the initial tree, or
+	 * a prefix path for a conditional tree.
+	 * @param ranks the items of the path, from the root down
+	 * @param start the first item of the path in the array
+	 * @param end the end of the path in the array (exclusive)
+	 * @param pathCount the support of the path
+	 */
+	public void addPath(int[] ranks, int start, int end, int pathCount) {
+		int currentNode = 0;
+		for(int i = start; i < end; i++){
+			int rank = ranks[i];
+			int child = getChild(currentNode, rank);
+			if(child == 0){
+				child = addChild(currentNode, rank);
+			}
+			counter[child] += pathCount;
+			support[rank] += pathCount;
+			currentNode = child;
+		}
+	}
+
+	/**
+	 * Return the immediate child of a node having a given item, or 0 if there is none.
+	 */
+	int getChild(int node, int rank) {
+		if(childCount[node] > HASHED_CHILDREN){
+			long key = key(node, rank);
+			for(int slot = slot(key); ; slot = (slot + 1) & (hashKeys.length - 1)){
+				if(hashKeys[slot] == key){
+					return hashNodes[slot];
+				}
+				if(hashKeys[slot] == EMPTY){
+					return 0;
+				}
+			}
+		}
+		for(int child = firstChild[node]; child != 0; child = sibling[child]){
+			if(item[child] == rank){
+				return child;
+			}
+		}
+		return 0;
+	}
+
+	private int addChild(int node, int rank) {
+		if(nodeCount == item.length){
+			grow();
+		}
+		int child = nodeCount++;
+		item[child] = rank;
+		parent[child] = node;
+		sibling[child] = firstChild[node];
+		firstChild[node] = child;
+
+		// We update the header table, appending the node after the last node of the item
+		if(headerFirst[rank] == 0){
+			headerFirst[rank] = child;
+		}else{
+			nodeLink[headerLast[rank]] = child;
+		}
+		headerLast[rank] = child;
+
+		childCount[node]++;
+		if(childCount[node] == HASHED_CHILDREN + 1){
+			// the node has just become too wide to scan, we hash all its children
+			for(int c = firstChild[node]; c != 0; c = sibling[c]){
+				hash(node, c);
+			}
+		}else if(childCount[node] > HASHED_CHILDREN + 1){
+			hash(node, child);
+		}
+		return child;
+	}
+
+	private void grow() {
+		int capacity = item.length + (item.length >> 1);
+		item = Arrays.copyOf(item, capacity);
+		counter = Arrays.copyOf(counter, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		firstChild = Arrays.copyOf(firstChild, capacity);
+		sibling = Arrays.copyOf(sibling, capacity);
+		nodeLink = Arrays.copyOf(nodeLink, capacity);
+		childCount = Arrays.copyOf(childCount, capacity);
+	}
+
+	private void hash(int node, int child) {
+		if(hashKeys == null || (hashCount + 1) * 2 > hashKeys.length){
+			rehash(hashKeys == null ? 64 : hashKeys.length * 2);
+		}
+		put(key(node, item[child]), child);
+		hashCount++;
+	}
+
+	private void rehash(int size) {
+		long[] oldKeys = hashKeys;
+		int[] oldNodes = hashNodes;
+		hashKeys = new long[size];
+		hashNodes = new int[size];
+		Arrays.fill(hashKeys, EMPTY);
+		if(oldKeys != null){
+			for(int i = 0; i < oldKeys.length; i++){
+				if(oldKeys[i] != EMPTY){
+					put(oldKeys[i], oldNodes[i]);
+				}
+			}
+		}
+	}
+
+	private void put(long key, int node) {
+		int slot = slot(key);
+		while(hashKeys[slot] != EMPTY){
+			slot = (slot + 1) & (hashKeys.length - 1);
+		}
+		hashKeys[slot] = key;
+		hashNodes[slot] = node;
+	}
+
+	private static long key(int node, int rank) {
+		return ((long) node << 32) | rank;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & (hashKeys.length - 1);
+	}
+
+	/**
+	 * Returns the number of item ranks of this tree.
+	 */
+	public int getItemCount() {
+		return itemIDs.length;
+	}
+
+	/**
+	 * Returns the item of a rank.
+	 */
+	public int getItemID(int rank) {
+		return itemIDs[rank];
+	}
+
+	/**
+	 * Returns the number of nodes, root included.
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Returns the number of bytes used by the arrays of this tree.
+	 */
+	public long getMemoryUsage() {
+		long bytes = 4L * NODE_ARRAYS * item.length + 4L * 4 * itemIDs.length;
+		if(hashKeys != null){
+			bytes += 12L * hashKeys.length;
+		}
+		return bytes;
+	}
+}
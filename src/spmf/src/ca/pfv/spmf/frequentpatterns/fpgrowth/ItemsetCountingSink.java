@@ -0,0 +1,45 @@
+package ca.pfv.spmf.frequentpatterns.fpgrowth;
+
+import java.util.Arrays;
+
+/**
+ * Only counts the itemsets, in total and by size, for when the number of frequent itemsets 
+ * is all that is needed (for example to choose a minimum support).
+ */
+public class ItemsetCountingSink implements ItemsetSink {
+
+	private long itemsetCount = 0;
+	private long[] countBySize = new long[16];
+	
+	public void itemsetFound(int[] items, int length, int support) {
+		if(length >= countBySize.length){
+			countBySize = Arrays.copyOf(countBySize, Math.max(length + 1, countBySize.length * 2));
+		}
+		countBySize[length]++;
+		itemsetCount++;
+	}
+	
+	public long getItemsetCount() {
+		return itemsetCount;
+	}
+	
+	/**
+	 * @param size an itemset size
+	 * @return the number of itemsets of that size
+	 */
+	public long getItemsetCount(int size) {
+		return size < countBySize.length ? countBySize[size] : 0;
+	}
+	
+	/**
+	 * @return the size of the largest itemset
+	 */
+	public int getMaxSize() {
+		for(int size = countBySize.length - 1; size > 0; size--){
+			if(countBySize[size] > 0){
+				return size;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,45 @@
+package ca.pfv.spmf.frequentpatterns.fpgrowth;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the itemsets to a file, one per line, followed by "#SUP:" and the support.
+ */
+public class ItemsetFileSink implements ItemsetSink {
+
+	private final BufferedWriter writer;
+	private long itemsetCount = 0;
+	
+	public ItemsetFileSink(String path) throws IOException {
+		this(new FileWriter(path));
+	}
+	
+	public ItemsetFileSink(Writer writer){
+		this.writer = new BufferedWriter(writer, 1 << 16);
+	}
+	
+	public void itemsetFound(int[] items, int length, int support) throws IOException {
+		for(int i = 0; i < length; i++){
+			writer.write(Integer.toString(items[i]));
+			writer.write(' ');
+		}
+		writer.write("#SUP: ");
+		writer.write(Integer.toString(support));
+		writer.newLine();
+		itemsetCount++;
+	}
+	
+	public long getItemsetCount() {
+		return itemsetCount;
+	}
+	
+	/**
+	 * Flushes and closes the file.
+	 */
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,26 @@
+package ca.pfv.spmf.frequentpatterns.fpgrowth;
+
+/**
+ * Keeps the itemsets in an Itemsets object, as AlgoFPGrowth does when no sink is given.
+ */
+public class ItemsetMemorySink implements ItemsetSink {
+
+	private final Itemsets itemsets;
+	
+	public ItemsetMemorySink(Itemsets itemsets){
+		this.itemsets = itemsets;
+	}
+	
+	public void itemsetFound(int[] items, int length, int support) {
+		Itemset itemset = new Itemset();
+		for(int i = 0; i < length; i++){
+			itemset.addItem(items[i]);
+		}
+		itemset.setTransactioncount(support);
+		itemsets.addItemset(itemset, length);
+	}
+	
+	public Itemsets getItemsets() {
+		return itemsets;
+	}
+}
@@ -0,0 +1,67 @@
+package ca.pfv.spmf.frequentpatterns.fpgrowth;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands the itemsets to a consumer thread through a bounded queue. The mining thread 
+ * waits when the queue is full, so at most "capacity" itemsets are in memory whatever 
+ * the number of frequent itemsets. The consumer calls take() until it returns null, 
+ * which happens after the mining thread has called close().
+ */
+public class ItemsetQueueSink implements ItemsetSink {
+
+	private static final Itemset END = new Itemset();
+	
+	private final BlockingQueue<Itemset> queue;
+	private boolean ended = false;
+	
+	public ItemsetQueueSink(int capacity){
+		queue = new ArrayBlockingQueue<Itemset>(capacity);
+	}
+	
+	public void itemsetFound(int[] items, int length, int support) throws IOException {
+		Itemset itemset = new Itemset();
+		for(int i = 0; i < length; i++){
+			itemset.addItem(items[i]);
+		}
+		itemset.setTransactioncount(support);
+		put(itemset);
+	}
+	
+	/**
+	 * Tells the consumer that there are no more itemsets. Called by the mining thread 
+	 * once the algorithm has returned (or failed).
+	 */
+	public void close() throws IOException {
+		put(END);
+	}
+	
+	private void put(Itemset itemset) throws IOException {
+		try {
+			queue.put(itemset);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for the consumer");
+		}
+	}
+	
+	/**
+	 * Waits for the next itemset.
+	 * @return the next itemset, or null when the mining is over
+	 * @throws InterruptedException if the consumer thread is interrupted
+	 */
+	public Itemset take() throws InterruptedException {
+		if(ended){
+			return null;
+		}
+		Itemset itemset = queue.take();
+		if(itemset == END){
+			ended = true;
+			return null;
+		}
+		return itemset;
+	}
+}
@@ -0,0 +1,25 @@
+package ca.pfv.spmf.frequentpatterns.fpgrowth;
+
+import java.io.IOException;
+
+/**
+ * Receives the frequent itemsets found by AlgoFPGrowth as soon as they are found, instead 
+ * of keeping them all in an Itemsets object.
+ * 
+ * When the algorithm runs with one thread, an itemset is always received after all its 
+ * subsets, and its items are in the same order as in its subsets: the items of an 
+ * itemset are in increasing order of support in the database (the least frequent item 
+ * first), and a subset keeps the order of the items it has. 
+ */
+public interface ItemsetSink {
+
+	/**
+	 * Called for each frequent itemset. The array is reused by the algorithm after the 
+	 * call, so the items must be copied to be kept.
+	 * @param items the items of the itemset, in items[0 .. length)
+	 * @param length the size of the itemset
+	 * @param support the support of the itemset (a number of transactions)
+	 * @throws IOException if the itemset cannot be written
+	 */
+	void itemsetFound(int[] items, int length, int support) throws IOException;
+}
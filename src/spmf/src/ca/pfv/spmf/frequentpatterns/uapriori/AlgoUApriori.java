@@ -1,13 +1,27 @@
 package ca.pfv.spmf.frequentpatterns.uapriori;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
+import ca.pfv.spmf.frequentpatterns.apriori.CountDistribution;
+
 /**
  * This is an implementation of the U-Apriori algorithm as described by :
  * 
  *   Chui, C., Kao, B., Hung, E. (2007), Mining Frequent Itemsets fomr Uncertain Data, PAKDD 2007,  pp 47-58.
  * 
+ * runAlgorithm(minsupp, threadCount) counts the expected support of the candidates with 
+ * the count distribution strategy (Agrawal and Shafer, 1996, see CountDistribution): the 
+ * transactions are split in BLOCK_COUNT blocks that are counted by the threads, each block 
+ * into its own array of sums indexed by candidate, and the arrays are added in the order 
+ * of the blocks at the end of each level. The blocks do not depend on the number of 
+ * threads, so neither do the expected supports (the sums of doubles are done in the same 
+ * order). On one thread, the expected supports are summed transaction by transaction, as 
+ * in the sequential algorithm, so they can differ from the ones found on several threads 
+ * in their last digits. The levels are LinkedHashSets, so the itemsets are found in the 
+ * same order.
+ * 
  * @author Philippe Fournier-Viger, 2010
  */
 public class AlgoUApriori {
@@ -15,6 +29,9 @@ public class AlgoUApriori {
 	protected Itemsets frequentItemsets = new Itemsets("FREQUENT ITEMSETS");
 	protected ContextApriori context;
 	protected int k; // level
+	
+	static final int BLOCK_COUNT = 16; // parts of the transactions counted separately on several threads
+	private CountDistribution counter; // counts the expected support of the candidates
 
 	// stats
 	protected int totalCandidateCount = 0;
@@ -26,6 +43,26 @@ public class AlgoUApriori {
 	}
 
 	public Itemsets runAlgorithm(double minsupp) {
+		return runAlgorithm(minsupp, 1);
+	}
+	
+	/**
+	 * Run the algorithm, counting the expected support of the candidates on several threads.
+	 * The itemsets found and their expected supports do not depend on the number of threads.
+	 * @param minsupp the minimum expected support
+	 * @param threadCount the number of counting threads (1 counts on the calling thread)
+	 * @return the frequent itemsets
+	 */
+	public Itemsets runAlgorithm(double minsupp, int threadCount) {
+		counter = new CountDistribution(context.getObjects().size(), threadCount);
+		try {
+			return mine(minsupp);
+		} finally {
+			counter.shutdown();
+		}
+	}
+
+	private Itemsets mine(double minsupp) {
 		resetStats();
 
 		// Generate candidates with size k = 1 (all itemsets of size 1)
@@ -80,7 +117,7 @@ public class AlgoUApriori {
 //	}
 
 	protected Set<ItemsetApriori> createLevelWithFrequentCandidates(double minsupp,Set<ItemsetApriori> candidatesK) {
-		Set<ItemsetApriori> levelK = new HashSet<ItemsetApriori>();
+		Set<ItemsetApriori> levelK = new LinkedHashSet<ItemsetApriori>();
 		for (ItemsetApriori candidate : candidatesK) { 
 			if (candidate.getExpectedSupport() >= minsupp) {
 				levelK.add(candidate);
@@ -93,12 +130,36 @@ public class AlgoUApriori {
 	protected void calculateSupportForEachCandidate(
 			Set<ItemsetApriori> candidatesK) {
 		databaseScanCount++;
-		for (ItemsetApriori transaction : context.getObjects()) {
+		final ItemsetApriori[] candidates = candidatesK.toArray(new ItemsetApriori[candidatesK.size()]);
+		int blockCount = counter.getThreadCount() > 1 ? BLOCK_COUNT : 1;
+		List<double[]> blockSums = counter.countParts(new CountDistribution.PartCounter<double[]>() {
+			public double[] count(int from, int to) {
+				return sumExpectedSupports(candidates, from, to);
+			}
+		}, blockCount, k, candidates.length);
+		// reduce, in the order of the blocks
+		for(double[] sums : blockSums){
+			for(int i = 0; i < candidates.length; i++){
+				candidates[i].increaseTransactionCount(sums[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Sums the expected support of the candidates in a block of the transactions.
+	 * @param candidates the candidates
+	 * @param from the first transaction of the block
+	 * @param to the end of the block (exclusive)
+	 * @return the sum of each candidate
+	 */
+	private double[] sumExpectedSupports(ItemsetApriori[] candidates, int from, int to) {
+		double[] sums = new double[candidates.length];
+		for (ItemsetApriori transaction : context.getObjects().subList(from, to)) {
 			// For each candidate of level K, we increase its support
 			// if it is included in the transaction.
-		candidateLoop : for (ItemsetApriori candidate : candidatesK) {
+		candidateLoop : for (int c = 0; c < candidates.length; c++) {
 				double expectedSupport = 0;
-				for(ItemApriori item : candidate.getItems()){
+				for(ItemApriori item : candidates[c].getItems()){
 					boolean found = false;
 					for(ItemApriori itemT : transaction.getItems()){
 						if(item.getId() == itemT.getId()){
@@ -118,14 +179,15 @@ public class AlgoUApriori {
 						continue candidateLoop;
 					}
 				}
-				candidate.increaseTransactionCount(expectedSupport);
+				sums[c] += expectedSupport;
 			}
 		}
+		return sums;
 	}
 
 	// Based on the description of Pasquier 99: "Efficient mining..."
 	protected Set<ItemsetApriori> generateCandidateSize1() {
-		Set<ItemsetApriori> candidates = new HashSet<ItemsetApriori>(); // liste  d'itemsets
+		Set<ItemsetApriori> candidates = new LinkedHashSet<ItemsetApriori>(); // liste  d'itemsets
 		for (ItemApriori item : context.getAttributes()) {
 			ItemsetApriori itemset = new ItemsetApriori();
 			itemset.addItem(item);
@@ -135,7 +197,7 @@ public class AlgoUApriori {
 	}
 
 	protected Set<ItemsetApriori> generateCandidateSizeK(Set<ItemsetApriori> levelK_1) {
-		Set<ItemsetApriori> candidates = new HashSet<ItemsetApriori>();
+		Set<ItemsetApriori> candidates = new LinkedHashSet<ItemsetApriori>();
 
 		// For each itemset I1 and I2 of level k-1
 		Object[] itemsets = levelK_1.toArray();
@@ -211,6 +273,9 @@ public class AlgoUApriori {
 		System.out.println(" Database scan count : " + databaseScanCount);
 		System.out.println(" The algorithm stopped at size " + (k - 1)
 				+ ", because there is no candidate");
+		if(counter != null && counter.getThreadCount() > 1){
+			counter.printStats(); // time and parallelism of each level
+		}
 		System.out.println(" Frequent itemsets count : " + frequentItemsets.getItemsetsCount()); 
 		frequentItemsets.printItemsets();
 
@@ -0,0 +1,339 @@
+package ca.pfv.spmf.general.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A fast reader for the integer input files of SPMF: sequence databases 
+ * ("1 2 -1 3 -1 -2", one sequence per line) and transaction databases ("1 2 3", one 
+ * transaction per line). The file is memory-mapped and the numbers are parsed directly 
+ * from the bytes into one int array, without creating a String per line or per token. 
+ * Large files are cut into chunks on line boundaries and the chunks are parsed in 
+ * parallel.
+ * 
+ * Every line that is not empty and does not start with '#' becomes a record: the tokens 
+ * of line i are getTokens()[getLineStart(i) .. getLineEnd(i)), separators (-1, -2) 
+ * included, in the order of the file. Tokens starting with '<' (timestamps) are skipped. 
+ * A database class plugs it in by building its objects (or its own arrays) from the 
+ * records instead of calling readLine() and split().
+ */
+public class MappedIntFile {
+	
+	private static final long MAX_CHUNK = 1L << 30;  // a mapping is limited to 2 GB
+	private static final long MIN_CHUNK = 1L << 20;  // smaller chunks are not worth a thread
+	
+	private int[] tokens;
+	private int[] lineStarts;   // lineCount + 1 entries
+	private int lineCount;
+	
+	private long byteCount;
+	private long loadNanos;
+	
+	private MappedIntFile(){
+	}
+	
+	/**
+	 * Reads a file using one thread per processor.
+	 * @param path the file
+	 * @return the parsed file
+	 * @throws IOException if the file cannot be read or contains a token that is not an integer
+	 */
+	public static MappedIntFile load(String path) throws IOException {
+		return load(path, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Reads a file.
+	 * @param path the file
+	 * @param threadCount the maximum number of threads parsing chunks of the file
+	 * @return the parsed file
+	 * @throws IOException if the file cannot be read or contains a token that is not an integer
+	 */
+	public static MappedIntFile load(String path, int threadCount) throws IOException {
+		long startTime = System.nanoTime();
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		FileChannel channel = file.getChannel();
+		
+		try {
+			long size = channel.size();
+			long chunkCount = Math.max(1, Math.max((size + MAX_CHUNK - 1) / MAX_CHUNK, 
+					Math.min(threadCount, size / MIN_CHUNK)));
+			
+			// cut the file after the end of a line
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			long start = 0;
+			for(long c = 1; c <= chunkCount && start < size; c++){
+				long end = c == chunkCount ? size : nextLineStart(channel, Math.max(start, size * c / chunkCount), size);
+				if(end > start){
+					chunks.add(new Chunk(channel, start, end, path));
+				}
+				start = end;
+			}
+			
+			if(threadCount > 1 && chunks.size() > 1){
+				ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, chunks.size()));
+				try {
+					List<Future<Chunk>> results = executor.invokeAll(chunks);
+					for(Future<Chunk> result : results){
+						result.get();
+					}
+				} catch (InterruptedException e) {
+					throw new IOException("interrupted while reading " + path, e);
+				} catch (ExecutionException e) {
+					if(e.getCause() instanceof IOException){
+						throw (IOException) e.getCause();
+					}
+					throw new IOException("cannot read " + path, e.getCause());
+				} finally {
+					executor.shutdown();
+				}
+			}else{
+				for(Chunk chunk : chunks){
+					chunk.call();
+				}
+			}
+			
+			MappedIntFile result = merge(chunks);
+			result.byteCount = size;
+			result.loadNanos = System.nanoTime() - startTime;
+			return result;
+		} finally {
+			channel.close();
+			file.close();
+		}
+	}
+	
+	/**
+	 * @return the position just after the first end of line at or after position
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while(position < size){
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if(read <= 0){
+				break;
+			}
+			for(int i = 0; i < read; i++){
+				if(buffer.get(i) == '\n'){
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+	
+	private static MappedIntFile merge(List<Chunk> chunks) {
+		int tokenCount = 0;
+		int lineCount = 0;
+		for(Chunk chunk : chunks){
+			tokenCount += chunk.tokenCount;
+			lineCount += chunk.lineCount;
+		}
+		
+		MappedIntFile result = new MappedIntFile();
+		if(chunks.size() == 1){  // no copy needed
+			Chunk chunk = chunks.get(0);
+			result.tokens = chunk.tokens.length == tokenCount ? chunk.tokens : Arrays.copyOf(chunk.tokens, tokenCount);
+			result.lineStarts = Arrays.copyOf(chunk.lineStarts, lineCount + 1);
+		}else{
+			result.tokens = new int[tokenCount];
+			result.lineStarts = new int[lineCount + 1];
+			int tokenOffset = 0;
+			int lineOffset = 0;
+			for(Chunk chunk : chunks){
+				System.arraycopy(chunk.tokens, 0, result.tokens, tokenOffset, chunk.tokenCount);
+				for(int i = 0; i < chunk.lineCount; i++){
+					result.lineStarts[lineOffset + i] = tokenOffset + chunk.lineStarts[i];
+				}
+				tokenOffset += chunk.tokenCount;
+				lineOffset += chunk.lineCount;
+				chunk.tokens = null;
+			}
+		}
+		result.lineCount = lineCount;
+		result.lineStarts[lineCount] = tokenCount;
+		return result;
+	}
+	
+	/**
+	 * Parses the lines in [start, end) of the file.
+	 */
+	private static class Chunk implements Callable<Chunk> {
+		private FileChannel channel;
+		private long start;
+		private long end;
+		private String path;
+		
+		int[] tokens;
+		int tokenCount = 0;
+		int[] lineStarts = new int[64];
+		int lineCount = 0;
+		
+		Chunk(FileChannel channel, long start, long end, String path){
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.path = path;
+		}
+		
+		public Chunk call() throws IOException {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			byte[] block = new byte[1 << 16];  // bytes are copied out of the mapping in blocks, which parses faster than get(i)
+			long position = start;
+			
+			tokens = new int[(int) Math.max(1024, (end - start) / 6)];
+			
+			boolean atLineStart = true;
+			boolean comment = false;   // line starting with '#'
+			boolean skipping = false;  // timestamp
+			boolean negative = false;
+			int value = 0;
+			int digits = 0;
+			int lineStart = 0;
+			
+			while(buffer.hasRemaining()){
+				int length = Math.min(block.length, buffer.remaining());
+				buffer.get(block, 0, length);
+				
+				for(int i = 0; i < length; i++){
+					byte c = block[i];
+					if(c == '\n'){
+						if(digits > 0){
+							addToken(negative ? -value : value);
+						}else if(negative){
+							throw notAnInteger(position + i);
+						}
+						negative = false;
+						value = 0;
+						digits = 0;
+						lineStart = endLine(lineStart);
+						atLineStart = true;
+						comment = false;
+						skipping = false;
+						continue;
+					}
+					if(comment){
+						continue;
+					}
+					if(atLineStart){
+						atLineStart = false;
+						if(c == '#'){
+							comment = true;
+							continue;
+						}
+					}
+					if(skipping){
+						skipping = c != ' ';
+						continue;
+					}
+					
+					if(c >= '0' && c <= '9'){
+						if(value > (Integer.MAX_VALUE - (c - '0')) / 10){
+							throw notAnInteger(position + i);  // out of the range of an int
+						}
+						value = value * 10 + (c - '0');
+						digits++;
+					}else if(c == ' ' || c == '\t' || c == '\r'){
+						if(digits > 0){
+							addToken(negative ? -value : value);
+						}else if(negative){
+							throw notAnInteger(position + i);
+						}
+						negative = false;
+						value = 0;
+						digits = 0;
+					}else if(c == '-' && digits == 0 && !negative){
+						negative = true;
+					}else if(c == '<' && digits == 0 && !negative){
+						skipping = true;
+					}else{
+						throw notAnInteger(position + i);
+					}
+				}
+				position += length;
+			}
+			
+			// last line without an end of line
+			if(digits > 0){
+				addToken(negative ? -value : value);
+			}else if(negative){
+				throw notAnInteger(position);
+			}
+			endLine(lineStart);
+			return this;
+		}
+		
+		private void addToken(int token) {
+			if(tokenCount == tokens.length){
+				tokens = Arrays.copyOf(tokens, tokens.length * 2);
+			}
+			tokens[tokenCount++] = token;
+		}
+		
+		/**
+		 * Records the line that started at token lineStart, if it has tokens, and returns 
+		 * where the next line starts.
+		 */
+		private int endLine(int lineStart) {
+			if(tokenCount > lineStart){
+				if(lineCount + 1 >= lineStarts.length){
+					lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+				}
+				lineStarts[lineCount++] = lineStart;
+			}
+			return tokenCount;
+		}
+		
+		private IOException notAnInteger(long offset) {
+			return new IOException("not an integer at byte " + offset + " of " + path);
+		}
+	}
+	
+	/** @return the tokens of all the records, one after the other */
+	public int[] getTokens() {
+		return tokens;
+	}
+	
+	/** @return the number of records (non empty, non comment lines) */
+	public int getLineCount() {
+		return lineCount;
+	}
+	
+	/** @return where record i starts in getTokens() */
+	public int getLineStart(int i) {
+		return lineStarts[i];
+	}
+	
+	/** @return where record i ends (exclusive) in getTokens() */
+	public int getLineEnd(int i) {
+		return lineStarts[i + 1];
+	}
+	
+	/** @return the size of the file in bytes */
+	public long getByteCount() {
+		return byteCount;
+	}
+	
+	/** @return the time taken to map and parse the file, in milliseconds */
+	public double getLoadMillis() {
+		return loadNanos / 1000000.0;
+	}
+	
+	/** @return the load throughput in MB/s */
+	public double getThroughput() {
+		return loadNanos == 0 ? 0 : (byteCount / 1024.0 / 1024.0) / (loadNanos / 1000000000.0);
+	}
+}
@@ -0,0 +1,122 @@
+package ca.pfv.spmf.sequential_rules;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The k best sequential rules found so far by an algorithm run in top-k mode, instead of
+ * with a minimum support chosen in advance (see AlgoRULEGROWTH and AlgoCMDeogun).
+ *
+ * The rules are ranked by support, then by confidence, then by their text, so that the
+ * k best rules are always the same whatever the order in which they are found. They are
+ * kept in a min-heap: when there are more than k rules, the worst one is removed. Once the
+ * heap holds k rules, a rule needs at least the support of the worst one to enter it, so
+ * getMinsup() returns this support and the algorithm uses it as its minimum support.
+ * Since adding items to a rule does not increase its support, the rules pruned this way
+ * and their expansions could not be among the k best rules. The minimum support thus
+ * rises during the search, and the search space shrinks.
+ */
+public class TopKRules {
+
+	private final int k;
+	private final PriorityQueue<Rule> heap = new PriorityQueue<Rule>();
+	private int minsup = 1;
+
+	/**
+	 * A rule of the heap.
+	 */
+	private static class Rule implements Comparable<Rule> {
+		final String text;  // the itemsets, as "1,2 ==> 3"
+		final int support;
+		final double confidence;
+
+		Rule(String text, int support, double confidence) {
+			this.text = text;
+			this.support = support;
+			this.confidence = confidence;
+		}
+
+		/**
+		 * A rule is smaller than another rule if it is worse.
+		 */
+		public int compareTo(Rule other) {
+			if(support != other.support){
+				return support < other.support ? -1 : 1;
+			}
+			if(confidence != other.confidence){
+				return confidence < other.confidence ? -1 : 1;
+			}
+			return other.text.compareTo(text);
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param k the number of rules to keep
+	 */
+	public TopKRules(int k) {
+		if(k < 1){
+			throw new IllegalArgumentException("k must be at least 1: " + k);
+		}
+		this.k = k;
+	}
+
+	/**
+	 * Returns the minimum support of a rule to enter the heap (1 until it holds k rules).
+	 */
+	public synchronized int getMinsup() {
+		return minsup;
+	}
+
+	/**
+	 * Check if a rule having a support and a confidence could enter the heap, so that the
+	 * text of a rule is only created for the rules that can be added.
+	 */
+	public synchronized boolean canAdd(int support, double confidence) {
+		if(heap.size() < k){
+			return true;
+		}
+		Rule worst = heap.peek();
+		return support > worst.support || (support == worst.support && confidence >= worst.confidence);
+	}
+
+	/**
+	 * Add a rule, and remove the worst rule if there are then more than k rules.
+	 * @param text the itemsets of the rule, as "1,2 ==> 3"
+	 * @param support the support of the rule (a number of sequences)
+	 * @param confidence the confidence of the rule
+	 */
+	public synchronized void add(String text, int support, double confidence) {
+		heap.add(new Rule(text, support, confidence));
+		if(heap.size() > k){
+			heap.poll();
+		}
+		if(heap.size() == k){
+			minsup = heap.peek().support;
+		}
+	}
+
+	/**
+	 * Returns the number of rules kept.
+	 */
+	public synchronized int size() {
+		return heap.size();
+	}
+
+	/**
+	 * Write the rules from the best to the worst, one per line, in the format of the 
+	 * algorithms:   1,2 ==> 3  sup= 5  conf= 0.5
+	 */
+	public synchronized void write(BufferedWriter writer) throws IOException {
+		List<Rule> rules = new ArrayList<Rule>(heap);
+		Collections.sort(rules, Collections.reverseOrder());
+		for(Rule rule : rules){
+			writer.write(rule.text + "  sup= " + rule.support + "  conf= " + rule.confidence);
+			writer.newLine();
+		}
+	}
+}
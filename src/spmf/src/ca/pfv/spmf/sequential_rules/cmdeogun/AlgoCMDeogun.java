@@ -10,6 +10,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import ca.pfv.spmf.sequential_rules.TopKRules;
+
 /**
  * An algorithm for mining sequential rules common to several sequences
  * adapted from the algorithm of Deogun et al.
@@ -23,6 +25,11 @@ import java.util.Set;
  * 
  * and a french description is provided in my Ph.D. thesis.
  * 
+ * In top-k mode (see runAlgorithmTopK()), there is no minimum support. The k rules of 
+ * highest support are kept in a TopKRules, and the minimum support is raised to the 
+ * support of the worst of them as soon as k rules are found. The rules of a level that 
+ * do not have the new minimum support are not combined with the other rules anymore.
+ * 
  * @author Philippe Fournier-Viger, 2009
  */
 public class AlgoCMDeogun {
@@ -56,6 +63,9 @@ public class AlgoCMDeogun {
 
 	private int ruleCount; 
 	
+	// for the top-k version
+	private TopKRules topK = null;
+	
 
 	public AlgoCMDeogun() {
 		
@@ -119,9 +129,32 @@ public class AlgoCMDeogun {
 		start(mapItemCount);
 		
 		timeEnd = System.currentTimeMillis(); // for stats
+		if(topK != null){
+			topK.write(writer);
+			ruleCount = topK.size();
+		}
 		writer.close();
 		database =  null;
 	}
+	
+	/**
+	 * Run the algorithm in top-k mode: find the k rules of highest support (then highest
+	 * confidence) having the minimum confidence, without a minimum support. The rules are
+	 * written from the best to the worst.
+	 * @param input the sequence database
+	 * @param output the file where the rules are written
+	 * @param k the number of rules to find
+	 * @param minConfidence the minimum confidence
+	 * @throws IOException 
+	 */
+	public void runAlgorithmTopK(String input, String output, int k, double minConfidence) throws IOException {
+		topK = new TopKRules(k);
+		try {
+			runAlgorithm(input, output, 1, minConfidence);
+		} finally {
+			topK = null;
+		}
+	}
 
 	private void start(Map<Integer, Set<Integer>> mapItemCount) throws IOException {
 		timeStart11 = System.currentTimeMillis();
@@ -269,9 +302,16 @@ public class AlgoCMDeogun {
 		
 		for(int i=0; i< ruleSizeKm1.getRulesCount(); i++){
 			Rule ruleI = ruleSizeKm1.getRules().get(i);
+			// (in top-k mode, the minimum support may have been raised since the rule was found)
+			if(ruleI.getTransactionCount() < minsuppRelative){
+				continue;
+			}
 			for(int j=i+1; j< ruleSizeKm1.getRulesCount(); j++){
 //				checkCount++;
 				Rule ruleJ = ruleSizeKm1.getRules().get(j);
+				if(ruleJ.getTransactionCount() < minsuppRelative){
+					continue;
+				}
 				// if the right part is the same..
 				if(ruleI.getItemset2().allTheSame(ruleJ.getItemset2())){
 					// check if the left part share all items except the last one.
@@ -332,8 +372,15 @@ public class AlgoCMDeogun {
 		
 		for(int i=0; i< ruleSizeKm1.getRulesCount(); i++){
 			Rule ruleI = ruleSizeKm1.getRules().get(i);
+			// (in top-k mode, the minimum support may have been raised since the rule was found)
+			if(ruleI.getTransactionCount() < minsuppRelative){
+				continue;
+			}
 			for(int j=i+1; j< ruleSizeKm1.getRulesCount(); j++){
 				Rule ruleJ = ruleSizeKm1.getRules().get(j);
+				if(ruleJ.getTransactionCount() < minsuppRelative){
+					continue;
+				}
 //				checkCount++;
 				// if the right part is the same..
 				if(ruleI.getItemset1().allTheSame(ruleJ.getItemset1())){
@@ -478,7 +525,13 @@ public class AlgoCMDeogun {
 		return mapItemCount;
 	}
 	
+	/**
+	 * Save a rule, or add it to the top-k rules in top-k mode.
+	 */
 	private void saveRule(int support, double confIJ, Itemset itemsetI, Itemset itemsetJ) throws IOException {
+		if(topK != null && !topK.canAdd(support, confIJ)){
+			return;
+		}
 		ruleCount++;
 		StringBuffer buffer = new StringBuffer();
 		// write itemset 1
@@ -497,6 +550,11 @@ public class AlgoCMDeogun {
 				buffer.append(",");
 			}
 		}
+		if(topK != null){
+			topK.add(buffer.toString(), support, confIJ);
+			minsuppRelative = topK.getMinsup();
+			return;
+		}
 		// write separator
 		buffer.append("  sup= ");
 		// write support
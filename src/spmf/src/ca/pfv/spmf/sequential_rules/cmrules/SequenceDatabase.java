@@ -14,6 +14,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import ca.pfv.spmf.clustering.kmeans_for_seq_pattern_mining.Cluster;
+import ca.pfv.spmf.general.io.MappedIntFile;
 /**
  * Implementation of a sequence database. Each sequence should have a unique id.
  * See examples in /test/ directory for the format of input files.
@@ -30,23 +31,28 @@ public class SequenceDatabase {
 	private Cluster cluster = null;
 
 	public void loadFile(String path) throws IOException {
-		String thisLine;
-		BufferedReader myInput = null;
-		try {
-			FileInputStream fin = new FileInputStream(new File(path));
-			myInput = new BufferedReader(new InputStreamReader(fin));
-			while ((thisLine = myInput.readLine()) != null) {
-				// si la ligne n'est pas un commentaire
-				if (thisLine.charAt(0) != '#') {
-					// ajoute une squence
-					addSequence(thisLine.split(" "));
-				}
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			if (myInput != null) {
-				myInput.close();
+		// the file is memory-mapped and parsed without a String per line or token
+		MappedIntFile file = MappedIntFile.load(path);
+		for (int i = 0; i < file.getLineCount(); i++) {
+			addSequence(file.getTokens(), file.getLineStart(i), file.getLineEnd(i));
+		}
+	}
+
+	/**
+	 * Adds the sequence in tokens[start .. end), in the same format as a line of 
+	 * the file (timestamps are already left out by MappedIntFile).
+	 */
+	public void addSequence(int[] tokens, int start, int end) {
+		Sequence sequence = new Sequence(sequences.size());
+		Itemset itemset = new Itemset();
+		for (int i = start; i < end; i++) {
+			if (tokens[i] == -1) { // itemset separator
+				sequence.addItemset(itemset);
+				itemset = new Itemset();
+			} else if (tokens[i] == -2) { // end of the sequence
+				sequences.add(sequence);
+			} else {
+				itemset.addItem(tokens[i]);
 			}
 		}
 	}
@@ -4,17 +4,49 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.pfv.spmf.sequential_rules.TopKRules;
 
 /**
  * RULEGROWTH algorithm. Optimized version. Save output to file.
  * 
+ * The frequent items are numbered by increasing item ids, and the sequences are kept as 
+ * arrays of these numbers. For each frequent item, an OccurenceTable holds the sequences 
+ * that contain it as a bitset, and its first and last itemsets in each of them. 
+ * The sequences of an itemset or of a rule are bitsets, so that the sequences 
+ * containing I U {c} are found by ANDing words and counted with Long.bitCount().
+ * 
+ * The algorithm can also run on several threads (see runAlgorithm(input, output, minsup, 
+ * minConfidence, threadCount)). The rules of a frequent item i are those found from the 
+ * seeds i --> j and j --> i with j after i, and they only share the tables, which are not 
+ * modified. By default, the rules of each item are mined by their own task and written in 
+ * the order of the sequential algorithm, so both produce the same file. Only a few items 
+ * per thread are mined ahead of the item being written, so that the rules waiting to be 
+ * written do not fill the memory. Without the deterministic order 
+ * (setDeterministicOrder(false)), each thread takes the next item not yet mined as soon 
+ * as it is done with one, and writes its rules to the file each time it has buffered 
+ * FLUSH_CHARS characters of rules.
+ * 
+ * In top-k mode (see runAlgorithmTopK()), there is no minimum support. The k rules of 
+ * highest support are kept in a TopKRules, and the minimum support is raised to the 
+ * support of the worst of them as soon as k rules are found. The rules 1-1 are all found 
+ * first and are then expanded by decreasing support, so that the minimum support is high 
+ * before the first expansion and rises fast.
+ * 
  * @author Philippe Fournier-Viger, 2010
  */
 public class AlgoRULEGROWTH {
@@ -25,18 +57,31 @@ public class AlgoRULEGROWTH {
 	double minConfidence; 
 	int minsuppRelative;
 	
-	Map<Integer,  Map<Integer, Occurence>> mapItemCount;  // item, <tid, occurence>
+	int[] items;                  // the id of each frequent item, by number
+	OccurenceTable[] occurences;  // the occurences of each frequent item, by number
+	int[][][] sequences;          // the itemsets of each sequence, as sorted numbers of frequent items
+	int wordCount;                // the number of words of a bitset of sequences
 	
 	SequenceDatabase database;
 	double maxMemory = 0;
 	int ruleCount;
 
 	BufferedWriter writer = null; 
+	
+	// for the parallel version
+	private static final int ITEMS_AHEAD_PER_THREAD = 4; // items mined ahead of the item being written, per thread
+	private static final int FLUSH_CHARS = 1 << 20;      // rules buffered by a thread before it writes them
+	private ExecutorService executor = null;
+	private int threadCount = 1;
+	private boolean deterministicOrder = true;
+	
+	// for the top-k version
+	private TopKRules topK = null;
 
 	public AlgoRULEGROWTH() {
 	}
 
-	private void checkMemory() {
+	private synchronized void checkMemory() {
 		double currentMemory = ( (double)((double)(Runtime.getRuntime().totalMemory()/1024)/1024))- ((double)((double)(Runtime.getRuntime().freeMemory()/1024)/1024));
 		if(currentMemory > maxMemory){
 			maxMemory = currentMemory;
@@ -83,87 +128,347 @@ public class AlgoRULEGROWTH {
 		removeItemsThatAreNotFrequent(database);	
 		
 		// (1) generate all rules with 1-left-itemset and 1-right-itemset
-		// NOTE ITEMS THAT ARE FREQUENT IN A LIST
-		List<Integer> listFrequents = new ArrayList<Integer>();
-		for(Entry<Integer,Map<Integer, Occurence>> entry : mapItemCount.entrySet()){
-			if(entry.getValue().size() >= minsuppRelative){
-				listFrequents.add(entry.getKey());
+		if(topK != null){
+			mineTopK();
+		}else if(executor != null){
+			mineSeedsParallel();
+		}else{
+			MiningState state = new MiningState(writer, false);
+			for(int i=0; i< items.length; i++){
+				mineSeeds(i, state);
 			}
+			ruleCount = state.ruleCount;
 		}
+		timeEnd = System.currentTimeMillis(); // for stats
 		
-		// FOR EACH FREQUENT ITEM WE COMPARE WITH OTHER FREQUENT ITEM TO 
-		// TRY TO GENERATE A RULE 1-1.
-		for(int i=0; i< listFrequents.size(); i++){
-			Integer intI = listFrequents.get(i);
-			Map<Integer, Occurence> occurencesI = mapItemCount.get(intI);
-			Set<Integer> tidsI = occurencesI.keySet();
-			
-			for(int j=i+1; j< listFrequents.size(); j++){
-				Integer intJ = listFrequents.get(j);
-				Map<Integer,Occurence> occurencesJ = mapItemCount.get(intJ);
-				Set<Integer> tidsJ = occurencesJ.keySet();
-				
-				// (1) Build list of common  tids  and count occurences 
-				// of i before j  and  j before i.
-				Set<Integer> tidsIJ = new HashSet<Integer>();
-				Set<Integer> tidsJI = new HashSet<Integer>();
-				for(Entry<Integer, Occurence> entryOccI : occurencesI.entrySet()){
-					Occurence occJ = occurencesJ.get(entryOccI.getKey());
-					if(occJ !=  null){
-						if(occJ.firstItemset < entryOccI.getValue().lastItemset){
-							tidsJI.add(entryOccI.getKey());
+		if(topK != null){
+			topK.write(writer);
+			ruleCount = topK.size();
+		}
+		// close the file
+		writer.close();
+		
+		database = null;
+		occurences = null;
+		sequences = null;
+	}
+	
+	/**
+	 * Run the algorithm with several threads. With the deterministic order (the default), 
+	 * the output is the same as with the sequential version, in the same order.
+	 * @param input the sequence database
+	 * @param output the file where the rules are written
+	 * @param relativeMinsup the minimum support (a number of sequences)
+	 * @param minConfidence the minimum confidence
+	 * @param threadCount the number of mining threads (1 runs the sequential algorithm)
+	 * @throws IOException 
+	 */
+	public void runAlgorithm(String input, String output, int relativeMinsup, double minConfidence, int threadCount) throws IOException {
+		if(threadCount <= 1){
+			runAlgorithm(input, output, relativeMinsup, minConfidence);
+			return;
+		}
+		this.threadCount = threadCount;
+		executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			runAlgorithm(input, output, relativeMinsup, minConfidence);
+		} finally {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+	
+	/**
+	 * Run the algorithm in top-k mode: find the k rules of highest support (then highest
+	 * confidence) having the minimum confidence, without a minimum support. The rules are
+	 * written from the best to the worst.
+	 * @param input the sequence database
+	 * @param output the file where the rules are written
+	 * @param k the number of rules to find
+	 * @param minConfidence the minimum confidence
+	 * @throws IOException 
+	 */
+	public void runAlgorithmTopK(String input, String output, int k, double minConfidence) throws IOException {
+		topK = new TopKRules(k);
+		try {
+			runAlgorithm(input, output, 1, minConfidence);
+		} finally {
+			topK = null;
+		}
+	}
+	
+	/**
+	 * Set if the parallel version writes the rules in the order of the sequential version 
+	 * (true by default). If false, the threads share the items more evenly but the order 
+	 * of the rules depends on the scheduling of the threads.
+	 */
+	public void setDeterministicOrder(boolean deterministicOrder) {
+		this.deterministicOrder = deterministicOrder;
+	}
+	
+	/**
+	 * Parallel version of the loop over the seeds. With the deterministic order, there is 
+	 * one task per frequent item and the rules of each task are written as soon as it and 
+	 * all the tasks before it are done. The tasks are submitted as the rules are written, 
+	 * so that at most ITEMS_AHEAD_PER_THREAD items per thread are waiting to be written. 
+	 * Otherwise, one task per thread takes the items one after the other from a shared 
+	 * counter, and writes its rules whenever its buffer is full.
+	 */
+	private void mineSeedsParallel() throws IOException {
+		if(deterministicOrder){
+			LinkedList<Future<MiningState>> tasks = new LinkedList<Future<MiningState>>();
+			int maxTasks = threadCount * ITEMS_AHEAD_PER_THREAD;
+			int nextItem = 0;
+			while(nextItem < items.length || !tasks.isEmpty()){
+				while(nextItem < items.length && tasks.size() < maxTasks){
+					final int item = nextItem++;
+					tasks.add(executor.submit(new Callable<MiningState>() {
+						public MiningState call() throws IOException {
+							MiningState state = new MiningState(new StringBuilder(), false);
+							mineSeeds(item, state);
+							return state;
 						}
-						if(entryOccI.getValue().firstItemset < occJ.lastItemset){
-							tidsIJ.add(entryOccI.getKey());
+					}));
+				}
+				// the task is dropped from the list, so that its rules can be collected once written
+				MiningState state = getState(tasks.poll());
+				writer.append((StringBuilder) state.output);
+				ruleCount += state.ruleCount;
+			}
+		}else{
+			List<Future<MiningState>> tasks = new ArrayList<Future<MiningState>>();
+			final AtomicInteger nextItem = new AtomicInteger();
+			for(int t=0; t< threadCount; t++){
+				tasks.add(executor.submit(new Callable<MiningState>() {
+					public MiningState call() throws IOException {
+						MiningState state = new MiningState(new StringBuilder(), true);
+						for(int i = nextItem.getAndIncrement(); i < items.length; i = nextItem.getAndIncrement()){
+							mineSeeds(i, state);
 						}
+						return state;
 					}
+				}));
+			}
+			for(Future<MiningState> task : tasks){
+				MiningState state = getState(task);
+				flush(state);
+				ruleCount += state.ruleCount;
+			}
+		}
+	}
+	
+	/**
+	 * Wait for a mining task.
+	 */
+	private MiningState getState(Future<MiningState> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted while mining", e);
+		} catch (ExecutionException e) {
+			throw new IOException("mining task failed", e.getCause());
+		}
+	}
+	
+	/**
+	 * Write the rules buffered by a task that shares the file with other tasks, and empty
+	 * its buffer.
+	 */
+	private void flush(MiningState state) throws IOException {
+		StringBuilder buffer = (StringBuilder) state.output;
+		synchronized(writer){
+			writer.append(buffer);
+		}
+		buffer.setLength(0);
+	}
+	
+	/**
+	 * Top-k version of the loop over the seeds. All the rules 1-1 are found first, taking
+	 * the items by decreasing support, and saved in the top-k rules. Then the rules 1-1 that
+	 * still have the minimum support are expanded, by decreasing support.
+	 */
+	private void mineTopK() throws IOException {
+		MiningState state = new MiningState(writer, false);
+		
+		// the items by decreasing support
+		Integer[] order = new Integer[items.length];
+		for(int i=0; i< items.length; i++){
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return occurences[b].support - occurences[a].support;
+			}
+		});
+		
+		// (1) the rules 1-1, as {left item, right item, support}
+		List<int[]> seeds = new ArrayList<int[]>();
+		long[] tidsIJ = new long[wordCount];
+		long[] tidsJI = new long[wordCount];
+		for(int a=0; a< order.length && occurences[order[a]].support >= minsuppRelative; a++){
+			for(int b=a+1; b< order.length && occurences[order[b]].support >= minsuppRelative; b++){
+				int i = order[a];
+				int j = order[b];
+				int[] supports = findSeedTids(i, j, tidsIJ, tidsJI);
+				saveSeed(i, j, supports[0], seeds, state);
+				saveSeed(j, i, supports[1], seeds, state);
+			}
+		}
+		
+		// (2) expand them
+		Collections.sort(seeds, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return b[2] - a[2];
+			}
+		});
+		for(int[] seed : seeds){
+			if(seed[2] < minsuppRelative){
+				break;
+			}
+			OccurenceTable occurencesI = occurences[seed[0]];
+			OccurenceTable occurencesJ = occurences[seed[1]];
+			findSeedTids(seed[0], seed[1], tidsIJ, tidsJI);
+			int[] itemsetI = new int[]{seed[0]};
+			int[] itemsetJ = new int[]{seed[1]};
+			expandLeft(itemsetI, itemsetJ, occurencesI.tids, tidsIJ, seed[2], state);
+			expandRight(itemsetI, itemsetJ, occurencesI.tids, occurencesI.support, occurencesJ.tids, tidsIJ, seed[2], state);
+		}
+	}
+	
+	/**
+	 * Save a rule 1-1 in the top-k rules, and keep it to be expanded if it has the minimum
+	 * support.
+	 */
+	private void saveSeed(int i, int j, int supportIJ, List<int[]> seeds, MiningState state) throws IOException {
+		if(supportIJ >= minsuppRelative){
+			seeds.add(new int[]{i, j, supportIJ});
+			double confIJ = ((double)supportIJ) / occurences[i].support;
+			if(confIJ >= minConfidence){
+				saveRule(supportIJ, confIJ, new int[]{i}, new int[]{j}, state);
+			}
+		}
+	}
+	
+	/**
+	 * Where a sequential run or a task writes its rules, with the counters it uses to
+	 * find the items c of the expansions of a rule (by number of item).
+	 */
+	private class MiningState {
+		final Appendable output;
+		final boolean flushWhenFull; // the output is a buffer, to be written to the file when full (see flush())
+		int ruleCount = 0;
+		final int[] countC = new int[items.length];
+		final int[] lastSidC = new int[items.length]; // the last sequence where the item was counted
+		final int[] itemsC = new int[items.length];   // the items that have been counted
+		
+		MiningState(Appendable output, boolean flushWhenFull){
+			this.output = output;
+			this.flushWhenFull = flushWhenFull;
+			Arrays.fill(lastSidC, -1);
+		}
+	}
+	
+	/**
+	 * Generate the rules 1-1 of a frequent item i with the frequent items j after it, 
+	 * and expand them.
+	 * @param i the number of the item
+	 * @param state where the rules are written
+	 */
+	private void mineSeeds(int i, MiningState state) throws IOException {
+		OccurenceTable occurencesI = occurences[i];
+		
+		// WE COMPARE THE ITEM WITH THE OTHER FREQUENT ITEMS TO 
+		// TRY TO GENERATE A RULE 1-1.
+		for(int j=i+1; j< items.length; j++){
+			OccurenceTable occurencesJ = occurences[j];
+			
+			// (1) Build the bitsets of common tids where 
+			// i appears before j  and  j appears before i.
+			long[] tidsIJ = new long[wordCount];
+			long[] tidsJI = new long[wordCount];
+			int[] supports = findSeedTids(i, j, tidsIJ, tidsJI);
+			int supportIJ = supports[0];
+			int supportJI = supports[1];
+			
+			// (2) check if the two itemsets have enough common tids
+			// if not, we don't need to generate a rule for them.
+			// create rule IJ
+			if(supportIJ >= minsuppRelative){
+				double confIJ = ((double)supportIJ) / occurencesI.support;
+				int[] itemsetI = new int[1];
+				itemsetI[0]= i;
+				int[] itemsetJ = new int[1];
+				itemsetJ[0]= j;
+				if(confIJ >= minConfidence){
+					saveRule(supportIJ, confIJ, itemsetI, itemsetJ, state);
 				}
+				expandLeft(itemsetI, itemsetJ, occurencesI.tids, tidsIJ, supportIJ, state);
+				expandRight(itemsetI, itemsetJ, occurencesI.tids, occurencesI.support, occurencesJ.tids, tidsIJ, supportIJ, state);
+			}
 				
-				// (2) check if the two itemsets have enough common tids
-				// if not, we don't need to generate a rule for them.
-				// create rule IJ
-				if(tidsIJ.size() >= minsuppRelative){
-					double confIJ = ((double)tidsIJ.size()) / occurencesI.size();
-					int[] itemsetI = new int[1];
-					itemsetI[0]= intI;
-					int[] itemsetJ = new int[1];
-					itemsetJ[0]= intJ;
-					if(confIJ >= minConfidence){
-						saveRule(tidsIJ, confIJ, itemsetI, itemsetJ);
-					}
-					expandLeft(itemsetI, itemsetJ, tidsI, tidsIJ, occurencesJ);
-					expandRight(itemsetI, itemsetJ, tidsI, tidsJ, tidsIJ, occurencesI, occurencesJ);
+			// create rule JI
+			if(supportJI >= minsuppRelative){
+				int[] itemsetI = new int[1];
+				itemsetI[0]= i;
+				int[] itemsetJ = new int[1];
+				itemsetJ[0]= j;
+				double confJI = ((double)supportJI) / occurencesJ.support;
+				if(confJI >= minConfidence){
+					saveRule(supportJI, confJI, itemsetJ, itemsetI, state);
 				}
-					
-				// create rule JI
-				if(tidsJI.size() >= minsuppRelative){
-					int[] itemsetI = new int[1];
-					itemsetI[0]= intI;
-					int[] itemsetJ = new int[1];
-					itemsetJ[0]= intJ;
-					double confJI = ((double)tidsJI.size()) / occurencesJ.size();
-					if(confJI >= minConfidence){
-						saveRule(tidsJI, confJI, itemsetJ, itemsetI);
-					}
-					expandRight(itemsetJ, itemsetI, tidsJ,  tidsI, tidsJI, occurencesJ, occurencesI);
-					expandLeft(itemsetJ, itemsetI, tidsJ, tidsJI, occurencesI);
+				expandRight(itemsetJ, itemsetI, occurencesJ.tids, occurencesJ.support, occurencesI.tids, tidsJI, supportJI, state);
+				expandLeft(itemsetJ, itemsetI, occurencesJ.tids, tidsJI, supportJI, state);
+			}
+		}
+	}
+	
+	/**
+	 * Find the sequences where an item i appears before an item j, and those where j 
+	 * appears before i.
+	 * @param tidsIJ the bitset where the sequences where i appears before j are written
+	 * @param tidsJI the bitset where the sequences where j appears before i are written
+	 * @return the supports of i --> j and j --> i
+	 */
+	private int[] findSeedTids(int i, int j, long[] tidsIJ, long[] tidsJI) {
+		OccurenceTable occurencesI = occurences[i];
+		OccurenceTable occurencesJ = occurences[j];
+		int supportIJ = 0;
+		int supportJI = 0;
+		for(int w=0; w< wordCount; w++){
+			long wordIJ = 0;
+			long wordJI = 0;
+			for(long word = occurencesI.tids[w] & occurencesJ.tids[w]; word != 0; word &= word - 1){
+				int tid = (w << 6) + Long.numberOfTrailingZeros(word);
+				int indexI = occurencesI.indexOf(tid);
+				int indexJ = occurencesJ.indexOf(tid);
+				if(occurencesJ.first[indexJ] < occurencesI.last[indexI]){
+					wordJI |= word & -word;
+					supportJI++;
+				}
+				if(occurencesI.first[indexI] < occurencesJ.last[indexJ]){
+					wordIJ |= word & -word;
+					supportIJ++;
 				}
 			}
+			tidsIJ[w] = wordIJ;
+			tidsJI[w] = wordJI;
 		}
-		timeEnd = System.currentTimeMillis(); // for stats
-		
-		// close the file
-		writer.close();
-		
-		database = null;
+		return new int[]{supportIJ, supportJI};
 	}
 
-	private void saveRule(Set<Integer> tidsIJ, double confIJ, int[] itemsetI, int[] itemsetJ) throws IOException {
-		ruleCount++;
+	/**
+	 * Save a rule, or add it to the top-k rules in top-k mode. The itemsets contain 
+	 * numbers of items.
+	 */
+	private void saveRule(int supportIJ, double confIJ, int[] itemsetI, int[] itemsetJ, MiningState state) throws IOException {
+		if(topK != null && !topK.canAdd(supportIJ, confIJ)){
+			return;
+		}
+		state.ruleCount++;
 		StringBuffer buffer = new StringBuffer();
 		// write itemset 1
 		for(int i=0; i<itemsetI.length; i++){
-			buffer.append(itemsetI[i]);
+			buffer.append(items[itemsetI[i]]);
 			if(i != itemsetI.length -1){
 				buffer.append(",");
 			}
@@ -172,22 +477,29 @@ public class AlgoRULEGROWTH {
 		buffer.append(" ==> ");
 		// write itemset 2
 		for(int i=0; i<itemsetJ.length; i++){
-			buffer.append(itemsetJ[i]);
+			buffer.append(items[itemsetJ[i]]);
 			if(i != itemsetJ.length -1){
 				buffer.append(",");
 			}
 		}
+		if(topK != null){
+			topK.add(buffer.toString(), supportIJ, confIJ);
+			minsuppRelative = topK.getMinsup();
+			return;
+		}
 		// write separator
 		buffer.append("  sup= ");
 		// write support
-		buffer.append(tidsIJ.size());
+		buffer.append(supportIJ);
 		// write separator
 		buffer.append("  conf= ");
 		// write confidence
 		buffer.append(confIJ);
-		writer.write(buffer.toString());
-		writer.newLine();
-		writer.flush();
+		buffer.append(System.getProperty("line.separator"));
+		state.output.append(buffer);
+		if(state.flushWhenFull && ((StringBuilder) state.output).length() >= FLUSH_CHARS){
+			flush(state);
+		}
 	}
 
 
@@ -199,78 +511,77 @@ public class AlgoRULEGROWTH {
 	 *   - c is lexically bigger than all items in I
 	 * @throws IOException 
 	 */
-    private void expandLeft(int [] itemsetI, int[] itemsetJ, Collection<Integer> tidsI, 
-    						Collection<Integer> tidsIJ, 
-    						Map<Integer, Occurence> occurencesJ) throws IOException {    	
-    	// map-key: item   map-value: set of tids containing the item
-    	Map<Integer, Set<Integer>> frequentItemsC  = new HashMap<Integer, Set<Integer>>();  
-    	
+    private void expandLeft(int [] itemsetI, int[] itemsetJ, long[] tidsI, 
+    						long[] tidsIJ, int supportIJ, MiningState state) throws IOException {    	
     	// we scan the sequence where I-->J appear to search for items c that we could add.
     	// for each sequence containing I-->J
-    	int left = tidsIJ.size();
-    	for(Integer tid : tidsIJ){
-    		Sequence sequence = database.getSequences().get(tid);
-			Occurence end = occurencesJ.get(tid);
+    	int left = supportIJ;
+    	int itemCount = 0;
+    	int maxI = itemsetI[itemsetI.length-1];
+    	for(int w=0; w< wordCount; w++){
+    		for(long word = tidsIJ[w]; word != 0; word &= word - 1){
+    			int tid = (w << 6) + Long.numberOfTrailingZeros(word);
+    			int[][] sequence = sequences[tid];
+    			int end = lastOccurence(itemsetJ, tid);
 			
-			// for each itemset before the last occurence of J
-itemLoop:	for(int k=0; k < end.lastItemset; k++){
-				Itemset itemset = sequence.get(k);
-				// for each item
-				for(int m=0; m< itemset.size(); m++){
-					Integer itemC = itemset.get(m);
-					// if lexical order is not respected or c is included in the rule already.			
-					if(containsLEXPlus(itemsetI, itemC) ||  containsLEX(itemsetJ, itemC)){
-						continue;
-					}
-						
-					Set<Integer> tidsItemC = frequentItemsC.get(itemC);
-					// optimization for sparse datasets...
-					if(tidsItemC == null){ 
-						if(left < minsuppRelative){
-							continue itemLoop;
-						}	
-					}else if(tidsItemC.size() + left < minsuppRelative){
-						tidsItemC.remove(itemC);
-						continue itemLoop;
-					}
-					if(tidsItemC == null){
-						tidsItemC = new HashSet<Integer>(tidsIJ.size());
-						frequentItemsC.put(itemC, tidsItemC);
-					}
-					tidsItemC.add(tid);				
-				}
-			}
-			left--;
-		}
+    			// for each itemset before the last occurence of J
+    			for(int k=0; k < end; k++){
+    				int[] itemset = sequence[k];
+    				// for each item, while the lexical order is respected
+    				for(int m=itemset.length-1; m >= 0 && itemset[m] > maxI; m--){
+    					int itemC = itemset[m];
+    					// if c is included in the rule already.			
+    					if(containsLEX(itemsetJ, itemC)){
+    						continue;
+    					}
+    					itemCount = countItemC(itemC, tid, left, itemCount, state);
+    				}
+    			}
+    			left--;
+    		}
+    	}
     	
      	// for each item c found, we create a rule	 	
-    	for(Entry<Integer, Set<Integer>> entry : frequentItemsC.entrySet()){
-    		Integer itemC = entry.getKey();
-    		Set<Integer> tidsIC_J = entry.getValue();
+    	for(int itemC : getFrequentItemsC(itemCount, state)){
+    		OccurenceTable occurencesC = occurences[itemC];
     		
-    		// if the support is enough      Sup(R)  =  sup(IC -->J)
-    		if(tidsIC_J.size() >= minsuppRelative){ 
-    			// Calculate tids containing IC
-    			Set<Integer> tidsIC = new HashSet<Integer>(tidsI.size());
-    	    	for(Integer tid: tidsI){
-    	    		if(mapItemCount.get(itemC).containsKey(tid)){
-    	    			tidsIC.add(tid);
-    	    		}
-    	    	}
-    			
-    			// Create rule and calculate its confidence:  Conf(r) = sup(IUC -->J) /  sup(IUC)			
-				double confIC_J = ((double)tidsIC_J.size()) / tidsIC.size();
-				int [] itemsetIC = new int[itemsetI.length+1];
-				System.arraycopy(itemsetI, 0, itemsetIC, 0, itemsetI.length);
-				itemsetIC[itemsetI.length] = itemC;
-				
-				// if confidence is enough
-				if(confIC_J >= minConfidence){
-					saveRule(tidsIC_J, confIC_J, itemsetIC, itemsetJ);
-				}
-				// recursive call to expand left side of the rule
-				expandLeft(itemsetIC, itemsetJ, tidsIC, tidsIC_J, occurencesJ);
+    		// the tids where c appears before the last occurence of J
+    		long[] tidsIC_J = new long[wordCount];
+    		int supportIC_J = 0;
+    		for(int w=0; w< wordCount; w++){
+    			for(long word = tidsIJ[w] & occurencesC.tids[w]; word != 0; word &= word - 1){
+    				int tid = (w << 6) + Long.numberOfTrailingZeros(word);
+    				if(occurencesC.getFirst(tid) < lastOccurence(itemsetJ, tid)){
+    					tidsIC_J[w] |= word & -word;
+    					supportIC_J++;
+    				}
+    			}
+    		}
+    		// (in top-k mode, the minimum support may have been raised since the scan)
+    		if(supportIC_J < minsuppRelative){
+    			continue;
     		}
+    		
+    		// Calculate tids containing IC
+    		long[] tidsIC = new long[wordCount];
+    		int supportIC = 0;
+    		for(int w=0; w< wordCount; w++){
+    			tidsIC[w] = tidsI[w] & occurencesC.tids[w];
+    			supportIC += Long.bitCount(tidsIC[w]);
+    		}
+    		
+    		// Create rule and calculate its confidence:  Conf(r) = sup(IUC -->J) /  sup(IUC)			
+    		double confIC_J = ((double)supportIC_J) / supportIC;
+    		int [] itemsetIC = new int[itemsetI.length+1];
+    		System.arraycopy(itemsetI, 0, itemsetIC, 0, itemsetI.length);
+    		itemsetIC[itemsetI.length] = itemC;
+    		
+    		// if confidence is enough
+    		if(confIC_J >= minConfidence){
+    			saveRule(supportIC_J, confIC_J, itemsetIC, itemsetJ, state);
+    		}
+    		// recursive call to expand left side of the rule
+    		expandLeft(itemsetIC, itemsetJ, tidsIC, tidsIC_J, supportIC_J, state);
     	}
     	checkMemory();
 	}
@@ -284,147 +595,240 @@ itemLoop:	for(int k=0; k < end.lastItemset; k++){
 	 * @throws IOException 
 	 */
     private void expandRight(int [] itemsetI, int []itemsetJ,
-							Set<Integer> tidsI, 
-    						Collection<Integer> tidsJ, 
-    						Collection<Integer> tidsIJ, 
-    						Map<Integer, Occurence> occurencesI,
-    						Map<Integer, Occurence> occurencesJ) throws IOException {
+							long[] tidsI, int supportI,
+    						long[] tidsJ, 
+    						long[] tidsIJ, int supportIJ, MiningState state) throws IOException {
 		
-    	// map-key: item   map-value: set of tids containing the item
-    	Map<Integer, Set<Integer>> frequentItemsC  = new HashMap<Integer, Set<Integer>>();  
-    	
     	// we scan the sequence where I-->J appear to search for items c that we could add.
     	// for each sequence containing I-->J.
-    	int left = tidsIJ.size();
-    	for(Integer tid : tidsIJ){
-    		Sequence sequence = database.getSequences().get(tid);
-			Occurence first = occurencesI.get(tid);
-			
-			// for each itemset after the first occurence of I
-			for(int k=first.firstItemset+1; k < sequence.size(); k++){
-				Itemset itemset = sequence.get(k);
-				// for each item
-	itemLoop:	for(int m=0; m< itemset.size(); m++){
-					Integer itemC = itemset.get(m);
-					// if lexical order is not respected or c is included in the rule already.			
-					if(containsLEX(itemsetI, itemC) ||  containsLEXPlus(itemsetJ, itemC)){
-						continue;
-					}
-					Set<Integer> tidsItemC = frequentItemsC.get(itemC);
-					// optimization for sparse datasets...
-					if(tidsItemC == null){ 
-						if(left < minsuppRelative){
-							continue itemLoop;
-						}	
-					}else if(tidsItemC.size() + left < minsuppRelative){
-						tidsItemC.remove(itemC);
-						continue itemLoop;
-					}
-					if(tidsItemC == null){
-						tidsItemC = new HashSet<Integer>(tidsIJ.size());
-						frequentItemsC.put(itemC, tidsItemC);
-					}
-					tidsItemC.add(tid);					
-				}
-			}
-			left--;
-		}
+    	int left = supportIJ;
+    	int itemCount = 0;
+    	int maxJ = itemsetJ[itemsetJ.length-1];
+    	for(int w=0; w< wordCount; w++){
+    		for(long word = tidsIJ[w]; word != 0; word &= word - 1){
+    			int tid = (w << 6) + Long.numberOfTrailingZeros(word);
+    			int[][] sequence = sequences[tid];
+    			int first = firstOccurence(itemsetI, tid);
+    			
+    			// for each itemset after the first occurence of I
+    			for(int k=first+1; k < sequence.length; k++){
+    				int[] itemset = sequence[k];
+    				// for each item, while the lexical order is respected
+    				for(int m=itemset.length-1; m >= 0 && itemset[m] > maxJ; m--){
+    					int itemC = itemset[m];
+    					// if c is included in the rule already.			
+    					if(containsLEX(itemsetI, itemC)){
+    						continue;
+    					}
+    					itemCount = countItemC(itemC, tid, left, itemCount, state);
+    				}
+    			}
+    			left--;
+    		}
+    	}
     	
     	// for each item c found, we create each a rule	 	
-    	for(Entry<Integer, Set<Integer>> entry : frequentItemsC.entrySet()){
-    		Integer itemC = entry.getKey();
-    		Set<Integer> tidsI_JC = entry.getValue();
+    	for(int itemC : getFrequentItemsC(itemCount, state)){
+    		OccurenceTable occurencesC = occurences[itemC];
     		
-    		// if the support is enough      Sup(r)  =  sup(I -->JUC)
-    		if(tidsI_JC.size() >= minsuppRelative){  
-    			Set<Integer> tidsJC = new HashSet<Integer>(tidsJ.size());
-    			Map<Integer, Occurence> occurencesJC = new HashMap<Integer, Occurence>();
-    			
-    			for(Integer tid: tidsJ){
-    				Occurence occurenceC = mapItemCount.get(itemC).get(tid);
-    	    		if(occurenceC != null){
-    	    			tidsJC.add(tid);
-    	    			Occurence occurenceJ = occurencesJ.get(tid);
-    	    			if(occurenceC.lastItemset < occurenceJ.lastItemset){
-    	    				occurencesJC.put(tid, occurenceC);
-    	    			}else{
-    	    				occurencesJC.put(tid, occurenceJ);
-    	    			}
-    	    		}
-    	    	}
-    			// Create rule and calculate its confidence:  Conf(r) = sup(I-->JC) /  sup(I)	
-				double confI_JC = ((double)tidsI_JC.size()) / tidsI.size();
-				int[] itemsetJC = new int[itemsetJ.length+1];
-				System.arraycopy(itemsetJ, 0, itemsetJC, 0, itemsetJ.length);
-				itemsetJC[itemsetJ.length]= itemC;
-				
-				// if the confidence is enough
-				if(confI_JC >= minConfidence){
-					saveRule(tidsI_JC, confI_JC, itemsetI, itemsetJC);
-				}
-
-				expandRight(itemsetI, itemsetJC, tidsI, tidsJC, tidsI_JC, occurencesI, occurencesJC);  // occurencesJ
-				expandLeft(itemsetI, itemsetJC,  tidsI, tidsI_JC, occurencesJC);  // occurencesJ
+    		// the tids where c appears after the first occurence of I
+    		long[] tidsI_JC = new long[wordCount];
+    		int supportI_JC = 0;
+    		for(int w=0; w< wordCount; w++){
+    			for(long word = tidsIJ[w] & occurencesC.tids[w]; word != 0; word &= word - 1){
+    				int tid = (w << 6) + Long.numberOfTrailingZeros(word);
+    				if(occurencesC.getLast(tid) > firstOccurence(itemsetI, tid)){
+    					tidsI_JC[w] |= word & -word;
+    					supportI_JC++;
+    				}
+    			}
+    		}
+    		// (in top-k mode, the minimum support may have been raised since the scan)
+    		if(supportI_JC < minsuppRelative){
+    			continue;
     		}
+    		
+    		// Calculate tids containing JC
+    		long[] tidsJC = new long[wordCount];
+    		for(int w=0; w< wordCount; w++){
+    			tidsJC[w] = tidsJ[w] & occurencesC.tids[w];
+    		}
+    		
+    		// Create rule and calculate its confidence:  Conf(r) = sup(I-->JC) /  sup(I)	
+    		double confI_JC = ((double)supportI_JC) / supportI;
+    		int[] itemsetJC = new int[itemsetJ.length+1];
+    		System.arraycopy(itemsetJ, 0, itemsetJC, 0, itemsetJ.length);
+    		itemsetJC[itemsetJ.length]= itemC;
+    		
+    		// if the confidence is enough
+    		if(confI_JC >= minConfidence){
+    			saveRule(supportI_JC, confI_JC, itemsetI, itemsetJC, state);
+    		}
+
+    		expandRight(itemsetI, itemsetJC, tidsI, supportI, tidsJC, tidsI_JC, supportI_JC, state);
+    		expandLeft(itemsetI, itemsetJC,  tidsI, tidsI_JC, supportI_JC, state);
     	}
     	checkMemory();
 	}
-
+    
+    /**
+     * Count an item c found in a sequence during a scan of the sequences of a rule, if
+     * it was not already counted for this sequence. An item that is found for the first 
+     * time when less than minsup sequences are left to scan is not counted, since it 
+     * cannot be frequent (optimization for sparse datasets).
+     * @param itemC the number of the item
+     * @param tid the sequence
+     * @param left the number of sequences left to scan, including this one
+     * @param itemCount the number of items counted so far
+     * @param state the counters
+     * @return the new number of items counted
+     */
+    private int countItemC(int itemC, int tid, int left, int itemCount, MiningState state) {
+    	if(state.lastSidC[itemC] == tid){
+    		return itemCount;
+    	}
+    	if(state.countC[itemC] == 0){
+    		if(left < minsuppRelative){
+    			return itemCount;
+    		}
+    		state.itemsC[itemCount++] = itemC;
+    	}
+    	state.lastSidC[itemC] = tid;
+    	state.countC[itemC]++;
+    	return itemCount;
+    }
+    
+    /**
+     * Returns the items c counted during a scan that are frequent, by increasing numbers,
+     * and reset the counts for the next scan.
+     * @param itemCount the number of items counted
+     * @param state the counters
+     */
+    private int[] getFrequentItemsC(int itemCount, MiningState state) {
+    	int[] frequentItemsC = new int[itemCount];
+    	int frequentCount = 0;
+    	for(int i=0; i< itemCount; i++){
+    		int itemC = state.itemsC[i];
+    		if(state.countC[itemC] >= minsuppRelative){
+    			frequentItemsC[frequentCount++] = itemC;
+    		}
+    		state.countC[itemC] = 0;
+    		state.lastSidC[itemC] = -1;
+    	}
+    	frequentItemsC = Arrays.copyOf(frequentItemsC, frequentCount);
+    	Arrays.sort(frequentItemsC);
+    	return frequentItemsC;
+    }
+    
+    /**
+     * Returns the first itemset of a sequence after which all the items of an itemset 
+     * have appeared.
+     */
+    private int firstOccurence(int[] itemset, int tid) {
+    	int first = occurences[itemset[0]].getFirst(tid);
+    	for(int i=1; i< itemset.length; i++){
+    		first = Math.max(first, occurences[itemset[i]].getFirst(tid));
+    	}
+    	return first;
+    }
+    
+    /**
+     * Returns the last itemset of a sequence from which all the items of an itemset 
+     * appear.
+     */
+    private int lastOccurence(int[] itemset, int tid) {
+    	int last = occurences[itemset[0]].getLast(tid);
+    	for(int i=1; i< itemset.length; i++){
+    		last = Math.min(last, occurences[itemset[i]].getLast(tid));
+    	}
+    	return last;
+    }
     
 	/**
 	 * This method calculate the frequency of each item in one database pass.
-	 * Then it remove all items that are not frequent.
+	 * Then it remove all items that are not frequent, numbers the frequent items
+	 * by increasing ids and creates their OccurenceTable in a second database pass.
 	 * @param database : a sequence database 
-	 * @return A map such that key = item
-	 *                         value = a map  where a key = tid  and a value = Occurence
-	 * This map allows knowing the frequency of each item and their first and last occurence in each sequence.
 	 */
-	private Map<Integer, Map<Integer, Occurence>> removeItemsThatAreNotFrequent(SequenceDatabase database) {
+	private void removeItemsThatAreNotFrequent(SequenceDatabase database) {
 		// (1) Count the support of each item in the database in one database pass
-		mapItemCount = new HashMap<Integer, Map<Integer, Occurence>>(); // <item, Map<tid, occurence>>
+		Map<Integer, int[]> mapItemCount = new HashMap<Integer, int[]>(); // <item, {support, last tid}>
 		
 		// for each sequence
 		for(int k=0; k< database.size(); k++){
 			Sequence sequence = database.getSequences().get(k);
 			// for each itemset
-			for(short j=0; j< sequence.getItemsets().size(); j++){
-				Itemset itemset = sequence.get(j);
+			for(Itemset itemset : sequence.getItemsets()){
 				// for each item
-				for(int i=0; i< itemset.size(); i++){
-					Integer itemI = itemset.get(i);
-					Map<Integer, Occurence> occurences = mapItemCount.get(itemI);
-					if(occurences == null){
-						occurences = new HashMap<Integer, Occurence>();
-						mapItemCount.put(itemI, occurences);
+				for(Integer itemI : itemset.getItems()){
+					int[] count = mapItemCount.get(itemI);
+					if(count == null){
+						count = new int[]{0, -1};
+						mapItemCount.put(itemI, count);
 					}
-					Occurence occurence = occurences.get(k);
-					if(occurence == null){
-						occurence = new Occurence(j, j);
-						occurences.put(k, occurence);
-					}else{
-						occurence.lastItemset = j;
+					if(count[1] != k){
+						count[0]++;
+						count[1] = k;
 					}
 				}
 			}
 		}
 //		System.out.println("NUMBER OF DIFFERENT ITEMS : " + mapItemCount.size());
-		// (2) remove all items that are not frequent from the database
-		for(Sequence sequence : database.getSequences()){
-			int i=0;
-			while(i < sequence.getItemsets().size()){
-				Itemset itemset = sequence.getItemsets().get(i);
-				int j=0;
-				while(j < itemset.size()){
-					if( mapItemCount.get(itemset.get(j)).size() < minsuppRelative){
-						itemset.getItems().remove(j);
-					}else{
-						j++;
+		// (2) number the frequent items by increasing ids
+		List<Integer> listFrequents = new ArrayList<Integer>();
+		for(Entry<Integer, int[]> entry : mapItemCount.entrySet()){
+			if(entry.getValue()[0] >= minsuppRelative){
+				listFrequents.add(entry.getKey());
+			}
+		}
+		items = new int[listFrequents.size()];
+		for(int i=0; i< items.length; i++){
+			items[i] = listFrequents.get(i);
+		}
+		Arrays.sort(items);
+		Map<Integer, Integer> numbers = new HashMap<Integer, Integer>();
+		wordCount = (database.size() + 63) >>> 6;
+		occurences = new OccurenceTable[items.length];
+		for(int i=0; i< items.length; i++){
+			numbers.put(items[i], i);
+			occurences[i] = new OccurenceTable(wordCount, mapItemCount.get(items[i])[0]);
+		}
+		
+		// (3) remove all items that are not frequent from the database, 
+		// and fill the occurence tables
+		sequences = new int[database.size()][][];
+		int[] buffer = new int[16];
+		for(int k=0; k< database.size(); k++){
+			List<Itemset> itemsets = database.getSequences().get(k).getItemsets();
+			sequences[k] = new int[itemsets.size()][];
+			for(short j=0; j< itemsets.size(); j++){
+				List<Integer> itemset = itemsets.get(j).getItems();
+				if(buffer.length < itemset.size()){
+					buffer = new int[itemset.size() * 2];
+				}
+				int size = 0;
+				for(Integer item : itemset){
+					Integer number = numbers.get(item);
+					if(number != null){
+						buffer[size++] = number;
+						occurences[number].addOccurence(k, j);
 					}
 				}
-				i++;
+				// the items are sorted and kept once, so that the items c that respect 
+				// the lexical order of a rule are at the end of the itemset
+				Arrays.sort(buffer, 0, size);
+				int distinct = 0;
+				for(int i=0; i< size; i++){
+					if(distinct == 0 || buffer[distinct-1] != buffer[i]){
+						buffer[distinct++] = buffer[i];
+					}
+				}
+				sequences[k][j] = Arrays.copyOf(buffer, distinct);
 			}
 		}
-		return mapItemCount;
+		for(OccurenceTable table : occurences){
+			table.computeRanks();
+		}
 	}
 
 	/**
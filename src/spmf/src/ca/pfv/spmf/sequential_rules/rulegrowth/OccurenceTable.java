@@ -0,0 +1,90 @@
+package ca.pfv.spmf.sequential_rules.rulegrowth;
+
+/**
+ * The sequences that contain an item, and the first and last itemsets where it appears
+ * in each of them, for RuleGrowth.
+ *
+ * The sequences are a bitset stored in an array of longs, with one bit per sequence id,
+ * so that the sequences of an itemset or of a rule are found by ANDing words and are
+ * counted with Long.bitCount(). The positions are kept in arrays of shorts, in the order
+ * of the sequence ids. The position of a sequence in these arrays is the number of bits
+ * set before its bit, which is found with the count of bits before each word (rank).
+ * The arrays therefore take 4 bytes per sequence containing the item, not per sequence
+ * of the database.
+ */
+public class OccurenceTable {
+
+	final long[] tids;     // the sequences containing the item
+	final int[] rank;      // for each word of tids, the number of bits set in the words before
+	final short[] first;   // the first itemset containing the item, for each sequence in tids
+	final short[] last;    // the last itemset containing the item, for each sequence in tids
+	int support = 0;       // the number of sequences containing the item
+
+	/**
+	 * Constructor
+	 * @param wordCount the number of words of a bitset of the sequences of the database
+	 * @param support the number of sequences that contain the item
+	 */
+	OccurenceTable(int wordCount, int support) {
+		tids = new long[wordCount];
+		rank = new int[wordCount];
+		first = new short[support];
+		last = new short[support];
+	}
+
+	/**
+	 * Add an occurence of the item. The sequences must be added by increasing ids, and 
+	 * the itemsets of a sequence by increasing positions.
+	 */
+	void addOccurence(int sid, short itemset) {
+		int word = sid >>> 6;
+		if((tids[word] & (1L << sid)) == 0){
+			tids[word] |= 1L << sid;
+			first[support] = itemset;
+			last[support] = itemset;
+			support++;
+		}else{
+			last[support - 1] = itemset;
+		}
+	}
+
+	/**
+	 * Compute the rank of each word, once all the occurences have been added.
+	 */
+	void computeRanks() {
+		int count = 0;
+		for(int w = 0; w < tids.length; w++){
+			rank[w] = count;
+			count += Long.bitCount(tids[w]);
+		}
+	}
+
+	/**
+	 * Returns the index of the positions of a sequence that contains the item.
+	 */
+	int indexOf(int sid) {
+		int word = sid >>> 6;
+		return rank[word] + Long.bitCount(tids[word] & ((1L << sid) - 1));
+	}
+
+	/**
+	 * Returns the first itemset containing the item in a sequence that contains it.
+	 */
+	public short getFirst(int sid) {
+		return first[indexOf(sid)];
+	}
+
+	/**
+	 * Returns the last itemset containing the item in a sequence that contains it.
+	 */
+	public short getLast(int sid) {
+		return last[indexOf(sid)];
+	}
+
+	/**
+	 * Returns the number of sequences that contain the item.
+	 */
+	public int getSupport() {
+		return support;
+	}
+}
@@ -9,6 +9,8 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
+import ca.pfv.spmf.general.io.MappedIntFile;
+
 //import ca.pfv.spmf2.sequentialrules.TopKSeqRulesB_testBinaryTree.Sequence;
 
 /**
@@ -24,23 +26,28 @@ public class SequenceDatabase {
 
 
 	public void loadFile(String path) throws IOException {
-		String thisLine;
-		BufferedReader myInput = null;
-		try {
-			FileInputStream fin = new FileInputStream(new File(path));
-			myInput = new BufferedReader(new InputStreamReader(fin));
-			while ((thisLine = myInput.readLine()) != null) {
-				// si la ligne n'est pas un commentaire
-				if (thisLine.charAt(0) != '#') {
-					// ajoute une squence
-					addSequence(thisLine.split(" "));
-				}
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			if (myInput != null) {
-				myInput.close();
+		// the file is memory-mapped and parsed without a String per line or token
+		MappedIntFile file = MappedIntFile.load(path);
+		for (int i = 0; i < file.getLineCount(); i++) {
+			addSequence(file.getTokens(), file.getLineStart(i), file.getLineEnd(i));
+		}
+	}
+
+	/**
+	 * Adds the sequence in tokens[start .. end), in the same format as a line of 
+	 * the file (timestamps are already left out by MappedIntFile).
+	 */
+	public void addSequence(int[] tokens, int start, int end) {
+		Sequence sequence = new Sequence();
+		Itemset itemset = new Itemset();
+		for (int i = start; i < end; i++) {
+			if (tokens[i] == -1) { // itemset separator
+				sequence.addItemset(itemset);
+				itemset = new Itemset();
+			} else if (tokens[i] == -2) { // end of the sequence
+				sequences.add(sequence);
+			} else {
+				itemset.addItem(tokens[i]);
 			}
 		}
 	}
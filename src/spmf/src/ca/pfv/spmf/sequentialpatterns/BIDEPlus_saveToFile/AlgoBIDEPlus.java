@@ -10,12 +10,27 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
  * This is an implementation of the BIDE+ algorithm by Wang et al. 2007
  * This implementation is part of the SPMF framework.
  * 
+ * The maximum and semi-maximum periods of a prefix are found from the boundaries 
+ * computed once per sequence for the prefix (see PseudoSequence.getPeriodsOfAPrefix()), 
+ * which are kept for the backscan pruning and the backward extension check of the prefix. 
+ * The pairs of the periods are counted in arrays indexed by item (see PairCounts).
+ * 
+ * The algorithm can also run on several threads (see runAlgorithm(database, outputPath, minsup, threadCount)).
+ * The projected database of each frequent item is then mined by its own task, and the 
+ * patterns of each task are written in the order of the sequential algorithm, so both 
+ * produce the same file.
+ * 
  * @author Philippe Fournier-Viger
  **/
 
@@ -36,6 +51,13 @@ public class AlgoBIDEPlus {
 	
 	// For BIDE+, we have to keep a pointer to the original database
 	private PseudoSequenceDatabase initialContext = null;
+	// the sequences of the original database by id
+	private Map<Integer, PseudoSequence> sequencesByID = null;
+	// the largest frequent item
+	private int maxItem;
+	
+	// for the parallel version
+	private ExecutorService executor = null;
 		
 	public AlgoBIDEPlus(){
 	}
@@ -51,6 +73,29 @@ public class AlgoBIDEPlus {
 		writer.close();
 	}
 	
+	/**
+	 * Run the algorithm with several threads. The output is the same as with the sequential 
+	 * version, in the same order.
+	 * @param database the sequence database
+	 * @param outputPath the file where the closed patterns are written
+	 * @param minsup the minimum support (a number of sequences)
+	 * @param threadCount the number of mining threads (1 runs the sequential algorithm)
+	 * @throws IOException 
+	 */
+	public void runAlgorithm(SequenceDatabase database, String outputPath, int minsup, int threadCount) throws IOException {
+		if(threadCount <= 1){
+			runAlgorithm(database, outputPath, minsup);
+			return;
+		}
+		executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			runAlgorithm(database, outputPath, minsup);
+		} finally {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+	
 	/**
 	 * @param contexte The initial context.
 	 * @throws IOException 
@@ -70,65 +115,148 @@ public class AlgoBIDEPlus {
 				initialContext.addSequence(new PseudoSequence(optimizedSequence, 0, 0));
 			}
 		}
+		sequencesByID = new HashMap<Integer, PseudoSequence>();
+		for(PseudoSequence sequence : initialContext.getPseudoSequences()){
+			sequencesByID.put(sequence.getId(), sequence);
+		}
+		maxItem = 0;
+		for(Entry<Integer, Set<Integer>> entry : mapSequenceID.entrySet()){
+			if(entry.getValue().size() >= minsuppRelative && entry.getKey() > maxItem){
+				maxItem = entry.getKey();
+			}
+		}
+		
+		if(executor != null){
+			bideParallel(mapSequenceID);
+			checkMemory();
+			return;
+		}
 		
 		// For each item
+		MiningState state = new MiningState(writer);
 		for(Entry<Integer, Set<Integer>> entry : mapSequenceID.entrySet()){
 			if(entry.getValue().size() >= minsuppRelative){ // if the item is frequent
-				// build the projected context
-				Integer item = entry.getKey();
-				PseudoSequenceDatabase projectedContext = buildProjectedContext(item, initialContext,  false);
-
-				// Create the prefix for the projected context.
-				Sequence prefix = new Sequence(0);  
-				prefix.addItemset(new Itemset(item, 0));
-				prefix.setSequencesID(entry.getValue());
-				
-				int frequenceSucesseurs =0;
-				
-				// We recursively call this method with the new prefix.
-				if(!checkBackScanPruning(prefix)){
-					frequenceSucesseurs = recursion(prefix, projectedContext); 
-				}
-				
-				// We add the prefix to frequent sequential patterns found.
-				if(prefix.getAbsoluteSupport() != frequenceSucesseurs){// no forward extension
-					if(!checkBackwardExtension(prefix)){ // no backward extension
-						savePattern(prefix);  // we found a closed sequence.
-					}
-				}
+				mineItem(entry.getKey(), entry.getValue(), state);
 			}
 		}		
+		patternCount = state.patternCount;
 		checkMemory();
 	}
 	
+	/**
+	 * Mine the closed patterns starting with a frequent item.
+	 * @param item the item
+	 * @param sequenceIDs the ids of the sequences containing the item
+	 * @param state where the patterns are written
+	 */
+	private void mineItem(Integer item, Set<Integer> sequenceIDs, MiningState state) throws IOException {
+		// build the projected context
+		PseudoSequenceDatabase projectedContext = buildProjectedContext(item, initialContext,  false);
+
+		// Create the prefix for the projected context.
+		Sequence prefix = new Sequence(0);  
+		prefix.addItemset(new Itemset(item, 0));
+		prefix.setSequencesID(sequenceIDs);
+		List<PseudoSequence.Periods> periods = getPeriodsOfAPrefix(prefix);
+		
+		int frequenceSucesseurs =0;
+		
+		// We recursively call this method with the new prefix.
+		if(!checkBackScanPruning(prefix, periods, state.counts)){
+			frequenceSucesseurs = recursion(prefix, projectedContext, state); 
+		}
+		
+		// We add the prefix to frequent sequential patterns found.
+		if(prefix.getAbsoluteSupport() != frequenceSucesseurs){// no forward extension
+			if(!checkBackwardExtension(prefix, periods, state.counts)){ // no backward extension
+				savePattern(prefix, state);  // we found a closed sequence.
+			}
+		}
+	}
+	
+	/**
+	 * Parallel version of the main loop of bide(). One task is submitted per frequent 
+	 * item, in the order of the sequential loop, and the patterns of each task are 
+	 * written when it and all the tasks before it are done.
+	 */
+	private void bideParallel(Map<Integer, Set<Integer>> mapSequenceID) throws IOException {
+		List<Future<MiningState>> tasks = new ArrayList<Future<MiningState>>();
+		for(final Entry<Integer, Set<Integer>> entry : mapSequenceID.entrySet()){
+			if(entry.getValue().size() >= minsuppRelative){ // if the item is frequent
+				tasks.add(executor.submit(new Callable<MiningState>() {
+					public MiningState call() throws IOException {
+						MiningState state = new MiningState(new StringBuilder());
+						mineItem(entry.getKey(), entry.getValue(), state);
+						return state;
+					}
+				}));
+			}
+		}
+		for(Future<MiningState> task : tasks){
+			MiningState state;
+			try {
+				state = task.get();
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted while mining", e);
+			} catch (ExecutionException e) {
+				throw new IOException("mining task failed", e.getCause());
+			}
+			writer.append((StringBuilder) state.output);
+			patternCount += state.patternCount;
+		}
+	}
+	
+	/**
+	 * Where a sequential run or a task writes its patterns, with the counters it uses
+	 * for the backward extension checks.
+	 */
+	private class MiningState {
+		final Appendable output;
+		int patternCount = 0;
+		final PairCounts counts = new PairCounts(maxItem);
+		
+		MiningState(Appendable output){
+			this.output = output;
+		}
+	}
+	
+	/**
+	 * Get the boundaries of the periods of a prefix in each sequence that contains it.
+	 */
+	private List<PseudoSequence.Periods> getPeriodsOfAPrefix(Sequence prefix) {
+		List<PseudoSequence.Periods> periods = new ArrayList<PseudoSequence.Periods>(prefix.getSequencesID().size());
+		for(Integer id : prefix.getSequencesID()){
+			periods.add(sequencesByID.get(id).getPeriodsOfAPrefix(prefix));
+		}
+		return periods;
+	}
+	
 	/**
 	 * Return true if we should stop to explore this prefix.
 	 * 
 	 * Backscan-pruning is from the Bide article.
 	 * 
 	 * @param prefix
-	 * @param projectedContext
+	 * @param periodsOfSequences the periods of the prefix in each sequence that contains it
+	 * @param counts the counters of pairs
 	 * @return boolean
 	 */
-	private boolean checkBackScanPruning(Sequence prefix) {	
+	private boolean checkBackScanPruning(Sequence prefix, List<PseudoSequence.Periods> periodsOfSequences, PairCounts counts) {	
 		for(int i=0; i< prefix.getItemOccurencesTotalCount(); i++){
 			// (1) For each i, we construct the list of semi-maximum periods.
 			List<PseudoSequence> semimaximumPeriods = new ArrayList<PseudoSequence>();
-			for(PseudoSequence sequence : initialContext.getPseudoSequences()){
-				if(prefix.getSequencesID().contains(sequence.getId())){
-					PseudoSequence period = sequence.getIthSemiMaximumPeriodOfAPrefix(prefix, i, false);
-					
-					if(period !=null){
-						semimaximumPeriods.add(period);
-					}
+			for(PseudoSequence.Periods periods : periodsOfSequences){
+				PseudoSequence period = periods.getIthSemiMaximumPeriod(i);
+				
+				if(period !=null){
+					semimaximumPeriods.add(period);
 				}
 			}
 			// (2) check if an element of the semi-max perdios as the same frequency as the prefix.
-			Set<Pair> paires = findAllFrequentPairsForBackwardExtensionCheck(prefix, semimaximumPeriods, i);
-			for(Pair pair : paires){				
-				if(pair.getCount() == prefix.getAbsoluteSupport()){
-					return true;
-				}
+			// (there is at most one period per sequence)
+			if(semimaximumPeriods.size() == prefix.getAbsoluteSupport() && 
+					findAllFrequentPairsForBackwardExtensionCheck(prefix, semimaximumPeriods, i, counts) == prefix.getAbsoluteSupport()){
+				return true;
 			}
 		}
 		return false;
@@ -143,50 +271,46 @@ public class AlgoBIDEPlus {
 	 * @param projectedContext
 	 * @return boolean
 	 */
-	private boolean checkBackwardExtension(Sequence prefix) {	
+	private boolean checkBackwardExtension(Sequence prefix, List<PseudoSequence.Periods> periodsOfSequences, PairCounts counts) {	
 
 		// CHECK FOR S-EXTENSION
 		for(int i=0; i< prefix.getItemOccurencesTotalCount(); i++){
 			// (1) For each i, we build the list of maximum periods
 			List<PseudoSequence> maximumPeriods = new ArrayList<PseudoSequence>();
-			for(PseudoSequence sequence : initialContext.getPseudoSequences()){
-				if(prefix.getSequencesID().contains(sequence.getId())){
-
-					PseudoSequence period = sequence.getIthMaximumPeriodOfAPrefix(prefix, i, false);
-					
-					if(period !=null){
-						maximumPeriods.add(period);
-					}
+			for(PseudoSequence.Periods periods : periodsOfSequences){
+				PseudoSequence period = periods.getIthMaximumPeriod(i);
+				
+				if(period !=null){
+					maximumPeriods.add(period);
 				}
 			}
 			// (2)check if an element from the maximum periods has the same support as the prefix.
-			for(Pair pair : findAllFrequentPairsForBackwardExtensionCheck(prefix, maximumPeriods, i)){
-				if(pair.getCount() == prefix.getAbsoluteSupport()){
-					return true;
-				}
+			// (there is at most one period per sequence)
+			if(maximumPeriods.size() == prefix.getAbsoluteSupport() && 
+					findAllFrequentPairsForBackwardExtensionCheck(prefix, maximumPeriods, i, counts) == prefix.getAbsoluteSupport()){
+				return true;
 			}
 		}
 		return false; // no backward extension
 	} 
 	
 	/**
-	 * Method to find all frequent items in a context (dabase).
-	 * This is for k> 1.
+	 * Method to count the pairs of the periods of a prefix, for the backward extension 
+	 * check and the backscan pruning.
 	 * @param prefix
-	 * @param contexte
-	 * @return
+	 * @param maximumPeriods the periods, one per sequence
+	 * @param iPeriod the element of the prefix of the periods
+	 * @param counts the counters of pairs
+	 * @return the largest number of periods that contain a same pair
 	 */
-	protected Set<Pair> findAllFrequentPairsForBackwardExtensionCheck(
-			Sequence prefix, List<PseudoSequence> maximumPeriods, int iPeriod) {
-		// On va traverser la BD et stocker les frquences cumulatives de chaque paires dans une Map au fur et  mesure.
-		Map<Pair, Pair> mapPaires = new HashMap<Pair, Pair>();
-		// Important: We need to make sure that don't count two time the same element 
-		PseudoSequence lastPeriod = null;
-		Set<Pair> alreadyCountedForSequenceID = new HashSet<Pair>(); // il ne faut compter un item qu'une fois par squence ID.
+	protected int findAllFrequentPairsForBackwardExtensionCheck(
+			Sequence prefix, List<PseudoSequence> maximumPeriods, int iPeriod, PairCounts counts) {
+		counts.clear();
+		int maxCount = 0;
 
 		// NEW CODE 2010-02-04
-		Integer itemI = prefix.getIthItem(iPeriod);  // iPeriod 
-		Integer itemIm1 = null;  // iPeriod -1
+		int itemI = prefix.getIthItem(iPeriod);  // iPeriod 
+		int itemIm1 = -1;  // iPeriod -1
 		if(iPeriod > 0){ 
 			itemIm1 = prefix.getIthItem(iPeriod -1);	
 		}
@@ -194,10 +318,8 @@ public class AlgoBIDEPlus {
 		
 		
 		for(PseudoSequence period : maximumPeriods){
-			if(period != lastPeriod){
-				alreadyCountedForSequenceID.clear(); 
-				lastPeriod = period;
-			}
+			// Important: We need to make sure that don't count two time the same element 
+			counts.nextPeriod();
 
 			for(int i=0; i< period.size(); i++){
 				// NEW
@@ -207,7 +329,7 @@ public class AlgoBIDEPlus {
 				
 				// NEW march 20 2010 : check if I is after current position in current itemset
 				for(int j=0; j < period.getSizeOfItemsetAt(i); j++){
-					Integer item = period.getItemAtInItemsetAt(j, i);
+					int item = period.getItemAtInItemsetAt(j, i);
 					if(item == itemI){
 						sawI = true; 
 					}else if (item > itemI){
@@ -216,43 +338,82 @@ public class AlgoBIDEPlus {
 				}
 				// END NEW
 				
+				boolean isPrefix = period.isCutAtRight(i);
+				boolean isPostfix = period.isPostfix(i);
+				
 				for(int j=0; j < period.getSizeOfItemsetAt(i); j++){
-					Integer item = period.getItemAtInItemsetAt(j, i);
+					int item = period.getItemAtInItemsetAt(j, i);
 					
 					// NEW
-//					if(item.getId() == itemI.getId()){
-//						sawI = true;
-//					}
-					if(itemIm1 != null && item == itemIm1){
+					if(iPeriod > 0 && item == itemIm1){
 						sawIm1 = true;
 					}
-					
-					boolean isPrefix = period.isCutAtRight(i);
-					boolean isPostfix = period.isPostfix(i);
 					// END NEW
 
 					// normal case
-					Pair paire = new Pair(isPrefix, isPostfix, item);  
-					addPaire(mapPaires, alreadyCountedForSequenceID, period,
-							paire);
+					maxCount = Math.max(maxCount, counts.add(isPrefix, isPostfix, item));
 					
 					// NEW: special cases
 					if(sawIm1){
-						Pair paire2 = new Pair(isPrefix, !isPostfix, item);  
-						addPaire(mapPaires, alreadyCountedForSequenceID, period,
-								paire2);
+						maxCount = Math.max(maxCount, counts.add(isPrefix, !isPostfix, item));
 					}
 
 					if(sawI ){  
-						Pair paire2 = new Pair(!isPrefix, isPostfix, item);  
-						addPaire(mapPaires, alreadyCountedForSequenceID, period,
-								paire2);
+						maxCount = Math.max(maxCount, counts.add(!isPrefix, isPostfix, item));
 					}
 					// END NEW
 				}
 			}
 		}
-		return mapPaires.keySet();
+		return maxCount;
+	}
+	
+	/**
+	 * The number of periods that contain each pair (a pair is an item and the flags 
+	 * "prefix" and "postfix", see Pair), in arrays indexed by item. Only the counts 
+	 * used since the last clear() are reset.
+	 */
+	static class PairCounts {
+		private final int[] counts; // by pair: item * 4 + (prefix ? 2 : 0) + (postfix ? 1 : 0)
+		private final int[] lastPeriod; // the last period counted for each pair
+		private final int[] used; // the pairs counted since the last clear()
+		private int usedCount = 0;
+		private int period = 0;
+		
+		PairCounts(int maxItem){
+			counts = new int[(maxItem + 1) * 4];
+			lastPeriod = new int[counts.length];
+			used = new int[counts.length];
+		}
+		
+		void clear(){
+			for(int i = 0; i < usedCount; i++){
+				counts[used[i]] = 0;
+				lastPeriod[used[i]] = 0;
+			}
+			usedCount = 0;
+			period = 0;
+		}
+		
+		void nextPeriod(){
+			period++;
+		}
+		
+		/**
+		 * Count a pair for the current period, if it was not already counted for it.
+		 * @return the number of periods that contain the pair
+		 */
+		int add(boolean prefix, boolean postfix, int item){
+			int pair = item * 4 + (prefix ? 2 : 0) + (postfix ? 1 : 0);
+			if(lastPeriod[pair] != period){
+				if(counts[pair] == 0){
+					used[usedCount++] = pair;
+				}
+				lastPeriod[pair] = period;
+				counts[pair]++;
+			}
+			return counts[pair];
+		}
 	}
 
 	private void addPaire(Map<Pair, Pair> mapPaires,
@@ -337,7 +498,7 @@ public class AlgoBIDEPlus {
 		return sequenceDatabase;
 	}
 	
-	private int recursion(Sequence prefix, PseudoSequenceDatabase contexte) throws IOException {	
+	private int recursion(Sequence prefix, PseudoSequenceDatabase contexte, MiningState state) throws IOException {	
 		// find frequent items of size 1.
 		Set<Pair> pairs = findAllFrequentPairs(prefix, contexte.getPseudoSequences());
 		
@@ -359,16 +520,17 @@ public class AlgoBIDEPlus {
 
 				// create new prefix
 				newPrefix.setSequencesID(paire.getSequencesID()); 
+				List<PseudoSequence.Periods> periods = getPeriodsOfAPrefix(newPrefix);
 
 				int frequenceSucesseur = 0;
-				if(checkBackScanPruning(newPrefix) == false){
-					 frequenceSucesseur = recursion(newPrefix, projectedContext); // rcursion
+				if(checkBackScanPruning(newPrefix, periods, state.counts) == false){
+					 frequenceSucesseur = recursion(newPrefix, projectedContext, state); // rcursion
 				}		
 				
 				boolean noForwardSIExtension =  newPrefix.getAbsoluteSupport() != frequenceSucesseur;
 				if(noForwardSIExtension){ 
-					if(!checkBackwardExtension(newPrefix)){
-						savePattern(newPrefix);
+					if(!checkBackwardExtension(newPrefix, periods, state.counts)){
+						savePattern(newPrefix, state);
 					}
 				}
 				if(newPrefix.getAbsoluteSupport() > frequenceMax){
@@ -433,15 +595,15 @@ public class AlgoBIDEPlus {
 		return newPrefix;
 	}
 	
-	private void checkMemory() {
+	private synchronized void checkMemory() {
 		double currentMemory = ( (double)((double)(Runtime.getRuntime().totalMemory()/1024)/1024))- ((double)((double)(Runtime.getRuntime().freeMemory()/1024)/1024));
 		if(currentMemory > maxMemory){
 			maxMemory = currentMemory;
 		}
 	}
 	
-	private void savePattern(Sequence prefix) throws IOException {
-		patternCount++;
+	private void savePattern(Sequence prefix, MiningState state) throws IOException {
+		state.patternCount++;
 		
 		StringBuffer r = new StringBuffer("");
 		for(Itemset itemset : prefix.getItemsets()){
@@ -465,8 +627,8 @@ public class AlgoBIDEPlus {
 		r.append("SUP: ");
 		r.append(prefix.getSequencesID().size());
 		
-		writer.write(r.toString());
-		writer.newLine();
+		state.output.append(r);
+		state.output.append(System.getProperty("line.separator"));
 	}
 
 	public void printStatistics(int size) {
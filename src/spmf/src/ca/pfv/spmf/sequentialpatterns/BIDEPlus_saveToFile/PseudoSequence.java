@@ -522,5 +522,144 @@ public class PseudoSequence {
 		return trimBeginingAndEnd(endOfFirstInstance, ithlastfirst);
 	}
 
-	
+	//----------------------- Periods of every element of a prefix
+
+	/**
+	 * The boundaries of the maximum and semi-maximum periods of a prefix in a sequence,
+	 * for each element i of the prefix (see getPeriodsOfAPrefix()).
+	 */
+	public class Periods{
+		final Position[] endOfFirstInstance; // end of the first instance of e1 ... ei-1 (null for i = 0)
+		final Position[] lastInLast;   // ith last-in-last appearance
+		final Position[] lastInFirst;  // ith last-in-first appearance
+
+		Periods(int n){
+			endOfFirstInstance = new Position[n];
+			lastInLast = new Position[n];
+			lastInFirst = new Position[n];
+		}
+
+		/**
+		 * Same as getIthMaximumPeriodOfAPrefix(prefix, i, false).
+		 */
+		public PseudoSequence getIthMaximumPeriod(int i){
+			return trimBeginingAndEnd(endOfFirstInstance[i], lastInLast[i]);
+		}
+
+		/**
+		 * Same as getIthSemiMaximumPeriodOfAPrefix(prefix, i, false).
+		 */
+		public PseudoSequence getIthSemiMaximumPeriod(int i){
+			return trimBeginingAndEnd(endOfFirstInstance[i], lastInFirst[i]);
+		}
+	}
+
+	/**
+	 * Get the boundaries of the maximum and semi-maximum periods of a prefix in this
+	 * sequence, for every i, without timestamps. getIthMaximumPeriodOfAPrefix() and
+	 * getIthSemiMaximumPeriodOfAPrefix() find all the instances of the prefix again for
+	 * each i and for each last-in-last (or last-in-first) appearance they need. Here, 
+	 * no instance is enumerated: an instance matches each itemset of the prefix in an 
+	 * itemset of the sequence (as getAllInstancesOfPrefix()), so matching each itemset
+	 * of the prefix in the first itemset that can hold it gives the instance where every 
+	 * element is the earliest, and the end of the last instance is the last itemset 
+	 * after it that holds the last itemset of the prefix. Then the appearances are found 
+	 * from the last one to the first one, each one before the next.
+	 * @param prefix the prefix, that appears in this sequence
+	 */
+	public Periods getPeriodsOfAPrefix(Sequence prefix){
+		int n = prefix.getItemOccurencesTotalCount();
+		Periods periods = new Periods(n);
+
+		// the first instance: the end of e1 ... ei-1 for each i, and the end of the prefix
+		Position[] firstInstance = new Position[n];
+		int element = 0;
+		int itemset = 0;
+		for(int k = 0; k < prefix.size(); k++){
+			while(!matchItemset(prefix.get(k), itemset, firstInstance, element)){
+				itemset++;
+			}
+			element += prefix.get(k).size();
+			itemset++;
+		}
+		for(int i = 1; i < n; i++){
+			periods.endOfFirstInstance[i] = firstInstance[i-1];
+		}
+		Position endOfFirst = firstInstance[n-1];
+
+		// the last instance ends in the last itemset holding the last itemset of the prefix
+		Itemset lastItemsetOfPrefix = prefix.get(prefix.size()-1);
+		Position[] positions = new Position[n];
+		int lastElement = n - lastItemsetOfPrefix.size();
+		Position endOfLast = endOfFirst;
+		for(int t = size()-1; t > endOfFirst.itemset; t--){
+			if(matchItemset(lastItemsetOfPrefix, t, positions, lastElement)){
+				endOfLast = positions[n-1];
+				break;
+			}
+		}
+
+		// the last-in-last and last-in-first appearances
+		findLastAppearances(prefix, endOfLast, periods.lastInLast);
+		findLastAppearances(prefix, endOfFirst, periods.lastInFirst);
+		return periods;
+	}
+
+	/**
+	 * Match the items of an itemset of a prefix, in order, in an itemset of this sequence
+	 * (as getAllInstancesOfPrefixHelper()).
+	 * @param positions where the positions of the items are set, from index element
+	 * @return true if all the items are found
+	 */
+	private boolean matchItemset(Itemset itemsetOfPrefix, int itemset, Position[] positions, int element){
+		int indexItem = 0;
+		for(int j=0; j < getSizeOfItemsetAt(itemset); j++){
+			if(getItemAtInItemsetAt(j, itemset) == itemsetOfPrefix.get(indexItem).intValue()){
+				positions[element + indexItem] = new Position(itemset, j);
+				indexItem++;
+				if(indexItem == itemsetOfPrefix.size()){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the appearances of the elements of a prefix in an instance, from the last
+	 * element to the first one: the last appearance of en-1 in the instance, then
+	 * the last appearance of each ei before the appearance of ei+1 (as in
+	 * getIthLastInLastApearanceWithRespectToPrefix()).
+	 * @param end the position of the last element of the instance
+	 * @param appearances the appearance of each element (set by this method, null if not found)
+	 */
+	private void findLastAppearances(Sequence prefix, Position end, Position[] appearances){
+		// the itemsets of the instance are the itemsets of this sequence up to its end
+		int n = appearances.length;
+		int j = end.itemset;
+		int k = getItemset(j).size()-1;
+		for(int i = n-1; i >= 0; i--){
+			if(i < n-1){
+				// start before the appearance of ei+1
+				if(appearances[i+1] == null){
+					return;
+				}
+				j = appearances[i+1].itemset;
+				k = appearances[i+1].item - 1;
+			}
+			int iditem = prefix.getIthItem(i);
+			for(; j >= 0 && appearances[i] == null; j--){
+				for(; k >= 0; k--){
+					if(getItemAtInItemsetAt(k, j) == iditem){
+						appearances[i] = new Position(j, k);
+						break;
+					}
+				}
+				if(j > 0){
+					k = getItemset(j-1).size()-1;
+				}
+			}
+		}
+	}
+
 }
\ No newline at end of file
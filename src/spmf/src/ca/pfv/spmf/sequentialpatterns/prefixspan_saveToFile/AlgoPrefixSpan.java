@@ -3,6 +3,7 @@ package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -10,6 +11,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*** 
  * This is an implementation of the PrefixSpan algorithm by Pei et al. 2001
@@ -17,6 +26,18 @@ import java.util.Map.Entry;
  * 
  * NOTE: This implementation saves the pattern  to a file as soon as they are found.
  * 
+ * The algorithm can also run on several threads (see runAlgorithm(database, output, minsup, threadCount)).
+ * The projected database of each frequent item is then mined by its own task, and so is any 
+ * deeper subtree whose prefix has a support of at least splitThreshold sequences. Each task 
+ * buffers the patterns it finds and the patterns are written by the calling thread in the 
+ * order of the sequential algorithm, so both produce the same file.
+ * 
+ * By default every pattern keeps the HashSet of the ids of the sequences that contain it 
+ * and prints it after "SID:". With setSequenceIdMode(SIDS_NONE) only the number of 
+ * sequences is kept and only "SUP:" is printed; with SIDS_BITMAP the ids are kept in 
+ * compressed bitmaps (SidBitmap). printStatistics() reports the memory allocated for the 
+ * sequence ids and what hash sets would have taken.
+ * 
  * @author Philippe Fournier-Viger
  **/
 
@@ -38,22 +59,122 @@ public class AlgoPrefixSpan{
 
 	BufferedWriter writer = null;
 	
+	private DecimalFormat twoDecimalFormat = new DecimalFormat("#.##");
+	
+	// for the parallel version
+	private ExecutorService executor = null;
+	private int splitThreshold = 1000;
+	private AtomicInteger parallelPatternCount;
+	
+	/** keep the sequence ids of each pattern in a HashSet (the default) */
+	public static final int SIDS_HASHSET = 0;
+	/** keep only the support of each pattern, output has no SID list */
+	public static final int SIDS_NONE = 1;
+	/** keep the sequence ids of each pattern in a compressed bitmap */
+	public static final int SIDS_BITMAP = 2;
+	
+	private int sequenceIdMode = SIDS_HASHSET;
+	
+	// estimated bytes allocated for sequence ids, and what hash sets would have taken
+	private AtomicLong sequenceIdBytes = new AtomicLong();
+	private AtomicLong hashSetBytes = new AtomicLong();
+	
 		
 	public AlgoPrefixSpan(){
 		
 	}
 
 	public void runAlgorithm(SequenceDatabase database, String outputFilePath, int minsup) throws IOException {
-		writer = new BufferedWriter(new FileWriter(outputFilePath)); 
+		runAlgorithm(database, new FileWriter(outputFilePath), minsup);
+	}
+	
+	/**
+	 * Run the algorithm and write each pattern to the given writer as soon as it is found, 
+	 * e.g. a PipedWriter read by a consumer that processes the patterns while they are mined. 
+	 * The writer is closed when the algorithm ends. 
+	 * @param database the sequence database
+	 * @param output where the patterns are written, one per line
+	 * @param minsup the minimum support (a number of sequences)
+	 * @throws IOException 
+	 */
+	public void runAlgorithm(SequenceDatabase database, Writer output, int minsup) throws IOException {
+		writer = new BufferedWriter(output); 
 		patternCount =0;
 		maxMemory = 0;
+		sequenceIdBytes.set(0);
+		hashSetBytes.set(0);
 		
 		this.minsuppRelative = minsup;
-		startTime = System.currentTimeMillis();
-		prefixSpan(database);
-		endTime = System.currentTimeMillis();
+		try {
+			startTime = System.currentTimeMillis();
+			prefixSpan(database);
+			endTime = System.currentTimeMillis();
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Run the algorithm with several threads. The output is the same as with the sequential 
+	 * version, in the same order.
+	 * @param database the sequence database
+	 * @param output where the patterns are written, one per line (closed at the end)
+	 * @param minsup the minimum support (a number of sequences)
+	 * @param threadCount the number of mining threads (1 runs the sequential algorithm)
+	 * @throws IOException 
+	 */
+	public void runAlgorithm(SequenceDatabase database, Writer output, int minsup, int threadCount) throws IOException {
+		if(threadCount <= 1){
+			runAlgorithm(database, output, minsup);
+			return;
+		}
 		
-		writer.close();
+		executor = Executors.newFixedThreadPool(threadCount);
+		parallelPatternCount = new AtomicInteger();
+		try {
+			runAlgorithm(database, output, minsup);
+		} finally {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+	
+	/**
+	 * Set the support (number of sequences) above which a subtree of the search is mined as 
+	 * a separate task by the parallel version. Every frequent item is always a separate task.
+	 * @param threshold the minimum support of a prefix to be mined by its own task
+	 */
+	public void setSplitThreshold(int threshold){
+		splitThreshold = threshold;
+	}
+	
+	/**
+	 * Set how the ids of the sequences containing each pattern are kept.
+	 * @param mode SIDS_HASHSET, SIDS_NONE or SIDS_BITMAP
+	 */
+	public void setSequenceIdMode(int mode){
+		sequenceIdMode = mode;
+	}
+	
+	/**
+	 * @return an empty set of sequence ids for the current mode. Ids are always added in 
+	 * increasing order (with repeats), the order in which the databases are scanned.
+	 */
+	private SequenceIdSet newSequenceIdSet(){
+		if(sequenceIdMode == SIDS_NONE){
+			return new SupportCount();
+		}else if(sequenceIdMode == SIDS_BITMAP){
+			return new SidBitmap();
+		}
+		return new HashSequenceIdSet();
+	}
+	
+	/**
+	 * Adds a filled set of sequence ids to the memory statistics.
+	 */
+	private void countSequenceIdMemory(SequenceIdSet sequenceIDs){
+		hashSetBytes.addAndGet(HashSequenceIdSet.estimateMemoryUsage(sequenceIDs.size()));
+		sequenceIdBytes.addAndGet(sequenceIDs.getMemoryUsage());
 	}
 	
 	/**
@@ -70,7 +191,7 @@ public class AlgoPrefixSpan{
 		
 		//writer.write(db_size + "\n"); 
 		
-		Map<Integer, Set<Integer>> mapSequenceID = findSequencesContainingItems(database);
+		Map<Integer, SequenceIdSet> mapSequenceID = findSequencesContainingItems(database);
 		
 		// WE CONVERT THE DATABASE ITON A PSEUDO-DATABASE, AND REMOVE
 		// THE ITEMS OF SIZE 1 THAT ARE NOT FREQUENT, SO THAT THE ALGORITHM 
@@ -84,8 +205,13 @@ public class AlgoPrefixSpan{
 		}
 		
 		
+		if(executor != null){
+			prefixSpanParallel(mapSequenceID, initialContext);
+			return;
+		}
+		
 		// For each item
-		for(Entry<Integer, Set<Integer>> entry : mapSequenceID.entrySet()){
+		for(Entry<Integer, SequenceIdSet> entry : mapSequenceID.entrySet()){
 			if(entry.getValue().size() >= minsuppRelative){ // if the item is frequent
 				// build the projected context
 				Integer item = entry.getKey();
@@ -108,6 +234,11 @@ public class AlgoPrefixSpan{
 	private void savePattern(Sequence prefix) throws IOException {
 		patternCount++;
 		
+		writer.write(patternToString(prefix, twoDecimalFormat));
+		writer.newLine();
+	}
+	
+	private String patternToString(Sequence prefix, DecimalFormat two_decimal_format) {
 		double support; 
 		
 		StringBuffer r = new StringBuffer("");
@@ -122,17 +253,15 @@ public class AlgoPrefixSpan{
 		}
 
 		//  print the list of Pattern IDs that contains this pattern.
-		if(prefix.getSequencesID() != null){
+		if(prefix.getSequencesID() != null && prefix.getSequencesID().getIds() != null){
 			r.append("SID: ");
-			for(Integer id : prefix.getSequencesID()){
+			for(Integer id : prefix.getSequencesID().getIds()){
 				r.append(id);
 				r.append(' ');
 			}
 		}
 		r.append("SUP: ");
 		
-		DecimalFormat two_decimal_format = new DecimalFormat("#.##");
-		
 		support = prefix.getSequencesID().size() / (double)db_size;
 		
 		support = Double.valueOf(two_decimal_format.format(support)); 
@@ -140,8 +269,141 @@ public class AlgoPrefixSpan{
 		r.append(support);
 		//r.append(prefix.getSequencesID().size());
 		
-		writer.write(r.toString());
-		writer.newLine();
+		return r.toString();
+	}
+	
+	/**
+	 * Parallel version of the main loop of prefixSpan(). One task is submitted per frequent 
+	 * item, in the order of the sequential loop, and the output of each task is written as 
+	 * soon as it and all the tasks before it are done.
+	 */
+	private void prefixSpanParallel(Map<Integer, SequenceIdSet> mapSequenceID, PseudoSequenceDatabase initialContext) throws IOException {
+		List<Future<TaskOutput>> tasks = new ArrayList<Future<TaskOutput>>();
+		
+		for(Entry<Integer, SequenceIdSet> entry : mapSequenceID.entrySet()){
+			if(entry.getValue().size() >= minsuppRelative){ // if the item is frequent
+				Sequence prefix = new Sequence(0);  
+				prefix.addItemset(new Itemset(entry.getKey()));
+				prefix.setSequencesID(entry.getValue());
+				
+				tasks.add(executor.submit(new MiningTask(prefix, entry.getKey(), initialContext, false, 2)));
+			}
+		}
+		
+		for(Future<TaskOutput> task : tasks){
+			writeOutput(task);
+		}
+		patternCount = parallelPatternCount.get();
+	}
+	
+	/**
+	 * Writes the patterns of a task, waiting for it and for the subtasks it forked.
+	 */
+	private void writeOutput(Future<TaskOutput> task) throws IOException {
+		TaskOutput output;
+		try {
+			output = task.get();
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted while mining", e);
+		} catch (ExecutionException e) {
+			throw new IOException("mining task failed", e.getCause());
+		}
+		
+		for(Object part : output.parts){
+			if(part instanceof StringBuilder){
+				writer.append((StringBuilder)part);
+			}else{
+				@SuppressWarnings("unchecked")
+				Future<TaskOutput> subtask = (Future<TaskOutput>) part;
+				writeOutput(subtask);
+			}
+		}
+	}
+	
+	/**
+	 * The patterns found by a task, in the order of the sequential algorithm. Each part is 
+	 * either a block of pattern lines or the Future of a subtask whose patterns go there.
+	 */
+	private static class TaskOutput {
+		List<Object> parts = new ArrayList<Object>();
+		StringBuilder current = null;
+		
+		void append(String pattern){
+			if(current == null){
+				current = new StringBuilder();
+				parts.add(current);
+			}
+			current.append(pattern);
+			current.append(System.getProperty("line.separator"));
+		}
+		
+		void fork(Future<TaskOutput> subtask){
+			parts.add(subtask);
+			current = null;
+		}
+	}
+	
+	/**
+	 * Mines the subtree of a prefix: projects the database on the last item of the prefix, 
+	 * saves the prefix and recurses. Pool threads never wait for a subtask, only the thread 
+	 * writing the output does, so a fixed size pool cannot deadlock.
+	 */
+	private class MiningTask implements Callable<TaskOutput> {
+		private Sequence prefix;
+		private Integer item;
+		private PseudoSequenceDatabase database;
+		private boolean inSuffix;
+		private int k;
+		
+		private TaskOutput output = new TaskOutput();
+		private DecimalFormat format = new DecimalFormat("#.##"); // DecimalFormat is not thread safe
+		
+		MiningTask(Sequence prefix, Integer item, PseudoSequenceDatabase database, boolean inSuffix, int k){
+			this.prefix = prefix;
+			this.item = item;
+			this.database = database;
+			this.inSuffix = inSuffix;
+			this.k = k;
+		}
+		
+		public TaskOutput call() {
+			PseudoSequenceDatabase projectedContext = buildProjectedContext(item, database, inSuffix);
+			save(prefix);
+			recursion(prefix, k, projectedContext);
+			return output;
+		}
+		
+		private void save(Sequence pattern){
+			parallelPatternCount.incrementAndGet();
+			output.append(patternToString(pattern, format));
+		}
+		
+		// same as AlgoPrefixSpan.recursion(), but large subtrees are forked
+		private void recursion(Sequence prefix, int k, PseudoSequenceDatabase contexte) {	
+			Set<Pair> pairs = findAllFrequentPairs(prefix, contexte.getPseudoSequences());
+			
+			for(Pair paire : pairs){
+				if(paire.getCount() >= minsuppRelative){
+					Sequence newPrefix;
+					if(paire.isPostfix()){
+						newPrefix = appendItemToPrefixOfSequence(prefix, paire.getItem());
+					}else{
+						newPrefix = appendItemToSequence(prefix, paire.getItem());
+					}
+					Sequence prefix2 = newPrefix.cloneSequence();
+					prefix2.setSequencesID(paire.getSequencesID()); 
+					
+					if(paire.getCount() >= splitThreshold){
+						output.fork(executor.submit(new MiningTask(prefix2, paire.getItem(), contexte, paire.isPostfix(), k+1)));
+					}else{
+						PseudoSequenceDatabase projectedContext = buildProjectedContext(paire.getItem(), contexte, paire.isPostfix());
+						save(prefix2);
+						recursion(prefix2, k+1, projectedContext);
+					}
+				}
+			}
+			checkMemory();
+		}
 	}
 
 	/**
@@ -149,10 +411,10 @@ public class AlgoPrefixSpan{
 	 * @param contexte Le contexte
 	 * @return Map of items and Set of sequences that contains each of them.
 	 */
-	private Map<Integer, Set<Integer>> findSequencesContainingItems(SequenceDatabase contexte) {
+	private Map<Integer, SequenceIdSet> findSequencesContainingItems(SequenceDatabase contexte) {
 		Set<Integer> alreadyCounted = new HashSet<Integer>(); // il faut compter un item qu'une fois par squence.
 		Sequence lastSequence = null;
-		Map<Integer, Set<Integer>> mapSequenceID = new HashMap<Integer, Set<Integer>>(); // pour conserver les ID des squences: <Id Item, Set d'id de squences>
+		Map<Integer, SequenceIdSet> mapSequenceID = new HashMap<Integer, SequenceIdSet>(); // pour conserver les ID des squences: <Id Item, Set d'id de squences>
 		for(Sequence sequence : contexte.getSequences()){
 			if(lastSequence == null || lastSequence.getId() != sequence.getId()){ // FIX
 				alreadyCounted.clear(); 
@@ -161,9 +423,9 @@ public class AlgoPrefixSpan{
 			for(Itemset itemset : sequence.getItemsets()){
 				for(Integer item : itemset.getItems()){
 					if(!alreadyCounted.contains(item)){
-						Set<Integer> sequenceIDs = mapSequenceID.get(item);
+						SequenceIdSet sequenceIDs = mapSequenceID.get(item);
 						if(sequenceIDs == null){
-							sequenceIDs = new HashSet<Integer>();
+							sequenceIDs = newSequenceIdSet();
 							mapSequenceID.put(item, sequenceIDs);
 						}
 						sequenceIDs.add(sequence.getId());
@@ -172,6 +434,9 @@ public class AlgoPrefixSpan{
 				}
 			}
 		}
+		for(SequenceIdSet sequenceIDs : mapSequenceID.values()){
+			countSequenceIdMemory(sequenceIDs);
+		}
 		return mapSequenceID;
 	}
 	
@@ -270,6 +535,7 @@ public class AlgoPrefixSpan{
 					Pair oldPaire = mapPairs.get(paire);
 					if(!alreadyCountedForSequenceID.contains(paire)){
 						if(oldPaire == null){
+							paire.setSequencesID(newSequenceIdSet());
 							mapPairs.put(paire, paire);
 						}else{
 							paire = oldPaire;
@@ -281,6 +547,9 @@ public class AlgoPrefixSpan{
 				}
 			}
 		}
+		for(Pair paire : mapPairs.keySet()){
+			countSequenceIdMemory(paire.getSequencesID());
+		}
 		checkMemory();  // check the memory for statistics.
 		return mapPairs.keySet();
 	}
@@ -304,7 +573,7 @@ public class AlgoPrefixSpan{
 		return newPrefix;
 	}
 	
-	private void checkMemory() {
+	private synchronized void checkMemory() {
 		double currentMemory = ( (double)((double)(Runtime.getRuntime().totalMemory()/1024)/1024))- ((double)((double)(Runtime.getRuntime().freeMemory()/1024)/1024));
 		if(currentMemory > maxMemory){
 			maxMemory = currentMemory;
@@ -322,6 +591,16 @@ public class AlgoPrefixSpan{
 		r.append(maxMemory);
 		r.append(patternCount);
 		r.append('\n');
+		r.append(" Sequence id sets allocated (mb) : ");
+		r.append(sequenceIdBytes.get() / 1024.0 / 1024.0);
+		if(sequenceIdMode != SIDS_HASHSET){
+			r.append(" (hash sets: ");
+			r.append(hashSetBytes.get() / 1024.0 / 1024.0);
+			r.append(", saved ");
+			r.append(hashSetBytes.get() == 0 ? 0 : Math.round(100.0 * (hashSetBytes.get() - sequenceIdBytes.get()) / hashSetBytes.get()));
+			r.append("%)");
+		}
+		r.append('\n');
 		r.append("===================================================\n");
 		System.out.println(r.toString());
 	}
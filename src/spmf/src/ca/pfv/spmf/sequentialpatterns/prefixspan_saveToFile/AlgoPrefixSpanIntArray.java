@@ -0,0 +1,348 @@
+package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/*** 
+ * PrefixSpan (Pei et al. 2001) over an IntSequenceDatabase. It finds the same patterns as
+ * AlgoPrefixSpan and writes them in the same format, but without any object per item 
+ * occurrence:
+ * 
+ * - a projected database is a pair of int arrays: the sequence of each pseudo-sequence 
+ *   and the position in IntSequenceDatabase.getItems() just after the last item of the 
+ *   prefix. There is one pseudo-sequence per distinct occurrence of the prefix, sorted by 
+ *   sequence and position.
+ * - supports are counted in int arrays indexed by item, with the last sequence counted 
+ *   for each item, instead of a Pair and a Set of sequence ids per item.
+ * 
+ * The patterns are written depth first like AlgoPrefixSpan, and the sequence ids after 
+ * "SID:" are sorted. The ids are never stored, they are read from the projection, and 
+ * setOutputSequenceIds(false) leaves them out of the output (only "SUP:" is written).
+ **/
+public class AlgoPrefixSpanIntArray {
+	
+	private static final int END = IntSequenceDatabase.ITEMSET_END;
+	
+	// for statistics
+	private long startTime;
+	private long endTime;
+	private int patternCount;
+	private double maxMemory = 0;
+	
+	private int minsup;
+	private int dbSize;
+	
+	private int[] items;
+	private int[] sequenceStart;
+	private IntSequenceDatabase database;
+	
+	// support counting, indexed by item. i-extensions add the item to the last itemset 
+	// of the prefix, s-extensions add it as a new itemset.
+	private int[] iSupport, sSupport;        // number of sequences
+	private int[] iOccurrences, sOccurrences; // number of positions, the size of the projection
+	private int[] iLastSequence, sLastSequence;
+	private int[] touched;
+	
+	// the prefix, with END between its itemsets
+	private int[] prefix = new int[64];
+	private int prefixLength = 0;
+	
+	private BufferedWriter writer = null;
+	private StringBuilder line = new StringBuilder();
+	private DecimalFormat twoDecimalFormat = new DecimalFormat("#.##");
+	private boolean outputSequenceIds = true;
+	
+	public AlgoPrefixSpanIntArray(){
+		
+	}
+	
+	/**
+	 * @param output false to write only the support of each pattern, without "SID:"
+	 */
+	public void setOutputSequenceIds(boolean output){
+		outputSequenceIds = output;
+	}
+	
+	public void runAlgorithm(IntSequenceDatabase database, String outputFilePath, int minsup) throws IOException {
+		runAlgorithm(database, new FileWriter(outputFilePath), minsup);
+	}
+	
+	/**
+	 * Run the algorithm, writing the patterns to the given writer as they are found.
+	 * @param database the sequence database
+	 * @param output where the patterns are written, one per line (closed at the end)
+	 * @param minsup the minimum support (a number of sequences)
+	 * @throws IOException 
+	 */
+	public void runAlgorithm(IntSequenceDatabase database, Writer output, int minsup) throws IOException {
+		writer = new BufferedWriter(output);
+		patternCount = 0;
+		maxMemory = 0;
+		
+		this.database = database;
+		this.minsup = minsup;
+		items = database.getItems();
+		sequenceStart = database.getSequenceStarts();
+		dbSize = database.size();
+		
+		int itemCount = database.getItemCount();
+		iSupport = new int[itemCount];
+		sSupport = new int[itemCount];
+		iOccurrences = new int[itemCount];
+		sOccurrences = new int[itemCount];
+		iLastSequence = new int[itemCount];
+		sLastSequence = new int[itemCount];
+		touched = new int[2 * itemCount];
+		Arrays.fill(iLastSequence, -1);
+		Arrays.fill(sLastSequence, -1);
+		
+		try {
+			startTime = System.currentTimeMillis();
+			
+			// the initial projection: every sequence, from its first itemset
+			int[] sequences = new int[dbSize];
+			int[] positions = new int[dbSize];
+			int size = 0;
+			for(int s = 0; s < dbSize; s++){
+				if(sequenceStart[s+1] > sequenceStart[s]){
+					sequences[size] = s;
+					positions[size] = sequenceStart[s];
+					size++;
+				}
+			}
+			recursion(sequences, positions, size);
+			
+			endTime = System.currentTimeMillis();
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Finds the frequent extensions of the current prefix in its projected database, saves 
+	 * each of them and mines its own projection.
+	 */
+	private void recursion(int[] sequences, int[] positions, int size) throws IOException {
+		// count, then copy the frequent extensions out of the shared counters, since the 
+		// recursive calls reuse them
+		int touchedCount = count(sequences, positions, size);
+		int[] extensions = new int[touchedCount];   // item, or -(item+1) for an s-extension
+		int[] projectionSizes = new int[touchedCount];
+		int extensionCount = 0;
+		
+		for(int t = 0; t < touchedCount; t++){
+			int item = touched[t];
+			if(item >= 0){
+				if(iSupport[item] >= minsup){
+					extensions[extensionCount] = item;
+					projectionSizes[extensionCount++] = iOccurrences[item];
+				}
+				iSupport[item] = 0;
+				iOccurrences[item] = 0;
+				iLastSequence[item] = -1;
+			}else{
+				item = -item - 1;
+				if(sSupport[item] >= minsup){
+					extensions[extensionCount] = -item - 1;
+					projectionSizes[extensionCount++] = sOccurrences[item];
+				}
+				sSupport[item] = 0;
+				sOccurrences[item] = 0;
+				sLastSequence[item] = -1;
+			}
+		}
+		checkMemory();
+		
+		for(int e = 0; e < extensionCount; e++){
+			boolean iExtension = extensions[e] >= 0;
+			int item = iExtension ? extensions[e] : -extensions[e] - 1;
+			
+			int[] newSequences = new int[projectionSizes[e]];
+			int[] newPositions = new int[projectionSizes[e]];
+			project(item, iExtension, sequences, positions, size, newSequences, newPositions);
+			
+			int oldLength = prefixLength;
+			if(!iExtension && prefixLength > 0){
+				appendToPrefix(END);
+			}
+			appendToPrefix(item);
+			
+			savePattern(newSequences, newPositions.length);
+			recursion(newSequences, newPositions, newPositions.length);
+			
+			prefixLength = oldLength;
+		}
+	}
+	
+	/**
+	 * Counts the support of every extension of the prefix and returns how many counters 
+	 * were touched (listed in touched[], s-extensions as -(item+1)). i-extensions come from 
+	 * the rest of the itemset where each occurrence of the prefix ends; s-extensions from 
+	 * the itemsets after the first occurrence in each sequence.
+	 */
+	private int count(int[] sequences, int[] positions, int size) {
+		int touchedCount = 0;
+		
+		for(int k = 0; k < size; k++){
+			int sid = sequences[k];
+			int q = positions[k];
+			int end = sequenceStart[sid+1];
+			
+			if(isPostfix(sid, q)){
+				for(; items[q] != END; q++){
+					int item = items[q];
+					if(iOccurrences[item]++ == 0){
+						touched[touchedCount++] = item;
+					}
+					if(iLastSequence[item] != sid){
+						iLastSequence[item] = sid;
+						iSupport[item]++;
+					}
+				}
+				q++;
+			}else if(q < end && items[q] == END){
+				q++;
+			}
+			
+			// later occurrences in the same sequence only give s-extensions found here
+			if(k == 0 || sequences[k-1] != sid){
+				for(; q < end; q++){
+					int item = items[q];
+					if(item == END){
+						continue;
+					}
+					if(sOccurrences[item]++ == 0){
+						touched[touchedCount++] = -item - 1;
+					}
+					if(sLastSequence[item] != sid){
+						sLastSequence[item] = sid;
+						sSupport[item]++;
+					}
+				}
+			}
+		}
+		return touchedCount;
+	}
+	
+	/**
+	 * Builds the projection of the prefix extended with item, in the same order as count().
+	 */
+	private void project(int item, boolean iExtension, int[] sequences, int[] positions, int size,
+						 int[] newSequences, int[] newPositions) {
+		int n = 0;
+		
+		for(int k = 0; k < size; k++){
+			int sid = sequences[k];
+			int q = positions[k];
+			int end = sequenceStart[sid+1];
+			boolean postfix = isPostfix(sid, q);
+			
+			if(iExtension){
+				if(postfix){
+					// items of an itemset are sorted
+					for(; items[q] != END && items[q] < item; q++){
+					}
+					if(items[q] == item){
+						newSequences[n] = sid;
+						newPositions[n++] = q + 1;
+					}
+				}
+			}else if(k == 0 || sequences[k-1] != sid){
+				if(postfix){
+					while(items[q] != END){
+						q++;
+					}
+					q++;
+				}
+				for(; q < end; q++){
+					if(items[q] == item){
+						newSequences[n] = sid;
+						newPositions[n++] = q + 1;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A pseudo-sequence starts in the middle of an itemset (its first itemset is a postfix) 
+	 * if the prefix did not end with the last item of that itemset.
+	 */
+	private boolean isPostfix(int sid, int position) {
+		return position > sequenceStart[sid] && items[position-1] != END && items[position] != END;
+	}
+	
+	private void appendToPrefix(int item) {
+		if(prefixLength == prefix.length){
+			prefix = Arrays.copyOf(prefix, prefix.length * 2);
+		}
+		prefix[prefixLength++] = item;
+	}
+	
+	private void savePattern(int[] sequences, int size) throws IOException {
+		patternCount++;
+		
+		line.setLength(0);
+		for(int i = 0; i < prefixLength; i++){
+			if(prefix[i] == END){
+				line.append("-1 ");
+			}else{
+				line.append(database.getItemValue(prefix[i]));
+				line.append(' ');
+			}
+		}
+		line.append("-1 ");
+		
+		//  print the ids of the sequences that contain this pattern.
+		if(outputSequenceIds){
+			line.append("SID: ");
+		}
+		int support = 0;
+		for(int k = 0; k < size; k++){
+			if(k == 0 || sequences[k-1] != sequences[k]){
+				if(outputSequenceIds){
+					line.append(sequences[k]);
+					line.append(' ');
+				}
+				support++;
+			}
+		}
+		line.append("SUP: ");
+		line.append(Double.valueOf(twoDecimalFormat.format(support / (double)dbSize)).doubleValue());
+		
+		writer.append(line);
+		writer.newLine();
+	}
+	
+	private void checkMemory() {
+		double currentMemory = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024d / 1024d;
+		if(currentMemory > maxMemory){
+			maxMemory = currentMemory;
+		}
+	}
+	
+	public int getPatternCount() {
+		return patternCount;
+	}
+	
+	public void printStatistics(int size) {
+		StringBuffer r = new StringBuffer(200);
+		r.append("=============  Algorithm - STATISTICS =============\n Total time ~ ");
+		r.append(endTime - startTime);
+		r.append(" ms\n");
+		r.append(" Frequent sequences count : " + patternCount);
+		r.append('\n');
+		r.append(" Max memory (mb) : " );
+		r.append(maxMemory);
+		r.append('\n');
+		r.append(" Database size (mb) : " );
+		r.append(database.getMemoryUsage() / 1024.0 / 1024.0);
+		r.append('\n');
+		r.append("===================================================\n");
+		System.out.println(r.toString());
+	}
+}
@@ -0,0 +1,40 @@
+package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The sequence ids of a pattern in a HashSet of Integers, the default of AlgoPrefixSpan.
+ */
+class HashSequenceIdSet implements SequenceIdSet {
+	
+	private final Set<Integer> ids = new HashSet<Integer>();
+	
+	public boolean add(int id) {
+		return ids.add(id);
+	}
+	
+	public int size() {
+		return ids.size();
+	}
+	
+	public Iterable<Integer> getIds() {
+		return ids;
+	}
+	
+	public long getMemoryUsage() {
+		return estimateMemoryUsage(ids.size());
+	}
+	
+	/**
+	 * @return an estimate of the memory used by a HashSet of size Integers: the HashSet and 
+	 * HashMap headers, the table, and one entry and one Integer per id
+	 */
+	static long estimateMemoryUsage(int size) {
+		int table = 16;
+		while(table * 3 / 4 < size){
+			table *= 2;
+		}
+		return 64 + 4L * table + 48L * size;
+	}
+}
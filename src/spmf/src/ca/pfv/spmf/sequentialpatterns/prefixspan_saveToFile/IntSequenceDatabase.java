@@ -0,0 +1,170 @@
+package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ca.pfv.spmf.general.io.MappedIntFile;
+
+/**
+ * A sequence database stored in primitive arrays, used by AlgoPrefixSpanIntArray.
+ * 
+ * All the sequences are packed in one int array. Each itemset is followed by the 
+ * separator ITEMSET_END and sequence i is items[sequenceStart[i] .. sequenceStart[i+1]).
+ * Items are renumbered 0..n-1 in increasing order of their value (getItemValue() gives 
+ * the original value back) so that the miner can count supports with plain int arrays 
+ * indexed by item. Items of an itemset are sorted and appear only once.
+ * 
+ * The input format is the one of SequenceDatabase: items separated by spaces, -1 at 
+ * the end of each itemset and -2 at the end of each sequence, one sequence per line. 
+ * The file is read with MappedIntFile.
+ */
+public class IntSequenceDatabase {
+	
+	public static final int ITEMSET_END = -1;
+	
+	private int[] items = new int[1024];
+	private int length = 0;
+	private int[] sequenceStart = new int[64];
+	private int sequenceCount = 0;
+	
+	private int[] itemValues = new int[0];   // item number --> original item value
+	
+	public void loadFile(String path) throws IOException {
+		MappedIntFile file = MappedIntFile.load(path);
+		int[] tokens = file.getTokens();
+		items = new int[tokens.length + file.getLineCount()];
+		for(int i = 0; i < file.getLineCount(); i++){
+			addSequence(tokens, file.getLineStart(i), file.getLineEnd(i));
+		}
+		renumberItems();
+	}
+	
+	/**
+	 * Adds one line of the file. The items are kept as they are until renumberItems() 
+	 * is called.
+	 */
+	private void addSequence(int[] tokens, int start, int end) {
+		int itemsetStart = length;
+		
+		for(int i = start; i < end; i++){
+			if(tokens[i] == -1){  // end of an itemset
+				itemsetStart = endItemset(itemsetStart);
+			}else if(tokens[i] == -2){ // end of the sequence
+				if(length > itemsetStart){ // the last -1 was left out
+					endItemset(itemsetStart);
+				}
+				endSequence();
+				return;
+			}else{
+				ensureCapacity(length + 1);
+				items[length++] = tokens[i];
+			}
+		}
+		
+		// no -2 at the end of the line
+		if(length > itemsetStart){
+			endItemset(itemsetStart);
+		}
+		endSequence();
+	}
+	
+	/**
+	 * Sorts the itemset that starts at itemsetStart, removes repeated items and appends 
+	 * the separator. Returns where the next itemset starts.
+	 */
+	private int endItemset(int itemsetStart) {
+		Arrays.sort(items, itemsetStart, length);
+		int end = itemsetStart;
+		for(int i = itemsetStart; i < length; i++){
+			if(end == itemsetStart || items[i] != items[end-1]){
+				items[end++] = items[i];
+			}
+		}
+		length = end;
+		ensureCapacity(length + 1);
+		items[length++] = ITEMSET_END;
+		return length;
+	}
+	
+	private void endSequence() {
+		if(sequenceCount + 2 > sequenceStart.length){
+			sequenceStart = Arrays.copyOf(sequenceStart, sequenceStart.length * 2);
+		}
+		sequenceCount++;
+		sequenceStart[sequenceCount] = length;
+	}
+	
+	private void ensureCapacity(int capacity) {
+		if(capacity > items.length){
+			items = Arrays.copyOf(items, Math.max(capacity, items.length * 2));
+		}
+	}
+	
+	/**
+	 * Replaces every item by its rank among the distinct item values and trims the arrays.
+	 */
+	private void renumberItems() {
+		int[] values = new int[length];
+		int n = 0;
+		for(int i = 0; i < length; i++){
+			if(items[i] != ITEMSET_END){
+				values[n++] = items[i];
+			}
+		}
+		Arrays.sort(values, 0, n);
+		int distinct = 0;
+		for(int i = 0; i < n; i++){
+			if(distinct == 0 || values[i] != values[distinct-1]){
+				values[distinct++] = values[i];
+			}
+		}
+		itemValues = Arrays.copyOf(values, distinct);
+		
+		items = Arrays.copyOf(items, length);
+		for(int i = 0; i < length; i++){
+			if(items[i] != ITEMSET_END){
+				items[i] = Arrays.binarySearch(itemValues, items[i]);
+			}
+		}
+		sequenceStart = Arrays.copyOf(sequenceStart, sequenceCount + 1);
+	}
+	
+	/** @return the packed itemsets of all the sequences */
+	public int[] getItems() {
+		return items;
+	}
+	
+	/** @return where each sequence starts in getItems(), plus the end of the last one */
+	public int[] getSequenceStarts() {
+		return sequenceStart;
+	}
+	
+	public int size() {
+		return sequenceCount;
+	}
+	
+	/** @return the number of distinct items */
+	public int getItemCount() {
+		return itemValues.length;
+	}
+	
+	public int getItemValue(int item) {
+		return itemValues[item];
+	}
+	
+	/** @return the memory used by the arrays, in bytes */
+	public long getMemoryUsage() {
+		return 4L * (items.length + sequenceStart.length + itemValues.length);
+	}
+	
+	public void print() {
+		System.out.println("============  Context ==========");
+		for(int s = 0; s < sequenceCount; s++){
+			System.out.print(s + ":  ");
+			for(int i = sequenceStart[s]; i < sequenceStart[s+1]; i++){
+				System.out.print(items[i] == ITEMSET_END ? "-1 " : itemValues[items[i]] + " ");
+			}
+			System.out.println("");
+		}
+	}
+}
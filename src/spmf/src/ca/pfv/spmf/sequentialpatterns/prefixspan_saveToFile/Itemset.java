@@ -2,7 +2,6 @@ package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 
 /**
@@ -51,7 +50,7 @@ public class Itemset{
 		return items.size();
 	}
 	
-	public Itemset cloneItemSetMinusItems(Map<Integer, Set<Integer>> mapSequenceID, double minsuppRelatif) {
+	public Itemset cloneItemSetMinusItems(Map<Integer, SequenceIdSet> mapSequenceID, double minsuppRelatif) {
 		Itemset itemset = new Itemset();
 		for(Integer item : items){
 			if(mapSequenceID.get(item).size() >= minsuppRelatif){
@@ -1,8 +1,5 @@
 package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * This class is used by PrefixSpanItemIntervals. It represents, based on Hirate & Yamana
  * a pair of an (1) Item  and (2) a time interval. It is used for calculating the support
@@ -15,7 +12,8 @@ class Pair{
 	private final Integer item;
 	
 	// List of the its of all the patterns that contains this one.
-	private Set<Integer> sequencesID = new HashSet<Integer>();
+	// (set by AlgoPrefixSpan when the pair is first counted, see AlgoPrefixSpan.newSequenceIdSet())
+	private SequenceIdSet sequencesID = null;
 	
 	Pair(long timestamp, boolean prefix, boolean postfix, Integer item){
 		this.postfix = postfix;
@@ -61,11 +59,11 @@ class Pair{
 		return sequencesID.size();
 	}		
 
-	public Set<Integer> getSequencesID() {
+	public SequenceIdSet getSequencesID() {
 		return sequencesID;
 	}
 
-	public void setSequencesID(Set<Integer> sequencesID) {
+	public void setSequencesID(SequenceIdSet sequencesID) {
 		this.sequencesID = sequencesID;
 	}
 
@@ -4,7 +4,6 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 
 /**
@@ -18,7 +17,7 @@ public class Sequence{
 	private int id; // id de la sequence
 	
 	// List of IDS of all patterns that contains this one.
-	private Set<Integer> sequencesID = null;
+	private SequenceIdSet sequencesID = null;
 	
 	public Sequence(int id){
 		this.id = id;
@@ -66,9 +65,9 @@ public class Sequence{
 		}
 
 		//  print the list of Pattern IDs that contains this pattern.
-		if(getSequencesID() != null){
+		if(getSequencesID() != null && getSequencesID().getIds() != null){
 			r.append("  Sequence ID: ");
-			for(Integer id : getSequencesID()){
+			for(Integer id : getSequencesID().getIds()){
 				r.append(id);
 				r.append(' ');
 			}
@@ -116,11 +115,11 @@ public class Sequence{
 		return itemsets.size();
 	}
 
-	public Set<Integer> getSequencesID() {
+	public SequenceIdSet getSequencesID() {
 		return sequencesID;
 	}
 
-	public void setSequencesID(Set<Integer> sequencesID) {
+	public void setSequencesID(SequenceIdSet sequencesID) {
 		this.sequencesID = sequencesID;
 	}
 	
@@ -136,7 +135,7 @@ public class Sequence{
 	}
 
 
-	public Sequence cloneSequenceMinusItems(Map<Integer, Set<Integer>> mapSequenceID, double relativeMinSup) {
+	public Sequence cloneSequenceMinusItems(Map<Integer, SequenceIdSet> mapSequenceID, double relativeMinSup) {
 		Sequence sequence = new Sequence(getId());
 		for(Itemset itemset : itemsets){
 			Itemset newItemset = itemset.cloneItemSetMinusItems(mapSequenceID, relativeMinSup);
@@ -1,15 +1,13 @@
 package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import ca.pfv.spmf.general.io.MappedIntFile;
+
 
 
 /**
@@ -24,25 +22,34 @@ public class SequenceDatabase{
 	private final List<Sequence> sequences = new ArrayList<Sequence>();
 	
 	public void loadFile(String path) throws IOException {
-		String thisLine;
-		BufferedReader myInput = null;
-		try {
-			FileInputStream fin = new FileInputStream(new File(path));
-			myInput = new BufferedReader(new InputStreamReader(fin));
-			while ((thisLine = myInput.readLine()) != null) {
-				// si la ligne n'est pas un commentaire
-				if(thisLine.charAt(0) != '#'){ 
-					// ajoute une squence
-					addSequence(thisLine.split(" "));	
-				}		
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}finally {
-			if(myInput != null){
-				myInput.close();
+		// the file is memory-mapped and parsed without a String per line or token
+		MappedIntFile file = MappedIntFile.load(path);
+		for(int i = 0; i < file.getLineCount(); i++){
+			addSequence(file.getTokens(), file.getLineStart(i), file.getLineEnd(i));
+		}
+	}
+	
+	/**
+	 * Adds the sequence in tokens[start .. end), in the same format as a line of the file.
+	 */
+	public void addSequence(int[] tokens, int start, int end) {
+		Sequence sequence = new Sequence(sequences.size());
+		Itemset itemset = new Itemset();
+		for(int i = start; i < end; i++){
+			if(tokens[i] == -1){ // indicate the end of an itemset
+				sequence.addItemset(itemset);
+				itemset = new Itemset();
+			}else if(tokens[i] == -2){ // indicate the end of a sequence
+				// check if the last "-1" was not included
+				if(itemset.size() >0){
+					sequence.addItemset(itemset);
+					itemset = new Itemset();
+				}
+				sequences.add(sequence);
+			}else{
+				itemset.addItem(tokens[i]);
 			}
-	    }
+		}
 	}
 	
 	public void addSequence(String[] integers) {	//
@@ -0,0 +1,24 @@
+package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
+
+/**
+ * The ids of the sequences that contain a pattern, as kept by AlgoPrefixSpan (see 
+ * AlgoPrefixSpan.setSequenceIdMode()). Ids are added in increasing order, repeats allowed, 
+ * which is the order in which PrefixSpan scans a (projected) database.
+ */
+public interface SequenceIdSet {
+	
+	/**
+	 * Add a sequence id.
+	 * @return true if the id was not already in the set
+	 */
+	boolean add(int id);
+	
+	/** @return the number of distinct ids */
+	int size();
+	
+	/** @return the ids, or null if only their number is kept */
+	Iterable<Integer> getIds();
+	
+	/** @return an estimate of the memory used, in bytes */
+	long getMemoryUsage();
+}
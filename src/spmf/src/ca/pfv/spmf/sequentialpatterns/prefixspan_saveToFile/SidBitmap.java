@@ -0,0 +1,150 @@
+package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of sequence ids (in the spirit of Roaring bitmaps), used by 
+ * AlgoPrefixSpan when the ids of every pattern are needed but a HashSet<Integer> per 
+ * pattern is too big. Ids are split on their high 16 bits into chunks. A chunk with at 
+ * most 4096 ids is a sorted char array of the low 16 bits (2 bytes per id), a fuller 
+ * chunk is a 65536 bit bitmap (8 KB). 
+ * 
+ * Ids must be added in increasing order (repeats are ignored), which is the order in 
+ * which PrefixSpan scans a (projected) database.
+ */
+class SidBitmap implements SequenceIdSet, Iterable<Integer> {
+	
+	private static final int ARRAY_MAX = 4096;
+	
+	private int[] keys = new int[1];             // high 16 bits of the ids of each chunk
+	private Object[] chunks = new Object[1];     // char[] or long[1024]
+	private int[] cardinalities = new int[1];
+	private int chunkCount = 0;
+	private int size = 0;
+	private int last = -1;
+	
+	public boolean add(int value) {
+		if(value == last){
+			return false;
+		}
+		if(value < last){
+			throw new IllegalArgumentException("sequence ids must be added in increasing order");
+		}
+		last = value;
+		
+		int high = value >>> 16;
+		char low = (char) (value & 0xFFFF);
+		
+		if(chunkCount == 0 || keys[chunkCount-1] != high){
+			if(chunkCount == keys.length){
+				keys = Arrays.copyOf(keys, chunkCount * 2);
+				chunks = Arrays.copyOf(chunks, chunkCount * 2);
+				cardinalities = Arrays.copyOf(cardinalities, chunkCount * 2);
+			}
+			keys[chunkCount] = high;
+			chunks[chunkCount] = new char[4];
+			cardinalities[chunkCount] = 0;
+			chunkCount++;
+		}
+		
+		int c = chunkCount - 1;
+		int cardinality = cardinalities[c];
+		if(chunks[c] instanceof char[]){
+			char[] array = (char[]) chunks[c];
+			if(cardinality < array.length){
+				array[cardinality] = low;
+			}else if(cardinality < ARRAY_MAX){
+				array = Arrays.copyOf(array, Math.min(ARRAY_MAX, array.length * 2));
+				array[cardinality] = low;
+				chunks[c] = array;
+			}else{
+				long[] bitmap = new long[1024];
+				for(int i = 0; i < cardinality; i++){
+					bitmap[array[i] >>> 6] |= 1L << array[i];
+				}
+				bitmap[low >>> 6] |= 1L << low;
+				chunks[c] = bitmap;
+			}
+		}else{
+			((long[]) chunks[c])[low >>> 6] |= 1L << low;
+		}
+		cardinalities[c]++;
+		size++;
+		return true;
+	}
+	
+	public boolean contains(int value) {
+		int c = Arrays.binarySearch(keys, 0, chunkCount, value >>> 16);
+		if(value < 0 || c < 0){
+			return false;
+		}
+		char low = (char) (value & 0xFFFF);
+		if(chunks[c] instanceof char[]){
+			return Arrays.binarySearch((char[]) chunks[c], 0, cardinalities[c], low) >= 0;
+		}
+		return (((long[]) chunks[c])[low >>> 6] & (1L << low)) != 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public Iterable<Integer> getIds() {
+		return this;
+	}
+	
+	/**
+	 * Iterates over the ids in increasing order.
+	 */
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			int c = 0;       // current chunk
+			int i = 0;       // position in an array chunk, or next bit to test in a bitmap chunk
+			int returned = 0;
+			
+			public boolean hasNext() {
+				return returned < size;
+			}
+			
+			public Integer next() {
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				while(true){
+					if(chunks[c] instanceof char[]){
+						if(i < cardinalities[c]){
+							returned++;
+							return (keys[c] << 16) | ((char[]) chunks[c])[i++];
+						}
+					}else{
+						long[] bitmap = (long[]) chunks[c];
+						while(i < 65536){
+							int bit = i++;
+							if((bitmap[bit >>> 6] & (1L << bit)) != 0){
+								returned++;
+								return (keys[c] << 16) | bit;
+							}
+						}
+					}
+					c++;
+					i = 0;
+				}
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/** @return an estimate of the memory used, in bytes */
+	public long getMemoryUsage() {
+		long bytes = 48 + 12L * keys.length;
+		for(int c = 0; c < chunkCount; c++){
+			bytes += 16 + (chunks[c] instanceof char[] ? 2L * ((char[]) chunks[c]).length : 8L * 1024);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,41 @@
+package ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile;
+
+/**
+ * A set of sequence ids that only keeps its size, for the counting-only mode of 
+ * AlgoPrefixSpan. Ids must be added in increasing order, repeats allowed, which is the 
+ * order in which PrefixSpan scans a (projected) database. The ids cannot be read back.
+ */
+class SupportCount implements SequenceIdSet {
+	
+	private int count = 0;
+	private int last = -1;
+	
+	public boolean add(int value) {
+		if(value == last){
+			return false;
+		}
+		if(value < last){
+			throw new IllegalArgumentException("sequence ids must be added in increasing order");
+		}
+		last = value;
+		count++;
+		return true;
+	}
+	
+	public int size() {
+		return count;
+	}
+	
+	public Iterable<Integer> getIds() {
+		return null;
+	}
+	
+	public String toString() {
+		return "{" + count + " ids}";
+	}
+	
+	/** @return an estimate of the memory used, in bytes */
+	public long getMemoryUsage() {
+		return 24;
+	}
+}
@@ -8,6 +8,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -28,9 +29,9 @@ import java.util.Map.Entry;
  * - lookup tables for bitmaps
  * - compression of bitmaps.
  * 
- * Moreover, in this implementation each sequence is represented by a fixed number of bits (32 bits) instead of 
- * a variable number of bits. That means that I assume that sequences do not contains more than 32 itemsets. 
- * If you want to work with longer sequences, you could modify the variable BIT_PER_SECTION in the Bitmap.java file.
+ * Each sequence is represented by a variable number of bits: 4, 8, 16, 32 or 64 bits, or several words of 64 bits
+ * for sequences of more than 64 itemsets (see BitmapLayout and LongBitmap). The database is read twice: 
+ * once to measure the sequences, and once to create the bitmaps.
  * 
  * @author Philippe Fournier-Viger, 2011
  **/
@@ -49,7 +50,7 @@ public class AlgoSPAM{
 	BufferedWriter writer = null;
 	
 	// Vertical database
-	Map<Integer, Bitmap> verticalDB = new HashMap<Integer, Bitmap>();
+	Map<Integer, LongBitmap> verticalDB = new HashMap<Integer, LongBitmap>();
 		
 	public AlgoSPAM(){
 	}
@@ -71,7 +72,10 @@ public class AlgoSPAM{
 	 * @throws IOException 
 	 */
 	private void spam(String input) throws IOException{
-		verticalDB = new HashMap<Integer, Bitmap>();
+		verticalDB = new HashMap<Integer, LongBitmap>();
+		
+		// STEP0: SCAN THE DATABASE TO FIND THE NUMBER OF ITEMSETS OF EACH SEQUENCE
+		BitmapLayout layout = new BitmapLayout(countItemsets(input));
 		
 		// STEP1: SCAN THE DATABASE TO CREATE THE BITMAP VERTICAL DATABASE REPRESENTATION
 		try {
@@ -91,9 +95,9 @@ public class AlgoSPAM{
 					}else{  // indicate an item
 						// Get the bitmap for this item. If none, create one.
 						Integer item = Integer.parseInt(integer);
-						Bitmap bitmapItem = verticalDB.get(item);
+						LongBitmap bitmapItem = verticalDB.get(item);
 						if(bitmapItem == null){
-							bitmapItem = new Bitmap();
+							bitmapItem = new LongBitmap(layout);
 							verticalDB.put(item, bitmapItem);
 						}
 						// Register the bit in the bitmap for this item
@@ -108,9 +112,9 @@ public class AlgoSPAM{
 		
 		// STEP2: REMOVE INFREQUENT ITEMS FROM THE DATABASE BECAUSE THEY WILL NOT APPEAR IN ANY FREQUENT SEQUENTIAL PATTERNS
 		List<Integer> frequentItems = new ArrayList<Integer>();
-		Iterator<Entry<Integer, Bitmap>> iter = verticalDB.entrySet().iterator();
+		Iterator<Entry<Integer, LongBitmap>> iter = verticalDB.entrySet().iterator();
 		while (iter.hasNext()) {
-			Map.Entry<Integer, Bitmap> entry = (Map.Entry<Integer, Bitmap>) iter.next();
+			Map.Entry<Integer, LongBitmap> entry = (Map.Entry<Integer, LongBitmap>) iter.next();
 			if(entry.getValue().getSupport() < minsup){
 //				System.out.println(entry.getKey() + " has not the support" + entry.getValue().toString());
 				iter.remove();
@@ -122,7 +126,7 @@ public class AlgoSPAM{
 		
 		// STEP3: PERFORM THE DEPTH FIRST SEARCH!
 		
-		for(Entry<Integer, Bitmap> entry: verticalDB.entrySet()){
+		for(Entry<Integer, LongBitmap> entry: verticalDB.entrySet()){
 			Prefix prefix = new Prefix();
 			prefix.addItemset(new Itemset(entry.getKey()));
 			dfsPruning(prefix, entry.getValue(), frequentItems, frequentItems, entry.getKey());
@@ -130,13 +134,49 @@ public class AlgoSPAM{
 	}
 	
 
-	private void dfsPruning(Prefix prefix, Bitmap prefixBitmap, List<Integer> sn, List<Integer> in, int hasToBeGreaterThanForIStep) throws IOException {
+	/**
+	 * Returns the number of itemsets of each sequence of the database, by sid.
+	 */
+	private int[] countItemsets(String input) throws IOException {
+		int[] itemsetCounts = new int[64];
+		int sid = 0;
+		int itemsetCount = 0; // of the current sequence
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(input))));
+		try {
+			String thisLine;
+			while ((thisLine = reader.readLine()) != null) {
+				int tid =0;
+				for(String integer:  thisLine.split(" ")){
+					if(integer.equals("-1")){ // indicate the end of an itemset
+						tid++;
+					}else if(integer.equals("-2")){ // indicate the end of a sequence
+						if(sid == itemsetCounts.length){
+							itemsetCounts = Arrays.copyOf(itemsetCounts, sid * 2);
+						}
+						itemsetCounts[sid++] = itemsetCount;
+						itemsetCount = 0;
+					}else{  // indicate an item
+						itemsetCount = Math.max(itemsetCount, tid + 1);
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if(itemsetCount > 0){ // items after the last end of sequence
+			itemsetCounts = Arrays.copyOf(itemsetCounts, sid + 1);
+			itemsetCounts[sid++] = itemsetCount;
+		}
+		return Arrays.copyOf(itemsetCounts, sid);
+	}
+
+	private void dfsPruning(Prefix prefix, LongBitmap prefixBitmap, List<Integer> sn, List<Integer> in, int hasToBeGreaterThanForIStep) throws IOException {
 		//  ======  S-STEPS ======
 		List<Integer> sTemp = new ArrayList<Integer>();
-		List<Bitmap> sTempBitmaps = new ArrayList<Bitmap>();
+		List<LongBitmap> sTempBitmaps = new ArrayList<LongBitmap>();
 		
 		for(Integer i : sn){
-			Bitmap newBitmap = prefixBitmap.createNewBitmapSStep(verticalDB.get(i));
+			LongBitmap newBitmap = prefixBitmap.createNewBitmapSStep(verticalDB.get(i));
 			if(newBitmap.getSupport() >= minsup){
 				sTemp.add(i);
 				sTempBitmaps.add(newBitmap);
@@ -148,7 +188,7 @@ public class AlgoSPAM{
 			Prefix prefixSStep = prefix.cloneSequence();
 			prefixSStep.addItemset(new Itemset(item));
 			// create the new bitmap
-			Bitmap newBitmap = sTempBitmaps.get(k);
+			LongBitmap newBitmap = sTempBitmaps.get(k);
 
 			savePattern(prefixSStep, newBitmap);
 			dfsPruning(prefixSStep, newBitmap, sTemp, sTemp, item);
@@ -156,11 +196,11 @@ public class AlgoSPAM{
 		
 		// ========  I STEPS =======
 		List<Integer> iTemp = new ArrayList<Integer>();
-		List<Bitmap> iTempBitmaps = new ArrayList<Bitmap>();
+		List<LongBitmap> iTempBitmaps = new ArrayList<LongBitmap>();
 		
 		for(Integer i : in){
 			if(i > hasToBeGreaterThanForIStep){
-				Bitmap newBitmap = prefixBitmap.createNewBitmapIStep(verticalDB.get(i));
+				LongBitmap newBitmap = prefixBitmap.createNewBitmapIStep(verticalDB.get(i));
 				if(newBitmap.getSupport() >= minsup){
 					iTemp.add(i);
 					iTempBitmaps.add(newBitmap);
@@ -173,7 +213,7 @@ public class AlgoSPAM{
 			Prefix prefixIStep = prefix.cloneSequence();
 			prefixIStep.getItemsets().get(prefixIStep.size()-1).addItem(item);
 			// create the new bitmap
-			Bitmap newBitmap = iTempBitmaps.get(k);
+			LongBitmap newBitmap = iTempBitmaps.get(k);
 			
 			savePattern(prefixIStep, newBitmap);
 			dfsPruning(prefixIStep, newBitmap, sTemp, iTemp, item);
@@ -182,7 +222,7 @@ public class AlgoSPAM{
 		checkMemory();
 	}
 
-	private void savePattern(Integer item, Bitmap bitmap) throws IOException {
+	private void savePattern(Integer item, LongBitmap bitmap) throws IOException {
 		patternCount++;
 		StringBuffer r = new StringBuffer("");
 		r.append(item);
@@ -193,7 +233,7 @@ public class AlgoSPAM{
 		writer.newLine();
 	}
 	
-	private void savePattern(Prefix prefix, Bitmap bitmap) throws IOException {
+	private void savePattern(Prefix prefix, LongBitmap bitmap) throws IOException {
 		patternCount++;
 		
 		StringBuffer r = new StringBuffer("");
@@ -6,6 +6,7 @@ import java.util.BitSet;
  * 
  * The variable BIT_PER_SECTION indicates the number of bits to used to represent each sequence.
  * By default, this is 32. That means that it assumes that a sequence will not contain more than 32 itemsets.
+ * AlgoSPAM uses LongBitmap, which gives each sequence as many bits as it needs.
  * 
  * @author Philippe Fournier-Viger, 2011
  **/
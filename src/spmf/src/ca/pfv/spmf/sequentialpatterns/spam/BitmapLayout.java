@@ -0,0 +1,102 @@
+package ca.pfv.spmf.sequentialpatterns.spam;
+
+import java.util.Arrays;
+
+/**
+ * The place of each sequence in the bitmaps of a sequence database (see LongBitmap).
+ *
+ * As in the SPAM paper, each sequence gets a section of 4, 8, 16, 32 or 64 bits, the
+ * smallest that holds its itemsets, and a sequence of more than 64 itemsets gets a
+ * section of as many 64 bit words as it needs. Sequences are grouped by section size,
+ * so that a word of a bitmap holds sections of only one size and can be processed with
+ * a few word operations. The words of the sections of at most 64 bits come first
+ * ("small words"), then the sections of several words.
+ **/
+public class BitmapLayout {
+
+	private static final int[] SMALL_WIDTHS = {4, 8, 16, 32, 64};
+
+	final int[] offset;  // the first bit of the section of each sequence, by sid
+	final int[] width;   // the number of bits of the section of each sequence, by sid
+
+	final int wordCount;      // the number of words of a bitmap
+	final int smallWordCount; // the number of words holding sections of at most 64 bits
+	final byte[] wordWidthLog; // for each small word, log2 of the width of its sections
+	final int[] longSections; // the first word of each section of several words, then wordCount
+
+	/**
+	 * Constructor
+	 * @param itemsetCounts the number of itemsets of each sequence, by sid
+	 */
+	public BitmapLayout(int[] itemsetCounts) {
+		int sequenceCount = itemsetCounts.length;
+		offset = new int[sequenceCount];
+		width = new int[sequenceCount];
+
+		// the size of the section of each sequence
+		int longCount = 0;
+		for(int sid = 0; sid < sequenceCount; sid++){
+			int itemsetCount = itemsetCounts[sid];
+			if(itemsetCount > 64){
+				width[sid] = ((itemsetCount + 63) / 64) * 64;
+				longCount++;
+			}else{
+				int w = 0;
+				while(SMALL_WIDTHS[w] < itemsetCount){
+					w++;
+				}
+				width[sid] = SMALL_WIDTHS[w];
+			}
+		}
+
+		// the sequences of each size, one after the other
+		int word = 0;
+		byte[] widthLogs = new byte[16];
+		for(int w = 0; w < SMALL_WIDTHS.length; w++){
+			int sectionWidth = SMALL_WIDTHS[w];
+			int bit = 0; // in the words of this size
+			for(int sid = 0; sid < sequenceCount; sid++){
+				if(width[sid] == sectionWidth){
+					offset[sid] = word * 64 + bit;
+					bit += sectionWidth;
+				}
+			}
+			int words = (bit + 63) / 64;
+			while(widthLogs.length < word + words){
+				widthLogs = Arrays.copyOf(widthLogs, widthLogs.length * 2);
+			}
+			for(int i = 0; i < words; i++){
+				widthLogs[word + i] = (byte) (w + 2);
+			}
+			word += words;
+		}
+		smallWordCount = word;
+		wordWidthLog = Arrays.copyOf(widthLogs, word);
+
+		longSections = new int[longCount + 1];
+		int section = 0;
+		for(int sid = 0; sid < sequenceCount; sid++){
+			if(width[sid] > 64){
+				offset[sid] = word * 64;
+				longSections[section++] = word;
+				word += width[sid] / 64;
+			}
+		}
+		longSections[longCount] = word;
+		wordCount = word;
+	}
+
+	/**
+	 * Returns the number of sequences.
+	 */
+	public int getSequenceCount() {
+		return offset.length;
+	}
+
+	/**
+	 * Returns the number of 64 bit words of a bitmap.
+	 */
+	public int getWordCount() {
+		return wordCount;
+	}
+}
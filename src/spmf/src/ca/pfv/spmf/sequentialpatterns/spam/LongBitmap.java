@@ -0,0 +1,182 @@
+package ca.pfv.spmf.sequentialpatterns.spam;
+
+/**
+ * Implementation of a bitmap for SPAM where each sequence has a section of as many bits
+ * as it needs (see BitmapLayout), stored in an array of longs. Unlike Bitmap, there is no
+ * limit on the number of itemsets of a sequence.
+ *
+ * The S-step and the I-step are done one word at a time. In a word holding sections of
+ * w bits, the S-step sets in each section the bits after the first bit set to 1, with
+ * log2(w) shifts and masks that do not cross the sections, then does an AND with the
+ * bitmap of the item. The support (the number of sections having a bit set to 1) of a
+ * word is the bit count of its sections ORed down to their lowest bit.
+ **/
+public class LongBitmap {
+
+	// KEEP[l][s]: in sections of 2^l bits, the bits that stay in their section when
+	// shifted up by 2^s bits.  LOWEST[l]: the lowest bit of each section of 2^l bits.
+	private static final long[][] KEEP = new long[7][6];
+	private static final long[] LOWEST = new long[7];
+	static {
+		for(int l = 2; l <= 6; l++){
+			for(int s = 0; s < l; s++){
+				KEEP[l][s] = repeat(1 << l, (1 << l) - (1 << s));
+			}
+			LOWEST[l] = repeat(1 << l, 1);
+		}
+	}
+
+	private final BitmapLayout layout;
+	private final long[] words;
+
+	// for calculating the support
+	private int lastSID = -1;  // the sid of the last sequence inserted that contains a bit set to true
+	private int support = 0;  // the number of sequences that have a bit set to 1
+
+	LongBitmap(BitmapLayout layout) {
+		this.layout = layout;
+		this.words = new long[layout.wordCount];
+	}
+
+	public void registerBit(int sid, int tid) {
+		if(tid >= layout.width[sid]){
+			throw new IllegalArgumentException("itemset " + tid + " is outside of the section of sequence " + sid);
+		}
+		int bitIndex = layout.offset[sid] + tid;
+		words[bitIndex >>> 6] |= 1L << (bitIndex & 63);
+
+		// to update the bit count
+		if(sid != lastSID){
+			support++;
+		}
+		lastSID = sid;
+	}
+
+	public int getSupport() {
+		return support;
+	}
+
+	public String toString(){
+		StringBuffer buffer = new StringBuffer();
+		for(int sid = 0; sid < layout.getSequenceCount(); sid++){
+			for(int tid = 0; tid < layout.width[sid]; tid++){
+				int bitIndex = layout.offset[sid] + tid;
+				if((words[bitIndex >>> 6] & (1L << (bitIndex & 63))) != 0){
+					buffer.append("[sid=");
+					buffer.append(sid);
+					buffer.append(" tid=");
+					buffer.append(tid);
+					buffer.append("]");
+				}
+			}
+		}
+		return buffer.toString();
+	}
+
+	LongBitmap createNewBitmapSStep(LongBitmap bitmapItem) {
+		LongBitmap newBitmap = new LongBitmap(layout);
+		long[] itemWords = bitmapItem.words;
+		long[] newWords = newBitmap.words;
+
+		// sections of at most 64 bits
+		for(int i = 0; i < layout.smallWordCount; i++){
+			long word = words[i];
+			if(word == 0){
+				continue;
+			}
+			int l = layout.wordWidthLog[i];
+			// set the bits after the first bit of each section, then AND
+			long result = bitsAfterFirst(word, l) & itemWords[i];
+			if(result != 0){
+				newWords[i] = result;
+				newBitmap.support += countSections(result, l);
+			}
+		}
+
+		// sections of several words
+		int[] longSections = layout.longSections;
+		for(int section = 0; section < longSections.length - 1; section++){
+			int i = longSections[section];
+			int end = longSections[section + 1];
+			while(i < end && words[i] == 0){
+				i++;
+			}
+			if(i == end){
+				continue;
+			}
+			// in the word of the first bit, the bits after it, then all the bits
+			long lowest = words[i] & -words[i];
+			long any = newWords[i] = -(lowest << 1) & itemWords[i];
+			for(i++; i < end; i++){
+				newWords[i] = itemWords[i];
+				any |= itemWords[i];
+			}
+			if(any != 0){
+				newBitmap.support++;
+			}
+		}
+		return newBitmap;
+	}
+
+	LongBitmap createNewBitmapIStep(LongBitmap bitmapItem) {
+		LongBitmap newBitmap = new LongBitmap(layout);
+		long[] itemWords = bitmapItem.words;
+		long[] newWords = newBitmap.words;
+
+		// We do an AND with the bitmap of the item
+		for(int i = 0; i < layout.smallWordCount; i++){
+			long result = words[i] & itemWords[i];
+			if(result != 0){
+				newWords[i] = result;
+				newBitmap.support += countSections(result, layout.wordWidthLog[i]);
+			}
+		}
+		int[] longSections = layout.longSections;
+		for(int section = 0; section < longSections.length - 1; section++){
+			long any = 0;
+			for(int i = longSections[section]; i < longSections[section + 1]; i++){
+				newWords[i] = words[i] & itemWords[i];
+				any |= newWords[i];
+			}
+			if(any != 0){
+				newBitmap.support++;
+			}
+		}
+		return newBitmap;
+	}
+
+	/**
+	 * In each section of 2^l bits of a word, set the bits after the first bit set to 1
+	 * and clear the others.
+	 */
+	static long bitsAfterFirst(long word, int l) {
+		// propagate each bit to the higher bits of its section
+		for(int s = 0; s < l; s++){
+			word |= (word & KEEP[l][s]) << (1 << s);
+		}
+		// the bits after the first one
+		return (word & KEEP[l][0]) << 1;
+	}
+
+	/**
+	 * Returns the number of sections of 2^l bits of a word that have a bit set to 1.
+	 */
+	static int countSections(long word, int l) {
+		// OR the bits of each section down to its lowest bit
+		for(int s = 0; s < l; s++){
+			word |= word >>> (1 << s);
+		}
+		return Long.bitCount(word & LOWEST[l]);
+	}
+
+	/**
+	 * Returns a word where the lowest n bits of each section of w bits are set.
+	 */
+	private static long repeat(int w, int n) {
+		long mask = 0;
+		for(int bit = 0; bit < 64; bit += w){
+			mask |= ((1L << n) - 1) << bit;
+		}
+		return mask;
+	}
+}
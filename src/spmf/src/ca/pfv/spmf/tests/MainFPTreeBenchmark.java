@@ -0,0 +1,185 @@
+package ca.pfv.spmf.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import ca.pfv.spmf.frequentpatterns.fpgrowth.AlgoFPGrowth;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.Database;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.FPTree;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.FPTreeArray;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.Itemset;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.Itemsets;
+
+/**
+ * Compares FPTree and FPTreeArray: time and memory to build the initial FP-tree of a
+ * database, then the time of AlgoFPGrowth with each tree, checking that both find the
+ * same itemsets.
+ *
+ * Usage: java ca.pfv.spmf.tests.MainFPTreeBenchmark [file minsup]
+ * Without a file, 200000 random transactions over 5000 items are generated, with a
+ * skewed item distribution so that the tree has both long shared paths and wide nodes.
+ */
+public class MainFPTreeBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : null;
+		double minsup = args.length > 1 ? Double.parseDouble(args[1]) : 0.005;
+
+		// (1) initial FP-tree of each kind
+		for(int run = 0; run < 2; run++){
+			List<Itemset> transactions = prepare(load(file).getObjects());
+
+			long used = usedMemory();
+			long startTime = System.nanoTime();
+			FPTree tree = new FPTree();
+			for(Itemset transaction : transactions){
+				tree.addTransaction(transaction);
+			}
+			long buildTime = (System.nanoTime() - startTime) / 1000000;
+			long memory = usedMemory() - used;
+			System.out.println(" FPTree      : " + tree.getNodeCount() + " nodes, " + buildTime + " ms, "
+					+ memory / 1024 + " KB measured");
+			tree = null;
+
+			int[] itemIDs = headerItems(transactions);
+			Map<Integer, Integer> mapRank = new HashMap<Integer, Integer>();
+			for(int rank = 0; rank < itemIDs.length; rank++){
+				mapRank.put(itemIDs[rank], rank);
+			}
+			used = usedMemory();
+			startTime = System.nanoTime();
+			FPTreeArray treeArray = new FPTreeArray(itemIDs, transactions.size() + 1);
+			int[] ranks = new int[itemIDs.length];
+			for(Itemset transaction : transactions){
+				for(int i = 0; i < transaction.size(); i++){
+					ranks[i] = mapRank.get(transaction.get(i));
+				}
+				treeArray.addPath(ranks, 0, transaction.size(), 1);
+			}
+			buildTime = (System.nanoTime() - startTime) / 1000000;
+			memory = usedMemory() - used;
+			System.out.println(" FPTreeArray : " + treeArray.getNodeCount() + " nodes, " + buildTime + " ms, "
+					+ memory / 1024 + " KB measured, " + treeArray.getMemoryUsage() / 1024 + " KB of arrays");
+			treeArray = null;
+		}
+
+		// (2) the whole algorithm
+		Set<String> found = null;
+		for(int run = 0; run < 2; run++){
+			for(boolean useArrayTree : new boolean[]{false, true}){
+				AlgoFPGrowth algo = new AlgoFPGrowth();
+				algo.setUseArrayTree(useArrayTree);
+				Itemsets itemsets = algo.runAlgorithm(load(file), minsup);
+				System.out.println(useArrayTree ? "with FPTreeArray:" : "with FPTree:");
+				algo.printStats();
+
+				Set<String> patterns = toStrings(itemsets);
+				if(found == null){
+					found = patterns;
+				}else if(!found.equals(patterns)){
+					System.out.println(" ERROR: the itemsets are not the same");
+				}
+			}
+		}
+	}
+
+	private static Database load(String file) throws IOException {
+		Database database = new Database();
+		if(file != null){
+			database.loadFile(file);
+			return database;
+		}
+		Random random = new Random(42);
+		for(int t = 0; t < 200000; t++){
+			Set<Integer> items = new HashSet<Integer>();
+			int length = 2 + random.nextInt(15);
+			while(items.size() < length){
+				double x = random.nextDouble();
+				items.add((int) (5000 * x * x * x));
+			}
+			Itemset itemset = new Itemset();
+			for(Integer item : items){
+				itemset.addItem(item);
+			}
+			database.addItemset(itemset);
+		}
+		return database;
+	}
+
+	/**
+	 * Steps (1) to (3) of AlgoFPGrowth with every item kept: the items of each
+	 * transaction sorted by decreasing support.
+	 */
+	private static List<Itemset> prepare(List<Itemset> transactions) {
+		final Map<Integer, Integer> mapSupport = new HashMap<Integer, Integer>();
+		for(Itemset itemset : transactions){
+			for(Integer item : itemset.getItems()){
+				Integer support = mapSupport.get(item);
+				mapSupport.put(item, support == null ? 1 : support + 1);
+			}
+		}
+		for(Itemset itemset : transactions){
+			Collections.sort(itemset.getItems(), new Comparator<Integer>(){
+				public int compare(Integer item1, Integer item2){
+					int compare = mapSupport.get(item2) - mapSupport.get(item1);
+					return compare == 0 ? item1 - item2 : compare;
+				}
+			});
+		}
+		return transactions;
+	}
+
+	/**
+	 * Returns the items in the order of the header list, which is the order of the items
+	 * in the prepared transactions.
+	 */
+	private static int[] headerItems(List<Itemset> transactions) {
+		final Map<Integer, Integer> mapSupport = new HashMap<Integer, Integer>();
+		for(Itemset itemset : transactions){
+			for(Integer item : itemset.getItems()){
+				Integer support = mapSupport.get(item);
+				mapSupport.put(item, support == null ? 1 : support + 1);
+			}
+		}
+		List<Integer> items = new ArrayList<Integer>(mapSupport.keySet());
+		Collections.sort(items, new Comparator<Integer>(){
+			public int compare(Integer item1, Integer item2){
+				int compare = mapSupport.get(item2) - mapSupport.get(item1);
+				return compare == 0 ? item1 - item2 : compare;
+			}
+		});
+		int[] itemIDs = new int[items.size()];
+		for(int i = 0; i < itemIDs.length; i++){
+			itemIDs[i] = items.get(i);
+		}
+		return itemIDs;
+	}
+
+	private static Set<String> toStrings(Itemsets itemsets) {
+		Set<String> strings = new HashSet<String>();
+		for(List<Itemset> level : itemsets.getLevels()){
+			for(Itemset itemset : level){
+				List<Integer> items = new ArrayList<Integer>(itemset.getItems());
+				Collections.sort(items);
+				strings.add(items + " " + itemset.getAbsoluteSupport());
+			}
+		}
+		return strings;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++){
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,92 @@
+package ca.pfv.spmf.tests;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import ca.pfv.spmf.general.io.MappedIntFile;
+
+/**
+ * Compares the load throughput of MappedIntFile with the readLine() / split() / 
+ * parseInt() loop used by the database classes. 
+ * 
+ * Usage: java ca.pfv.spmf.tests.MainMappedIntFile [file] 
+ * Without a file, a 200 MB random sequence database is generated in the temporary directory.
+ */
+public class MainMappedIntFile {
+
+	public static void main(String[] args) throws IOException {
+		File file;
+		if(args.length > 0){
+			file = new File(args[0]);
+		}else{
+			file = File.createTempFile("sequences", ".txt");
+			file.deleteOnExit();
+			generate(file, 200L * 1024 * 1024);
+		}
+		double megabytes = file.length() / 1024.0 / 1024.0;
+		System.out.println(file + ": " + megabytes + " MB");
+		
+		// run each reader twice so the second run reads from the page cache
+		for(int run = 0; run < 2; run++){
+			long startTime = System.nanoTime();
+			long sum = readWithSplit(file);
+			double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+			System.out.println(" readLine + split     : " + (megabytes / seconds) + " MB/s (checksum " + sum + ")");
+			
+			int processors = Runtime.getRuntime().availableProcessors();
+			for(int threads = 1; threads <= processors; threads = threads == processors ? threads + 1 : Math.min(processors, threads * 2)){
+				MappedIntFile mapped = MappedIntFile.load(file.getPath(), threads);
+				sum = 0;
+				for(int token : mapped.getTokens()){
+					sum += token;
+				}
+				System.out.println(" MappedIntFile, " + threads + " threads: " + mapped.getThroughput() + " MB/s (checksum " + sum + ")");
+			}
+		}
+	}
+	
+	private static long readWithSplit(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		String line;
+		long sum = 0;
+		while((line = reader.readLine()) != null){
+			if(line.length() == 0 || line.charAt(0) == '#'){
+				continue;
+			}
+			for(String token : line.split(" ")){
+				if(token.length() > 0){
+					sum += Integer.parseInt(token);
+				}
+			}
+		}
+		reader.close();
+		return sum;
+	}
+	
+	private static void generate(File file, long bytes) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		Random random = new Random(1);
+		long written = 0;
+		StringBuilder line = new StringBuilder();
+		while(written < bytes){
+			line.setLength(0);
+			int itemsets = 1 + random.nextInt(8);
+			for(int i = 0; i < itemsets; i++){
+				int items = 1 + random.nextInt(5);
+				for(int j = 0; j < items; j++){
+					line.append(random.nextInt(10000)).append(' ');
+				}
+				line.append("-1 ");
+			}
+			line.append("-2\n");
+			writer.write(line.toString());
+			written += line.length();
+		}
+		writer.close();
+	}
+}
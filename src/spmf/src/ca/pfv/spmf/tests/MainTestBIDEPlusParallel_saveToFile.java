@@ -0,0 +1,34 @@
+package ca.pfv.spmf.tests;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.sequentialpatterns.BIDEPlus_saveToFile.AlgoBIDEPlus;
+import ca.pfv.spmf.sequentialpatterns.BIDEPlus_saveToFile.SequenceDatabase;
+
+/**
+ * Class for testing the parallel version of the BIDE+ algorithm
+ */
+public class MainTestBIDEPlusParallel_saveToFile {
+
+	public static void main(String [] arg) throws IOException{    
+		// Load a sequence database
+		SequenceDatabase sequenceDatabase = new SequenceDatabase(); 
+		sequenceDatabase.loadFile(fileToPath("BIDE-input.txt"));
+		
+		int minsup = 1500; // we use a minsup of 1500 sequences
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		
+		AlgoBIDEPlus algo  = new AlgoBIDEPlus();
+		
+		// execute the algorithm, the output is the same as with one thread
+		algo.runAlgorithm(sequenceDatabase, "closed_sequential_patterns.txt", minsup, threadCount);    
+		algo.printStatistics(sequenceDatabase.size());
+	}
+	
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestBIDEPlusParallel_saveToFile.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}
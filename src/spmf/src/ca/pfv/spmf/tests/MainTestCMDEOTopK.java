@@ -0,0 +1,31 @@
+package ca.pfv.spmf.tests;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.sequential_rules.cmdeogun.AlgoCMDeogun;
+
+/**
+ * Class to test the the top-k version of the CMDEO algorithm
+ */
+public class MainTestCMDEOTopK {
+
+	public static void main(String [] arg) throws IOException{
+		// Loading the database
+		String input = fileToPath("contextPrefixSpan.txt");  // the database
+		String  output = "rules.txt";  // the path for saving the rules found
+		int k = 10; // the number of rules of highest support to find
+		double minConf = 0.50; 
+		
+		AlgoCMDeogun algo = new AlgoCMDeogun();
+		algo.runAlgorithmTopK(input, output, k, minConf);
+		
+		algo.printStats();
+	}
+
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestCMDEOTopK.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}
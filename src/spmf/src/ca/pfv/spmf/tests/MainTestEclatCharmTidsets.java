@@ -0,0 +1,115 @@
+package ca.pfv.spmf.tests;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.frequentpatterns.eclat_and_charm.AlgoCharm;
+import ca.pfv.spmf.frequentpatterns.eclat_and_charm.AlgoCharmMFI;
+import ca.pfv.spmf.frequentpatterns.eclat_and_charm.AlgoEclat;
+import ca.pfv.spmf.frequentpatterns.eclat_and_charm.Context;
+import ca.pfv.spmf.frequentpatterns.eclat_and_charm.Itemsets;
+
+/**
+ * Class to compare the representations of the tids in Eclat, Charm and Charm-MFI:
+ * Sets of Integers, sorted arrays and bitsets, and sorted arrays, bitsets and diffsets.
+ * For each one, it prints the number of itemsets found, the time, the estimated maximum
+ * size of the tids of the IT-tree and the memory kept by the itemsets found. The memory
+ * is measured once the algorithm is released, so it does not count the hash table of Charm.
+ *
+ * Usage: MainTestEclatCharmTidsets [file minsup] (by default, the contexts of this folder)
+ */
+public class MainTestEclatCharmTidsets {
+
+	private static final int REPETITIONS = 20; // the time is the average of the runs
+
+	public static void main(String [] arg) throws IOException{
+		if(arg.length >= 2){
+			compare(arg[0], Double.parseDouble(arg[1]));
+		}else{
+			compare(fileToPath("contextPasquier99.txt"), 0.4);
+			compare(fileToPath("contextZart.txt"), 0.4);
+			compare(fileToPath("contextIGB.txt"), 0.3);
+			compare(fileToPath("contextRelim.txt"), 0.2);
+		}
+	}
+
+	private static void compare(String path, double minsup) throws IOException {
+		// Loading the binary context
+		Context context = new Context();
+		context.loadFile(path);
+		System.out.println(path + " : " + context.size() + " transactions, minsup " + minsup);
+
+		boolean[][] modes = {{false, false}, {true, false}, {true, true}}; // compact, diffsets
+		String[] names = {"sets of Integers", "arrays and bitsets", "arrays, bitsets and diffsets"};
+		for(int m = 0; m < modes.length; m++){
+			System.out.println(" " + names[m]);
+
+			// ECLAT
+			long time = 0;
+			long memory = 0;
+			long tidsetMemory = 0;
+			Itemsets itemsets = null;
+			for(int i = 0; i < REPETITIONS; i++){
+				itemsets = null;
+				long before = usedMemory();
+				long startTime = System.nanoTime();
+				AlgoEclat eclat = new AlgoEclat(context);
+				eclat.setUseCompactTidsets(modes[m][0]);
+				eclat.setUseDiffsets(modes[m][1]);
+				itemsets = eclat.runAlgorithm(minsup, false);
+				time += System.nanoTime() - startTime;
+				tidsetMemory = eclat.getMaxTidsetMemory();
+				eclat = null;
+				memory = usedMemory() - before;
+			}
+			print("ECLAT", itemsets, time, tidsetMemory, memory);
+
+			// CHARM and CHARM-MFI
+			time = 0;
+			long timeMFI = 0;
+			for(int i = 0; i < REPETITIONS; i++){
+				itemsets = null;
+				long before = usedMemory();
+				long startTime = System.nanoTime();
+				AlgoCharm charm = new AlgoCharm(context, 100000);
+				charm.setUseCompactTidsets(modes[m][0]);
+				charm.setUseDiffsets(modes[m][1]);
+				itemsets = charm.runAlgorithm(minsup, false);
+				time += System.nanoTime() - startTime;
+				tidsetMemory = charm.getMaxTidsetMemory();
+				charm = null; // the hash table of the closed itemsets is released with it
+				memory = usedMemory() - before;
+				startTime = System.nanoTime();
+				if(itemsets.getLevels().size() > 1){
+					new AlgoCharmMFI().runAlgorithm(itemsets);
+				}
+				timeMFI += System.nanoTime() - startTime;
+			}
+			print("CHARM", itemsets, time, tidsetMemory, memory);
+			System.out.println("   CHARM-MFI : " + timeMFI / REPETITIONS / 1000 + " us");
+		}
+	}
+
+	private static void print(String algorithm, Itemsets itemsets, long time, long tidsetMemory, long memory) {
+		System.out.println("   " + algorithm + " : " + itemsets.getItemsetsCount() + " itemsets, "
+				+ time / REPETITIONS / 1000 + " us, tids of the tree ~ " + tidsetMemory
+				+ " bytes, itemsets found ~ " + Math.max(0, memory) + " bytes");
+	}
+
+	/**
+	 * Returns the memory used after a garbage collection.
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++){
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestEclatCharmTidsets.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}
@@ -0,0 +1,42 @@
+package ca.pfv.spmf.tests;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.frequentpatterns.fpgrowth.AlgoFPGrowth;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.AlgoPFPGrowth;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.Database;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.Itemsets;
+
+/**
+ * Class for testing the parallel versions of the FPGrowth algorithm
+ */
+public class MainTestFPGrowthParallel {
+
+	public static void main(String [] arg) throws IOException{
+		// Loading the binary context
+		Database context = new Database();
+		context.loadFile(fileToPath("contextPasquier99.txt"));
+		context.printContext();
+		
+		// Applying the FPGROWTH algorithm with one thread per processor.
+		// The itemsets are the same as with one thread, in the same order.
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		AlgoFPGrowth algo = new AlgoFPGrowth();
+		Itemsets patterns = algo.runAlgorithm(context, 0.4, threadCount);
+		algo.printStats();
+		patterns.printItemsets(context.size());
+		
+		// Applying the FPGROWTH algorithm with the items split in 2 groups, 
+		// each mined by its own JVM
+		AlgoPFPGrowth pfp = new AlgoPFPGrowth();
+		pfp.runAlgorithm(fileToPath("contextPasquier99.txt"), "itemsets.txt", 0.4, 2, 1);
+		pfp.printStats();
+	}
+	
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestFPGrowthParallel.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}
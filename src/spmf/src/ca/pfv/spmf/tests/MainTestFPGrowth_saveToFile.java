@@ -0,0 +1,57 @@
+package ca.pfv.spmf.tests;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.associationrules.agrawal_FPGrowth_version.AlgoAgrawalFaster94_FPGrowth_version;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.AlgoFPGrowth;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.Database;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.ItemsetCountingSink;
+import ca.pfv.spmf.frequentpatterns.fpgrowth.ItemsetFileSink;
+
+/**
+ * Class for testing the FPGrowth algorithm with the itemsets written to a file as they 
+ * are found, and the rules generated from them without keeping the itemsets.
+ */
+public class MainTestFPGrowth_saveToFile {
+
+	public static void main(String [] arg) throws IOException{
+		String input = fileToPath("contextIGB.txt");
+		double minsupp = 0.5;
+		
+		// Applying the FPGROWTH algorithm, writing the itemsets to a file
+		Database database = new Database();
+		database.loadFile(input);
+		AlgoFPGrowth algo = new AlgoFPGrowth();
+		ItemsetFileSink sink = new ItemsetFileSink("itemsets.txt");
+		try {
+			algo.runAlgorithm(database, minsupp, sink);
+		} finally {
+			sink.close();
+		}
+		algo.printStats();
+		
+		// Only counting the itemsets
+		database = new Database();
+		database.loadFile(input);
+		ItemsetCountingSink counter = new ItemsetCountingSink();
+		new AlgoFPGrowth().runAlgorithm(database, minsupp, counter);
+		for(int size = 1; size <= counter.getMaxSize(); size++){
+			System.out.println(" itemsets of size " + size + " : " + counter.getItemsetCount(size));
+		}
+		
+		// Generating the association rules while the itemsets are found
+		database = new Database();
+		database.loadFile(input);
+		AlgoAgrawalFaster94_FPGrowth_version algoAgrawal = new AlgoAgrawalFaster94_FPGrowth_version(0.60);
+		int ruleCount = algoAgrawal.runAlgorithm(new AlgoFPGrowth(), database, minsupp, new FileWriter("rules.txt"));
+		System.out.println(" rules count : " + ruleCount);
+	}
+	
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestFPGrowth_saveToFile.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}
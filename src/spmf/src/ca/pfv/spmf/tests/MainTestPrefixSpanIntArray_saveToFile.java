@@ -0,0 +1,36 @@
+package ca.pfv.spmf.tests;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile.AlgoPrefixSpanIntArray;
+import ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile.IntSequenceDatabase;
+
+
+/**
+ * Class for testing the PrefixSpan algorithm on a sequence database stored in int arrays
+ */
+public class MainTestPrefixSpanIntArray_saveToFile {
+
+	public static void main(String [] arg) throws IOException{    
+		// Load a sequence database
+		IntSequenceDatabase sequenceDatabase = new IntSequenceDatabase(); 
+		sequenceDatabase.loadFile(fileToPath("contextPrefixSpan.txt"));
+		// print the database to console
+		sequenceDatabase.print();
+		
+		AlgoPrefixSpanIntArray algo = new AlgoPrefixSpanIntArray(); 
+		
+		int minsup = 2; // we use a minimum support of 2 sequences.
+		
+		// execute the algorithm
+		algo.runAlgorithm(sequenceDatabase, "sequences.txt", minsup);    
+		algo.printStatistics(sequenceDatabase.size());
+	}
+	
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestPrefixSpanIntArray_saveToFile.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}
\ No newline at end of file
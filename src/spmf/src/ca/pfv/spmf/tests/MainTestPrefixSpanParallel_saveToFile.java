@@ -0,0 +1,41 @@
+package ca.pfv.spmf.tests;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile.AlgoPrefixSpan;
+import ca.pfv.spmf.sequentialpatterns.prefixspan_saveToFile.SequenceDatabase;
+
+
+/**
+ * Class for testing the parallel version of the PrefixSpan algorithm
+ */
+public class MainTestPrefixSpanParallel_saveToFile {
+
+	public static void main(String [] arg) throws IOException{    
+		// Load a sequence database
+		SequenceDatabase sequenceDatabase = new SequenceDatabase(); 
+		sequenceDatabase.loadFile(fileToPath("contextPrefixSpan.txt"));
+		// print the database to console
+		sequenceDatabase.print();
+		
+		// Create an instance of the algorithm
+		AlgoPrefixSpan algo = new AlgoPrefixSpan(); 
+		// subtrees of prefixes appearing in at least 3 sequences are mined by their own task
+		algo.setSplitThreshold(3);
+		
+		int minsup = 2; // we use a minimum support of 2 sequences.
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		
+		// execute the algorithm, the output is the same as with one thread
+		algo.runAlgorithm(sequenceDatabase, new FileWriter("sequences.txt"), minsup, threadCount);    
+		algo.printStatistics(sequenceDatabase.size());
+	}
+	
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestPrefixSpanParallel_saveToFile.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}
\ No newline at end of file
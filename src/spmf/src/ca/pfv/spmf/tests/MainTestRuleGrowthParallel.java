@@ -0,0 +1,36 @@
+package ca.pfv.spmf.tests;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.sequential_rules.rulegrowth.AlgoRULEGROWTH;
+
+/**
+ * Class to test the parallel version of the RuleGrowth algorithm
+ */
+public class MainTestRuleGrowthParallel {
+	
+	public static void main(String [] arg) throws IOException{
+		String input = fileToPath("contextPrefixSpan.txt");  // the database
+		String output = "sequential_rules.txt";  // the path for saving the rules found
+
+		//  Applying RuleGROWTH algorithm with minsup = 3 sequences and minconf = 0.5
+		int minsup_relative = 3;
+		double minconf = 0.5;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		AlgoRULEGROWTH algo = new AlgoRULEGROWTH();
+		// the rules are written in the same order as with one thread.
+		// With false, the threads share the work more evenly but the order of the rules varies.
+		algo.setDeterministicOrder(true);
+		algo.runAlgorithm(input, output, minsup_relative, minconf, threadCount);
+
+		// print statistics
+		algo.printStats();
+	}
+	
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestRuleGrowthParallel.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}
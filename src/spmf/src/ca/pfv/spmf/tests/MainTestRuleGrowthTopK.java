@@ -0,0 +1,32 @@
+package ca.pfv.spmf.tests;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+
+import ca.pfv.spmf.sequential_rules.rulegrowth.AlgoRULEGROWTH;
+
+/**
+ * Class to test the top-k version of the RuleGrowth algorithm
+ */
+public class MainTestRuleGrowthTopK {
+	
+	public static void main(String [] arg) throws IOException{
+		String input = fileToPath("contextPrefixSpan.txt");  // the database
+		String output = "sequential_rules.txt";  // the path for saving the rules found
+
+		//  Applying RuleGROWTH algorithm to find the 10 rules of highest support with minconf = 0.5
+		int k = 10;
+		double minconf = 0.5;
+		AlgoRULEGROWTH algo = new AlgoRULEGROWTH();
+		algo.runAlgorithmTopK(input, output, k, minconf);
+
+		// print statistics
+		algo.printStats();
+	}
+	
+	public static String fileToPath(String filename) throws UnsupportedEncodingException{
+		URL url = MainTestRuleGrowthTopK.class.getResource(filename);
+		 return java.net.URLDecoder.decode(url.getPath(),"UTF-8");
+	}
+}